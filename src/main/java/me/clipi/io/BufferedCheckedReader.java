@@ -0,0 +1,73 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link CheckedReader} whose next bytes are available in an in-memory {@link ByteBuffer}, so that they can be
+ * read in bulk instead of calling {@link #nextByteOrNeg()} once per byte.
+ *
+ * <p>The bytes between the position and the limit of the buffer returned by {@link #buffer(int)} are the next bytes
+ * of the input, and advancing the position of that buffer consumes them. Reading through the buffer and reading
+ * through the methods of {@link CheckedReader} may be freely interleaved.
+ *
+ * @apiNote This interface is <strong>not</strong> thread safe.
+ */
+public interface BufferedCheckedReader<ReadException extends Throwable> extends CheckedReader<ReadException> {
+	/**
+	 * Returns the big-endian buffer that holds the next bytes of the input.
+	 *
+	 * <p>The buffer will have at least {@code minRemaining} bytes remaining, unless EOF is reached before or the
+	 * buffer cannot hold that many bytes, in which case it will have as many as possible. Callers must therefore
+	 * check {@link ByteBuffer#remaining()} and fall back to the methods of {@link CheckedReader} if needed.
+	 * <p>Callers must not modify the limit of the buffer, nor its contents, and the buffer may be invalidated by any
+	 * subsequent call to a method of this reader.
+	 */
+	@NotNull
+	ByteBuffer buffer(int minRemaining) throws ReadException;
+
+	/**
+	 * @implSpec The default implementation discards the bytes of the buffers returned by {@link #buffer(int)}.
+	 */
+	@Override
+	default boolean skipFullyOrTrue(long bytes) throws ReadException {
+		assert bytes >= 0;
+		while (bytes > 0) {
+			ByteBuffer buf = buffer(1);
+			int n = (int) Math.min(buf.remaining(), bytes);
+			if (n == 0) return true;
+			buf.position(buf.position() + n);
+			bytes -= n;
+		}
+		return false;
+	}
+
+	/**
+	 * Whether this reader never overwrites the bytes of the buffers returned by {@link #buffer(int)}, so that views
+	 * of those buffers remain valid after their bytes have been consumed, and even after this reader is closed.
+	 */
+	default boolean hasStableBuffers() {
+		return false;
+	}
+}
@@ -22,11 +22,13 @@ package me.clipi.io;
 
 import me.clipi.io.OomException.OomAware;
 import me.clipi.io.util.function.CheckedByteConsumer;
+import me.clipi.io.util.function.CheckedConsumer;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.function.IntFunction;
 
 public class CheckedBigEndianDataInput<ReadException extends Exception> implements AutoCloseable {
@@ -39,6 +41,10 @@ public class CheckedBigEndianDataInput<ReadException extends Exception> implemen
 	}
 
 	private final CheckedReader<ReadException> reader;
+	/**
+	 * The same object as {@link #reader} if it exposes its bytes in bulk, or {@code null} otherwise
+	 */
+	private final @Nullable BufferedCheckedReader<ReadException> buffered;
 	private @Nullable OomAware oomAware;
 
 	public void setOomAware(@Nullable OomAware oomAware) {
@@ -47,6 +53,9 @@ public class CheckedBigEndianDataInput<ReadException extends Exception> implemen
 
 	public CheckedBigEndianDataInput(@NotNull CheckedReader<ReadException> reader) {
 		this.reader = reader;
+		this.buffered = reader instanceof BufferedCheckedReader ?
+			(BufferedCheckedReader<ReadException>) reader :
+			null;
 	}
 
 	@Override
@@ -68,6 +77,16 @@ public class CheckedBigEndianDataInput<ReadException extends Exception> implemen
 		if (reader.nextByteOrNeg() >= 0) throw new NotEofException();
 	}
 
+	/**
+	 * Discards the next {@code bytes} bytes without reading them when the reader allows it (e.g. by seeking)
+	 *
+	 * @see CheckedReader#skipFullyOrTrue(long)
+	 */
+	public void expectSkip(long bytes) throws ReadException, EofException {
+		assert bytes >= 0;
+		if (reader.skipFullyOrTrue(bytes)) throw new EofException();
+	}
+
 	public int expectByte() throws ReadException, EofException {
 		int res = reader.nextByteOrNeg();
 		if (res < 0) throw new EofException();
@@ -75,12 +94,22 @@ public class CheckedBigEndianDataInput<ReadException extends Exception> implemen
 	}
 
 	public int expectShort() throws ReadException, EofException {
+		BufferedCheckedReader<ReadException> buffered = this.buffered;
+		if (buffered != null) {
+			ByteBuffer buf = buffered.buffer(2);
+			if (buf.remaining() >= 2) return buf.getShort() & 0xFF_FF;
+		}
 		int a = reader.nextByteOrNeg(), b = reader.nextByteOrNeg();
 		if ((a | b) < 0) throw new EofException();
 		return (a << 8) | b;
 	}
 
 	public int expectInt() throws ReadException, EofException {
+		BufferedCheckedReader<ReadException> buffered = this.buffered;
+		if (buffered != null) {
+			ByteBuffer buf = buffered.buffer(4);
+			if (buf.remaining() >= 4) return buf.getInt();
+		}
 		int a = reader.nextByteOrNeg(), b = reader.nextByteOrNeg(),
 			c = reader.nextByteOrNeg(), d = reader.nextByteOrNeg();
 		if ((a | b | c | d) < 0) throw new EofException();
@@ -92,6 +121,11 @@ public class CheckedBigEndianDataInput<ReadException extends Exception> implemen
 	private final ByteBuffer buf8KiB = ByteBuffer.allocate(KiB8).order(ByteOrder.BIG_ENDIAN);
 
 	public long expectLong() throws ReadException, EofException {
+		BufferedCheckedReader<ReadException> buffered = this.buffered;
+		if (buffered != null) {
+			ByteBuffer buf = buffered.buffer(8);
+			if (buf.remaining() >= 8) return buf.getLong();
+		}
 		byte[] longBuffer = this.bufLong;
 		if (reader.readFullyOrTrue(longBuffer)) throw new EofException();
 		return (((long) longBuffer[0]) << 56) | ((longBuffer[1] & 0xFFL) << 48) |
@@ -118,6 +152,31 @@ public class CheckedBigEndianDataInput<ReadException extends Exception> implemen
 		return res;
 	}
 
+	/**
+	 * Reads the next {@code size} bytes as a read-only big-endian {@link ByteBuffer}.
+	 *
+	 * <p>If the reader {@link BufferedCheckedReader#hasStableBuffers() has stable buffers} (e.g. a
+	 * {@link CheckedReader#fromMappedFile(java.nio.file.Path) memory-mapped file}), the result is a view of its
+	 * buffer, so no bytes are copied. Otherwise, the bytes are copied to a new heap buffer.
+	 *
+	 * <p>The caller is responsible for asserting that {@code size >= 0}
+	 */
+	@NotNull
+	public ByteBuffer expectByteSlice(int size) throws ReadException, EofException, OomException {
+		assert size >= 0;
+		BufferedCheckedReader<ReadException> buffered = this.buffered;
+		if (buffered != null && buffered.hasStableBuffers()) {
+			ByteBuffer buf = buffered.buffer(size);
+			if (buf.remaining() >= size) {
+				ByteBuffer slice = buf.slice();
+				slice.limit(size);
+				buf.position(buf.position() + size);
+				return slice.asReadOnlyBuffer();
+			}
+		}
+		return ByteBuffer.wrap(expectByteArray(size)).asReadOnlyBuffer();
+	}
+
 	/**
 	 * The caller is responsible for asserting that {@code size >= 0}
 	 */
@@ -153,6 +212,48 @@ public class CheckedBigEndianDataInput<ReadException extends Exception> implemen
 		return expectArray(size, double[]::new, 3, (buf, off, len, arr) -> buf.asDoubleBuffer().get(arr, off, len));
 	}
 
+	/**
+	 * Passes the next {@code size} elements of {@code 1 << byteShiftAmount} bytes to {@code chunk}, in chunks that are
+	 * read-only big-endian views of the buffers of the reader (or of a fixed scratch buffer), so that no array is
+	 * allocated. Each view is only valid until {@code chunk} returns.
+	 *
+	 * <p>The caller is responsible for asserting that {@code size >= 0}
+	 */
+	public <E extends Throwable> void expectChunks(int size, int byteShiftAmount,
+												   @NotNull CheckedConsumer<@NotNull ByteBuffer, E> chunk)
+		throws ReadException, EofException, E {
+		assert size >= 0;
+		BufferedCheckedReader<ReadException> buffered = this.buffered;
+		if (buffered != null) {
+			while (size > 0) {
+				ByteBuffer buf = buffered.buffer(1 << byteShiftAmount);
+				int objs = Math.min(buf.remaining() >> byteShiftAmount, size);
+				if (objs == 0) throw new EofException();
+				int position = buf.position(), bytes = objs << byteShiftAmount;
+				ByteBuffer view = buf.slice();
+				view.limit(bytes);
+				chunk.accept(view.asReadOnlyBuffer());
+				buf.position(position + bytes);
+				size -= objs;
+			}
+			return;
+		}
+
+		ByteBuffer buf = buf8KiB;
+		CheckedReader<ReadException> reader = this.reader;
+		try {
+			for (long remaining = (long) size << byteShiftAmount; remaining > 0; ) {
+				int bytes = (int) Math.min(remaining, KiB8);
+				if (reader.readFullyOrTrue(buf.array(), bytes)) throw new EofException();
+				buf.limit(bytes);
+				chunk.accept(buf.asReadOnlyBuffer());
+				buf.clear();
+				remaining -= bytes;
+			}
+		} finally {
+			buf.clear();
+		}
+	}
 
 	@FunctionalInterface
 	private interface CopyFromByteBuffer<Arr> {
@@ -168,20 +269,37 @@ public class CheckedBigEndianDataInput<ReadException extends Exception> implemen
 		throws ReadException, EofException, OomException {
 		assert size >= 0;
 		Arr res = OomAware.tryRun(oomAware, () -> gen.apply(size));
-		ByteBuffer buf = OomAware.tryRunOrNull(oomAware, () -> ByteBuffer.allocate(size << byteShiftAmount)
-																		 .order(ByteOrder.BIG_ENDIAN));
-		if (buf == null) {
-			oomExpectArray(size, byteShiftAmount, res, copy);
-			return res;
+		if (buffered != null) {
+			bufferedExpectArray(buffered, size, byteShiftAmount, res, copy);
+		} else {
+			streamExpectArray(size, byteShiftAmount, res, copy);
 		}
-
-		if (reader.readFullyOrTrue(buf.array())) throw new EofException();
-		copy.fromInto(buf, 0, size, res);
 		return res;
 	}
 
-	private <Arr> void oomExpectArray(long size, int byteShiftAmount, @NotNull Arr array,
-									  @NotNull CopyFromByteBuffer<Arr> copy) throws ReadException, EofException {
+	/**
+	 * Copies the elements straight from the buffers of the reader, without any intermediate allocation
+	 */
+	private static <Arr, ReadException extends Exception> void bufferedExpectArray(
+		@NotNull BufferedCheckedReader<ReadException> buffered, int size, int byteShiftAmount, @NotNull Arr array,
+		@NotNull CopyFromByteBuffer<Arr> copy) throws ReadException, EofException {
+		int offset = 0;
+		while (offset < size) {
+			ByteBuffer buf = buffered.buffer(1 << byteShiftAmount);
+			int objs = Math.min(buf.remaining() >> byteShiftAmount, size - offset);
+			if (objs == 0) throw new EofException();
+			copy.fromInto(buf, offset, objs, array);
+			buf.position(buf.position() + (objs << byteShiftAmount));
+			offset += objs;
+		}
+	}
+
+	/**
+	 * Fills the array in place through a fixed scratch buffer, so that the peak memory usage is that of the result
+	 * array alone
+	 */
+	private <Arr> void streamExpectArray(long size, int byteShiftAmount, @NotNull Arr array,
+										 @NotNull CopyFromByteBuffer<Arr> copy) throws ReadException, EofException {
 		ByteBuffer buf = buf8KiB;
 		int offset = 0;
 		CheckedReader<ReadException> reader = this.reader;
@@ -205,7 +323,7 @@ public class CheckedBigEndianDataInput<ReadException extends Exception> implemen
 	 * format
 	 *
 	 * <p>It is unlikely for this method to throw a checked {@link OomException}, since the maximum amount of
-	 * memory it can allocate is {@code 0.32 MiB}
+	 * memory it can allocate is {@code 0.32 MiB}, and the buffers used for decoding are reused across calls
 	 *
 	 * @see java.io.DataInput#readUTF()
 	 */
@@ -221,7 +339,7 @@ public class CheckedBigEndianDataInput<ReadException extends Exception> implemen
 	 * format
 	 *
 	 * <p>It is unlikely for this method to throw a checked {@link OomException}, since the maximum amount of
-	 * memory it can allocate is {@code 0.32 MiB}
+	 * memory it can allocate is {@code 0.32 MiB}, and the buffers used for decoding are reused across calls
 	 *
 	 * @see java.io.DataInput#readUTF()
 	 */
@@ -231,20 +349,119 @@ public class CheckedBigEndianDataInput<ReadException extends Exception> implemen
 		return expectModifiedUtf8(bytes & 0xFF_FF);
 	}
 
+	/**
+	 * Scratch buffers reused by every {@link String} decoded by this input, grown on demand up to the maximum length
+	 * of a modified UTF-8 string
+	 */
+	private byte @Nullable [] utf8Scratch;
+	private char @Nullable [] charScratch;
+	private static final int MODIFIED_UTF8_MAX_BYTES = 0xFF_FF, MIN_SCRATCH_LENGTH = 64;
+
+	private static int scratchLength(int currentLength, int required) {
+		return Math.min(Math.max(Math.max(required, currentLength << 1), MIN_SCRATCH_LENGTH), MODIFIED_UTF8_MAX_BYTES);
+	}
+
+	private byte @NotNull [] utf8Scratch(int bytes) throws OomException {
+		byte[] scratch = utf8Scratch;
+		if (scratch != null && scratch.length >= bytes) return scratch;
+		int length = scratchLength(scratch == null ? 0 : scratch.length, bytes);
+		return utf8Scratch = OomAware.tryRun(oomAware, () -> new byte[length]);
+	}
+
+	private char @NotNull [] charScratch(int chars) throws OomException {
+		char[] scratch = charScratch;
+		if (scratch != null && scratch.length >= chars) return scratch;
+		int length = scratchLength(scratch == null ? 0 : scratch.length, chars);
+		return charScratch = OomAware.tryRun(oomAware, () -> new char[length]);
+	}
+
+	/**
+	 * Reads a {@link String} in the
+	 * <a href="https://docs.oracle.com/javase/8/docs/api/java/io/DataInput.html#modified-utf-8">modified UTF-8</a>
+	 * format, returning the canonical instance held by {@code interner} if the string is short enough to be cached
+	 *
+	 * @see ModifiedUtf8Interner
+	 */
+	@NotNull
+	public String expectModifiedUtf8(@NotNull ModifiedUtf8Interner interner)
+		throws ReadException, EofException, OomException, ModifiedUtf8DataFormatException {
+		int bytes = expectShort();
+		if (bytes == 0 | bytes > ModifiedUtf8Interner.MAX_INTERNED_BYTES) return expectModifiedUtf8(bytes);
+		byte[] encoded = expectEncoded(bytes);
+		int offset = encodedOffset;
+		int hash = ModifiedUtf8Interner.hash(encoded, offset, bytes);
+		String cached = interner.get(encoded, offset, bytes, hash);
+		if (cached != null) return cached;
+		String decoded = decodeModifiedUtf8(encoded, offset, bytes);
+		return OomAware.tryRun(oomAware, () -> interner.add(encoded, offset, bytes, hash, decoded));
+	}
+
 	@NotNull
 	private String expectModifiedUtf8(int bytes) throws ReadException, EofException, OomException,
 														ModifiedUtf8DataFormatException {
-		byte[] encoded = expectByteArray(bytes);
-		char[] decoded = OomAware.tryRun(oomAware, () -> new char[bytes]);
+		if (bytes == 0) return "";
+		byte[] encoded = expectEncoded(bytes);
+		return decodeModifiedUtf8(encoded, encodedOffset, bytes);
+	}
+
+	/**
+	 * The offset of the bytes returned by the last call to {@link #expectEncoded(int)}
+	 */
+	private int encodedOffset;
+
+	/**
+	 * Consumes the next {@code bytes} bytes, which will be found in the returned array starting at
+	 * {@link #encodedOffset}. The array may be the backing array of the reader or a scratch buffer, so it must not
+	 * be modified nor retained.
+	 */
+	private byte @NotNull [] expectEncoded(int bytes) throws ReadException, EofException, OomException {
+		BufferedCheckedReader<ReadException> buffered = this.buffered;
+		if (buffered != null) {
+			ByteBuffer buf = buffered.buffer(bytes);
+			if (buf.remaining() >= bytes) {
+				if (buf.hasArray()) {
+					// Decode straight from the backing array instead of copying the encoded bytes first
+					int position = buf.position();
+					buf.position(position + bytes);
+					encodedOffset = buf.arrayOffset() + position;
+					return buf.array();
+				}
+				byte[] scratch = utf8Scratch(bytes);
+				buf.get(scratch, 0, bytes);
+				encodedOffset = 0;
+				return scratch;
+			}
+		}
+		byte[] scratch = utf8Scratch(bytes);
+		if (reader.readFullyOrTrue(scratch, bytes)) throw new EofException();
+		encodedOffset = 0;
+		return scratch;
+	}
+
+	private static boolean isAscii(byte @NotNull [] encoded, int offset, int bytes) {
+		// A branchless reduction, so that the JIT is able to vectorize it
+		int acc = 0;
+		for (int i = offset, end = offset + bytes; i < end; ++i) acc |= encoded[i];
+		return acc >= 0;
+	}
+
+	@NotNull
+	private String decodeModifiedUtf8(byte @NotNull [] encoded, int offset, int bytes)
+		throws OomException, ModifiedUtf8DataFormatException {
+		if (isAscii(encoded, offset, bytes))
+			// ASCII is a subset of both modified UTF-8 and Latin-1, and the latter is copied as is into the String
+			return OomAware.tryRun(oomAware, () -> new String(encoded, offset, bytes, StandardCharsets.ISO_8859_1));
+
+		char[] decoded = charScratch(bytes);
 		int chars = 0;
-		for (int i = 0; i < bytes; ++i) {
+		for (int i = offset, end = offset + bytes; i < end; ++i) {
 			char decodedChar;
 			byte a = encoded[i];
 			decodedChar:
 			if (a >= 0) {
 				decodedChar = (char) a;
 			} else {
-				if (++i < bytes) {
+				if (++i < end) {
 					int b = encoded[i] & 0xFF;
 					int shifted = (a & 0xFF) >>> 4;
 					if (shifted >>> 1 == 0b110) {
@@ -252,7 +469,7 @@ public class CheckedBigEndianDataInput<ReadException extends Exception> implemen
 							decodedChar = (char) (((a & 0x1F) << 6) | (b & 0x3F));
 							break decodedChar;
 						}
-					} else if (shifted == 0b1110 && ++i < bytes) {
+					} else if (shifted == 0b1110 && ++i < end) {
 						int c = encoded[i] & 0xFF;
 						if ((b >>> 6 == 0b10) & (c >>> 6 == 0b10)) {
 							decodedChar = (char) (((a & 0x0F) << 12) | ((b & 0x3F) << 6) | (c & 0x3F));
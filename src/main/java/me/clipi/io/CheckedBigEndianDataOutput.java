@@ -0,0 +1,271 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io;
+
+import me.clipi.io.CheckedBigEndianDataInput.ModifiedUtf8DataFormatException;
+import me.clipi.io.util.VarIntLong;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The counterpart of {@link CheckedBigEndianDataInput}, which batches the written values in a reusable buffer, so that
+ * the underlying {@link CheckedWriter} receives big chunks of bytes instead of values one by one
+ */
+public class CheckedBigEndianDataOutput<WriteException extends Exception> implements AutoCloseable {
+	private static final int KiB8 = 8 * 1024;
+
+	private final CheckedWriter<WriteException> writer;
+	private final byte @NotNull [] bytes = new byte[KiB8];
+	private final @NotNull ByteBuffer buf = ByteBuffer.wrap(bytes);
+
+	public CheckedBigEndianDataOutput(@NotNull CheckedWriter<WriteException> writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * Writes all the buffered bytes and flushes the underlying writer
+	 */
+	public void flush() throws WriteException {
+		flushBuffer();
+		writer.flush();
+	}
+
+	@Override
+	public void close() throws WriteException {
+		try {
+			flushBuffer();
+		} finally {
+			writer.close();
+		}
+	}
+
+	private void flushBuffer() throws WriteException {
+		ByteBuffer buf = this.buf;
+		int position = buf.position();
+		if (position > 0) {
+			buf.clear();
+			writer.write(bytes, 0, position);
+		}
+	}
+
+	/**
+	 * Makes room for at least {@code bytes} bytes, which must not be more than {@link #KiB8}
+	 */
+	@NotNull
+	private ByteBuffer buffer(int bytes) throws WriteException {
+		ByteBuffer buf = this.buf;
+		if (buf.remaining() < bytes) flushBuffer();
+		return buf;
+	}
+
+	public void writeByte(int b) throws WriteException {
+		buffer(1).put((byte) b);
+	}
+
+	public void writeShort(int s) throws WriteException {
+		buffer(2).putShort((short) s);
+	}
+
+	public void writeInt(int i) throws WriteException {
+		buffer(4).putInt(i);
+	}
+
+	public void writeLong(long l) throws WriteException {
+		buffer(8).putLong(l);
+	}
+
+	public void writeFloat(float f) throws WriteException {
+		buffer(4).putFloat(f);
+	}
+
+	public void writeDouble(double d) throws WriteException {
+		buffer(8).putDouble(d);
+	}
+
+	/**
+	 * Writes the bytes of the array, without its length
+	 */
+	public void writeByteArray(byte @NotNull [] array) throws WriteException {
+		writeByteArray(array, 0, array.length);
+	}
+
+	/**
+	 * Writes the bytes of the array, without its length. Arrays that do not fit in the buffer are handed to the
+	 * writer as is, instead of being copied.
+	 */
+	public void writeByteArray(byte @NotNull [] array, int offset, int length) throws WriteException {
+		ByteBuffer buf = this.buf;
+		if (length <= buf.remaining()) {
+			buf.put(array, offset, length);
+		} else {
+			flushBuffer();
+			if (length < KiB8) {
+				buf.put(array, offset, length);
+			} else {
+				writer.write(array, offset, length);
+			}
+		}
+	}
+
+	/**
+	 * Writes the {@code length} bytes of the buffer that start at the absolute index {@code offset}, without
+	 * modifying its position nor its limit. Heap buffers are written as arrays, while the contents of any other
+	 * buffer are copied through the internal buffer.
+	 */
+	public void writeBytes(@NotNull ByteBuffer src, int offset, int length) throws WriteException {
+		if (src.hasArray()) {
+			writeByteArray(src.array(), src.arrayOffset() + offset, length);
+			return;
+		}
+		ByteBuffer view = src.duplicate();
+		int end = offset + length;
+		view.limit(end);
+		view.position(offset);
+		ByteBuffer buf = this.buf;
+		while (view.hasRemaining()) {
+			if (!buf.hasRemaining()) flushBuffer();
+			view.limit(view.position() + Math.min(view.remaining(), buf.remaining()));
+			buf.put(view);
+			view.limit(end);
+		}
+	}
+
+	/**
+	 * Encodes {@code length} values starting at {@code offset} as VarInts directly into the buffer, as many at a time
+	 * as are sure to fit in it
+	 *
+	 * @see VarIntLong#writeVarInts(int[], int, int, byte[], int)
+	 */
+	public void writeVarInts(int @NotNull [] values, int offset, int length) throws WriteException {
+		ByteBuffer buf = this.buf;
+		byte[] bytes = this.bytes;
+		for (int end = offset + length; offset < end; ) {
+			// A VarInt takes at most 5 bytes
+			int count = Math.min(buffer(5).remaining() / 5, end - offset);
+			buf.position(VarIntLong.writeVarInts(values, offset, count, bytes, buf.position()));
+			offset += count;
+		}
+	}
+
+	/**
+	 * Writes the elements of the array, without its length
+	 */
+	public void writeShortArray(short @NotNull [] array) throws WriteException {
+		writeArray(array, array.length, 1, (buf, off, len, arr) -> buf.asShortBuffer().put(arr, off, len));
+	}
+
+	/**
+	 * Writes the elements of the array, without its length
+	 */
+	public void writeIntArray(int @NotNull [] array) throws WriteException {
+		writeArray(array, array.length, 2, (buf, off, len, arr) -> buf.asIntBuffer().put(arr, off, len));
+	}
+
+	/**
+	 * Writes the elements of the array, without its length
+	 */
+	public void writeLongArray(long @NotNull [] array) throws WriteException {
+		writeArray(array, array.length, 3, (buf, off, len, arr) -> buf.asLongBuffer().put(arr, off, len));
+	}
+
+	/**
+	 * Writes the elements of the array, without its length
+	 */
+	public void writeFloatArray(float @NotNull [] array) throws WriteException {
+		writeArray(array, array.length, 2, (buf, off, len, arr) -> buf.asFloatBuffer().put(arr, off, len));
+	}
+
+	/**
+	 * Writes the elements of the array, without its length
+	 */
+	public void writeDoubleArray(double @NotNull [] array) throws WriteException {
+		writeArray(array, array.length, 3, (buf, off, len, arr) -> buf.asDoubleBuffer().put(arr, off, len));
+	}
+
+
+	@FunctionalInterface
+	private interface CopyIntoByteBuffer<Arr> {
+		void intoFrom(@NotNull ByteBuffer buf, int offset, int len, @NotNull Arr from);
+	}
+
+	/**
+	 * Encodes the elements in bulk through the buffer, as many at a time as fit in it
+	 */
+	private <Arr> void writeArray(@NotNull Arr array, int size, int byteShiftAmount,
+								  @NotNull CopyIntoByteBuffer<Arr> copy) throws WriteException {
+		ByteBuffer buf = this.buf;
+		int offset = 0;
+		while (offset < size) {
+			int objs = Math.min(buffer(1 << byteShiftAmount).remaining() >> byteShiftAmount, size - offset);
+			copy.intoFrom(buf, offset, objs, array);
+			buf.position(buf.position() + (objs << byteShiftAmount));
+			offset += objs;
+		}
+	}
+
+	/**
+	 * Writes a {@link String} in the
+	 * <a href="https://docs.oracle.com/javase/8/docs/api/java/io/DataInput.html#modified-utf-8">modified UTF-8</a>
+	 * format
+	 *
+	 * @throws ModifiedUtf8DataFormatException if the encoded string is longer than {@code 65535} bytes
+	 * @see java.io.DataOutput#writeUTF(String)
+	 */
+	public void writeModifiedUtf8(@NotNull String str) throws WriteException, ModifiedUtf8DataFormatException {
+		int chars = str.length();
+		int bytes = chars;
+		for (int i = 0; i < chars; ++i) {
+			char c = str.charAt(i);
+			if (c >= 0x80 | c == 0) bytes += c >= 0x800 ? 2 : 1;
+		}
+		if (bytes > 0xFF_FF) throw new ModifiedUtf8DataFormatException();
+		writeShort(bytes);
+
+		ByteBuffer buf = this.buf;
+		byte[] encoded = this.bytes;
+		if (bytes == chars) {
+			// ASCII fast path, copying as many characters as fit in the buffer at a time
+			for (int i = 0; i < chars; ) {
+				int position = buffer(1).position();
+				int end = Math.min(chars, i + buf.remaining());
+				for (; i < end; ++i, ++position)
+					encoded[position] = (byte) str.charAt(i);
+				buf.position(position);
+			}
+			return;
+		}
+		for (int i = 0; i < chars; ++i) {
+			char c = str.charAt(i);
+			buffer(3);
+			if (c < 0x80 & c != 0) {
+				buf.put((byte) c);
+			} else if (c < 0x800) {
+				buf.put((byte) (0xC0 | c >> 6));
+				buf.put((byte) (0x80 | c & 0x3F));
+			} else {
+				buf.put((byte) (0xE0 | c >> 12));
+				buf.put((byte) (0x80 | c >> 6 & 0x3F));
+				buf.put((byte) (0x80 | c & 0x3F));
+			}
+		}
+	}
+}
@@ -24,6 +24,11 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Represents a reader, similar to a {@link InputStream}, but with a set ReadException so that it does not
@@ -66,6 +71,20 @@ public interface CheckedReader<ReadException extends Throwable> {
 	 */
 	boolean readFullyOrTrue(byte @NotNull [] buf, int length) throws ReadException;
 
+	/**
+	 * Discards {@code bytes} bytes, or returns {@code true} if EOF has been reached.
+	 * <p>Once EOF has been reached, subsequent calls to this method will always return {@code true}, unless the
+	 * underlying input is closed which would make the call to this method undefined behaviour.
+	 *
+	 * @implSpec The default implementation discards the bytes one by one.
+	 */
+	default boolean skipFullyOrTrue(long bytes) throws ReadException {
+		assert bytes >= 0;
+		for (; bytes > 0; --bytes)
+			if (nextByteOrNeg() < 0) return true;
+		return false;
+	}
+
 	/**
 	 * Closes the underlying input.
 	 * <p>If this {@link CheckedReader} is backed up by multiple inputs, the current underlying input will be closed
@@ -116,6 +135,11 @@ public interface CheckedReader<ReadException extends Throwable> {
 				return readerOrCrash().readFullyOrTrue(buf, length);
 			}
 
+			@Override
+			public boolean skipFullyOrTrue(long bytes) throws E {
+				return readerOrCrash().skipFullyOrTrue(bytes);
+			}
+
 			@NotNull
 			private CheckedReader<? extends E> readerOrCrash() {
 				CheckedReader<? extends E> currentReader = this.currentReader;
@@ -210,6 +234,22 @@ public interface CheckedReader<ReadException extends Throwable> {
 				return false;
 			}
 
+			@Override
+			public boolean skipFullyOrTrue(long bytes) throws IOException {
+				assert bytes >= 0;
+				while (bytes > 0) {
+					long skipped = is.skip(bytes);
+					if (skipped > 0) {
+						bytes -= skipped;
+					} else {
+						// InputStream#skip may skip nothing without having reached EOF
+						if (is.read() < 0) return true;
+						--bytes;
+					}
+				}
+				return false;
+			}
+
 			@Override
 			public void closeCurrent() throws IOException {
 				closed = true;
@@ -222,4 +262,159 @@ public interface CheckedReader<ReadException extends Throwable> {
 			}
 		};
 	}
+
+	/**
+	 * Creates a reader of the whole contents of the given array.
+	 *
+	 * <p>The array is not copied, so it must not be modified while the reader is in use.
+	 */
+	@NotNull
+	static BufferedCheckedReader<RuntimeException> fromArray(byte @NotNull [] array) {
+		return fromByteBuffer(ByteBuffer.wrap(array));
+	}
+
+	/**
+	 * Creates a reader of the {@code length} bytes of the given array that start at {@code offset}.
+	 *
+	 * <p>The array is not copied, so it must not be modified while the reader is in use.
+	 */
+	@NotNull
+	static BufferedCheckedReader<RuntimeException> fromArray(byte @NotNull [] array, int offset, int length) {
+		return fromByteBuffer(ByteBuffer.wrap(array, offset, length));
+	}
+
+	/**
+	 * Creates a reader of the remaining bytes of the given buffer, which may either be a heap or a direct buffer.
+	 *
+	 * <p>The position, limit and byte order of the given buffer are not modified, but its contents are not copied
+	 * either, so they must not be modified while the reader is in use.
+	 */
+	@NotNull
+	static BufferedCheckedReader<RuntimeException> fromByteBuffer(@NotNull ByteBuffer buffer) {
+		ByteBuffer view = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+		return new BufferedCheckedReader<RuntimeException>() {
+			private boolean closed;
+
+			@Override
+			public int nextByteOrNeg() {
+				return view.hasRemaining() ? view.get() & 0xFF : -1;
+			}
+
+			@Override
+			public boolean readFullyOrTrue(byte @NotNull [] buf, int length) {
+				assert length >= 0 && length <= buf.length;
+				if (view.remaining() < length) {
+					view.position(view.limit());
+					return true;
+				}
+				view.get(buf, 0, length);
+				return false;
+			}
+
+			@Override
+			public boolean skipFullyOrTrue(long bytes) {
+				assert bytes >= 0;
+				if (view.remaining() < bytes) {
+					view.position(view.limit());
+					return true;
+				}
+				view.position(view.position() + (int) bytes);
+				return false;
+			}
+
+			@Override
+			@NotNull
+			public ByteBuffer buffer(int minRemaining) {
+				return view;
+			}
+
+			@Override
+			public boolean hasStableBuffers() {
+				return true;
+			}
+
+			@Override
+			public void closeCurrent() {
+				closed = true;
+			}
+
+			@Override
+			public boolean isCompletelyClosed() {
+				return closed;
+			}
+		};
+	}
+
+	/**
+	 * Creates a reader of the contents of the given file that maps them into memory instead of copying them onto the
+	 * heap.
+	 *
+	 * @see #fromMappedFile(FileChannel)
+	 */
+	@NotNull
+	static BufferedCheckedReader<IOException> fromMappedFile(@NotNull Path file) throws IOException {
+		return fromMappedFile(FileChannel.open(file, StandardOpenOption.READ));
+	}
+
+	/**
+	 * Creates a reader of the contents of the given channel, from its current position until its current size, that
+	 * maps them into memory instead of copying them onto the heap.
+	 *
+	 * <p>Closing the reader closes the channel. The buffers returned by the reader remain valid after it has been
+	 * closed, since the memory is not unmapped until they are garbage-collected.
+	 */
+	@NotNull
+	static BufferedCheckedReader<IOException> fromMappedFile(@NotNull FileChannel channel) throws IOException {
+		return new MappedFileReader(channel);
+	}
+
+	/**
+	 * Creates a reader of the decompressed contents of a gzip stream (possibly made of multiple members), that
+	 * inflates them with larger buffers than {@link java.util.zip.GZIPInputStream}.
+	 *
+	 * <p>Just like {@link java.util.zip.GZIPInputStream}, any data that follows the last member is ignored.
+	 *
+	 * @see <a href="https://www.rfc-editor.org/rfc/rfc1952">RFC 1952</a>
+	 */
+	@NotNull
+	static BufferedCheckedReader<IOException> fromGzip(@NotNull InputStream is) throws IOException {
+		return new InflaterReader(is, true);
+	}
+
+	/**
+	 * Creates a reader of the decompressed contents of a zlib stream, that inflates them with larger buffers than
+	 * {@link java.util.zip.InflaterInputStream}.
+	 *
+	 * @see <a href="https://www.rfc-editor.org/rfc/rfc1950">RFC 1950</a>
+	 */
+	@NotNull
+	static BufferedCheckedReader<IOException> fromZlib(@NotNull InputStream is) throws IOException {
+		return new InflaterReader(is, false);
+	}
+
+	/**
+	 * @see #readAhead(BufferedCheckedReader, int, int)
+	 */
+	@NotNull
+	static <E extends Throwable> BufferedCheckedReader<E> readAhead(@NotNull BufferedCheckedReader<E> source) {
+		return readAhead(source, 4, 64 * 1024);
+	}
+
+	/**
+	 * Creates a reader that reads (e.g. decompresses) the source on a separate daemon thread, into a bounded ring of
+	 * {@code buffers} buffers of {@code bufferSize} bytes, while the previous ones are being consumed.
+	 *
+	 * <p>Once every buffer is filled, the separate thread waits for the consumer. Any exception thrown by the source
+	 * is rethrown by the reader once the bytes that precede it have been consumed.
+	 *
+	 * <p>The source is read and closed only by the separate thread, so it must not be used by any other means. The
+	 * reader must be closed, or else the separate thread and every buffer are kept alive forever. Closing it interrupts
+	 * the separate thread and waits until it has closed the source, rethrowing any exception thrown while closing it.
+	 * A read of the source that does not respond to interrupts delays the close until it completes.
+	 */
+	@NotNull
+	static <E extends Throwable> BufferedCheckedReader<E> readAhead(@NotNull BufferedCheckedReader<E> source,
+																	int buffers, int bufferSize) {
+		return new ReadAheadReader<>(source, buffers, bufferSize);
+	}
 }
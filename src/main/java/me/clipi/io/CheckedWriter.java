@@ -0,0 +1,86 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Represents a writer, similar to a {@link OutputStream}, but with a set WriteException so that it does not
+ * necessarily throw an {@link IOException} on method calls.
+ *
+ * <p>Once {@link #close()} is called, subsequent writes will be undefined behaviour.
+ *
+ * @apiNote This interface is <strong>not</strong> thread safe.
+ * @see CheckedReader
+ */
+public interface CheckedWriter<WriteException extends Throwable> {
+	/**
+	 * Writes {@code length} bytes of the buffer, starting at {@code offset}.
+	 * <p>The buffer may be modified once this method returns, so it must not be retained.
+	 */
+	void write(byte @NotNull [] buf, int offset, int length) throws WriteException;
+
+	/**
+	 * Forces any buffered bytes to be written to the underlying output.
+	 *
+	 * @implSpec The default implementation does nothing.
+	 */
+	default void flush() throws WriteException {
+	}
+
+	/**
+	 * Flushes and closes the underlying output.
+	 */
+	void close() throws WriteException;
+
+
+	@NotNull
+	static CheckedWriter<IOException> fromOs(@NotNull OutputStream os) {
+		return new CheckedWriter<IOException>() {
+			@Override
+			public void write(byte @NotNull [] buf, int offset, int length) throws IOException {
+				os.write(buf, offset, length);
+			}
+
+			@Override
+			public void flush() throws IOException {
+				os.flush();
+			}
+
+			@Override
+			public void close() throws IOException {
+				os.close();
+			}
+		};
+	}
+
+	/**
+	 * Creates a writer that gzips everything written to it, and writes the result to {@code os}
+	 */
+	@NotNull
+	static CheckedWriter<IOException> toGzip(@NotNull OutputStream os) throws IOException {
+		return fromOs(new GZIPOutputStream(os, 64 * 1024));
+	}
+}
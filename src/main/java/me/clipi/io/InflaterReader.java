@@ -0,0 +1,276 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * package-private
+ *
+ * <p>Drives an {@link Inflater} directly with large buffers, instead of going through the small buffers of
+ * {@link java.util.zip.InflaterInputStream} and its per-byte overhead.
+ *
+ * @see CheckedReader#fromGzip(InputStream)
+ * @see CheckedReader#fromZlib(InputStream)
+ */
+final class InflaterReader implements BufferedCheckedReader<IOException> {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int GZIP_MAGIC = 0x8B1F, FHCRC = 2, FEXTRA = 4, FNAME = 8, FCOMMENT = 16, FRESERVED = 0xE0;
+
+	private final @NotNull InputStream source;
+	private final @NotNull Inflater inflater;
+	private final boolean gzip;
+	/**
+	 * The checksum of the current gzip member, or of its header while it is being parsed
+	 */
+	private final @NotNull CRC32 crc = new CRC32();
+
+	private final byte @NotNull [] input = new byte[BUFFER_SIZE];
+	/**
+	 * The bytes of {@link #input} in {@code [inPos, inLimit)} have not been consumed yet. While inflating, they are
+	 * owned by the inflater and {@link #inPos} is outdated.
+	 */
+	private int inPos, inLimit;
+
+	private final byte @NotNull [] outArray = new byte[BUFFER_SIZE];
+	private final @NotNull ByteBuffer out = ByteBuffer.wrap(outArray).order(ByteOrder.BIG_ENDIAN);
+
+	private boolean finished, closed;
+
+	InflaterReader(@NotNull InputStream source, boolean gzip) throws IOException {
+		this.source = source;
+		this.gzip = gzip;
+		this.inflater = new Inflater(gzip);
+		out.limit(0);
+		if (gzip) {
+			try {
+				readGzipHeader(true);
+			} catch (Throwable ex) {
+				try {
+					closeCurrent();
+				} catch (Throwable suppressed) {
+					ex.addSuppressed(suppressed);
+				}
+				throw ex;
+			}
+		}
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="raw input">
+	private boolean fillInput() throws IOException {
+		int n;
+		do {
+			n = source.read(input, 0, input.length);
+		} while (n == 0);
+		if (n < 0) return false;
+		inPos = 0;
+		inLimit = n;
+		return true;
+	}
+
+	private int rawByteOrNeg() throws IOException {
+		if (inPos >= inLimit && !fillInput()) return -1;
+		int b = input[inPos++] & 0xFF;
+		crc.update(b);
+		return b;
+	}
+
+	private int expectRawByte() throws IOException {
+		int b = rawByteOrNeg();
+		if (b < 0) throw new EOFException("Unexpected end of gzip stream");
+		return b;
+	}
+
+	private int expectRawLittleEndianShort() throws IOException {
+		return expectRawByte() | (expectRawByte() << 8);
+	}
+
+	private long expectRawLittleEndianInt() throws IOException {
+		return expectRawLittleEndianShort() | ((long) expectRawLittleEndianShort() << 16);
+	}
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="gzip members">
+
+	/**
+	 * @return {@code false} if the data that follows the previous member is not another member
+	 * @see <a href="https://www.rfc-editor.org/rfc/rfc1952#page-5">RFC 1952</a>
+	 */
+	private boolean readGzipHeader(boolean isFirstMember) throws IOException {
+		crc.reset();
+		int id1 = rawByteOrNeg(), id2 = id1 < 0 ? -1 : rawByteOrNeg();
+		if ((id1 | (id2 << 8)) != GZIP_MAGIC) {
+			// Just like GZIPInputStream, anything after the last member other than another member is ignored
+			if (!isFirstMember) return false;
+			if (id2 < 0) throw new EOFException("Missing gzip header");
+			throw new ZipException("Not in gzip format");
+		}
+		if (expectRawByte() != Deflater.DEFLATED) throw new ZipException("Unsupported compression method");
+		int flags = expectRawByte();
+		if ((flags & FRESERVED) != 0) throw new ZipException("Reserved gzip flags are set");
+		for (int i = 0; i < 6; ++i) expectRawByte(); // MTIME, XFL, OS
+		if ((flags & FEXTRA) != 0) {
+			for (int i = expectRawLittleEndianShort(); i > 0; --i) expectRawByte();
+		}
+		if ((flags & FNAME) != 0) {
+			while (expectRawByte() != 0) ;
+		}
+		if ((flags & FCOMMENT) != 0) {
+			while (expectRawByte() != 0) ;
+		}
+		if ((flags & FHCRC) != 0) {
+			int expected = (int) crc.getValue() & 0xFF_FF;
+			if (expectRawLittleEndianShort() != expected) throw new ZipException("Corrupt gzip header");
+		}
+
+		crc.reset();
+		inflater.reset();
+		inflater.setInput(input, inPos, inLimit - inPos);
+		return true;
+	}
+
+	/**
+	 * Checks the trailer of the gzip member that has just been inflated, and starts inflating the next one if there is
+	 * any
+	 *
+	 * @return whether there is another member
+	 */
+	private boolean nextGzipMember() throws IOException {
+		inPos = inLimit - inflater.getRemaining();
+		long expectedCrc = crc.getValue(), expectedSize = inflater.getBytesWritten() & 0xFF_FF_FF_FFL;
+		if (expectRawLittleEndianInt() != expectedCrc) throw new ZipException("Corrupt gzip trailer (CRC)");
+		if (expectRawLittleEndianInt() != expectedSize) throw new ZipException("Corrupt gzip trailer (ISIZE)");
+		return readGzipHeader(false);
+	}
+	// </editor-fold>
+
+	/**
+	 * Inflates at most {@code length} bytes into {@code buf}, blocking until at least one byte is available
+	 *
+	 * @return The amount of inflated bytes, or {@code -1} once the compressed stream has ended
+	 */
+	private int inflate(byte @NotNull [] buf, int offset, int length) throws IOException {
+		if (length == 0) return 0;
+		Inflater inflater = this.inflater;
+		while (!finished) {
+			int n;
+			try {
+				n = inflater.inflate(buf, offset, length);
+			} catch (DataFormatException ex) {
+				String msg = ex.getMessage();
+				throw new ZipException(msg == null ? "Invalid compressed data" : msg);
+			}
+			if (n > 0) {
+				if (gzip) crc.update(buf, offset, n);
+				return n;
+			}
+			if (inflater.finished()) {
+				finished = !gzip || !nextGzipMember();
+			} else if (inflater.needsDictionary()) {
+				throw new ZipException("Preset dictionaries are not supported");
+			} else if (inflater.needsInput()) {
+				if (!fillInput()) throw new EOFException("Unexpected end of compressed stream");
+				inflater.setInput(input, 0, inLimit);
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int nextByteOrNeg() throws IOException {
+		ByteBuffer out = this.out;
+		if (!out.hasRemaining() && fillOut(1) <= 0) return -1;
+		return out.get() & 0xFF;
+	}
+
+	@Override
+	public boolean readFullyOrTrue(byte @NotNull [] buf, int length) throws IOException {
+		assert length >= 0 && length <= buf.length;
+		ByteBuffer out = this.out;
+		int n = Math.min(out.remaining(), length);
+		out.get(buf, 0, n);
+		// Inflate the rest straight into the destination
+		while (n < length) {
+			int inflated = inflate(buf, n, length - n);
+			if (inflated < 0) return true;
+			n += inflated;
+		}
+		return false;
+	}
+
+	/**
+	 * Inflates into {@link #out} until it has at least {@code minRemaining} bytes, or until it is full
+	 *
+	 * @return The bytes remaining in {@link #out}
+	 */
+	private int fillOut(int minRemaining) throws IOException {
+		ByteBuffer out = this.out;
+		byte[] outArray = this.outArray;
+		int remaining = out.remaining();
+		if (out.limit() + (minRemaining - remaining) > outArray.length) {
+			System.arraycopy(outArray, out.position(), outArray, 0, remaining);
+			out.position(0);
+			out.limit(remaining);
+		}
+		while (remaining < minRemaining) {
+			int limit = out.limit();
+			if (limit == outArray.length) break;
+			int inflated = inflate(outArray, limit, outArray.length - limit);
+			if (inflated < 0) break;
+			out.limit(limit + inflated);
+			remaining += inflated;
+		}
+		return remaining;
+	}
+
+	@Override
+	@NotNull
+	public ByteBuffer buffer(int minRemaining) throws IOException {
+		if (out.remaining() < minRemaining) fillOut(minRemaining);
+		return out;
+	}
+
+	@Override
+	public void closeCurrent() throws IOException {
+		closed = true;
+		try {
+			inflater.end();
+		} finally {
+			source.close();
+		}
+	}
+
+	@Override
+	public boolean isCompletelyClosed() {
+		return closed;
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * package-private
+ *
+ * @see CheckedReader#fromMappedFile(FileChannel)
+ */
+final class MappedFileReader implements BufferedCheckedReader<IOException> {
+	/**
+	 * Files bigger than this are mapped by windows of this size, since a {@link ByteBuffer} cannot hold more than
+	 * {@link Integer#MAX_VALUE} bytes
+	 */
+	private static final int MAX_WINDOW_SIZE = 1 << 30;
+
+	private final @NotNull FileChannel channel;
+	private final long size;
+	private long windowStart;
+	private @NotNull ByteBuffer window;
+	private boolean closed;
+
+	MappedFileReader(@NotNull FileChannel channel) throws IOException {
+		this.channel = channel;
+		this.size = channel.size();
+		this.window = map(Math.min(channel.position(), size));
+	}
+
+	@NotNull
+	private ByteBuffer map(long start) throws IOException {
+		windowStart = start;
+		MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start,
+											  Math.min(size - start, MAX_WINDOW_SIZE));
+		mapped.order(ByteOrder.BIG_ENDIAN);
+		return mapped;
+	}
+
+	/**
+	 * Maps a new window that starts at the next unread byte, if the current one does not reach the end of the file
+	 */
+	private boolean tryRemap() throws IOException {
+		ByteBuffer window = this.window;
+		if (windowStart + window.limit() >= size) return false;
+		this.window = map(windowStart + window.position());
+		return true;
+	}
+
+	@Override
+	public int nextByteOrNeg() throws IOException {
+		ByteBuffer window = this.window;
+		if (window.hasRemaining()) return window.get() & 0xFF;
+		return tryRemap() ? this.window.get() & 0xFF : -1;
+	}
+
+	@Override
+	public boolean readFullyOrTrue(byte @NotNull [] buf, int length) throws IOException {
+		assert length >= 0 && length <= buf.length;
+		int n = 0;
+		for (; ; ) {
+			ByteBuffer window = this.window;
+			int count = Math.min(window.remaining(), length);
+			window.get(buf, n, count);
+			n += count;
+			length -= count;
+			if (length == 0) return false;
+			if (!tryRemap()) return true;
+		}
+	}
+
+	@Override
+	public boolean skipFullyOrTrue(long bytes) throws IOException {
+		assert bytes >= 0;
+		ByteBuffer window = this.window;
+		int position = window.position();
+		if (bytes <= window.limit() - position) {
+			window.position(position + (int) bytes);
+			return false;
+		}
+		// Seek by mapping a new window
+		long target = windowStart + position + bytes;
+		if (target > size) {
+			this.window = map(size);
+			return true;
+		}
+		this.window = map(target);
+		return false;
+	}
+
+	@Override
+	@NotNull
+	public ByteBuffer buffer(int minRemaining) throws IOException {
+		ByteBuffer window = this.window;
+		if (window.remaining() < minRemaining && tryRemap()) return this.window;
+		return window;
+	}
+
+	@Override
+	public boolean hasStableBuffers() {
+		return true;
+	}
+
+	@Override
+	public void closeCurrent() throws IOException {
+		closed = true;
+		channel.close();
+	}
+
+	@Override
+	public boolean isCompletelyClosed() {
+		return closed;
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A cache of short strings keyed on their
+ * <a href="https://docs.oracle.com/javase/8/docs/api/java/io/DataInput.html#modified-utf-8">modified UTF-8</a>
+ * encoding, so that repeated strings (e.g. the keys of NBT compounds) are neither decoded nor allocated again.
+ *
+ * <p>The returned strings are {@link String#intern() interned}, so they may be compared by identity with string
+ * literals.
+ *
+ * <p>The cache has a fixed size and older entries are evicted on collisions. It is lock-free and may be shared
+ * between threads.
+ *
+ * @see CheckedBigEndianDataInput#expectModifiedUtf8(ModifiedUtf8Interner)
+ */
+public final class ModifiedUtf8Interner {
+	/**
+	 * Longer strings are decoded as usual, so that the memory retained by the cache stays bounded
+	 */
+	public static final int MAX_INTERNED_BYTES = 64;
+	private static final int DEFAULT_CAPACITY = 1024, MAX_PROBES = 4;
+
+	private static final class Entry {
+		final byte @NotNull [] encoded;
+		final int hash;
+		final @NotNull String value;
+
+		Entry(byte @NotNull [] encoded, int hash, @NotNull String value) {
+			this.encoded = encoded;
+			this.hash = hash;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * The entries are immutable, so racy writes of this array can only cause cache misses
+	 */
+	private final @Nullable Entry @NotNull [] table;
+	private final int mask;
+
+	public ModifiedUtf8Interner() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity The maximum amount of cached strings, which will be rounded up to a power of two
+	 */
+	public ModifiedUtf8Interner(int capacity) {
+		if (capacity <= 0 | capacity > 1 << 30) throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) size <<= 1;
+		table = new Entry[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * package-private
+	 */
+	static int hash(byte @NotNull [] encoded, int offset, int bytes) {
+		int hash = 1;
+		for (int i = offset, end = offset + bytes; i < end; ++i)
+			hash = 31 * hash + encoded[i];
+		return hash ^ (hash >>> 16);
+	}
+
+	private static boolean matches(@NotNull Entry entry, byte @NotNull [] encoded, int offset, int bytes, int hash) {
+		byte[] cached = entry.encoded;
+		if (entry.hash != hash | cached.length != bytes) return false;
+		for (int i = 0; i < bytes; ++i)
+			if (cached[i] != encoded[offset + i]) return false;
+		return true;
+	}
+
+	/**
+	 * package-private
+	 */
+	@Nullable
+	String get(byte @NotNull [] encoded, int offset, int bytes, int hash) {
+		Entry[] table = this.table;
+		for (int i = 0; i < MAX_PROBES; ++i) {
+			Entry entry = table[(hash + i) & mask];
+			if (entry == null) return null;
+			if (matches(entry, encoded, offset, bytes, hash)) return entry.value;
+		}
+		return null;
+	}
+
+	/**
+	 * package-private
+	 *
+	 * @return The canonical instance of {@code decoded}
+	 */
+	@NotNull
+	String add(byte @NotNull [] encoded, int offset, int bytes, int hash, @NotNull String decoded) {
+		Entry[] table = this.table;
+		String value = decoded.intern();
+		Entry entry = new Entry(Arrays.copyOfRange(encoded, offset, offset + bytes), hash, value);
+		for (int i = 0; i < MAX_PROBES; ++i) {
+			int idx = (hash + i) & mask;
+			if (table[idx] == null) {
+				table[idx] = entry;
+				return value;
+			}
+		}
+		table[hash & mask] = entry;
+		return value;
+	}
+}
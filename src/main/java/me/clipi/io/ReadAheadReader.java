@@ -0,0 +1,277 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * package-private
+ *
+ * <p>Reads the source on a separate thread into a bounded ring of buffers, while the previous ones are consumed.
+ *
+ * <p>The source is owned by the separate thread, which is the only one that reads and closes it, since most sources
+ * (e.g. {@link InflaterReader}) are not thread safe. The reader must be closed: until then, the separate thread stays
+ * parked waiting for a free buffer (unless it has reached the end of the source), and keeps every buffer reachable.
+ *
+ * @see CheckedReader#readAhead(BufferedCheckedReader, int, int)
+ */
+final class ReadAheadReader<ReadException extends Throwable> implements BufferedCheckedReader<ReadException> {
+	/**
+	 * Every buffer has this many bytes of headroom before its data, so that the few bytes left of the previous buffer
+	 * can be prepended when {@link #buffer(int)} has to return a contiguous run of bytes across both buffers
+	 */
+	static final int CARRY = 128;
+
+	private static final class Chunk {
+		private static final Chunk END = new Chunk(null, null);
+
+		final @Nullable ByteBuffer buf;
+		final @Nullable Throwable failure;
+
+		Chunk(@Nullable ByteBuffer buf, @Nullable Throwable failure) {
+			this.buf = buf;
+			this.failure = failure;
+		}
+	}
+
+	private final @NotNull BufferedCheckedReader<ReadException> source;
+	private final @NotNull ArrayBlockingQueue<Chunk> free, filled;
+	private final @NotNull Thread producer;
+
+	private @NotNull ByteBuffer current = ByteBuffer.allocate(0);
+	private @Nullable Chunk currentChunk;
+	private @Nullable Throwable failure;
+	private boolean ended;
+	private volatile boolean closed;
+	/**
+	 * The exception thrown by the source when the separate thread closed it, which is rethrown by
+	 * {@link #closeCurrent()} once that thread has stopped
+	 */
+	private @Nullable Throwable closeFailure;
+
+	ReadAheadReader(@NotNull BufferedCheckedReader<ReadException> source, int buffers, int bufferSize) {
+		if (buffers < 2) throw new IllegalArgumentException("At least 2 buffers are required");
+		if (bufferSize < CARRY) throw new IllegalArgumentException("The buffers must be of at least " + CARRY + " bytes");
+		this.source = source;
+		this.free = new ArrayBlockingQueue<>(buffers);
+		// Room for every buffer plus the end marker, so that the producer never blocks on it
+		this.filled = new ArrayBlockingQueue<>(buffers + 1);
+		for (int i = 0; i < buffers; ++i)
+			free.add(new Chunk(ByteBuffer.allocate(CARRY + bufferSize).order(ByteOrder.BIG_ENDIAN), null));
+
+		producer = new Thread(this::produce, "MinecraftIO read-ahead");
+		producer.setDaemon(true);
+		producer.start();
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="producer thread">
+	private void produce() {
+		try {
+			fill();
+		} finally {
+			// Cleared so that closing an interruptible source does not fail because of the interrupt of closeCurrent
+			Thread.interrupted();
+			try {
+				source.closeCurrent();
+			} catch (Throwable ex) {
+				closeFailure = ex;
+			}
+		}
+	}
+
+	private void fill() {
+		BufferedCheckedReader<ReadException> source = this.source;
+		try {
+			while (!closed) {
+				Chunk chunk = free.take();
+				ByteBuffer buf = chunk.buf;
+				assert buf != null;
+				buf.clear();
+				buf.position(CARRY);
+				boolean eof = false;
+				while (buf.hasRemaining()) {
+					ByteBuffer src = source.buffer(1);
+					int n = Math.min(src.remaining(), buf.remaining());
+					if (n == 0) {
+						eof = true;
+						break;
+					}
+					ByteBuffer run = src.duplicate();
+					run.limit(run.position() + n);
+					buf.put(run);
+					src.position(src.position() + n);
+				}
+				buf.limit(buf.position());
+				buf.position(CARRY);
+				(buf.hasRemaining() ? filled : free).add(chunk);
+				if (eof) {
+					filled.add(Chunk.END);
+					return;
+				}
+			}
+		} catch (InterruptedException ex) {
+			// The reader has been closed
+		} catch (Throwable ex) {
+			// Once the reader has been closed nobody is going to consume the failure, which is most likely caused by
+			// the interrupt of closeCurrent anyway (e.g. a ClosedByInterruptException)
+			if (!closed) filled.add(new Chunk(null, ex));
+		}
+	}
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="consumer thread">
+	@NotNull
+	private Chunk takeFilled() {
+		boolean interrupted = false;
+		try {
+			for (; ; ) {
+				try {
+					return filled.take();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void rethrow(@NotNull Throwable failure) throws ReadException {
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else {
+			throw (ReadException) failure;
+		}
+	}
+
+	/**
+	 * Moves on to the next buffer, prepending to it the bytes left of the current one (which must be at most
+	 * {@link #CARRY} bytes)
+	 *
+	 * @return {@code false} if EOF has been reached
+	 */
+	private boolean advance() throws ReadException {
+		Throwable failure = this.failure;
+		if (failure != null) rethrow(failure);
+		if (ended) return false;
+
+		Chunk next = takeFilled();
+		failure = next.failure;
+		if (failure != null) {
+			this.failure = failure;
+			rethrow(failure);
+		}
+		ByteBuffer buf = next.buf;
+		if (buf == null) {
+			ended = true;
+			return false;
+		}
+
+		ByteBuffer current = this.current;
+		int leftover = current.remaining();
+		assert leftover <= CARRY;
+		if (leftover > 0) {
+			int position = buf.position() - leftover;
+			buf.position(position);
+			buf.put(current);
+			buf.position(position);
+		}
+		Chunk previous = currentChunk;
+		if (previous != null) free.add(previous);
+		currentChunk = next;
+		this.current = buf;
+		return true;
+	}
+
+	@Override
+	public int nextByteOrNeg() throws ReadException {
+		ByteBuffer current = this.current;
+		if (current.hasRemaining()) return current.get() & 0xFF;
+		return advance() ? this.current.get() & 0xFF : -1;
+	}
+
+	@Override
+	public boolean readFullyOrTrue(byte @NotNull [] buf, int length) throws ReadException {
+		assert length >= 0 && length <= buf.length;
+		int n = 0;
+		for (; ; ) {
+			ByteBuffer current = this.current;
+			int count = Math.min(current.remaining(), length - n);
+			current.get(buf, n, count);
+			n += count;
+			if (n == length) return false;
+			if (!advance()) return true;
+		}
+	}
+
+	@Override
+	@NotNull
+	public ByteBuffer buffer(int minRemaining) throws ReadException {
+		int remaining = current.remaining();
+		// Runs longer than the headroom cannot be stitched together, but callers are expected to fall back
+		if (remaining < minRemaining && (minRemaining <= CARRY || remaining == 0)) advance();
+		return current;
+	}
+	// </editor-fold>
+
+	/**
+	 * Interrupts the separate thread, and waits until it has closed the source and stopped. A read of the source that
+	 * does not respond to interrupts delays the return of this method until it completes.
+	 */
+	@Override
+	public void closeCurrent() throws ReadException {
+		if (closed) return;
+		closed = true;
+		producer.interrupt();
+		joinProducer();
+		Throwable closeFailure = this.closeFailure;
+		if (closeFailure != null) rethrow(closeFailure);
+	}
+
+	private void joinProducer() {
+		boolean interrupted = false;
+		try {
+			for (; ; ) {
+				try {
+					producer.join();
+					return;
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public boolean isCompletelyClosed() {
+		return closed;
+	}
+}
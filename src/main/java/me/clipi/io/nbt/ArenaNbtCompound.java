@@ -0,0 +1,298 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package me.clipi.io.nbt;
+
+import me.clipi.io.OomException;
+import me.clipi.io.OomException.OomAware;
+import me.clipi.io.nbt.exceptions.NbtKeyNotFoundException;
+import me.clipi.io.nbt.exceptions.NbtParseException;
+import me.clipi.io.util.NestedToString;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only view of a compound stored in a {@link NbtArena}. Views only hold the offset of their compound, so they are
+ * cheap to create and may be discarded right away.
+ *
+ * <p>Primitive values are read from the arena on every access, while any other value is decoded into a new heap
+ * object (except for nested compounds, which are returned as views too). Just like the arena, views are
+ * thread-safe.
+ */
+public final class ArenaNbtCompound implements NestedToString {
+	public final @NotNull NbtArena arena;
+	/**
+	 * The offset of the record of this compound in {@link NbtArena#data}
+	 */
+	private final int record;
+
+	/**
+	 * package-private
+	 */
+	ArenaNbtCompound(@NotNull NbtArena arena, int record) {
+		this.arena = arena;
+		this.record = record;
+	}
+
+	public int entries() {
+		return arena.data.getInt(record);
+	}
+
+	/**
+	 * @return A mutable copy of this compound, stored in the heap
+	 */
+	@NotNull
+	public NbtCompound toNbtCompound() throws OomException {
+		return OomAware.tryRun(null, () -> arena.decodeCompound(record));
+	}
+
+	/**
+	 * @return The offset of the entry with the given key, or {@code -1} if it is not present
+	 */
+	private int entryOrNeg(@NotNull String key) {
+		int keyId = arena.keyIdOf(key);
+		return keyId < 0 ? -1 : arena.entryOrNeg(record, keyId);
+	}
+
+	public boolean containsKey(@NotNull String key) {
+		return entryOrNeg(key) >= 0;
+	}
+
+	@Nullable
+	public NbtType typeForKey(@NotNull String key) {
+		int entry = entryOrNeg(key);
+		return entry < 0 ? null : NbtType.values()[(byte) arena.data.getInt(entry)];
+	}
+
+	/**
+	 * @return The offset of the value of the entry with the given key, or {@code -1} if it is not present
+	 */
+	private int valueForKeyWithTypeOrNeg(@NotNull String key, byte nbtType) throws NbtParseException.UnexpectedTagType {
+		assert nbtType > 0 & nbtType < 13;
+
+		int entry = entryOrNeg(key);
+		if (entry < 0) return -1;
+		byte actualType = (byte) arena.data.getInt(entry);
+		if (actualType != nbtType) throw new NbtParseException.UnexpectedTagType(NbtType.values()[nbtType], actualType);
+		return entry + 4;
+	}
+
+	/**
+	 * @return The primitive value of the entry with the given key
+	 */
+	private long primitiveForKeyOrThrow(@NotNull String key, byte nbtType)
+		throws NbtParseException.UnexpectedTagType, NbtKeyNotFoundException {
+		int value = valueForKeyWithTypeOrNeg(key, nbtType);
+		if (value < 0) throw new NbtKeyNotFoundException(arena, key, this);
+		return arena.data.getLong(value);
+	}
+
+	/**
+	 * @return The offset of the record of the value of the entry with the given key, or {@code -1} if it is not
+	 * present
+	 */
+	private int recordForKeyOrNeg(@NotNull String key, byte nbtType) throws NbtParseException.UnexpectedTagType {
+		int value = valueForKeyWithTypeOrNeg(key, nbtType);
+		return value < 0 ? -1 : (int) arena.data.getLong(value);
+	}
+
+	private int recordForKeyOrThrow(@NotNull String key, byte nbtType) throws NbtParseException.UnexpectedTagType,
+																			  NbtKeyNotFoundException {
+		int record = recordForKeyOrNeg(key, nbtType);
+		if (record < 0) throw new NbtKeyNotFoundException(arena, key, this);
+		return record;
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="get methods">
+	public byte getByteOrThrow(@NotNull String key) throws NbtParseException.UnexpectedTagType,
+														   NbtKeyNotFoundException {
+		return (byte) primitiveForKeyOrThrow(key, NbtType.tagByte);
+	}
+
+	public short getShortOrThrow(@NotNull String key) throws NbtParseException.UnexpectedTagType,
+															 NbtKeyNotFoundException {
+		return (short) primitiveForKeyOrThrow(key, NbtType.tagShort);
+	}
+
+	public int getIntOrThrow(@NotNull String key) throws NbtParseException.UnexpectedTagType,
+														 NbtKeyNotFoundException {
+		return (int) primitiveForKeyOrThrow(key, NbtType.tagInt);
+	}
+
+	public long getLongOrThrow(@NotNull String key) throws NbtParseException.UnexpectedTagType,
+														   NbtKeyNotFoundException {
+		return primitiveForKeyOrThrow(key, NbtType.tagLong);
+	}
+
+	public float getFloatOrThrow(@NotNull String key) throws NbtParseException.UnexpectedTagType,
+															 NbtKeyNotFoundException {
+		return Float.intBitsToFloat((int) primitiveForKeyOrThrow(key, NbtType.tagFloat));
+	}
+
+	public double getDoubleOrThrow(@NotNull String key) throws NbtParseException.UnexpectedTagType,
+															   NbtKeyNotFoundException {
+		return Double.longBitsToDouble(primitiveForKeyOrThrow(key, NbtType.tagDouble));
+	}
+
+	public byte @Nullable [] getByteArrayOrNull(@NotNull String key) throws OomException,
+																			NbtParseException.UnexpectedTagType {
+		int record = recordForKeyOrNeg(key, NbtType.tagByteArray);
+		return record < 0 ? null : OomAware.tryRun(null, () -> arena.decodeByteArray(record));
+	}
+
+	public int @Nullable [] getIntArrayOrNull(@NotNull String key) throws OomException,
+																		  NbtParseException.UnexpectedTagType {
+		int record = recordForKeyOrNeg(key, NbtType.tagIntArray);
+		return record < 0 ? null : OomAware.tryRun(null, () -> arena.decodeIntArray(record));
+	}
+
+	public long @Nullable [] getLongArrayOrNull(@NotNull String key) throws OomException,
+																			NbtParseException.UnexpectedTagType {
+		int record = recordForKeyOrNeg(key, NbtType.tagLongArray);
+		return record < 0 ? null : OomAware.tryRun(null, () -> arena.decodeLongArray(record));
+	}
+
+	public @Nullable String getStringOrNull(@NotNull String key) throws OomException,
+																		NbtParseException.UnexpectedTagType {
+		int record = recordForKeyOrNeg(key, NbtType.tagString);
+		return record < 0 ? null : OomAware.tryRun(null, () -> arena.decodeString(record));
+	}
+
+	public @Nullable NbtList getListOrNull(@NotNull String key) throws OomException,
+																	   NbtParseException.UnexpectedTagType {
+		int record = recordForKeyOrNeg(key, NbtType.tagList);
+		return record < 0 ? null : OomAware.tryRun(null, () -> arena.decodeList(record));
+	}
+
+	/**
+	 * @return Views of the compounds of the list with the given key, which are cheaper to get than
+	 * {@link #getListOrNull decoding the list}
+	 */
+	public @NotNull ArenaNbtCompound @Nullable [] getMapListOrNull(@NotNull String key)
+		throws OomException, NbtParseException.UnexpectedTagType {
+		int record = recordForKeyOrNeg(key, NbtType.tagList);
+		if (record < 0) return null;
+		byte componentType = arena.data.get(record);
+		if (componentType != NbtType.tagCompound & componentType != NbtType.tagEnd)
+			throw new NbtParseException.UnexpectedTagType(NbtType.Compound, componentType);
+		return OomAware.tryRun(null, () -> arena.compoundViewsOfList(record));
+	}
+
+	public @Nullable ArenaNbtCompound getMapOrNull(@NotNull String key) throws NbtParseException.UnexpectedTagType {
+		int record = recordForKeyOrNeg(key, NbtType.tagCompound);
+		return record < 0 ? null : new ArenaNbtCompound(arena, record);
+	}
+
+	public byte @NotNull [] getByteArrayOrThrow(@NotNull String key) throws OomException,
+																			NbtParseException.UnexpectedTagType,
+																			NbtKeyNotFoundException {
+		int record = recordForKeyOrThrow(key, NbtType.tagByteArray);
+		return OomAware.tryRun(null, () -> arena.decodeByteArray(record));
+	}
+
+	public int @NotNull [] getIntArrayOrThrow(@NotNull String key) throws OomException,
+																		  NbtParseException.UnexpectedTagType,
+																		  NbtKeyNotFoundException {
+		int record = recordForKeyOrThrow(key, NbtType.tagIntArray);
+		return OomAware.tryRun(null, () -> arena.decodeIntArray(record));
+	}
+
+	public long @NotNull [] getLongArrayOrThrow(@NotNull String key) throws OomException,
+																			NbtParseException.UnexpectedTagType,
+																			NbtKeyNotFoundException {
+		int record = recordForKeyOrThrow(key, NbtType.tagLongArray);
+		return OomAware.tryRun(null, () -> arena.decodeLongArray(record));
+	}
+
+	public @NotNull String getStringOrThrow(@NotNull String key) throws OomException,
+																		NbtParseException.UnexpectedTagType,
+																		NbtKeyNotFoundException {
+		int record = recordForKeyOrThrow(key, NbtType.tagString);
+		return OomAware.tryRun(null, () -> arena.decodeString(record));
+	}
+
+	public @NotNull NbtList getListOrThrow(@NotNull String key) throws OomException,
+																	   NbtParseException.UnexpectedTagType,
+																	   NbtKeyNotFoundException {
+		int record = recordForKeyOrThrow(key, NbtType.tagList);
+		return OomAware.tryRun(null, () -> arena.decodeList(record));
+	}
+
+	public @NotNull ArenaNbtCompound @NotNull [] getMapListOrThrow(@NotNull String key)
+		throws OomException, NbtParseException.UnexpectedTagType, NbtKeyNotFoundException {
+		ArenaNbtCompound[] res = getMapListOrNull(key);
+		if (res == null) throw new NbtKeyNotFoundException(arena, key, this);
+		return res;
+	}
+
+	public @NotNull ArenaNbtCompound getMapOrThrow(@NotNull String key) throws NbtParseException.UnexpectedTagType,
+																			   NbtKeyNotFoundException {
+		return new ArenaNbtCompound(arena, recordForKeyOrThrow(key, NbtType.tagCompound));
+	}
+	// </editor-fold>
+
+	@Override
+	@NotNull
+	public String toString() {
+		return nestedToString();
+	}
+
+	@Override
+	public void toString(@NotNull Nester nester) {
+		NbtArena arena = this.arena;
+		ByteBuffer data = arena.data;
+		String[] keys = arena.keys;
+		for (int entry = record + 4, end = entry + data.getInt(record) * NbtArena.ENTRY_SIZE;
+			 entry < end; entry += NbtArena.ENTRY_SIZE) {
+			int head = data.getInt(entry);
+			byte type = (byte) head;
+			long value = data.getLong(entry + 4);
+			Object boxed;
+			switch (type) {
+				case NbtType.tagByte:
+					boxed = (byte) value;
+					break;
+				case NbtType.tagShort:
+					boxed = (short) value;
+					break;
+				case NbtType.tagInt:
+					boxed = (int) value;
+					break;
+				case NbtType.tagLong:
+					boxed = value;
+					break;
+				case NbtType.tagFloat:
+					boxed = Float.intBitsToFloat((int) value);
+					break;
+				case NbtType.tagDouble:
+					boxed = Double.longBitsToDouble(value);
+					break;
+				default:
+					try {
+						boxed = OomAware.tryRun(null, () -> arena.decodeObjectOrView(type, (int) value));
+					} catch (OomException ex) {
+						boxed = "(" + NbtType.values()[type] + " that could not be decoded: out of memory)";
+					}
+			}
+			nester.append(keys[head >>> 8], boxed);
+		}
+	}
+}
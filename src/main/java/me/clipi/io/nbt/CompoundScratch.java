@@ -0,0 +1,134 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package me.clipi.io.nbt;
+
+import me.clipi.io.OomException.OomAware;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Growable buffers in which a compound is built while it is being parsed. Once the compound has been fully parsed, its
+ * entries are copied into arrays of the exact size (or its shape is replaced by an interned one), and the buffers are
+ * reused for the next compound, so that parsing doesn't grow and then trim the arrays of every compound.
+ */
+final class CompoundScratch {
+	final @NotNull NbtShape shape;
+	/**
+	 * The slabs of the compound, which are kept by the compound (and may grow) while it is being parsed
+	 */
+	long @Nullable [] primitives;
+	@NotNull
+	Object @Nullable [] objects;
+
+	private CompoundScratch(@NotNull NbtShape shape) {
+		this.shape = shape;
+	}
+
+	/**
+	 * A stack of scratches, one for each compound that is being parsed at the same time (i.e. one per nesting level).
+	 * It is owned by a single {@link NbtParser}, so it is not thread-safe.
+	 */
+	static final class Pool {
+		private static final int INITIAL_CAPACITY = 16;
+		/**
+		 * Hints are not trusted beyond this amount of entries, since the scratches are kept for the whole life of the
+		 * parser
+		 */
+		private static final int MAX_HINTED_ENTRIES = 1 << 16;
+
+		private @Nullable CompoundScratch @Nullable [] stack;
+		private int size;
+
+		/**
+		 * package-private
+		 *
+		 * <p>Makes the compound be built in the next scratch of the pool, unless it already has some entries or there
+		 * is no memory for the scratch, in which case it will just be built in its own arrays
+		 *
+		 * @param expectedEntries The {@link me.clipi.io.nbt.schema.NbtCompoundSchema#expectedEntries() hint} of the
+		 *                        amount of entries of the compound, or {@code 0} if it is unknown
+		 */
+		void startParsing(@NotNull ValuelessNbtCompound compound, int expectedEntries, @Nullable OomAware oomAware) {
+			if (compound.shape != NbtShape.EMPTY) return;
+			CompoundScratch[] stack = this.stack;
+			int size = this.size;
+			if (stack == null || size == stack.length) {
+				CompoundScratch[] prev = stack;
+				stack = OomAware.tryRunOrNull(oomAware, () -> prev == null ?
+					new CompoundScratch[INITIAL_CAPACITY] :
+					Arrays.copyOf(prev, prev.length << 1));
+				if (stack == null) return;
+				this.stack = stack;
+			}
+			CompoundScratch scratch = stack[size];
+			if (scratch == null) {
+				scratch = OomAware.tryRunOrNull(oomAware, () -> new CompoundScratch(NbtShape.create(oomAware)));
+				if (scratch == null) return;
+				stack[size] = scratch;
+			}
+			this.size = size + 1;
+			if (expectedEntries > 0)
+				scratch.shape.tryEnsureCapacity(Math.min(expectedEntries, MAX_HINTED_ENTRIES), oomAware);
+			compound.startParsing(scratch);
+		}
+
+		/**
+		 * package-private
+		 *
+		 * @return The scratch in which the given compound is being built, or {@code null} if it is built in its own
+		 * arrays
+		 */
+		@Nullable
+		CompoundScratch scratchOf(@NotNull ValuelessNbtCompound compound) {
+			int size = this.size;
+			if (size == 0) return null;
+			assert stack != null;
+			CompoundScratch scratch = stack[size - 1];
+			assert scratch != null;
+			return scratch.shape == compound.shape ? scratch : null;
+		}
+
+		/**
+		 * package-private
+		 *
+		 * <p>Called once the compound that was built in the given scratch has been {@link ValuelessNbtCompound#finish
+		 * finished}, so that the scratch can be reused
+		 */
+		void release(@NotNull CompoundScratch scratch) {
+			assert stack != null && size > 0 && stack[size - 1] == scratch;
+			scratch.shape.reset();
+			--size;
+		}
+
+		/**
+		 * package-private
+		 *
+		 * <p>Called once parsing has finished. If it failed, the scratches that were in use are dropped, since the
+		 * compounds that were being parsed may still reference them.
+		 */
+		void clear() {
+			CompoundScratch[] stack = this.stack;
+			if (stack != null) Arrays.fill(stack, 0, size, null);
+			size = 0;
+		}
+	}
+}
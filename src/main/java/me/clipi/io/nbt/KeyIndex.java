@@ -0,0 +1,135 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package me.clipi.io.nbt;
+
+import me.clipi.io.OomException.OomAware;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Open-addressing hash table of the indices of the keys of a compound, so that lookups and duplicate detection don't
+ * need to scan every key
+ *
+ * <p>Each bucket holds the index of a key plus one, so that {@code 0} marks an empty bucket. Tables are kept at most
+ * half full, so the linear probing of a lookup ends after a few buckets.
+ */
+final class KeyIndex {
+	/**
+	 * Entries from which compounds are indexed, since below it a linear scan is faster than hashing the key
+	 */
+	static final int THRESHOLD = 16;
+	/**
+	 * Entries above which compounds are no longer indexed, so that the length of the table doesn't overflow
+	 */
+	private static final int MAX_INDEXED_ENTRIES = 1 << 28;
+
+	private KeyIndex() {
+	}
+
+	/**
+	 * package-private
+	 *
+	 * @return The table that should replace {@code table} after the key at index {@code entries - 1} has been added,
+	 * which is {@code null} if the compound is too small or too big to be indexed, or if there is no memory for it.
+	 */
+	static int @Nullable [] afterAdd(int @Nullable [] table, @NotNull String @NotNull [] keys, int entries,
+									 @Nullable OomAware oomAware) {
+		if (table != null && entries * 2 <= table.length) {
+			insert(table, keys, entries - 1);
+			return table;
+		}
+		if (entries < THRESHOLD | entries > MAX_INDEXED_ENTRIES) return null;
+		int[] newTable = OomAware.tryRunOrNull(oomAware, () -> new int[Integer.highestOneBit(entries) << 2]);
+		if (newTable == null) return null;
+		for (int i = 0; i < entries; ++i)
+			insert(newTable, keys, i);
+		return newTable;
+	}
+
+	private static int bucket(@NotNull String key, int mask) {
+		int hash = key.hashCode();
+		return (hash ^ hash >>> 16) & mask;
+	}
+
+	private static void insert(int @NotNull [] table, @NotNull String @NotNull [] keys, int idx) {
+		int mask = table.length - 1;
+		int bucket = bucket(keys[idx], mask);
+		while (table[bucket] != 0)
+			bucket = bucket + 1 & mask;
+		table[bucket] = idx + 1;
+	}
+
+	/**
+	 * package-private
+	 *
+	 * <p>Removes the key at index {@code idx} from the table, and moves the key at index {@code entries - 1} to
+	 * {@code idx}. Must be called before the arrays of keys are modified.
+	 */
+	static void swapRemove(int @Nullable [] table, @NotNull String @NotNull [] keys, int entries, int idx) {
+		if (table == null) return;
+		int mask = table.length - 1;
+		int hole = find(table, keys, idx);
+		// Backward-shift the following buckets, so that no lookup stops at the new empty bucket too early
+		for (int bucket = hole + 1 & mask; ; bucket = bucket + 1 & mask) {
+			int value = table[bucket];
+			if (value == 0) break;
+			int home = bucket(keys[value - 1], mask);
+			if (hole <= bucket ? hole < home & home <= bucket : hole < home | home <= bucket) continue;
+			table[hole] = value;
+			hole = bucket;
+		}
+		table[hole] = 0;
+
+		int last = entries - 1;
+		if (idx != last) table[find(table, keys, last)] = idx + 1;
+	}
+
+	/**
+	 * @return The bucket that holds the index {@code idx}
+	 */
+	private static int find(int @NotNull [] table, @NotNull String @NotNull [] keys, int idx) {
+		int mask = table.length - 1;
+		int bucket = bucket(keys[idx], mask);
+		while (table[bucket] != idx + 1)
+			bucket = bucket + 1 & mask;
+		return bucket;
+	}
+
+	/**
+	 * package-private
+	 *
+	 * @return The index of the key, or {@code -1} if it is not present
+	 */
+	static int indexOf(int @Nullable [] table, @NotNull String @NotNull [] keys, int entries, @NotNull String key) {
+		if (table == null) {
+			for (int i = entries - 1; i >= 0; --i) {
+				if (key.equals(keys[i]))
+					return i;
+			}
+			return -1;
+		}
+		int mask = table.length - 1;
+		for (int bucket = bucket(key, mask); ; bucket = bucket + 1 & mask) {
+			int idx = table[bucket] - 1;
+			if (idx < 0) return -1;
+			if (key.equals(keys[idx])) return idx;
+		}
+	}
+}
@@ -0,0 +1,635 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package me.clipi.io.nbt;
+
+import me.clipi.io.BufferedCheckedReader;
+import me.clipi.io.CheckedBigEndianDataInput;
+import me.clipi.io.CheckedReader;
+import me.clipi.io.EofException;
+import me.clipi.io.ModifiedUtf8Interner;
+import me.clipi.io.OomException;
+import me.clipi.io.OomException.OomAware;
+import me.clipi.io.nbt.exceptions.NbtKeyNotFoundException;
+import me.clipi.io.nbt.exceptions.NbtParseException;
+import me.clipi.io.util.GrowableArray;
+import me.clipi.io.util.NestedToString;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * NBT Compound that keeps its entries as slices of the buffer it was parsed from, and only decodes them once they are
+ * accessed. When it is written by a {@link NbtWriter}, the entries that have not been accessed nor replaced are copied
+ * verbatim, so that editing a few values of a big tree doesn't require decoding and re-encoding the rest of it.
+ *
+ * <p>Primitive values are read from the buffer on every access, nested compounds are scanned the first time they are
+ * accessed, and any other value is decoded and cached the first time it is accessed. Since decoded arrays and lists
+ * may be modified by the caller, they are always re-encoded when written.
+ * <p>The buffer is not copied, so it must not be modified while the compound is in use.
+ *
+ * @apiNote This class is <strong>not</strong> thread safe. Since every compound of the same root reads the buffer
+ * through the same input, neither are different compounds of the same root.
+ * @see LazyNbtRoot#parse(ByteBuffer)
+ */
+public final class LazyNbtCompound implements NestedToString, OomAware {
+	/**
+	 * Big-endian buffer that holds the entries of this compound, starting at index {@code 0}, followed by its end tag
+	 */
+	final @NotNull ByteBuffer source;
+	/**
+	 * The index of {@link #source} in the buffer of {@link #input}
+	 */
+	private final int base;
+	private final @NotNull SharedInput input;
+	/**
+	 * The nesting depth of this compound, the root value being at depth {@code 1}
+	 */
+	private final int depth;
+
+	final @NotNull GrowableArray<@NotNull String[]> keys;
+	/**
+	 * The {@link KeyIndex} of {@link #keys}, or {@code null} if this compound is not indexed
+	 */
+	private int @Nullable [] keyIndex;
+	final @NotNull GrowableArray<byte[]> types;
+	/**
+	 * The index in {@link #source} of the type of each entry, and the index right after its payload. They are
+	 * meaningless for the entries added by the put methods.
+	 */
+	final @NotNull GrowableArray<int[]> entryStarts, payloadEnds;
+	/**
+	 * The decoded or replaced value of each entry, or {@code null} if it is only available in {@link #source}
+	 */
+	final @NotNull GrowableArray<@Nullable Object[]> values;
+	/**
+	 * Whether any entry has been decoded, replaced or added, in which case this compound can no longer be written by
+	 * copying {@link #source}
+	 */
+	boolean touched;
+
+	private LazyNbtCompound(@NotNull ByteBuffer source, int base, @NotNull SharedInput input, int depth)
+		throws OomException {
+		this.source = source;
+		this.base = base;
+		this.input = input;
+		this.depth = depth;
+		keys = GrowableArray.generic(String.class, this);
+		types = GrowableArray.bytes(this);
+		entryStarts = GrowableArray.ints(this);
+		payloadEnds = GrowableArray.ints(this);
+		values = GrowableArray.generic(Object.class, this);
+	}
+
+	/**
+	 * package-private
+	 */
+	@NotNull
+	static LazyNbtRoot parseRoot(@NotNull ByteBuffer buffer) throws OomException, NbtParseException {
+		ByteBuffer view = buffer.slice();
+		SharedInput input = OomAware.tryRun(null, () -> new SharedInput(view));
+		CheckedBigEndianDataInput<RuntimeException> di = input.di;
+		try {
+			di.expectedByteFail(NbtType.tagCompound, type -> {
+				throw new NbtParseException.UnexpectedTagType(NbtType.Compound, type);
+			});
+			String name = input.payloads.readString();
+			int base = input.view.position();
+			view.position(base);
+			LazyNbtCompound rootValue = OomAware.tryRun(null, () -> new LazyNbtCompound(view.slice(), base, input, 1));
+			rootValue.scanEntries();
+			input.seek(base + rootValue.source.limit(), view.limit());
+			di.expectEnd();
+			return OomAware.tryRun(rootValue, () -> new LazyNbtRoot(name, rootValue));
+		} catch (me.clipi.io.NotEofException ex) {
+			throw new NbtParseException.NotEofException(ex);
+		} catch (EofException ex) {
+			throw new NbtParseException.EofException(ex);
+		}
+	}
+
+	/**
+	 * Reads the key and skips the payload of each entry of {@link #source}, until the end tag is found. Then, the
+	 * limit of {@link #source} is set right after that end tag.
+	 */
+	private void scanEntries() throws OomException, NbtParseException {
+		int base = this.base;
+		SharedInput input = this.input;
+		ByteBuffer view = input.seek(base, base + source.limit());
+		CheckedBigEndianDataInput<RuntimeException> di = input.di;
+		NbtPayloadReader<RuntimeException> payloads = input.payloads;
+		payloads.setOomAware(this);
+		try {
+			for (; ; ) {
+				int entryStart = view.position() - base;
+				int type = di.expectByte();
+				if (type == NbtType.tagEnd) break;
+				String key = payloads.readString();
+				if (indexOf(key) >= 0) throw new NbtParseException.DuplicatedKey(this, key, this);
+				payloads.skipPayloads(type, 1, depth);
+				add(key, (byte) type, entryStart, view.position() - base, null);
+			}
+		} catch (EofException ex) {
+			throw new NbtParseException.EofException(ex);
+		} finally {
+			payloads.setOomAware(null);
+		}
+		source.limit(view.position() - base);
+	}
+
+	private void add(@NotNull String key, byte nbtType, int entryStart, int payloadEnd, @Nullable Object value)
+		throws OomException {
+		GrowableArray.add(keys, key);
+		keyIndex = KeyIndex.afterAdd(keyIndex, keys.inner, entries(), this);
+		GrowableArray.add(types, nbtType);
+		GrowableArray.add(entryStarts, entryStart);
+		GrowableArray.add(payloadEnds, payloadEnd);
+		GrowableArray.add(values, value);
+	}
+
+	public int entries() {
+		return keys.getSize();
+	}
+
+	@Override
+	public void trySaveFromOom() {
+		// May be true while the object is being constructed
+		// noinspection ConstantValue
+		if (values == null) return;
+
+		keys.tryShrinkToFit();
+		types.tryShrinkToFit();
+		entryStarts.tryShrinkToFit();
+		payloadEnds.tryShrinkToFit();
+		values.tryShrinkToFit();
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="raw entries">
+	/**
+	 * package-private
+	 *
+	 * @return The index in {@link #source} of the payload of the entry
+	 */
+	int payloadStart(int idx) {
+		int entryStart = entryStarts.inner[idx];
+		// Skip the type and the key
+		return entryStart + 3 + (source.getShort(entryStart + 1) & 0xFF_FF);
+	}
+
+	/**
+	 * package-private
+	 *
+	 * @return The index in {@link #source} right after the payload of the entry
+	 */
+	int payloadEnd(int idx) {
+		return payloadEnds.inner[idx];
+	}
+
+	@NotNull
+	private ByteBuffer slice(int from, int to) {
+		ByteBuffer view = source.duplicate();
+		view.limit(to);
+		view.position(from);
+		return view.slice();
+	}
+
+	@NotNull
+	private LazyNbtCompound scanCompound(int idx) throws OomException, NbtParseException {
+		int payloadStart = payloadStart(idx);
+		ByteBuffer payload = slice(payloadStart, payloadEnd(idx));
+		LazyNbtCompound compound =
+			tryRun(() -> new LazyNbtCompound(payload, base + payloadStart, input, depth + 1));
+		compound.scanEntries();
+		assert compound.source.limit() == compound.source.capacity();
+		return compound;
+	}
+
+	/**
+	 * Decodes a value that is neither a primitive nor a compound. Strings and arrays are read straight from their
+	 * payload, while lists are parsed as if their entry were the only entry of a compound
+	 */
+	@NotNull
+	private Object decode(int idx) throws OomException, NbtParseException {
+		int base = this.base;
+		SharedInput input = this.input;
+		byte type = types.inner[idx];
+		if (type == NbtType.tagList)
+			return input.parseList(base + entryStarts.inner[idx], base + payloadEnd(idx), this);
+
+		input.seek(base + payloadStart(idx), base + payloadEnd(idx));
+		CheckedBigEndianDataInput<RuntimeException> di = input.di;
+		NbtPayloadReader<RuntimeException> payloads = input.payloads;
+		payloads.setOomAware(this);
+		try {
+			switch (type) {
+				case NbtType.tagString:
+					return payloads.readStringValue();
+				case NbtType.tagByteArray:
+					return di.expectByteArray(payloads.readArrayLen());
+				case NbtType.tagIntArray:
+					return di.expectIntArray(payloads.readArrayLen());
+				case NbtType.tagLongArray:
+					return di.expectLongArray(payloads.readArrayLen());
+				default:
+					throw new IllegalStateException("Unexpected type " + type);
+			}
+		} catch (EofException ex) {
+			throw new NbtParseException.EofException(ex);
+		} finally {
+			payloads.setOomAware(null);
+		}
+	}
+
+	/**
+	 * The input shared by every compound of the same root, which reads the buffer of the root from any position, so
+	 * that scanning or decoding a value doesn't allocate a new input nor parser
+	 */
+	private static final class SharedInput {
+		/**
+		 * The buffer read by {@link #di}, which is repositioned before every read
+		 */
+		final @NotNull ByteBuffer view;
+		final @NotNull CheckedBigEndianDataInput<RuntimeException> di;
+		final @NotNull NbtPayloadReader<RuntimeException> payloads;
+		private final @NotNull ModifiedUtf8Interner keys = new ModifiedUtf8Interner();
+		/**
+		 * The reader and parser of the entries of lists, which are only created once a list is decoded
+		 */
+		private @Nullable EntryReader entry;
+		private @Nullable NbtParser<RuntimeException> listParser;
+
+		SharedInput(@NotNull ByteBuffer buffer) {
+			BufferedCheckedReader<RuntimeException> reader = CheckedReader.fromByteBuffer(buffer);
+			view = reader.buffer(0);
+			di = new CheckedBigEndianDataInput<>(reader);
+			payloads = new NbtPayloadReader<>(di, keys);
+		}
+
+		/**
+		 * Makes {@link #di} read the bytes of the buffer from index {@code from} until index {@code to}
+		 */
+		@NotNull
+		ByteBuffer seek(int from, int to) {
+			ByteBuffer view = this.view;
+			view.limit(to);
+			view.position(from);
+			return view;
+		}
+
+		@NotNull
+		NbtList parseList(int entryStart, int payloadEnd, @NotNull OomAware oomAware)
+			throws OomException, NbtParseException {
+			EntryReader entry = this.entry;
+			NbtParser<RuntimeException> listParser = this.listParser;
+			if (entry == null | listParser == null) {
+				EntryReader newEntry = OomAware.tryRun(oomAware, () -> new EntryReader(view.duplicate()));
+				this.entry = entry = newEntry;
+				this.listParser = listParser =
+					OomAware.tryRun(oomAware, () -> new NbtParser<>(new CheckedBigEndianDataInput<>(newEntry), keys));
+			}
+			entry.reset(entryStart, payloadEnd);
+			NbtCompound single = listParser.parseCompoundPayload();
+			assert single.entries() == 1;
+			return (NbtList) single.valueAt(0);
+		}
+	}
+
+	/**
+	 * Reader of the bytes of a single entry followed by an end tag
+	 */
+	private static final class EntryReader implements CheckedReader<RuntimeException> {
+		private final @NotNull ByteBuffer entry;
+		private boolean endTagRead, closed;
+
+		EntryReader(@NotNull ByteBuffer buffer) {
+			this.entry = buffer;
+		}
+
+		/**
+		 * Makes this reader read the entry of the buffer from index {@code from} until index {@code to}
+		 */
+		void reset(int from, int to) {
+			ByteBuffer entry = this.entry;
+			entry.limit(to);
+			entry.position(from);
+			endTagRead = false;
+		}
+
+		@Override
+		public int nextByteOrNeg() {
+			if (entry.hasRemaining()) return entry.get() & 0xFF;
+			if (endTagRead) return -1;
+			endTagRead = true;
+			return NbtType.tagEnd;
+		}
+
+		@Override
+		public boolean readFullyOrTrue(byte @NotNull [] buf, int length) {
+			assert length >= 0 && length <= buf.length;
+			if (entry.remaining() < length) {
+				entry.position(entry.limit());
+				endTagRead = true;
+				return true;
+			}
+			entry.get(buf, 0, length);
+			return false;
+		}
+
+		@Override
+		public boolean skipFullyOrTrue(long bytes) {
+			assert bytes >= 0;
+			if (entry.remaining() < bytes) {
+				entry.position(entry.limit());
+				endTagRead = true;
+				return true;
+			}
+			entry.position(entry.position() + (int) bytes);
+			return false;
+		}
+
+		@Override
+		public void closeCurrent() {
+			closed = true;
+		}
+
+		@Override
+		public boolean isCompletelyClosed() {
+			return closed;
+		}
+	}
+	// </editor-fold>
+
+	private int indexOf(@NotNull String key) {
+		return KeyIndex.indexOf(keyIndex, keys.inner, entries(), key);
+	}
+
+	public boolean containsKey(@NotNull String key) {
+		return indexOf(key) >= 0;
+	}
+
+	@Nullable
+	public NbtType typeForKey(@NotNull String key) {
+		int idx = indexOf(key);
+		return idx < 0 ? null : NbtType.values()[types.inner[idx]];
+	}
+
+	private int indexForKeyWithTypeOrNeg(@NotNull String key, byte nbtType) throws NbtParseException.UnexpectedTagType {
+		int idx = indexOf(key);
+		if (idx >= 0 && types.inner[idx] != nbtType)
+			throw new NbtParseException.UnexpectedTagType(NbtType.values()[nbtType], types.inner[idx]);
+		return idx;
+	}
+
+	private int indexForKeyWithTypeOrThrow(@NotNull String key, byte nbtType)
+		throws NbtParseException.UnexpectedTagType, NbtKeyNotFoundException {
+		int idx = indexForKeyWithTypeOrNeg(key, nbtType);
+		if (idx < 0) throw new NbtKeyNotFoundException(this, key, this);
+		return idx;
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="get methods">
+	public byte getByteOrThrow(@NotNull String key) throws NbtParseException.UnexpectedTagType,
+														   NbtKeyNotFoundException {
+		int idx = indexForKeyWithTypeOrThrow(key, NbtType.tagByte);
+		Object value = values.inner[idx];
+		return value == null ? source.get(payloadStart(idx)) : (Byte) value;
+	}
+
+	public short getShortOrThrow(@NotNull String key) throws NbtParseException.UnexpectedTagType,
+															 NbtKeyNotFoundException {
+		int idx = indexForKeyWithTypeOrThrow(key, NbtType.tagShort);
+		Object value = values.inner[idx];
+		return value == null ? source.getShort(payloadStart(idx)) : (Short) value;
+	}
+
+	public int getIntOrThrow(@NotNull String key) throws NbtParseException.UnexpectedTagType,
+														 NbtKeyNotFoundException {
+		int idx = indexForKeyWithTypeOrThrow(key, NbtType.tagInt);
+		Object value = values.inner[idx];
+		return value == null ? source.getInt(payloadStart(idx)) : (Integer) value;
+	}
+
+	public long getLongOrThrow(@NotNull String key) throws NbtParseException.UnexpectedTagType,
+														   NbtKeyNotFoundException {
+		int idx = indexForKeyWithTypeOrThrow(key, NbtType.tagLong);
+		Object value = values.inner[idx];
+		return value == null ? source.getLong(payloadStart(idx)) : (Long) value;
+	}
+
+	public float getFloatOrThrow(@NotNull String key) throws NbtParseException.UnexpectedTagType,
+															 NbtKeyNotFoundException {
+		int idx = indexForKeyWithTypeOrThrow(key, NbtType.tagFloat);
+		Object value = values.inner[idx];
+		return value == null ? source.getFloat(payloadStart(idx)) : (Float) value;
+	}
+
+	public double getDoubleOrThrow(@NotNull String key) throws NbtParseException.UnexpectedTagType,
+															   NbtKeyNotFoundException {
+		int idx = indexForKeyWithTypeOrThrow(key, NbtType.tagDouble);
+		Object value = values.inner[idx];
+		return value == null ? source.getDouble(payloadStart(idx)) : (Double) value;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Nullable
+	private <T> T getObjectOrNull(@NotNull String key, byte nbtType) throws OomException, NbtParseException {
+		int idx = indexForKeyWithTypeOrNeg(key, nbtType);
+		if (idx < 0) return null;
+		Object value = values.inner[idx];
+		if (value == null) {
+			value = nbtType == NbtType.tagCompound ? scanCompound(idx) : decode(idx);
+			// The array may have been replaced while decoding, if the OomAware shrunk it
+			values.inner[idx] = value;
+			touched = true;
+		}
+		return (T) value;
+	}
+
+	@NotNull
+	private <T> T getObjectOrThrow(@NotNull String key, byte nbtType)
+		throws OomException, NbtParseException, NbtKeyNotFoundException {
+		T res = getObjectOrNull(key, nbtType);
+		if (res == null) throw new NbtKeyNotFoundException(this, key, this);
+		return res;
+	}
+
+	public byte @Nullable [] getByteArrayOrNull(@NotNull String key) throws OomException, NbtParseException {
+		return getObjectOrNull(key, NbtType.tagByteArray);
+	}
+
+	public int @Nullable [] getIntArrayOrNull(@NotNull String key) throws OomException, NbtParseException {
+		return getObjectOrNull(key, NbtType.tagIntArray);
+	}
+
+	public long @Nullable [] getLongArrayOrNull(@NotNull String key) throws OomException, NbtParseException {
+		return getObjectOrNull(key, NbtType.tagLongArray);
+	}
+
+	public @Nullable String getStringOrNull(@NotNull String key) throws OomException, NbtParseException {
+		return getObjectOrNull(key, NbtType.tagString);
+	}
+
+	public @Nullable NbtList getListOrNull(@NotNull String key) throws OomException, NbtParseException {
+		return getObjectOrNull(key, NbtType.tagList);
+	}
+
+	public @Nullable LazyNbtCompound getMapOrNull(@NotNull String key) throws OomException, NbtParseException {
+		return getObjectOrNull(key, NbtType.tagCompound);
+	}
+
+	public byte @NotNull [] getByteArrayOrThrow(@NotNull String key) throws OomException, NbtParseException,
+																			NbtKeyNotFoundException {
+		return getObjectOrThrow(key, NbtType.tagByteArray);
+	}
+
+	public int @NotNull [] getIntArrayOrThrow(@NotNull String key) throws OomException, NbtParseException,
+																		  NbtKeyNotFoundException {
+		return getObjectOrThrow(key, NbtType.tagIntArray);
+	}
+
+	public long @NotNull [] getLongArrayOrThrow(@NotNull String key) throws OomException, NbtParseException,
+																			NbtKeyNotFoundException {
+		return getObjectOrThrow(key, NbtType.tagLongArray);
+	}
+
+	public @NotNull String getStringOrThrow(@NotNull String key) throws OomException, NbtParseException,
+																		NbtKeyNotFoundException {
+		return getObjectOrThrow(key, NbtType.tagString);
+	}
+
+	public @NotNull NbtList getListOrThrow(@NotNull String key) throws OomException, NbtParseException,
+																	   NbtKeyNotFoundException {
+		return getObjectOrThrow(key, NbtType.tagList);
+	}
+
+	public @NotNull LazyNbtCompound getMapOrThrow(@NotNull String key) throws OomException, NbtParseException,
+																			  NbtKeyNotFoundException {
+		return getObjectOrThrow(key, NbtType.tagCompound);
+	}
+	// </editor-fold>
+
+	/**
+	 * Replaces the value of the entry, or adds a new entry if the key is not present
+	 */
+	private void put(@NotNull String key, byte nbtType, @NotNull Object value) throws OomException {
+		touched = true;
+		int idx = indexOf(key);
+		if (idx < 0) {
+			add(key, nbtType, 0, 0, value);
+		} else {
+			types.inner[idx] = nbtType;
+			values.inner[idx] = value;
+		}
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="put methods">
+	public void putByte(@NotNull String key, byte value) throws OomException {
+		put(key, NbtType.tagByte, value);
+	}
+
+	public void putShort(@NotNull String key, short value) throws OomException {
+		put(key, NbtType.tagShort, value);
+	}
+
+	public void putInt(@NotNull String key, int value) throws OomException {
+		put(key, NbtType.tagInt, value);
+	}
+
+	public void putLong(@NotNull String key, long value) throws OomException {
+		put(key, NbtType.tagLong, value);
+	}
+
+	public void putFloat(@NotNull String key, float value) throws OomException {
+		put(key, NbtType.tagFloat, value);
+	}
+
+	public void putDouble(@NotNull String key, double value) throws OomException {
+		put(key, NbtType.tagDouble, value);
+	}
+
+	public void putByteArray(@NotNull String key, byte @NotNull [] value) throws OomException {
+		put(key, NbtType.tagByteArray, Objects.requireNonNull(value));
+	}
+
+	public void putIntArray(@NotNull String key, int @NotNull [] value) throws OomException {
+		put(key, NbtType.tagIntArray, Objects.requireNonNull(value));
+	}
+
+	public void putLongArray(@NotNull String key, long @NotNull [] value) throws OomException {
+		put(key, NbtType.tagLongArray, Objects.requireNonNull(value));
+	}
+
+	public void putString(@NotNull String key, @NotNull String value) throws OomException {
+		put(key, NbtType.tagString, Objects.requireNonNull(value));
+	}
+
+	public void putList(@NotNull String key, @NotNull NbtList value) throws OomException {
+		put(key, NbtType.tagList, Objects.requireNonNull(value));
+	}
+
+	public void putCompound(@NotNull String key, @NotNull NbtCompound value) throws OomException {
+		put(key, NbtType.tagCompound, Objects.requireNonNull(value));
+	}
+	// </editor-fold>
+
+	@Override
+	@NotNull
+	public String toString() {
+		return nestedToString();
+	}
+
+	@Override
+	public void toString(@NotNull Nester nester) {
+		String[] keys = this.keys.inner;
+		byte[] types = this.types.inner;
+		Object[] values = this.values.inner;
+		for (int i = 0, len = entries(); i < len; ++i) {
+			Object value = values[i];
+			if (value == null) {
+				int payloadStart = payloadStart(i);
+				switch (types[i]) {
+					case NbtType.tagByte:
+						value = source.get(payloadStart);
+						break;
+					case NbtType.tagShort:
+						value = source.getShort(payloadStart);
+						break;
+					case NbtType.tagInt:
+						value = source.getInt(payloadStart);
+						break;
+					case NbtType.tagLong:
+						value = source.getLong(payloadStart);
+						break;
+					case NbtType.tagFloat:
+						value = source.getFloat(payloadStart);
+						break;
+					case NbtType.tagDouble:
+						value = source.getDouble(payloadStart);
+						break;
+					default:
+						value = "(" + NbtType.values()[types[i]] + " of " + (payloadEnd(i) - payloadStart) +
+								" undecoded bytes)";
+				}
+			}
+			nester.append(keys[i], value);
+		}
+	}
+}
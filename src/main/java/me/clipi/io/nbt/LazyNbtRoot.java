@@ -0,0 +1,78 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package me.clipi.io.nbt;
+
+import me.clipi.io.OomException;
+import me.clipi.io.nbt.exceptions.NbtParseException;
+import me.clipi.io.util.NestedToString;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Root tag whose value is a {@link LazyNbtCompound}, which allows editing a few values of a big NBT tree and writing
+ * it back without decoding the rest of it
+ */
+public final class LazyNbtRoot implements NestedToString {
+	public final @NotNull String name;
+	public final @NotNull LazyNbtCompound rootValue;
+
+	/**
+	 * package-private
+	 */
+	LazyNbtRoot(@NotNull String name, @NotNull LazyNbtCompound rootValue) {
+		this.name = Objects.requireNonNull(name);
+		this.rootValue = Objects.requireNonNull(rootValue);
+	}
+
+	/**
+	 * Scans the root tag that spans the remaining bytes of the buffer, which may either be a heap or a direct buffer
+	 * (e.g. a memory-mapped file).
+	 *
+	 * <p>The position of the buffer is not modified, but its contents are not copied either, so they must not be
+	 * modified while the returned root is in use.
+	 */
+	@NotNull
+	public static LazyNbtRoot parse(@NotNull ByteBuffer buffer) throws OomException, NbtParseException {
+		return LazyNbtCompound.parseRoot(buffer);
+	}
+
+	/**
+	 * Scans the root tag that spans the whole array.
+	 *
+	 * <p>The array is not copied, so it must not be modified while the returned root is in use.
+	 */
+	@NotNull
+	public static LazyNbtRoot parse(byte @NotNull [] bytes) throws OomException, NbtParseException {
+		return parse(ByteBuffer.wrap(bytes));
+	}
+
+	@Override
+	@NotNull
+	public String toString() {
+		return nestedToString();
+	}
+
+	@Override
+	public void toString(@NotNull Nester nester) {
+		nester.append("name", name).append("root value", rootValue);
+	}
+}
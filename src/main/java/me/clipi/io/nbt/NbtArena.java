@@ -0,0 +1,975 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io.nbt;
+
+import me.clipi.io.BufferedCheckedReader;
+import me.clipi.io.CheckedBigEndianDataInput;
+import me.clipi.io.CheckedBigEndianDataInput.ModifiedUtf8DataFormatException;
+import me.clipi.io.CheckedReader;
+import me.clipi.io.EofException;
+import me.clipi.io.OomException;
+import me.clipi.io.OomException.OomAware;
+import me.clipi.io.nbt.exceptions.NbtWriteException;
+import me.clipi.io.util.FixedStack;
+import me.clipi.io.util.GrowableArray;
+import me.clipi.io.util.NestedToString;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Objects;
+
+/**
+ * Immutable copy of a whole NBT tree that is stored in a single direct {@link ByteBuffer}, so that keeping big trees
+ * around (e.g. the templates of a structure) neither adds objects to the heap nor slows down the garbage collector.
+ * Its root value is accessed through {@link ArenaNbtCompound} views, which are created on demand.
+ *
+ * <p>The tree is re-encoded with a layout that allows reading any value without scanning its siblings, where every
+ * offset is relative to the start of the buffer:
+ * <ul>
+ *     <li>Compound: an int with the amount of entries, followed by {@value #ENTRY_SIZE} bytes per entry: an int with
+ *     the id of its key in {@link #keys} shifted left by 8 bits, plus its type id; and a long with either its value
+ *     (if its type is primitive, just like {@link NbtCompound#primitives}), or the offset of the record of its value.
+ *     Compounds with at least {@link KeyIndex#THRESHOLD} entries are followed by a hash table of the indices of their
+ *     entries plus one, which is looked up by the id of their keys</li>
+ *     <li>Byte, int and long arrays: an int with their length, followed by their elements</li>
+ *     <li>String: an int with the length of its modified UTF-8 encoding, followed by the encoded bytes</li>
+ *     <li>List: a byte with the component type id and an int with its length, followed by its elements, which are
+ *     stored as their raw value if they are primitive, or as an int with the offset of their record otherwise</li>
+ * </ul>
+ * Keys are only stored once per arena, since most of them are repeated over and over.
+ *
+ * <p>Just like {@link NbtWriter}, the trees are encoded and decoded without recursion. They are encoded twice: first
+ * to compute their size, and then straight into a direct buffer of that size, so that there is no heap copy of the
+ * whole tree.
+ *
+ * <p>Arenas are thread-safe, although each arena decodes its strings, lists and compounds one at a time. The memory
+ * of the buffer is released once the arena is garbage collected.
+ */
+public final class NbtArena implements NestedToString, OomAware {
+	/**
+	 * package-private
+	 */
+	static final int ENTRY_SIZE = 12;
+	/**
+	 * The key ids must fit in the 24 upper bits of the head of an entry
+	 */
+	private static final int MAX_KEYS = 1 << 24;
+	/**
+	 * The size of the list header, made of its component type id and its length
+	 */
+	private static final int LIST_HEADER_SIZE = 5;
+
+	public final @NotNull String name;
+	public final @NotNull ArenaNbtCompound rootValue;
+
+	/**
+	 * package-private
+	 *
+	 * <p>Native-endian direct buffer. It must only be accessed with absolute operations, so that it can be read
+	 * concurrently.
+	 */
+	final @NotNull ByteBuffer data;
+	/**
+	 * package-private
+	 */
+	final @NotNull String @NotNull [] keys;
+	/**
+	 * The {@link KeyIndex} of {@link #keys}, or {@code null} if they are not indexed
+	 */
+	private final int @Nullable [] keyIndex;
+	/**
+	 * Locked while it is being used, since it is not thread-safe
+	 */
+	private final @NotNull Decoder decoder = new Decoder();
+
+	private NbtArena(@NotNull String name, @NotNull ByteBuffer data, @NotNull String @NotNull [] keys,
+					 int @Nullable [] keyIndex, int rootOffset) {
+		this.name = Objects.requireNonNull(name);
+		this.data = data;
+		this.keys = keys;
+		this.keyIndex = keyIndex;
+		rootValue = new ArenaNbtCompound(this, rootOffset);
+	}
+
+	/**
+	 * Copies the given root into a new arena. Parsed trees may be stored in an arena with
+	 * {@code NbtArena.copyOf(parser.parseRoot())}, in which case the parsed tree can be garbage collected right
+	 * away.
+	 */
+	@NotNull
+	public static NbtArena copyOf(@NotNull NbtRoot root) throws OomException, NbtWriteException {
+		return copyOf(root.name, root.rootValue);
+	}
+
+	/**
+	 * Copies the given compound into a new arena. The compound must not be modified while it is being copied.
+	 *
+	 * @throws NbtWriteException if the tree could not be written by a {@link NbtWriter} either
+	 */
+	@NotNull
+	public static NbtArena copyOf(@NotNull String name, @NotNull NbtCompound rootValue)
+		throws OomException, NbtWriteException {
+		Encoder encoder = new Encoder();
+		encoder.encode(rootValue);
+		int size = encoder.size;
+		ByteBuffer data = OomAware.tryRun(null, () -> ByteBuffer.allocateDirect(size));
+		data.order(ByteOrder.nativeOrder());
+		encoder.startWriting(data);
+		int rootOffset = encoder.encode(rootValue);
+		assert encoder.size == size;
+
+		GrowableArray<String[]> keyList = encoder.keys;
+		int keyCount = keyList.getSize();
+		String[] keys = OomAware.tryRun(null, () -> Arrays.copyOf(keyList.inner, keyCount));
+		int[] keyIndex = null;
+		for (int i = 1; i <= keyCount; ++i)
+			keyIndex = KeyIndex.afterAdd(keyIndex, keys, i, null);
+
+		return new NbtArena(name, data, keys, keyIndex, rootOffset);
+	}
+
+	/**
+	 * @return The amount of off-heap bytes used by this arena
+	 */
+	public int byteSize() {
+		return data.capacity();
+	}
+
+	/**
+	 * @return A mutable copy of this tree, stored in the heap
+	 */
+	@NotNull
+	public NbtRoot toNbtRoot() throws OomException {
+		return new NbtRoot(name, rootValue.toNbtCompound());
+	}
+
+	@Override
+	public void trySaveFromOom() {
+		// Arenas are immutable and already have the exact size, so there is nothing to trim
+	}
+
+	/**
+	 * package-private
+	 *
+	 * @return The id of the given key, or {@code -1} if no compound of this arena contains it
+	 */
+	int keyIdOf(@NotNull String key) {
+		return KeyIndex.indexOf(keyIndex, keys, keys.length, key);
+	}
+
+	/**
+	 * @return The amount of buckets of the hash table of a compound with the given amount of entries, which is kept
+	 * at most half full, or {@code 0} if the compound has no table
+	 */
+	private static int tableBuckets(int entries) {
+		return entries < KeyIndex.THRESHOLD ? 0 : Integer.highestOneBit(entries) << 2;
+	}
+
+	private static int bucket(int keyId, int mask) {
+		// Fibonacci hashing, so that close ids (which are common within a compound) are spread over the table
+		return keyId * 0x9E3779B9 >>> Integer.numberOfLeadingZeros(mask);
+	}
+
+	/**
+	 * package-private
+	 *
+	 * @return The offset of the entry of the compound with the given key id, or {@code -1} if it is not present
+	 */
+	int entryOrNeg(int record, int keyId) {
+		ByteBuffer data = this.data;
+		int entries = data.getInt(record), first = record + 4, buckets = tableBuckets(entries);
+		if (buckets == 0) {
+			for (int entry = first, end = entry + entries * ENTRY_SIZE; entry < end; entry += ENTRY_SIZE) {
+				if (data.getInt(entry) >>> 8 == keyId) return entry;
+			}
+			return -1;
+		}
+		int table = first + entries * ENTRY_SIZE, mask = buckets - 1;
+		for (int bucket = bucket(keyId, mask); ; bucket = bucket + 1 & mask) {
+			int idx = data.getInt(table + (bucket << 2)) - 1;
+			if (idx < 0) return -1;
+			int entry = first + idx * ENTRY_SIZE;
+			if (data.getInt(entry) >>> 8 == keyId) return entry;
+		}
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="decode methods">
+	/**
+	 * @return A native-endian buffer that shares the content of {@link #data}, starting at the given offset
+	 */
+	@NotNull
+	private ByteBuffer slice(int offset) {
+		ByteBuffer slice = data.duplicate();
+		slice.order(ByteOrder.nativeOrder());
+		slice.position(offset);
+		return slice;
+	}
+
+	/**
+	 * package-private
+	 *
+	 * <p>The decode methods may throw {@link OutOfMemoryError}s, so their callers should wrap them in
+	 * {@link OomAware#tryRun}. The compounds are decoded with the {@link NbtShape.Interner} of this arena, so that
+	 * they share their shapes just like parsed ones.
+	 */
+	byte @NotNull [] decodeByteArray(int record) {
+		byte[] res = new byte[data.getInt(record)];
+		slice(record + 4).get(res);
+		return res;
+	}
+
+	/**
+	 * package-private
+	 */
+	int @NotNull [] decodeIntArray(int record) {
+		int[] res = new int[data.getInt(record)];
+		slice(record + 4).asIntBuffer().get(res);
+		return res;
+	}
+
+	/**
+	 * package-private
+	 */
+	long @NotNull [] decodeLongArray(int record) {
+		long[] res = new long[data.getInt(record)];
+		slice(record + 4).asLongBuffer().get(res);
+		return res;
+	}
+
+	/**
+	 * package-private
+	 */
+	@NotNull
+	String decodeString(int record) throws OomException {
+		synchronized (decoder) {
+			return decodeString(decoder, record);
+		}
+	}
+
+	/**
+	 * package-private
+	 */
+	@NotNull
+	NbtList decodeList(int record) throws OomException {
+		synchronized (decoder) {
+			return isNestedList(record) ?
+				(NbtList) decodeNested(decoder, record, false) :
+				decodeFlatList(decoder, record);
+		}
+	}
+
+	/**
+	 * package-private
+	 */
+	@NotNull
+	NbtCompound decodeCompound(int record) throws OomException {
+		synchronized (decoder) {
+			return (NbtCompound) decodeNested(decoder, record, true);
+		}
+	}
+
+	/**
+	 * package-private
+	 *
+	 * @return The compound views of the elements of the list, which must be empty or a list of compounds
+	 */
+	@NotNull
+	ArenaNbtCompound @NotNull [] compoundViewsOfList(int record) {
+		ByteBuffer data = this.data;
+		int len = data.getInt(record + 1), elements = record + LIST_HEADER_SIZE;
+		ArenaNbtCompound[] res = new ArenaNbtCompound[len];
+		for (int i = 0; i < len; ++i)
+			res[i] = new ArenaNbtCompound(this, data.getInt(elements + (i << 2)));
+		return res;
+	}
+
+	/**
+	 * package-private
+	 *
+	 * @return The decoded value of the record of a non-primitive type, or a {@link ArenaNbtCompound} view if it is a
+	 * compound
+	 */
+	@NotNull
+	Object decodeObjectOrView(byte type, int record) throws OomException {
+		switch (type) {
+			case NbtType.tagList:
+				return decodeList(record);
+			case NbtType.tagCompound:
+				return new ArenaNbtCompound(this, record);
+			case NbtType.tagString:
+				return decodeString(record);
+			default:
+				return decodeArray(type, record);
+		}
+	}
+
+	@NotNull
+	private Object decodeArray(byte type, int record) {
+		switch (type) {
+			case NbtType.tagByteArray:
+				return decodeByteArray(record);
+			case NbtType.tagIntArray:
+				return decodeIntArray(record);
+			case NbtType.tagLongArray:
+				return decodeLongArray(record);
+			default:
+				throw new AssertionError("Unknown array type " + type);
+		}
+	}
+
+	@NotNull
+	private String decodeString(@NotNull Decoder decoder, int record) throws OomException {
+		CheckedBigEndianDataInput<RuntimeException> strings = decoder.strings;
+		ByteBuffer view = decoder.stringsView;
+		if (strings == null | view == null) {
+			BufferedCheckedReader<RuntimeException> reader = CheckedReader.fromByteBuffer(data);
+			decoder.stringsView = view = reader.buffer(0);
+			decoder.strings = strings = new CheckedBigEndianDataInput<>(reader);
+		}
+		view.position(record + 4);
+		try {
+			return strings.expectModifiedUtf8((short) data.getInt(record));
+		} catch (EofException | ModifiedUtf8DataFormatException ex) {
+			throw new AssertionError("The string at " + record + " was not encoded by the arena", ex);
+		}
+	}
+
+	/**
+	 * @return Whether the elements of the list are either compounds or lists
+	 */
+	private boolean isNestedList(int record) {
+		byte componentType = data.get(record);
+		return componentType == NbtType.tagList | componentType == NbtType.tagCompound;
+	}
+
+	/**
+	 * Decodes a list whose elements are neither compounds nor lists
+	 */
+	@NotNull
+	private NbtList decodeFlatList(@NotNull Decoder decoder, int record) throws OomException {
+		ByteBuffer data = this.data;
+		byte componentType = data.get(record);
+		int len = data.getInt(record + 1), elements = record + LIST_HEADER_SIZE;
+		switch (componentType) {
+			case NbtType.tagEnd:
+				return NbtList.EMPTY_LIST;
+			case NbtType.tagByte: {
+				byte[] res = new byte[len];
+				slice(elements).get(res);
+				return NbtList.create(res);
+			}
+			case NbtType.tagShort: {
+				short[] res = new short[len];
+				slice(elements).asShortBuffer().get(res);
+				return NbtList.create(res);
+			}
+			case NbtType.tagInt: {
+				int[] res = new int[len];
+				slice(elements).asIntBuffer().get(res);
+				return NbtList.create(res);
+			}
+			case NbtType.tagLong: {
+				long[] res = new long[len];
+				slice(elements).asLongBuffer().get(res);
+				return NbtList.create(res);
+			}
+			case NbtType.tagFloat: {
+				float[] res = new float[len];
+				slice(elements).asFloatBuffer().get(res);
+				return NbtList.create(res);
+			}
+			case NbtType.tagDouble: {
+				double[] res = new double[len];
+				slice(elements).asDoubleBuffer().get(res);
+				return NbtList.create(res);
+			}
+			case NbtType.tagByteArray: {
+				byte[][] res = new byte[len][];
+				for (int i = 0; i < len; ++i)
+					res[i] = decodeByteArray(data.getInt(elements + (i << 2)));
+				return NbtList.create(res);
+			}
+			case NbtType.tagIntArray: {
+				int[][] res = new int[len][];
+				for (int i = 0; i < len; ++i)
+					res[i] = decodeIntArray(data.getInt(elements + (i << 2)));
+				return NbtList.create(res);
+			}
+			case NbtType.tagLongArray: {
+				long[][] res = new long[len][];
+				for (int i = 0; i < len; ++i)
+					res[i] = decodeLongArray(data.getInt(elements + (i << 2)));
+				return NbtList.create(res);
+			}
+			case NbtType.tagString: {
+				String[] res = new String[len];
+				for (int i = 0; i < len; ++i)
+					res[i] = decodeString(decoder, data.getInt(elements + (i << 2)));
+				return NbtList.create(res);
+			}
+			default:
+				throw new AssertionError("Unknown list component type " + componentType);
+		}
+	}
+
+	/**
+	 * Decodes the compound or the list of compounds or lists without recursion
+	 */
+	@NotNull
+	private Object decodeNested(@NotNull Decoder decoder, int record, boolean isCompound) throws OomException {
+		FixedStack<DecodingTarget> nestedTarget = decoder.nestedTarget;
+		if (nestedTarget == null)
+			decoder.nestedTarget = nestedTarget = new FixedStack<>(DecodingTarget.class, NbtParser.NESTED_MAX_DEPTH);
+		try {
+			if (isCompound) {
+				pushCompound(nestedTarget, record);
+			} else {
+				pushList(nestedTarget, record);
+			}
+			for (; ; ) {
+				DecodingTarget target = nestedTarget.peek();
+				if (!advanceIsFinished(decoder, nestedTarget, target)) continue;
+				nestedTarget.pop();
+				Object value = target instanceof CompoundDecodingTarget ?
+					((CompoundDecodingTarget) target).compound :
+					((ListDecodingTarget) target).toList();
+				DecodingTarget parent = nestedTarget.tryPeek();
+				if (parent == null) return value;
+				if (parent instanceof CompoundDecodingTarget) {
+					CompoundDecodingTarget compoundTarget = (CompoundDecodingTarget) parent;
+					int head = data.getInt(compoundTarget.record + 4 + (compoundTarget.idx - 1) * ENTRY_SIZE);
+					compoundTarget.compound.collisionUnsafeAddObject(keys[head >>> 8], value, (byte) head);
+				} else {
+					ListDecodingTarget listTarget = (ListDecodingTarget) parent;
+					listTarget.values[listTarget.idx - 1] = value;
+				}
+			}
+		} catch (FixedStack.FullStackException | FixedStack.EmptyStackException ex) {
+			// The tree was encoded within the same depth limit
+			throw new AssertionError(ex);
+		} finally {
+			nestedTarget.clear();
+		}
+	}
+
+	private void pushCompound(@NotNull FixedStack<DecodingTarget> nestedTarget, int record)
+		throws OomException, FixedStack.FullStackException {
+		nestedTarget.push(new CompoundDecodingTarget(record, NbtCompound.create()));
+	}
+
+	private void pushList(@NotNull FixedStack<DecodingTarget> nestedTarget, int record)
+		throws FixedStack.FullStackException {
+		int len = data.getInt(record + 1);
+		nestedTarget.push(data.get(record) == NbtType.tagCompound ?
+							  new ListDecodingTarget(record + LIST_HEADER_SIZE, new NbtCompound[len]) :
+							  new ListDecodingTarget(record + LIST_HEADER_SIZE, new NbtList[len]));
+	}
+
+	/**
+	 * Decodes the contents of the target until a nested compound or list has to be decoded, in which case it will be
+	 * pushed to {@code nestedTarget} and {@code false} will be returned, or until the whole target has been decoded,
+	 * in which case {@code true} will be returned.
+	 */
+	private boolean advanceIsFinished(@NotNull Decoder decoder, @NotNull FixedStack<DecodingTarget> nestedTarget,
+									  @NotNull DecodingTarget target)
+		throws OomException, FixedStack.FullStackException {
+		ByteBuffer data = this.data;
+		if (target instanceof ListDecodingTarget) {
+			ListDecodingTarget listTarget = (ListDecodingTarget) target;
+			Object[] values = listTarget.values;
+			boolean compounds = values instanceof NbtCompound[];
+			for (int len = values.length; listTarget.idx < len; ) {
+				int idx = listTarget.idx++, child = data.getInt(listTarget.elements + (idx << 2));
+				if (compounds) {
+					pushCompound(nestedTarget, child);
+					return false;
+				}
+				if (isNestedList(child)) {
+					pushList(nestedTarget, child);
+					return false;
+				}
+				values[idx] = decodeFlatList(decoder, child);
+			}
+			return true;
+		}
+
+		CompoundDecodingTarget compoundTarget = (CompoundDecodingTarget) target;
+		NbtCompound res = compoundTarget.compound;
+		String[] keys = this.keys;
+		for (int record = compoundTarget.record, entries = data.getInt(record); compoundTarget.idx < entries; ) {
+			int entry = record + 4 + compoundTarget.idx++ * ENTRY_SIZE;
+			int head = data.getInt(entry);
+			String key = keys[head >>> 8];
+			byte type = (byte) head;
+			long value = data.getLong(entry + 4);
+			switch (type) {
+				case NbtType.tagByte:
+					res.collisionUnsafeAddByte(key, (byte) value);
+					break;
+				case NbtType.tagShort:
+					res.collisionUnsafeAddShort(key, (short) value);
+					break;
+				case NbtType.tagInt:
+					res.collisionUnsafeAddInt(key, (int) value);
+					break;
+				case NbtType.tagLong:
+					res.collisionUnsafeAddLong(key, value);
+					break;
+				case NbtType.tagFloat:
+					res.collisionUnsafeAddFloat(key, Float.intBitsToFloat((int) value));
+					break;
+				case NbtType.tagDouble:
+					res.collisionUnsafeAddDouble(key, Double.longBitsToDouble(value));
+					break;
+				case NbtType.tagString:
+					res.collisionUnsafeAddObject(key, decodeString(decoder, (int) value), type);
+					break;
+				case NbtType.tagList:
+					if (isNestedList((int) value)) {
+						pushList(nestedTarget, (int) value);
+						return false;
+					}
+					res.collisionUnsafeAddObject(key, decodeFlatList(decoder, (int) value), type);
+					break;
+				case NbtType.tagCompound:
+					pushCompound(nestedTarget, (int) value);
+					return false;
+				default:
+					res.collisionUnsafeAddObject(key, decodeArray(type, (int) value), type);
+			}
+		}
+		res.finish(decoder.shapes, null);
+		return true;
+	}
+	// </editor-fold>
+
+	@Override
+	@NotNull
+	public String toString() {
+		return nestedToString();
+	}
+
+	@Override
+	public void toString(@NotNull Nester nester) {
+		nester.append("name", name).append("root value", rootValue);
+	}
+
+	/**
+	 * The state shared by every decode of an arena, so that repeated calls don't allocate new interners nor buffers
+	 */
+	private static final class Decoder {
+		final @NotNull NbtShape.Interner shapes = new NbtShape.Interner();
+		/**
+		 * FixedStack of the compounds and lists of compounds or lists that are being decoded, which is created on
+		 * demand just like the following fields
+		 */
+		@Nullable FixedStack<DecodingTarget> nestedTarget;
+		@Nullable CheckedBigEndianDataInput<RuntimeException> strings;
+		/**
+		 * The buffer of the reader of {@link #strings}, which is positioned at the bytes of each decoded string
+		 */
+		@Nullable ByteBuffer stringsView;
+	}
+
+	/**
+	 * Writes a tree with the layout of the arena, without recursion. The first pass over the tree only computes its
+	 * size, and the second one writes it into the buffer given to {@link #startWriting}.
+	 */
+	private static final class Encoder {
+		final GrowableArray<String[]> keys = GrowableArray.generic(String.class, null);
+		private final HashMap<String, Integer> keyIds = new HashMap<>();
+		/**
+		 * FixedStack of the compounds and lists of compounds or lists that are being encoded
+		 */
+		private final FixedStack<EncodingTarget> nestedTarget =
+			new FixedStack<>(EncodingTarget.class, NbtParser.NESTED_MAX_DEPTH);
+		/**
+		 * The buffer that is being written, or {@code null} while the size of the tree is being computed
+		 */
+		private @Nullable ByteBuffer buf;
+		/**
+		 * A view of {@link #buf} for bulk writes, whose position may be freely modified
+		 */
+		private @Nullable ByteBuffer bulk;
+		/**
+		 * The amount of bytes of the records that have been reserved so far
+		 */
+		int size;
+
+		Encoder() throws OomException {
+		}
+
+		void startWriting(@NotNull ByteBuffer buf) {
+			ByteBuffer bulk = buf.duplicate();
+			bulk.order(ByteOrder.nativeOrder());
+			this.buf = buf;
+			this.bulk = bulk;
+			size = 0;
+		}
+
+		/**
+		 * @return The offset of the new record, which spans the given amount of zeroed bytes
+		 */
+		private int reserve(long size) throws OomException {
+			int offset = this.size;
+			long end = offset + size;
+			if (end > GrowableArray.MAX_ARRAY_SIZE) throw OomException.INSTANCE;
+			this.size = (int) end;
+			return offset;
+		}
+
+		private int keyId(@NotNull String key) throws OomException {
+			Integer id = keyIds.get(key);
+			if (id != null) return id;
+			int newId = keys.getSize();
+			if (newId == MAX_KEYS) throw OomException.INSTANCE;
+			GrowableArray.add(keys, key);
+			OomAware.tryConsume(null, () -> keyIds.put(key, newId));
+			return newId;
+		}
+
+		/**
+		 * @return The offset of the record of the given compound
+		 */
+		int encode(@NotNull NbtCompound rootValue) throws OomException, NbtWriteException {
+			FixedStack<EncodingTarget> nestedTarget = this.nestedTarget;
+			try {
+				int record = pushCompound(rootValue);
+				for (EncodingTarget target; (target = nestedTarget.tryPeek()) != null; ) {
+					if (advanceIsFinished(target)) nestedTarget.tryPop();
+				}
+				return record;
+			} catch (FixedStack.FullStackException ex) {
+				throw new NbtWriteException.InvalidDataStructureSize(ex.attemptedSize);
+			} finally {
+				nestedTarget.clear();
+			}
+		}
+
+		private int pushCompound(@NotNull NbtCompound compound) throws OomException, FixedStack.FullStackException {
+			int entries = compound.entries();
+			int record = reserve(4 + (long) entries * ENTRY_SIZE + ((long) tableBuckets(entries) << 2));
+			ByteBuffer buf = this.buf;
+			if (buf != null) buf.putInt(record, entries);
+			nestedTarget.push(OomAware.tryRun(null, () -> new CompoundEncodingTarget(compound, record)));
+			return record;
+		}
+
+		/**
+		 * Writes the contents of the target until a nested compound or list has to be written, in which case it will
+		 * be pushed to {@link #nestedTarget} and {@code false} will be returned, or until the whole target has been
+		 * written, in which case {@code true} will be returned.
+		 */
+		private boolean advanceIsFinished(@NotNull EncodingTarget target)
+			throws OomException, NbtWriteException, FixedStack.FullStackException {
+			ByteBuffer buf = this.buf;
+			if (target instanceof ListEncodingTarget) {
+				ListEncodingTarget listTarget = (ListEncodingTarget) target;
+				Object[] values = listTarget.values;
+				for (int len = values.length; listTarget.idx < len; ) {
+					int idx = listTarget.idx++;
+					Object value = values[idx];
+					int child = value instanceof NbtCompound ?
+						pushCompound((NbtCompound) value) :
+						writeList((NbtList) value);
+					if (buf != null) buf.putInt(listTarget.elements + (idx << 2), child);
+					if (nestedTarget.tryPeek() != target) return false;
+				}
+				return true;
+			}
+
+			CompoundEncodingTarget compoundTarget = (CompoundEncodingTarget) target;
+			NbtCompound compound = compoundTarget.compound;
+			NbtShape shape = compound.shape;
+			String[] keys = shape.keys;
+			byte[] types = shape.types;
+			int[] slots = shape.slots;
+			long[] primitives = compound.primitives;
+			@Nullable Object[] objects = compound.objects;
+			int record = compoundTarget.record, entries = shape.entries;
+			while (compoundTarget.idx < entries) {
+				int idx = compoundTarget.idx++;
+				byte type = types[idx];
+				int slot = slots[idx];
+				long value;
+				if (type < NbtType.tagByteArray) {
+					value = primitives[slot];
+				} else {
+					Object object = Objects.requireNonNull(objects[slot]);
+					switch (type) {
+						case NbtType.tagList:
+							value = writeList((NbtList) object);
+							break;
+						case NbtType.tagCompound:
+							value = pushCompound((NbtCompound) object);
+							break;
+						default:
+							value = writeLeaf(type, object);
+					}
+				}
+				int keyId = keyId(keys[idx]);
+				if (buf != null) {
+					int entry = record + 4 + idx * ENTRY_SIZE;
+					buf.putInt(entry, keyId << 8 | type);
+					buf.putLong(entry + 4, value);
+				}
+				if (nestedTarget.tryPeek() != target) return false;
+			}
+			if (buf != null) writeTable(buf, record, entries);
+			return true;
+		}
+
+		private static void writeTable(@NotNull ByteBuffer buf, int record, int entries) {
+			int buckets = tableBuckets(entries);
+			if (buckets == 0) return;
+			int table = record + 4 + entries * ENTRY_SIZE, mask = buckets - 1;
+			for (int i = 0; i < entries; ++i) {
+				int bucket = bucket(buf.getInt(record + 4 + i * ENTRY_SIZE) >>> 8, mask);
+				while (buf.getInt(table + (bucket << 2)) != 0)
+					bucket = bucket + 1 & mask;
+				buf.putInt(table + (bucket << 2), i + 1);
+			}
+		}
+
+		/**
+		 * Writes the record of the list, and either its elements or, if they are compounds or lists, pushes a target
+		 * that will write them
+		 */
+		@SuppressWarnings("DataFlowIssue")
+		private int writeList(@NotNull NbtList list)
+			throws OomException, NbtWriteException, FixedStack.FullStackException {
+			byte componentType = (byte) list.componentType.id;
+			Object array = list.array;
+			int len = array == null ? 0 : Array.getLength(array);
+			int elementSize = NbtType.fixedPayloadSize(componentType);
+			if (elementSize < 0) elementSize = 4;
+
+			int record = reserve(LIST_HEADER_SIZE + (long) len * elementSize), elements = record + LIST_HEADER_SIZE;
+			ByteBuffer buf = this.buf, bulk = this.bulk;
+			if (buf != null) {
+				buf.put(record, componentType);
+				buf.putInt(record + 1, len);
+			}
+			switch (componentType) {
+				case NbtType.tagList:
+				case NbtType.tagCompound: {
+					Object[] values = (Object[]) array;
+					if (len > 0)
+						nestedTarget.push(OomAware.tryRun(null, () -> new ListEncodingTarget(values, elements)));
+					return record;
+				}
+				case NbtType.tagByteArray:
+				case NbtType.tagIntArray:
+				case NbtType.tagLongArray:
+				case NbtType.tagString: {
+					Object[] values = (Object[]) array;
+					for (int i = 0; i < len; ++i) {
+						int child = writeLeaf(componentType, values[i]);
+						if (buf != null) buf.putInt(elements + (i << 2), child);
+					}
+					return record;
+				}
+				default:
+					if (bulk == null | len == 0) return record;
+			}
+			bulk.position(elements);
+			switch (componentType) {
+				case NbtType.tagByte:
+					bulk.put((byte[]) array);
+					break;
+				case NbtType.tagShort:
+					bulk.asShortBuffer().put((short[]) array);
+					break;
+				case NbtType.tagInt:
+					bulk.asIntBuffer().put((int[]) array);
+					break;
+				case NbtType.tagLong:
+					bulk.asLongBuffer().put((long[]) array);
+					break;
+				case NbtType.tagFloat:
+					bulk.asFloatBuffer().put((float[]) array);
+					break;
+				case NbtType.tagDouble:
+					bulk.asDoubleBuffer().put((double[]) array);
+					break;
+				default:
+					throw new AssertionError("Unknown list component type " + componentType);
+			}
+			return record;
+		}
+
+		/**
+		 * Writes the record of an array or a string
+		 */
+		@SuppressWarnings("DataFlowIssue")
+		private int writeLeaf(byte type, @NotNull Object value) throws OomException, NbtWriteException.InvalidString {
+			ByteBuffer buf = this.buf, bulk = this.bulk;
+			switch (type) {
+				case NbtType.tagByteArray: {
+					byte[] array = (byte[]) value;
+					int record = reserve(4 + (long) array.length);
+					if (buf == null) return record;
+					buf.putInt(record, array.length);
+					bulk.position(record + 4);
+					bulk.put(array);
+					return record;
+				}
+				case NbtType.tagIntArray: {
+					int[] array = (int[]) value;
+					int record = reserve(4 + ((long) array.length << 2));
+					if (buf == null) return record;
+					buf.putInt(record, array.length);
+					bulk.position(record + 4);
+					bulk.asIntBuffer().put(array);
+					return record;
+				}
+				case NbtType.tagLongArray: {
+					long[] array = (long[]) value;
+					int record = reserve(4 + ((long) array.length << 3));
+					if (buf == null) return record;
+					buf.putInt(record, array.length);
+					bulk.position(record + 4);
+					bulk.asLongBuffer().put(array);
+					return record;
+				}
+				case NbtType.tagString:
+					return writeString((String) value);
+				default:
+					throw new AssertionError("Unknown leaf type " + type);
+			}
+		}
+
+		/**
+		 * Writes the string in the modified UTF-8 format, so that it can be decoded by
+		 * {@link CheckedBigEndianDataInput#expectModifiedUtf8(short)}
+		 */
+		private int writeString(@NotNull String str) throws OomException, NbtWriteException.InvalidString {
+			int chars = str.length();
+			int bytes = chars;
+			for (int i = 0; i < chars; ++i) {
+				char c = str.charAt(i);
+				if (c >= 0x80 | c == 0) bytes += c >= 0x800 ? 2 : 1;
+			}
+			if (bytes > 0xFF_FF) throw new NbtWriteException.InvalidString(str, new ModifiedUtf8DataFormatException());
+
+			int record = reserve(4 + (long) bytes);
+			ByteBuffer buf = this.buf;
+			if (buf == null) return record;
+			buf.putInt(record, bytes);
+			int position = record + 4;
+			for (int i = 0; i < chars; ++i) {
+				char c = str.charAt(i);
+				if (c < 0x80 & c != 0) {
+					buf.put(position++, (byte) c);
+				} else if (c < 0x800) {
+					buf.put(position++, (byte) (0xC0 | c >> 6));
+					buf.put(position++, (byte) (0x80 | c & 0x3F));
+				} else {
+					buf.put(position++, (byte) (0xE0 | c >> 12));
+					buf.put(position++, (byte) (0x80 | c >> 6 & 0x3F));
+					buf.put(position++, (byte) (0x80 | c & 0x3F));
+				}
+			}
+			return record;
+		}
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="targets">
+	/**
+	 * Either a CompoundEncodingTarget or a ListEncodingTarget.
+	 * If the project used Java 17, this could be improved with sealed classes
+	 */
+	private interface EncodingTarget {
+	}
+
+	private static final class CompoundEncodingTarget implements EncodingTarget {
+		private final @NotNull NbtCompound compound;
+		private final int record;
+		private int idx;
+
+		CompoundEncodingTarget(@NotNull NbtCompound compound, int record) {
+			this.compound = compound;
+			this.record = record;
+		}
+	}
+
+	private static final class ListEncodingTarget implements EncodingTarget {
+		private final @NotNull Object @NotNull [] values;
+		/**
+		 * The offset of the first element of the record of the list
+		 */
+		private final int elements;
+		private int idx;
+
+		ListEncodingTarget(@NotNull Object @NotNull [] values, int elements) {
+			this.values = values;
+			this.elements = elements;
+		}
+	}
+
+	/**
+	 * Either a CompoundDecodingTarget or a ListDecodingTarget.
+	 * If the project used Java 17, this could be improved with sealed classes
+	 */
+	private interface DecodingTarget {
+	}
+
+	private static final class CompoundDecodingTarget implements DecodingTarget {
+		private final int record;
+		private final @NotNull NbtCompound compound;
+		private int idx;
+
+		CompoundDecodingTarget(int record, @NotNull NbtCompound compound) {
+			this.record = record;
+			this.compound = compound;
+		}
+	}
+
+	private static final class ListDecodingTarget implements DecodingTarget {
+		/**
+		 * The offset of the first element of the record of the list
+		 */
+		private final int elements;
+		/**
+		 * Either a {@code NbtCompound[]} or a {@code NbtList[]}
+		 */
+		private final @Nullable Object @NotNull [] values;
+		private int idx;
+
+		ListDecodingTarget(int elements, @Nullable Object @NotNull [] values) {
+			this.elements = elements;
+			this.values = values;
+		}
+
+		@NotNull
+		NbtList toList() {
+			return values instanceof NbtCompound[] ?
+				NbtList.create((NbtCompound[]) values) :
+				NbtList.create((NbtList[]) values);
+		}
+	}
+	// </editor-fold>
+}
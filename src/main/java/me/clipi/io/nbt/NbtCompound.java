@@ -29,28 +29,40 @@ import me.clipi.io.util.NestedToString;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Objects;
 
 /**
  * Implementation of a NBT Compound that avoids primitive-boxing
+ *
+ * <p>Compounds are not thread-safe, unless they have been {@link #freeze() frozen}
  */
 public final class NbtCompound extends ValuelessNbtCompound implements NestedToString, OomAware {
-	final @NotNull GrowableArray<byte[]> types;
-
-	@Nullable
-	GrowableArray<byte[]> bytes;
-	@Nullable
-	GrowableArray<short[]> shorts;
-	@Nullable
-	GrowableArray<int[]> ints;
-	@Nullable
-	GrowableArray<long[]> longs;
-	@Nullable
-	GrowableArray<float[]> floats;
-	@Nullable
-	GrowableArray<double[]> doubles;
-	@Nullable
-	GrowableArray<@NotNull Object[]> objects;
+	private static final int INITIAL_SLAB_CAPACITY = 4;
+	/**
+	 * The slabs are only compacted once they have more holes than entries, so that compacting them is amortized
+	 */
+	private static final int MIN_COMPACTED_HOLES = 8;
+
+	/**
+	 * The values of the entries with a primitive type, where floats and doubles are stored as their raw bits. Its
+	 * length may be greater than the amount of values.
+	 */
+	long @Nullable [] primitives;
+	/**
+	 * The values of the rest of the entries. Its length may be greater than the amount of values.
+	 */
+	@NotNull
+	Object @Nullable [] objects;
+	/**
+	 * Written once the whole tree has been frozen, so that its writes happen-before reading {@code true}
+	 */
+	private volatile boolean frozen;
+	/**
+	 * The hash of this compound, which is only cached once it has been frozen, since the values of mutable compounds
+	 * (and the arrays returned by their getters) may change at any time
+	 */
+	private int hash;
 
 	static void clinit() {
 		SaveCompoundSchema.nbtCompoundConstructor = NbtCompound::new;
@@ -58,182 +70,434 @@ public final class NbtCompound extends ValuelessNbtCompound implements NestedToS
 
 	private NbtCompound(@Nullable OomAware oomAware) throws OomException {
 		super(oomAware);
-		types = GrowableArray.bytes(this.oomAware);
+	}
+
+	@NotNull
+	public static NbtCompound create() throws OomException {
+		return OomAware.tryRun(null, () -> new NbtCompound(null));
 	}
 
 	public int entries() {
-		int len = super.entries();
-		assert len == types.getSize() &
-			   len == (bytes == null ? 0 : bytes.getSize()) +
-					  (shorts == null ? 0 : shorts.getSize()) +
-					  (ints == null ? 0 : ints.getSize()) +
-					  (longs == null ? 0 : longs.getSize()) +
-					  (floats == null ? 0 : floats.getSize()) +
-					  (doubles == null ? 0 : doubles.getSize()) +
-					  (objects == null ? 0 : objects.getSize());
+		NbtShape shape = this.shape;
+		int len = shape.entries;
+		assert len + shape.holes == shape.primitives + shape.objects &
+			   shape.primitives <= (primitives == null ? 0 : primitives.length) &
+			   shape.objects <= (objects == null ? 0 : objects.length);
 		return len;
 	}
 
 	public void recursivelyShrinkToFit() {
+		// Frozen trees are already trimmed, and must not be modified
+		if (frozen) return;
 		super.recursivelyShrinkToFit();
-		types.tryShrinkToFit();
-		if (bytes != null) bytes.tryShrinkToFit();
-		if (shorts != null) shorts.tryShrinkToFit();
-		if (ints != null) ints.tryShrinkToFit();
-		if (longs != null) longs.tryShrinkToFit();
-		if (floats != null) floats.tryShrinkToFit();
-		if (doubles != null) doubles.tryShrinkToFit();
-		if (objects != null) {
-			objects.tryShrinkToFit();
-			Object[] objects = this.objects.inner;
-			byte[] types = this.types.inner;
-			for (int i = 0, count = 0, len = this.objects.getSize(); count < len; ++i) {
-				if (types[i] == NbtType.tagCompound)
-					((NbtCompound) objects[count++]).recursivelyShrinkToFit();
-			}
+		trimSlabs();
+		NbtShape shape = this.shape;
+		Object[] objects = this.objects;
+		byte[] types = shape.types;
+		int[] slots = shape.slots;
+		for (int i = 0, len = shape.entries; i < len; ++i) {
+			if (types[i] == NbtType.tagCompound)
+				((NbtCompound) objects[slots[i]]).recursivelyShrinkToFit();
+		}
+	}
+
+	/**
+	 * Just like {@link GrowableArray#tryShrinkToFit()}, no memory will be freed to make the copies fit
+	 */
+	private void trimSlabs() {
+		long[] primitives = this.primitives;
+		int primitiveCount = shape.primitives;
+		if (primitives != null && primitives.length != primitiveCount) {
+			long[] trimmed = OomAware.tryRunOrNull(null, () -> Arrays.copyOf(primitives, primitiveCount));
+			if (trimmed != null) this.primitives = trimmed;
+		}
+		Object[] objects = this.objects;
+		int objectCount = shape.objects;
+		if (objects != null && objects.length != objectCount) {
+			Object[] trimmed = OomAware.tryRunOrNull(null, () -> Arrays.copyOf(objects, objectCount));
+			if (trimmed != null) this.objects = trimmed;
 		}
 	}
 
-	@SuppressWarnings("ConstantValue")
 	@Override
-	public void trySaveFromOom() {
-		// May be true while the object is being constructed
-		if (types == null) return;
+	void startParsing(@NotNull CompoundScratch scratch) {
+		super.startParsing(scratch);
+		primitives = scratch.primitives;
+		objects = scratch.objects;
+	}
+
+	@Override
+	void finish(@NotNull NbtShape.Interner shapes, @Nullable CompoundScratch scratch) throws OomException {
+		if (scratch == null) {
+			shape = shapes.intern(shape, false, oomAware);
+			trimSlabs();
+			return;
+		}
 
-		recursivelyShrinkToFit();
+		NbtShape built = shape;
+		int primitiveCount = built.primitives, objectCount = built.objects;
+		long[] primitives = this.primitives;
+		Object[] objects = this.objects;
+		// The slabs may have grown, so the scratch keeps the bigger ones
+		scratch.primitives = primitives;
+		scratch.objects = objects;
+
+		shape = shapes.intern(built, true, oomAware);
+		this.primitives = primitiveCount == 0 ? null :
+			OomAware.tryRun(oomAware, () -> Arrays.copyOf(primitives, primitiveCount));
+		this.objects = objectCount == 0 ? null :
+			OomAware.tryRun(oomAware, () -> Arrays.copyOf(objects, objectCount));
+		if (objects != null) Arrays.fill(objects, 0, objectCount, null);
+	}
+
+	/**
+	 * Makes this compound and all the compounds and lists it contains deeply immutable, trimming all of their arrays
+	 * first. Afterwards, any attempt to modify them will throw an {@link UnsupportedOperationException}.
+	 *
+	 * <p>Frozen trees may be shared between threads and read concurrently without locking, as long as they are
+	 * published after this method returns, or the reading threads check {@link #isFrozen()} first. The backing arrays
+	 * of the lists (and the values of the byte, int and long arrays) are still reachable, so they must not be modified
+	 * either.
+	 *
+	 * <p>The tree is walked without recursion, so it may be nested as deeply as parsed trees can be.
+	 *
+	 * @return This compound
+	 * @throws IllegalStateException if the tree is nested more deeply than a parsed tree could be, or it contains
+	 *                               itself
+	 */
+	@NotNull
+	public NbtCompound freeze() {
+		if (!frozen) NbtTrees.freeze(this);
+		return this;
+	}
+
+	/**
+	 * Compacts and trims the slabs, and shares the shape, before the nested values are frozen
+	 */
+	void prepareFreezing() {
+		if (shape.holes != 0) {
+			try {
+				compact();
+			} catch (OomException ex) {
+				// The holes just waste some memory
+			}
+		}
+		trimSlabs();
+		shape.share();
+	}
+
+	/**
+	 * Called once the nested values have been frozen, with the hash computed while walking them
+	 */
+	void markFrozen(int hash) {
+		this.hash = hash;
+		frozen = true;
+	}
+
+	public boolean isFrozen() {
+		return frozen;
 	}
 
 	// <editor-fold defaultstate="collapsed" desc="add methods">
-	@Override
-	void addKey(@NotNull String key, byte nbtType) throws OomException {
-		super.addKey(key, nbtType);
-		GrowableArray.add(types, nbtType);
+	private static int grownCapacity(int length) throws OomException {
+		int capacity = (int) Math.min(Math.max((long) length << 1, INITIAL_SLAB_CAPACITY), GrowableArray.MAX_ARRAY_SIZE);
+		if (capacity == length) throw OomException.INSTANCE;
+		return capacity;
+	}
+
+	/**
+	 * @return The slab of primitives, grown if needed so that the given slot fits
+	 */
+	private long @NotNull [] primitivesFor(int slot) throws OomException {
+		long[] primitives = this.primitives;
+		if (primitives != null && slot < primitives.length) return primitives;
+		int capacity = grownCapacity(slot);
+		return this.primitives = OomAware.tryRun(
+			oomAware, () -> primitives == null ? new long[capacity] : Arrays.copyOf(primitives, capacity));
+	}
+
+	/**
+	 * @return The slab of objects, grown if needed so that the given slot fits
+	 */
+	@NotNull
+	private Object @NotNull [] objectsFor(int slot) throws OomException {
+		Object[] objects = this.objects;
+		if (objects != null && slot < objects.length) return objects;
+		int capacity = grownCapacity(slot);
+		return this.objects = OomAware.tryRun(
+			oomAware, () -> objects == null ? new Object[capacity] : Arrays.copyOf(objects, capacity));
+	}
+
+	private void addPrimitive(@NotNull String key, byte nbtType, long value) throws OomException {
+		int slot = addKey(key, nbtType);
+		primitivesFor(slot)[slot] = value;
 	}
 
 	void collisionUnsafeAddByte(@NotNull String key, byte value) throws OomException {
-		addKey(key, NbtType.tagByte);
-		GrowableArray.add(bytes == null ? bytes = GrowableArray.bytes(oomAware) : bytes, value);
+		addPrimitive(key, NbtType.tagByte, value);
 	}
 
 	void collisionUnsafeAddShort(@NotNull String key, short value) throws OomException {
-		addKey(key, NbtType.tagShort);
-		GrowableArray.add(shorts == null ? shorts = GrowableArray.shorts(oomAware) : shorts, value);
+		addPrimitive(key, NbtType.tagShort, value);
 	}
 
 	void collisionUnsafeAddInt(@NotNull String key, int value) throws OomException {
-		addKey(key, NbtType.tagInt);
-		GrowableArray.add(ints == null ? ints = GrowableArray.ints(oomAware) : ints, value);
+		addPrimitive(key, NbtType.tagInt, value);
 	}
 
 	void collisionUnsafeAddLong(@NotNull String key, long value) throws OomException {
-		addKey(key, NbtType.tagLong);
-		GrowableArray.add(longs == null ? longs = GrowableArray.longs(oomAware) : longs, value);
+		addPrimitive(key, NbtType.tagLong, value);
 	}
 
 	void collisionUnsafeAddFloat(@NotNull String key, float value) throws OomException {
-		addKey(key, NbtType.tagFloat);
-		GrowableArray.add(floats == null ? floats = GrowableArray.floats(oomAware) : floats, value);
+		addPrimitive(key, NbtType.tagFloat, Float.floatToRawIntBits(value));
 	}
 
 	void collisionUnsafeAddDouble(@NotNull String key, double value) throws OomException {
-		addKey(key, NbtType.tagDouble);
-		GrowableArray.add(doubles == null ? doubles = GrowableArray.doubles(oomAware) : doubles, value);
+		addPrimitive(key, NbtType.tagDouble, Double.doubleToRawLongBits(value));
 	}
 
 	void collisionUnsafeAddObject(@NotNull String key, @NotNull Object value, byte nbtType) throws OomException {
-		addKey(key, nbtType);
-		GrowableArray.add(objects == null ? objects = GrowableArray.generic(Object.class, oomAware) : objects, value);
+		int slot = addKey(key, nbtType);
+		objectsFor(slot)[slot] = value;
 	}
 	// </editor-fold>
 
-	@Nullable
-	public NbtType typeForKey(@NotNull String key) {
-		String[] keys = this.keys.inner;
-		for (int i = entries() - 1; i >= 0; --i) {
-			if (key.equals(keys[i]))
-				return NbtType.values()[types.inner[i]];
+	private void checkNotFrozen() {
+		if (frozen) throw new UnsupportedOperationException("Frozen compounds cannot be modified");
+	}
+
+	@NotNull
+	private NbtShape unsharedShape() throws OomException {
+		NbtShape shape = this.shape;
+		return shape.isShared() ? this.shape = shape.copy(oomAware) : shape;
+	}
+
+	/**
+	 * Setting the value of an entry that already has the same type doesn't modify the keys of this compound, so its
+	 * {@link NbtShape} may still be shared. Otherwise, the shape will only be copied the first time.
+	 *
+	 * @return The slot of the entry with the given key, after adding it or changing its type if needed
+	 */
+	private int slotForPut(@NotNull String key, byte nbtType) throws OomException {
+		checkNotFrozen();
+		int idx = indexOf(key);
+		if (idx < 0) return addKey(key, nbtType);
+		NbtShape shape = this.shape;
+		byte[] types = shape.types;
+		if (types[idx] == nbtType) return shape.slots[idx];
+
+		shape = unsharedShape();
+		int prevSlot = shape.slots[idx];
+		if (types[idx] >= NbtType.tagByteArray) {
+			assert objects != null;
+			objects[prevSlot] = null;
+		}
+		return shape.retype(idx, nbtType);
+	}
+
+	/**
+	 * Moves the values to new slabs without holes, once there are enough of them
+	 */
+	private void compactIfSparse() throws OomException {
+		NbtShape shape = this.shape;
+		if (shape.holes >= MIN_COMPACTED_HOLES & shape.holes > shape.entries) compact();
+	}
+
+	/**
+	 * Moves the values to new slabs without holes
+	 */
+	private void compact() throws OomException {
+		NbtShape shape = this.shape;
+		int entries = shape.entries;
+		assert !shape.isShared();
+
+		byte[] types = shape.types;
+		int[] slots = shape.slots;
+		int primitives = 0;
+		for (int i = 0; i < entries; ++i)
+			if (types[i] < NbtType.tagByteArray) ++primitives;
+		int primitiveCount = primitives, objectCount = entries - primitives;
+
+		long[] oldPrimitives = this.primitives;
+		Object[] oldObjects = this.objects;
+		long[] newPrimitives = primitiveCount == 0 ? null : OomAware.tryRun(oomAware, () -> new long[primitiveCount]);
+		Object[] newObjects = objectCount == 0 ? null : OomAware.tryRun(oomAware, () -> new Object[objectCount]);
+		for (int i = 0, p = 0, o = 0; i < entries; ++i) {
+			int slot = slots[i];
+			if (types[i] < NbtType.tagByteArray) {
+				assert oldPrimitives != null & newPrimitives != null;
+				newPrimitives[p] = oldPrimitives[slot];
+				slots[i] = p++;
+			} else {
+				assert oldObjects != null & newObjects != null;
+				newObjects[o] = oldObjects[slot];
+				slots[i] = o++;
+			}
 		}
-		return null;
+		this.primitives = newPrimitives;
+		this.objects = newObjects;
+		shape.primitives = primitiveCount;
+		shape.objects = objectCount;
+		shape.holes = 0;
 	}
 
-	private int indexForKeyWithTypeOrNeg(@NotNull String key, byte nbtType) throws NbtParseException.UnexpectedTagType {
-		assert nbtType > 0 & nbtType < 13;
+	private void putPrimitive(@NotNull String key, byte nbtType, long value) throws OomException {
+		int slot = slotForPut(key, nbtType);
+		primitivesFor(slot)[slot] = value;
+		compactIfSparse();
+	}
 
-		String[] keys = this.keys.inner;
-		byte[] types = this.types.inner;
-		int len = entries();
+	private void putObject(@NotNull String key, byte nbtType, @NotNull Object value) throws OomException {
+		int slot = slotForPut(key, nbtType);
+		objectsFor(slot)[slot] = value;
+		compactIfSparse();
+	}
 
-		int count = 0;
-		boolean isObj = nbtType >= NbtType.tagByteArray;
+	// <editor-fold defaultstate="collapsed" desc="put methods">
+	public void putByte(@NotNull String key, byte value) throws OomException {
+		putPrimitive(key, NbtType.tagByte, value);
+	}
 
-		for (int i = 0; i < len; ++i) {
-			if (key.equals(keys[i])) {
-				if (types[i] != nbtType)
-					throw new NbtParseException.UnexpectedTagType(NbtType.values()[nbtType], types[i]);
-				return count;
-			}
-			byte actualType = types[i];
-			if (actualType == nbtType | (isObj & actualType >= NbtType.tagByteArray)) ++count;
+	public void putShort(@NotNull String key, short value) throws OomException {
+		putPrimitive(key, NbtType.tagShort, value);
+	}
+
+	public void putInt(@NotNull String key, int value) throws OomException {
+		putPrimitive(key, NbtType.tagInt, value);
+	}
+
+	public void putLong(@NotNull String key, long value) throws OomException {
+		putPrimitive(key, NbtType.tagLong, value);
+	}
+
+	public void putFloat(@NotNull String key, float value) throws OomException {
+		putPrimitive(key, NbtType.tagFloat, Float.floatToRawIntBits(value));
+	}
+
+	public void putDouble(@NotNull String key, double value) throws OomException {
+		putPrimitive(key, NbtType.tagDouble, Double.doubleToRawLongBits(value));
+	}
+
+	public void putByteArray(@NotNull String key, byte @NotNull [] value) throws OomException {
+		putObject(key, NbtType.tagByteArray, Objects.requireNonNull(value));
+	}
+
+	public void putIntArray(@NotNull String key, int @NotNull [] value) throws OomException {
+		putObject(key, NbtType.tagIntArray, Objects.requireNonNull(value));
+	}
+
+	public void putLongArray(@NotNull String key, long @NotNull [] value) throws OomException {
+		putObject(key, NbtType.tagLongArray, Objects.requireNonNull(value));
+	}
+
+	public void putString(@NotNull String key, @NotNull String value) throws OomException {
+		putObject(key, NbtType.tagString, Objects.requireNonNull(value));
+	}
+
+	public void putList(@NotNull String key, @NotNull NbtList value) throws OomException {
+		putObject(key, NbtType.tagList, Objects.requireNonNull(value));
+	}
+
+	/**
+	 * The compound must not contain this compound, since trees cannot be cyclic. Only the trivial case is checked.
+	 */
+	public void putCompound(@NotNull String key, @NotNull NbtCompound value) throws OomException {
+		if (value == this) throw new IllegalArgumentException("A compound cannot contain itself");
+		putObject(key, NbtType.tagCompound, value);
+	}
+	// </editor-fold>
+
+	/**
+	 * Removes the entry with the given key, moving the last entry to its position
+	 *
+	 * @return Whether the key was present
+	 */
+	public boolean remove(@NotNull String key) throws OomException {
+		checkNotFrozen();
+		int idx = indexOf(key);
+		if (idx < 0) return false;
+		NbtShape shape = unsharedShape();
+		if (shape.types[idx] >= NbtType.tagByteArray) {
+			assert objects != null;
+			objects[shape.slots[idx]] = null;
 		}
-		return -1;
+		shape.swapRemove(idx);
+		compactIfSparse();
+		return true;
 	}
 
-	private int indexForKeyWithTypeOrThrow(@NotNull String key, byte nbtType)
+	@Nullable
+	public NbtType typeForKey(@NotNull String key) {
+		int idx = indexOf(key);
+		return idx < 0 ? null : NbtType.values()[shape.types[idx]];
+	}
+
+	private int slotForKeyWithTypeOrNeg(@NotNull String key, byte nbtType) throws NbtParseException.UnexpectedTagType {
+		assert nbtType > 0 & nbtType < 13;
+
+		NbtShape shape = this.shape;
+		int idx = shape.indexOf(key);
+		if (idx < 0) return -1;
+		byte actualType = shape.types[idx];
+		if (actualType != nbtType) throw new NbtParseException.UnexpectedTagType(NbtType.values()[nbtType], actualType);
+		return shape.slots[idx];
+	}
+
+	private int slotForKeyWithTypeOrThrow(@NotNull String key, byte nbtType)
 		throws NbtParseException.UnexpectedTagType, NbtKeyNotFoundException {
-		int i = indexForKeyWithTypeOrNeg(key, nbtType);
+		int i = slotForKeyWithTypeOrNeg(key, nbtType);
 		if (i < 0) throw new NbtKeyNotFoundException(oomAware, key, this);
 		return i;
 	}
 
+	/**
+	 * @return The primitive value of the entry with the given key
+	 */
+	private long primitiveForKeyOrThrow(@NotNull String key, byte nbtType)
+		throws NbtParseException.UnexpectedTagType, NbtKeyNotFoundException {
+		int slot = slotForKeyWithTypeOrThrow(key, nbtType);
+		assert primitives != null;
+		return primitives[slot];
+	}
+
 	// <editor-fold defaultstate="collapsed" desc="get methods">
 	public byte getByteOrThrow(@NotNull String key) throws NbtParseException.UnexpectedTagType,
 														   NbtKeyNotFoundException {
-		int idx = indexForKeyWithTypeOrThrow(key, NbtType.tagByte);
-		assert bytes != null;
-		return bytes.inner[idx];
+		return (byte) primitiveForKeyOrThrow(key, NbtType.tagByte);
 	}
 
 	public short getShortOrThrow(@NotNull String key) throws NbtParseException.UnexpectedTagType,
 															 NbtKeyNotFoundException {
-		int idx = indexForKeyWithTypeOrThrow(key, NbtType.tagShort);
-		assert shorts != null;
-		return shorts.inner[idx];
+		return (short) primitiveForKeyOrThrow(key, NbtType.tagShort);
 	}
 
 	public int getIntOrThrow(@NotNull String key) throws NbtParseException.UnexpectedTagType,
 														 NbtKeyNotFoundException {
-		int idx = indexForKeyWithTypeOrThrow(key, NbtType.tagInt);
-		assert ints != null;
-		return ints.inner[idx];
+		return (int) primitiveForKeyOrThrow(key, NbtType.tagInt);
 	}
 
 	public long getLongOrThrow(@NotNull String key) throws NbtParseException.UnexpectedTagType,
 														   NbtKeyNotFoundException {
-		int idx = indexForKeyWithTypeOrThrow(key, NbtType.tagLong);
-		assert longs != null;
-		return longs.inner[idx];
+		return primitiveForKeyOrThrow(key, NbtType.tagLong);
 	}
 
 	public float getFloatOrThrow(@NotNull String key) throws NbtParseException.UnexpectedTagType,
 															 NbtKeyNotFoundException {
-		int idx = indexForKeyWithTypeOrThrow(key, NbtType.tagFloat);
-		assert floats != null;
-		return floats.inner[idx];
+		return Float.intBitsToFloat((int) primitiveForKeyOrThrow(key, NbtType.tagFloat));
 	}
 
 	public double getDoubleOrThrow(@NotNull String key) throws NbtParseException.UnexpectedTagType,
 															   NbtKeyNotFoundException {
-		int idx = indexForKeyWithTypeOrThrow(key, NbtType.tagDouble);
-		assert bytes != null;
-		return bytes.inner[idx];
+		return Double.longBitsToDouble(primitiveForKeyOrThrow(key, NbtType.tagDouble));
 	}
 
 	@SuppressWarnings("unchecked")
 	@Nullable
 	private <T> T getObjectOrNull(@NotNull String key, byte nbtType) throws NbtParseException.UnexpectedTagType {
-		int idx = indexForKeyWithTypeOrNeg(key, nbtType);
-		assert idx < 0 | objects != null;
-		return idx < 0 ? null : (T) objects.inner[idx];
+		int slot = slotForKeyWithTypeOrNeg(key, nbtType);
+		assert slot < 0 | objects != null;
+		return slot < 0 ? null : (T) objects[slot];
 	}
 
 	@NotNull
@@ -302,66 +566,82 @@ public final class NbtCompound extends ValuelessNbtCompound implements NestedToS
 	@SuppressWarnings("DataFlowIssue")
 	public void copyTo(@NotNull NbtCompound dest) throws OomException, NbtParseException.DuplicatedKey {
 		// <editor-fold defaultstate="collapsed" desc="code">
-		String[] keys = this.keys.inner;
-		byte[] types = this.types.inner;
-
-		byte[] bytes = this.bytes == null ? null : this.bytes.inner;
-		short[] shorts = this.shorts == null ? null : this.shorts.inner;
-		int[] ints = this.ints == null ? null : this.ints.inner;
-		long[] longs = this.longs == null ? null : this.longs.inner;
-		float[] floats = this.floats == null ? null : this.floats.inner;
-		double[] doubles = this.doubles == null ? null : this.doubles.inner;
-		Object[] objects = this.objects == null ? null : this.objects.inner;
+		dest.checkNotFrozen();
+		NbtShape shape = this.shape;
+		String[] keys = shape.keys;
+		byte[] types = shape.types;
+		int[] slots = shape.slots;
 
-		int bCount = 0, sCount = 0, iCount = 0, lCount = 0, fCount = 0, dCount = 0, oCount = 0;
+		long[] primitives = this.primitives;
+		Object[] objects = this.objects;
 
-		for (int i = 0, len = entries(); i < len; ++i) {
+		for (int i = 0, len = shape.entries; i < len; ++i) {
 			String key = keys[i];
 			if (dest.containsKey(key)) throw new NbtParseException.DuplicatedKey(oomAware, key, dest);
-			switch (types[i]) {
-				case NbtType.tagByte:
-					dest.collisionUnsafeAddByte(key, bytes[bCount++]);
-					break;
-				case NbtType.tagShort:
-					dest.collisionUnsafeAddShort(key, shorts[sCount++]);
-					break;
-				case NbtType.tagInt:
-					dest.collisionUnsafeAddInt(key, ints[iCount++]);
-					break;
-				case NbtType.tagLong:
-					dest.collisionUnsafeAddLong(key, longs[lCount++]);
-					break;
-				case NbtType.tagFloat:
-					dest.collisionUnsafeAddFloat(key, floats[fCount++]);
-					break;
-				case NbtType.tagDouble:
-					dest.collisionUnsafeAddDouble(key, doubles[dCount++]);
-					break;
-				case NbtType.tagByteArray:
-					dest.collisionUnsafeAddByteArray(key, (byte[]) objects[oCount++]);
-					break;
-				case NbtType.tagIntArray:
-					dest.collisionUnsafeAddIntArray(key, (int[]) objects[oCount++]);
-					break;
-				case NbtType.tagLongArray:
-					dest.collisionUnsafeAddLongArray(key, (long[]) objects[oCount++]);
-					break;
-				case NbtType.tagString:
-					dest.collisionUnsafeAddString(key, (String) objects[oCount++]);
-					break;
-				case NbtType.tagList:
-					dest.collisionUnsafeAddList(key, (NbtList) objects[oCount++]);
-					break;
-				case NbtType.tagCompound:
-					dest.collisionUnsafeAddCompound(key, (NbtCompound) objects[oCount++]);
-					break;
-				default:
-					throw new IllegalStateException();
-			}
+			byte type = types[i];
+			int slot = slots[i];
+			if (type < NbtType.tagByteArray) dest.addPrimitive(key, type, primitives[slot]);
+			else dest.collisionUnsafeAddObject(key, objects[slot], type);
 		}
 		// </editor-fold>
 	}
 
+	/**
+	 * package-private
+	 *
+	 * @return The value of the entry at the given index, which is boxed if its type is primitive
+	 */
+	@SuppressWarnings("DataFlowIssue")
+	@NotNull
+	Object valueAt(int idx) {
+		NbtShape shape = this.shape;
+		int slot = shape.slots[idx];
+		switch (shape.types[idx]) {
+			case NbtType.tagByte:
+				return (byte) primitives[slot];
+			case NbtType.tagShort:
+				return (short) primitives[slot];
+			case NbtType.tagInt:
+				return (int) primitives[slot];
+			case NbtType.tagLong:
+				return primitives[slot];
+			case NbtType.tagFloat:
+				return Float.intBitsToFloat((int) primitives[slot]);
+			case NbtType.tagDouble:
+				return Double.longBitsToDouble(primitives[slot]);
+			default:
+				return objects[slot];
+		}
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="equals and hashCode">
+	/**
+	 * The hash is cached once this compound has been {@link #freeze() frozen}, so frozen trees are cheap to use as
+	 * keys of hash tables. Otherwise, it is computed on every call, since the values of mutable compounds (and the
+	 * arrays returned by their getters) may change at any time.
+	 *
+	 * @throws IllegalStateException if the tree is nested more deeply than a parsed tree could be, or it contains
+	 *                               itself
+	 */
+	@Override
+	public int hashCode() {
+		return frozen ? hash : NbtTrees.hashCode(this);
+	}
+
+	/**
+	 * Two compounds are equal if they have the same keys, and the values of each key have the same type and are equal,
+	 * regardless of the order of their entries. Arrays are compared by their contents, and floats and doubles just
+	 * like in {@link Float#equals} and {@link Double#equals}.
+	 *
+	 * @throws IllegalStateException if the trees are nested more deeply than a parsed tree could be, or they contain
+	 *                               themselves
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof NbtCompound && NbtTrees.equals(this, obj);
+	}
+	// </editor-fold>
+
 	@Override
 	@NotNull
 	public String toString() {
@@ -370,15 +650,8 @@ public final class NbtCompound extends ValuelessNbtCompound implements NestedToS
 
 	@Override
 	public void toString(@NotNull Nester nester) {
-		String[] keys = this.keys.inner;
-		byte[] types = this.types.inner;
-
-		GrowableArray<?>[] arrays = { null, bytes, shorts, ints, longs, floats, doubles, objects };
-		int[] count = new int[8];
-
-		for (int i = 0, len = entries(); i < len; ++i) {
-			int type = Math.min(types[i], NbtType.tagByteArray);
-			nester.append(keys[i], Array.get(arrays[type].inner, count[type]++));
-		}
+		String[] keys = shape.keys;
+		for (int i = 0, len = entries(); i < len; ++i)
+			nester.append(keys[i], valueAt(i));
 	}
 }
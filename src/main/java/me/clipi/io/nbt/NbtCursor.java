@@ -0,0 +1,388 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io.nbt;
+
+import me.clipi.io.CheckedBigEndianDataInput;
+import me.clipi.io.EofException;
+import me.clipi.io.ModifiedUtf8Interner;
+import me.clipi.io.NotEofException;
+import me.clipi.io.OomException;
+import me.clipi.io.nbt.exceptions.NbtParseException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Pull-based reader of NBT root tags, which lets the caller decide which values are read and when to stop, without
+ * creating any {@link NbtCompound} nor {@link NbtList}.
+ *
+ * <p>Each call to {@link #nextToken()} advances to the next token of the input. Whenever it returns
+ * {@link Token#VALUE}, the value may be read with the typed getter corresponding to {@link #currentType()}; if it is
+ * not read, it will be skipped by the next call to {@link #nextToken()}. After the root compound has been closed by
+ * {@link Token#END_COMPOUND}, the next call to {@link #nextToken()} starts reading the next root tag.
+ *
+ * <p>This cursor is not thread-safe.
+ *
+ * @see NbtParser
+ * @see NbtVisitor
+ */
+public final class NbtCursor<ReadException extends Exception> implements AutoCloseable {
+	public enum Token {
+		/**
+		 * The start of a compound. For the root compound, {@link #currentKey()} is the name of the root tag.
+		 */
+		START_COMPOUND,
+		END_COMPOUND,
+		/**
+		 * The start of a list, whose elements are described by {@link #listComponentType()} and {@link #listLength()}
+		 */
+		START_LIST,
+		END_LIST,
+		/**
+		 * A value that is neither a compound nor a list
+		 */
+		VALUE
+	}
+
+	private static final int COMPOUND = -1, NO_VALUE = -1;
+
+	private final @NotNull CheckedBigEndianDataInput<ReadException> di;
+	/**
+	 * Shares the way keys, strings and lengths are read and values are skipped with {@link NbtParser}
+	 */
+	private final @NotNull NbtPayloadReader<ReadException> payloads;
+
+	/**
+	 * For each nested compound or list, {@link #COMPOUND} or the type of the elements of the list, and the amount of
+	 * elements left to read
+	 */
+	private final int @NotNull [] frameType, frameRemaining;
+	private int frames;
+
+	private @Nullable Token token;
+	private @Nullable NbtType currentType, listComponentType;
+	private @Nullable String currentKey;
+	private int listLength;
+	/**
+	 * The type of the current {@link Token#VALUE} if it has not been read yet, or {@link #NO_VALUE}
+	 */
+	private int pendingType = NO_VALUE;
+
+	public NbtCursor(@NotNull CheckedBigEndianDataInput<ReadException> di) {
+		this(di, new ModifiedUtf8Interner());
+	}
+
+	/**
+	 * @param keys The cache of the names of the tags, which may be shared with other cursors and parsers
+	 */
+	public NbtCursor(@NotNull CheckedBigEndianDataInput<ReadException> di, @NotNull ModifiedUtf8Interner keys) {
+		this.di = di;
+		this.payloads = new NbtPayloadReader<>(di, keys);
+		this.frameType = new int[NbtParser.NESTED_MAX_DEPTH];
+		this.frameRemaining = new int[NbtParser.NESTED_MAX_DEPTH];
+	}
+
+	@Override
+	public void close() throws ReadException {
+		di.close();
+	}
+
+	/**
+	 * Discards whatever is left of the current root tag, so that the cursor can be used to read the next one
+	 */
+	public void closeCurrent() throws ReadException {
+		frames = 0;
+		token = null;
+		currentType = listComponentType = null;
+		currentKey = null;
+		pendingType = NO_VALUE;
+		di.closeCurrent();
+	}
+
+	@NotNull
+	public Token nextToken() throws ReadException, OomException, NbtParseException {
+		try {
+			if (pendingType != NO_VALUE) {
+				int type = pendingType;
+				pendingType = NO_VALUE;
+				payloads.skipPayloads(type, 1, frames);
+			}
+			if (frames == 0) {
+				di.expectedByteFail(NbtType.tagCompound, type -> {
+					throw new NbtParseException.UnexpectedTagType(NbtType.Compound, type);
+				});
+				currentKey = payloads.readString();
+				return startValue(NbtType.tagCompound);
+			}
+
+			int top = frames - 1;
+			int elementType = frameType[top];
+			if (elementType == COMPOUND) {
+				int type = di.expectByte();
+				if (type == NbtType.tagEnd) {
+					currentKey = null;
+					currentType = NbtType.Compound;
+					endFrame();
+					return token = Token.END_COMPOUND;
+				}
+				currentKey = payloads.readString();
+				return startValue(type);
+			}
+
+			currentKey = null;
+			int remaining = frameRemaining[top];
+			if (remaining == 0) {
+				currentType = NbtType.List;
+				endFrame();
+				return token = Token.END_LIST;
+			}
+			frameRemaining[top] = remaining - 1;
+			return startValue(elementType);
+		} catch (NotEofException ex) {
+			throw new NbtParseException.NotEofException(ex);
+		} catch (EofException ex) {
+			throw new NbtParseException.EofException(ex);
+		}
+	}
+
+	@NotNull
+	private Token startValue(int type) throws ReadException, EofException, NbtParseException {
+		NbtType nbtType = NbtType.getByIdOrNull(type);
+		if (nbtType == null | type == NbtType.tagEnd) throw new NbtParseException.UnknownTagType(type);
+		currentType = nbtType;
+		switch (type) {
+			case NbtType.tagCompound:
+				pushFrame(COMPOUND, 0);
+				return token = Token.START_COMPOUND;
+			case NbtType.tagList: {
+				int componentType = di.expectByte();
+				int len = payloads.readArrayLen();
+				NbtType component;
+				if (len == 0) {
+					component = NbtType.End;
+				} else {
+					if (componentType == NbtType.tagEnd)
+						throw new NbtParseException.UnexpectedTagType(null, componentType);
+					component = NbtType.getByIdOrNull(componentType);
+					if (component == null) throw new NbtParseException.UnknownTagType(componentType);
+				}
+				pushFrame(componentType, len);
+				listComponentType = component;
+				listLength = len;
+				return token = Token.START_LIST;
+			}
+			default:
+				pendingType = type;
+				return token = Token.VALUE;
+		}
+	}
+
+	private void pushFrame(int type, int remaining) throws NbtParseException.InvalidDataStructureSize {
+		int frames = this.frames;
+		if (frames == NbtParser.NESTED_MAX_DEPTH) throw new NbtParseException.InvalidDataStructureSize(frames + 1);
+		frameType[frames] = type;
+		frameRemaining[frames] = remaining;
+		this.frames = frames + 1;
+	}
+
+	private void endFrame() throws ReadException, NotEofException {
+		if (--frames == 0) {
+			di.expectEnd();
+			di.closeCurrent();
+		}
+	}
+
+	/**
+	 * Skips the value of the current token. If it is {@link Token#START_COMPOUND} or {@link Token#START_LIST}, the
+	 * whole compound or list is skipped, and its end token will not be returned. Otherwise, nothing happens.
+	 */
+	public void skipValue() throws ReadException, OomException, NbtParseException {
+		try {
+			if (pendingType != NO_VALUE) {
+				int type = pendingType;
+				pendingType = NO_VALUE;
+				payloads.skipPayloads(type, 1, frames);
+			} else if (token == Token.START_COMPOUND | token == Token.START_LIST) {
+				int top = frames - 1;
+				int elementType = frameType[top];
+				if (elementType == COMPOUND) {
+					payloads.skipPayloads(NbtType.tagCompound, 1, top);
+				} else {
+					payloads.skipPayloads(elementType, frameRemaining[top], frames);
+				}
+				token = null;
+				endFrame();
+			}
+		} catch (NotEofException ex) {
+			throw new NbtParseException.NotEofException(ex);
+		} catch (EofException ex) {
+			throw new NbtParseException.EofException(ex);
+		}
+	}
+
+	/**
+	 * @return The token that was last returned by {@link #nextToken()}, or {@code null} if there is none or if it
+	 * was skipped by {@link #skipValue()}
+	 */
+	@Nullable
+	public Token currentToken() {
+		return token;
+	}
+
+	/**
+	 * @return The key of the current value if it is an entry of a compound, or the name of the root tag if the
+	 * current token is the {@link Token#START_COMPOUND} of the root tag, or {@code null} otherwise
+	 */
+	@Nullable
+	public String currentKey() {
+		return currentKey;
+	}
+
+	/**
+	 * @return The type of the current value, compound or list
+	 */
+	@Nullable
+	public NbtType currentType() {
+		return currentType;
+	}
+
+	/**
+	 * @return The type of the elements of the list of the last {@link Token#START_LIST}, which is
+	 * {@link NbtType#End} if the list is empty
+	 */
+	@Nullable
+	public NbtType listComponentType() {
+		return listComponentType;
+	}
+
+	/**
+	 * @return The length of the list of the last {@link Token#START_LIST}
+	 */
+	public int listLength() {
+		return listLength;
+	}
+
+	/**
+	 * @return The amount of compounds and lists that are currently open, including the root compound
+	 */
+	public int depth() {
+		return frames;
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="typed getters">
+	private void expectValue(@NotNull NbtType type) throws NbtParseException.UnexpectedTagType {
+		int pendingType = this.pendingType;
+		if (pendingType == NO_VALUE) throw new IllegalStateException("There is no value to be read");
+		if (pendingType != type.id) throw new NbtParseException.UnexpectedTagType(type, pendingType);
+		this.pendingType = NO_VALUE;
+	}
+
+	public byte getByte() throws ReadException, NbtParseException {
+		expectValue(NbtType.Byte);
+		try {
+			return (byte) di.expectByte();
+		} catch (EofException ex) {
+			throw new NbtParseException.EofException(ex);
+		}
+	}
+
+	public short getShort() throws ReadException, NbtParseException {
+		expectValue(NbtType.Short);
+		try {
+			return (short) di.expectShort();
+		} catch (EofException ex) {
+			throw new NbtParseException.EofException(ex);
+		}
+	}
+
+	public int getInt() throws ReadException, NbtParseException {
+		expectValue(NbtType.Int);
+		try {
+			return di.expectInt();
+		} catch (EofException ex) {
+			throw new NbtParseException.EofException(ex);
+		}
+	}
+
+	public long getLong() throws ReadException, NbtParseException {
+		expectValue(NbtType.Long);
+		try {
+			return di.expectLong();
+		} catch (EofException ex) {
+			throw new NbtParseException.EofException(ex);
+		}
+	}
+
+	public float getFloat() throws ReadException, NbtParseException {
+		expectValue(NbtType.Float);
+		try {
+			return di.expectFloat();
+		} catch (EofException ex) {
+			throw new NbtParseException.EofException(ex);
+		}
+	}
+
+	public double getDouble() throws ReadException, NbtParseException {
+		expectValue(NbtType.Double);
+		try {
+			return di.expectDouble();
+		} catch (EofException ex) {
+			throw new NbtParseException.EofException(ex);
+		}
+	}
+
+	@NotNull
+	public String getString() throws ReadException, OomException, NbtParseException {
+		expectValue(NbtType.String);
+		try {
+			return payloads.readStringValue();
+		} catch (EofException ex) {
+			throw new NbtParseException.EofException(ex);
+		}
+	}
+
+	public byte @NotNull [] getByteArray() throws ReadException, OomException, NbtParseException {
+		expectValue(NbtType.ByteArray);
+		try {
+			return di.expectByteArray(payloads.readArrayLen());
+		} catch (EofException ex) {
+			throw new NbtParseException.EofException(ex);
+		}
+	}
+
+	public int @NotNull [] getIntArray() throws ReadException, OomException, NbtParseException {
+		expectValue(NbtType.IntArray);
+		try {
+			return di.expectIntArray(payloads.readArrayLen());
+		} catch (EofException ex) {
+			throw new NbtParseException.EofException(ex);
+		}
+	}
+
+	public long @NotNull [] getLongArray() throws ReadException, OomException, NbtParseException {
+		expectValue(NbtType.LongArray);
+		try {
+			return di.expectLongArray(payloads.readArrayLen());
+		} catch (EofException ex) {
+			throw new NbtParseException.EofException(ex);
+		}
+	}
+	// </editor-fold>
+}
@@ -22,11 +22,23 @@ package me.clipi.io.nbt;
 
 import me.clipi.io.OomException;
 import me.clipi.io.OomException.OomAware;
+import me.clipi.io.nbt.exceptions.NbtParseException;
+import me.clipi.io.util.GrowableArray;
 import me.clipi.io.util.NestedToString;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.Serializable;
 import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 /**
  * Represents a NBT List
@@ -37,6 +49,14 @@ import java.lang.reflect.Array;
 public final class NbtList implements NestedToString {
 	public final @NotNull NbtType componentType;
 	public final @Nullable Object array;
+	/**
+	 * Written once the whole list has been frozen, so that its writes happen-before reading {@code true}
+	 */
+	private volatile boolean frozen;
+	/**
+	 * The hash of this list, which is only cached once it has been frozen
+	 */
+	private int hash;
 
 	@Override
 	@NotNull
@@ -51,7 +71,58 @@ public final class NbtList implements NestedToString {
 			  .append("array", array);
 	}
 
-	public static final NbtList EMPTY_LIST = new NbtList();
+	/**
+	 * Freezes all the compounds and lists this list contains, just like {@link NbtCompound#freeze()}. The backing
+	 * array cannot be made immutable, so it must not be modified afterwards.
+	 *
+	 * @return This list
+	 */
+	@NotNull
+	public NbtList freeze() {
+		if (!frozen) NbtTrees.freeze(this);
+		return this;
+	}
+
+	/**
+	 * Called once the nested values have been frozen, with the hash computed while walking them
+	 */
+	void markFrozen(int hash) {
+		this.hash = hash;
+		frozen = true;
+	}
+
+	boolean hasNestedValues() {
+		return componentType == NbtType.Compound | componentType == NbtType.List;
+	}
+
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * The hash is cached once this list has been {@link #freeze() frozen}. Otherwise, it is computed on every call.
+	 *
+	 * @throws IllegalStateException if the tree is nested more deeply than a parsed tree could be, or it contains
+	 *                               itself
+	 */
+	@Override
+	public int hashCode() {
+		return frozen ? hash : NbtTrees.hashCode(this);
+	}
+
+	/**
+	 * Two lists are equal if they have the same component type and their elements are equal, just like in
+	 * {@link Arrays#deepEquals}
+	 *
+	 * @throws IllegalStateException if the trees are nested more deeply than a parsed tree could be, or they contain
+	 *                               themselves
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof NbtList && NbtTrees.equals(this, obj);
+	}
+
+	public static final NbtList EMPTY_LIST = new NbtList().freeze();
 
 	private NbtList() {
 		// Empty list instance
@@ -164,4 +235,384 @@ public final class NbtList implements NestedToString {
 		return OomAware.tryRun(oomAware, () -> new NbtList(NbtType.Compound, array));
 	}
 	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="typed views">
+	/**
+	 * @return The backing array if the list has the expected component type, or {@code null} if the list is empty
+	 */
+	@Nullable
+	private Object arrayOf(@NotNull NbtType expectedType) throws NbtParseException.UnexpectedTagType {
+		if (componentType != expectedType & componentType != NbtType.End)
+			throw new NbtParseException.UnexpectedTagType(expectedType, componentType.id);
+		return array;
+	}
+
+	private static final byte[] EMPTY_BYTES = {};
+	private static final short[] EMPTY_SHORTS = {};
+	private static final int[] EMPTY_INTS = {};
+	private static final long[] EMPTY_LONGS = {};
+	private static final float[] EMPTY_FLOATS = {};
+	private static final double[] EMPTY_DOUBLES = {};
+	private static final String[] EMPTY_STRINGS = {};
+	private static final NbtList[] EMPTY_LISTS = {};
+	private static final NbtCompound[] EMPTY_COMPOUNDS = {};
+
+	// The views are the backing array itself (or an empty array if the list is empty), so they must not be modified
+	// if the list is frozen
+	public byte @NotNull [] asByteArrayView() throws NbtParseException.UnexpectedTagType {
+		Object array = arrayOf(NbtType.Byte);
+		return array == null ? EMPTY_BYTES : (byte[]) array;
+	}
+
+	public short @NotNull [] asShortArrayView() throws NbtParseException.UnexpectedTagType {
+		Object array = arrayOf(NbtType.Short);
+		return array == null ? EMPTY_SHORTS : (short[]) array;
+	}
+
+	public int @NotNull [] asIntArrayView() throws NbtParseException.UnexpectedTagType {
+		Object array = arrayOf(NbtType.Int);
+		return array == null ? EMPTY_INTS : (int[]) array;
+	}
+
+	public long @NotNull [] asLongArrayView() throws NbtParseException.UnexpectedTagType {
+		Object array = arrayOf(NbtType.Long);
+		return array == null ? EMPTY_LONGS : (long[]) array;
+	}
+
+	public float @NotNull [] asFloatArrayView() throws NbtParseException.UnexpectedTagType {
+		Object array = arrayOf(NbtType.Float);
+		return array == null ? EMPTY_FLOATS : (float[]) array;
+	}
+
+	public double @NotNull [] asDoubleArrayView() throws NbtParseException.UnexpectedTagType {
+		Object array = arrayOf(NbtType.Double);
+		return array == null ? EMPTY_DOUBLES : (double[]) array;
+	}
+
+	public @NotNull String @NotNull [] asStringView() throws NbtParseException.UnexpectedTagType {
+		Object array = arrayOf(NbtType.String);
+		return array == null ? EMPTY_STRINGS : (String[]) array;
+	}
+
+	public @NotNull NbtList @NotNull [] asListView() throws NbtParseException.UnexpectedTagType {
+		Object array = arrayOf(NbtType.List);
+		return array == null ? EMPTY_LISTS : (NbtList[]) array;
+	}
+
+	public @NotNull NbtCompound @NotNull [] asCompoundView() throws NbtParseException.UnexpectedTagType {
+		Object array = arrayOf(NbtType.Compound);
+		return array == null ? EMPTY_COMPOUNDS : (NbtCompound[]) array;
+	}
+	// </editor-fold>
+
+	/**
+	 * @return The type of the elements if they can be widened to the given type, which is {@link NbtType#End} if the
+	 * list is empty
+	 */
+	@NotNull
+	private NbtType widenableTo(@NotNull NbtType type) throws NbtParseException.UnexpectedTagType {
+		NbtType componentType = this.componentType;
+		switch (componentType) {
+			case End:
+				return componentType;
+			case Byte:
+			case Short:
+			case Int:
+				if (type == NbtType.Int | type == NbtType.Long) return componentType;
+				break;
+			case Long:
+				if (type == NbtType.Long) return componentType;
+				break;
+			case Float:
+			case Double:
+				if (type == NbtType.Double) return componentType;
+				break;
+		}
+		throw new NbtParseException.UnexpectedTagType(type, componentType.id);
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="primitive streams">
+	/**
+	 * @return The elements of a list of bytes, shorts or ints
+	 */
+	@NotNull
+	public IntStream intStream() throws NbtParseException.UnexpectedTagType {
+		switch (widenableTo(NbtType.Int)) {
+			case Byte: {
+				byte[] array = (byte[]) this.array;
+				return IntStream.range(0, array.length).map(i -> array[i]);
+			}
+			case Short: {
+				short[] array = (short[]) this.array;
+				return IntStream.range(0, array.length).map(i -> array[i]);
+			}
+			case Int:
+				return Arrays.stream((int[]) array);
+			default:
+				return IntStream.empty();
+		}
+	}
+
+	/**
+	 * @return The elements of a list of bytes, shorts, ints or longs
+	 */
+	@NotNull
+	public LongStream longStream() throws NbtParseException.UnexpectedTagType {
+		if (widenableTo(NbtType.Long) == NbtType.Long) return Arrays.stream((long[]) array);
+		return intStream().asLongStream();
+	}
+
+	/**
+	 * @return The elements of a list of floats or doubles
+	 */
+	@NotNull
+	public DoubleStream doubleStream() throws NbtParseException.UnexpectedTagType {
+		switch (widenableTo(NbtType.Double)) {
+			case Float: {
+				float[] array = (float[]) this.array;
+				return IntStream.range(0, array.length).mapToDouble(i -> array[i]);
+			}
+			case Double:
+				return Arrays.stream((double[]) array);
+			default:
+				return DoubleStream.empty();
+		}
+	}
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="forEach methods">
+	/**
+	 * Iterates over the elements of a list of bytes, shorts or ints
+	 */
+	public void forEachInt(@NotNull IntConsumer action) throws NbtParseException.UnexpectedTagType {
+		switch (widenableTo(NbtType.Int)) {
+			case Byte:
+				for (byte b : (byte[]) array)
+					action.accept(b);
+				break;
+			case Short:
+				for (short s : (short[]) array)
+					action.accept(s);
+				break;
+			case Int:
+				for (int i : (int[]) array)
+					action.accept(i);
+				break;
+		}
+	}
+
+	/**
+	 * Iterates over the elements of a list of bytes, shorts, ints or longs
+	 */
+	public void forEachLong(@NotNull LongConsumer action) throws NbtParseException.UnexpectedTagType {
+		if (widenableTo(NbtType.Long) != NbtType.Long) {
+			forEachInt(action::accept);
+			return;
+		}
+		for (long l : (long[]) array)
+			action.accept(l);
+	}
+
+	/**
+	 * Iterates over the elements of a list of floats or doubles
+	 */
+	public void forEachDouble(@NotNull DoubleConsumer action) throws NbtParseException.UnexpectedTagType {
+		switch (widenableTo(NbtType.Double)) {
+			case Float:
+				for (float f : (float[]) array)
+					action.accept(f);
+				break;
+			case Double:
+				for (double d : (double[]) array)
+					action.accept(d);
+				break;
+		}
+	}
+
+	public void forEachCompound(@NotNull Consumer<? super @NotNull NbtCompound> action)
+		throws NbtParseException.UnexpectedTagType {
+		for (NbtCompound compound : asCompoundView())
+			action.accept(compound);
+	}
+	// </editor-fold>
+
+	@NotNull
+	public static Builder builder(@NotNull NbtType componentType) throws OomException {
+		return OomAware.tryRun(null, () -> new Builder(componentType));
+	}
+
+	/**
+	 * A list whose elements may be added and removed in amortized constant time, and which may then be
+	 * {@link #build() built} into a {@link NbtList}. Since the backing array of a {@link NbtList} always has the exact
+	 * length of the list, lists themselves cannot grow.
+	 */
+	public static final class Builder {
+		public final @NotNull NbtType componentType;
+		private final @NotNull GrowableArray<?> elements;
+
+		private Builder(@NotNull NbtType componentType) throws OomException {
+			this.componentType = componentType;
+			switch (componentType) {
+				case Byte:
+					elements = GrowableArray.bytes(null);
+					break;
+				case Short:
+					elements = GrowableArray.shorts(null);
+					break;
+				case Int:
+					elements = GrowableArray.ints(null);
+					break;
+				case Long:
+					elements = GrowableArray.longs(null);
+					break;
+				case Float:
+					elements = GrowableArray.floats(null);
+					break;
+				case Double:
+					elements = GrowableArray.doubles(null);
+					break;
+				case ByteArray:
+					elements = GrowableArray.generic(byte[].class, null);
+					break;
+				case IntArray:
+					elements = GrowableArray.generic(int[].class, null);
+					break;
+				case LongArray:
+					elements = GrowableArray.generic(long[].class, null);
+					break;
+				case String:
+					elements = GrowableArray.generic(String.class, null);
+					break;
+				case List:
+					elements = GrowableArray.generic(NbtList.class, null);
+					break;
+				case Compound:
+					elements = GrowableArray.generic(NbtCompound.class, null);
+					break;
+				default:
+					throw new IllegalArgumentException("Lists cannot have End components");
+			}
+		}
+
+		public int size() {
+			return elements.getSize();
+		}
+
+		@SuppressWarnings("unchecked")
+		@NotNull
+		private <T extends Cloneable & Serializable> GrowableArray<T> elements(@NotNull NbtType type) {
+			if (type != componentType)
+				throw new IllegalArgumentException("Cannot add a " + type + " to a list of " + componentType);
+			return (GrowableArray<T>) elements;
+		}
+
+		// <editor-fold defaultstate="collapsed" desc="add methods">
+		@NotNull
+		public Builder addByte(byte value) throws OomException {
+			GrowableArray.add(this.<byte[]>elements(NbtType.Byte), value);
+			return this;
+		}
+
+		@NotNull
+		public Builder addShort(short value) throws OomException {
+			GrowableArray.add(this.<short[]>elements(NbtType.Short), value);
+			return this;
+		}
+
+		@NotNull
+		public Builder addInt(int value) throws OomException {
+			GrowableArray.add(this.<int[]>elements(NbtType.Int), value);
+			return this;
+		}
+
+		@NotNull
+		public Builder addLong(long value) throws OomException {
+			GrowableArray.add(this.<long[]>elements(NbtType.Long), value);
+			return this;
+		}
+
+		@NotNull
+		public Builder addFloat(float value) throws OomException {
+			GrowableArray.add(this.<float[]>elements(NbtType.Float), value);
+			return this;
+		}
+
+		@NotNull
+		public Builder addDouble(double value) throws OomException {
+			GrowableArray.add(this.<double[]>elements(NbtType.Double), value);
+			return this;
+		}
+
+		@NotNull
+		public Builder addByteArray(byte @NotNull [] value) throws OomException {
+			GrowableArray.add(this.<byte[][]>elements(NbtType.ByteArray), Objects.requireNonNull(value));
+			return this;
+		}
+
+		@NotNull
+		public Builder addIntArray(int @NotNull [] value) throws OomException {
+			GrowableArray.add(this.<int[][]>elements(NbtType.IntArray), Objects.requireNonNull(value));
+			return this;
+		}
+
+		@NotNull
+		public Builder addLongArray(long @NotNull [] value) throws OomException {
+			GrowableArray.add(this.<long[][]>elements(NbtType.LongArray), Objects.requireNonNull(value));
+			return this;
+		}
+
+		@NotNull
+		public Builder addString(@NotNull String value) throws OomException {
+			GrowableArray.add(this.<String[]>elements(NbtType.String), Objects.requireNonNull(value));
+			return this;
+		}
+
+		@NotNull
+		public Builder addList(@NotNull NbtList value) throws OomException {
+			GrowableArray.add(this.<NbtList[]>elements(NbtType.List), Objects.requireNonNull(value));
+			return this;
+		}
+
+		@NotNull
+		public Builder addCompound(@NotNull NbtCompound value) throws OomException {
+			GrowableArray.add(this.<NbtCompound[]>elements(NbtType.Compound), Objects.requireNonNull(value));
+			return this;
+		}
+		// </editor-fold>
+
+		/**
+		 * Adds all the elements of the list, which must either be empty or have the same component type
+		 */
+		@NotNull
+		public Builder addAll(@NotNull NbtList list) throws OomException {
+			Object array = list.array;
+			if (array == null) return this;
+			int idx = size(), len = Array.getLength(array);
+			elements(list.componentType).zeroExtend(idx + len);
+			System.arraycopy(array, 0, elements.inner, idx, len);
+			return this;
+		}
+
+		/**
+		 * Removes the element at the given index by moving the last element to its position
+		 */
+		@NotNull
+		public Builder remove(int index) {
+			elements.swapRemove(index);
+			return this;
+		}
+
+		/**
+		 * @return A list with a copy of the elements that have been added
+		 */
+		@NotNull
+		public NbtList build() throws OomException {
+			int size = size();
+			if (size == 0) return EMPTY_LIST;
+			Object inner = elements.inner;
+			Object array = OomAware.tryRun(null, () -> Array.newInstance(inner.getClass().getComponentType(), size));
+			System.arraycopy(inner, 0, array, 0, size);
+			return new NbtList(componentType, array);
+		}
+	}
 }
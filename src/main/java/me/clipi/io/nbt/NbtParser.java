@@ -22,6 +22,7 @@ package me.clipi.io.nbt;
 
 import me.clipi.io.CheckedBigEndianDataInput;
 import me.clipi.io.EofException;
+import me.clipi.io.ModifiedUtf8Interner;
 import me.clipi.io.NotEofException;
 import me.clipi.io.OomException;
 import me.clipi.io.OomException.OomAware;
@@ -31,12 +32,13 @@ import me.clipi.io.nbt.exceptions.NbtParseException.IncorrectSchema;
 import me.clipi.io.nbt.schema.*;
 import me.clipi.io.nbt.schema.NbtListOfCompoundsSchema.ListOfSchemas;
 import me.clipi.io.util.FixedStack;
-import me.clipi.io.util.GrowableArray;
 import me.clipi.io.util.function.CheckedConsumer;
 import me.clipi.io.util.function.CheckedRunnable;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.nio.ByteBuffer;
+import java.util.HashSet;
 import java.util.function.IntFunction;
 
 /**
@@ -54,10 +56,32 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 	 * If the project used Java 17, this could be improved with sealed classes
 	 */
 	private final FixedStack<ParsingTarget> nestedTarget = new FixedStack<>(ParsingTarget.class, NESTED_MAX_DEPTH);
+	/**
+	 * Reads the keys, strings and lengths, and skips the payloads
+	 */
+	private final @NotNull NbtPayloadReader<ReadException> payloads;
+	/**
+	 * The shapes of the compounds parsed by this parser, so that compounds with the same entries share them
+	 */
+	private final @NotNull NbtShape.Interner shapes = new NbtShape.Interner();
+	/**
+	 * The buffers in which the compounds are built while they are being parsed, which are reused between compounds
+	 */
+	private final @NotNull CompoundScratch.Pool scratches = new CompoundScratch.Pool();
 	private @Nullable OomAware oomAware;
 
 	public NbtParser(@NotNull CheckedBigEndianDataInput<ReadException> di) {
+		this(di, new ModifiedUtf8Interner());
+	}
+
+	/**
+	 * @param keys The cache of the names of the tags, which may be shared with other parsers. Since the keys of up to
+	 *             {@link ModifiedUtf8Interner#MAX_INTERNED_BYTES} bytes are {@link String#intern() interned},
+	 *             schemas may compare them by identity with string literals.
+	 */
+	public NbtParser(@NotNull CheckedBigEndianDataInput<ReadException> di, @NotNull ModifiedUtf8Interner keys) {
 		this.di = di;
+		this.payloads = new NbtPayloadReader<>(di, keys);
 	}
 
 	@Override
@@ -86,6 +110,27 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 		return rootValue.tryRun(() -> new NbtRoot(anyRoot.rootName, rootValue));
 	}
 
+	/**
+	 * Parses the next root tag without creating any {@link NbtCompound} nor {@link NbtList}, emitting its contents to
+	 * the visitor instead
+	 */
+	public void visitRoot(@NotNull NbtVisitor visitor) throws ReadException, OomException, NbtParseException {
+		try {
+			di.expectedByteFail(NbtType.tagCompound, type -> {
+				throw new NbtParseException.UnexpectedTagType(NbtType.Compound, type);
+			});
+			visitor.visitRoot(payloads.readString());
+			visitRootValue(visitor);
+			di.expectEnd();
+		} catch (NotEofException ex) {
+			throw new NbtParseException.NotEofException(ex);
+		} catch (EofException ex) {
+			throw new NbtParseException.EofException(ex);
+		} finally {
+			closeCurrent();
+		}
+	}
+
 	@NotNull
 	private <T> T nonNullSchema(@NotNull Object parentSchema, @Nullable T schema) throws IncorrectSchema {
 		if (schema == null) throw new IncorrectSchema(oomAware, parentSchema);
@@ -99,7 +144,7 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 			di.expectedByteFail(NbtType.tagCompound, type -> {
 				throw new NbtParseException.UnexpectedTagType(NbtType.Compound, type);
 			});
-			String name = readString();
+			String name = payloads.readString();
 			final OomAware[] delegatedOomAware = { null };
 			T rootValueSchema = nonNullSchema(schema, schema.schemaForRootValue(name, () -> {
 				OomAware oomAware = delegatedOomAware[0];
@@ -110,11 +155,14 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 				ValuelessNbtCompound.create(null);
 			delegatedOomAware[0] = root;
 			try {
-				di.setOomAware(oomAware = root);
-				readRootValue(rootValueSchema, root);
+				payloads.setOomAware(oomAware = root);
+				int expectedEntries = rootValueSchema.expectedEntries();
+				readRootValue(rootValueSchema, root,
+							  expectedEntries > 0 ? expectedEntries : schema.expectedRootEntries());
 			} finally {
-				di.setOomAware(oomAware = null);
+				payloads.setOomAware(oomAware = null);
 				nestedTarget.clear();
+				scratches.clear();
 			}
 			di.expectEnd();
 			return rootValueSchema;
@@ -129,11 +177,43 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 		}
 	}
 
-	private void readRootValue(@NotNull NbtCompoundSchema schema, @NotNull ValuelessNbtCompound root)
+	/**
+	 * package-private
+	 *
+	 * <p>Parses the entries of a compound until its end tag, without the header of a root nor checking for EOF
+	 * afterwards
+	 */
+	@NotNull
+	NbtCompound parseCompoundPayload() throws ReadException, OomException, NbtParseException {
+		final OomAware[] delegatedOomAware = { null };
+		SaveCompoundSchema schema = SaveCompoundSchema.create(() -> {
+			OomAware oomAware = delegatedOomAware[0];
+			if (oomAware != null) oomAware.trySaveFromOom();
+		});
+		NbtCompound compound = schema.compound;
+		delegatedOomAware[0] = compound;
+		try {
+			payloads.setOomAware(oomAware = compound);
+			readRootValue(schema, compound, schema.expectedEntries());
+			return compound;
+		} catch (FixedStack.FullStackException ex) {
+			throw new NbtParseException.InvalidDataStructureSize(ex.attemptedSize);
+		} catch (EofException ex) {
+			throw new NbtParseException.EofException(ex);
+		} finally {
+			payloads.setOomAware(oomAware = null);
+			nestedTarget.clear();
+			scratches.clear();
+		}
+	}
+
+	private void readRootValue(@NotNull NbtCompoundSchema schema, @NotNull ValuelessNbtCompound root,
+							   int expectedEntries)
 		throws ReadException, EofException, OomException, NbtParseException, FixedStack.FullStackException {
 		FixedStack<ParsingTarget> nestedTarget = this.nestedTarget;
 		CompoundTarget target = OomAware.tryRun(oomAware, () -> new CompoundTarget(root, schema));
 		nestedTarget.push(target);
+		scratches.startParsing(root, expectedEntries, oomAware);
 		for (; ; ) {
 			ListOfListsTarget nextTarget = readMapEntries(target);
 			if (nextTarget == null) return;
@@ -160,6 +240,10 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 			for (; ; ) {
 				int type = di.expectByte();
 				if (type == NbtType.tagEnd) {
+					CompoundScratch scratch = scratches.scratchOf(target);
+					target.finish(shapes, scratch);
+					if (scratch != null) scratches.release(scratch);
+					targetAndSchema.clearSkipped();
 					try {
 						if (schema.deniesFinishedCompound())
 							throw new IncorrectSchema(oomAware, schema);
@@ -185,8 +269,16 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 					schema = targetAndSchema.schema;
 					continue newTarget;
 				}
-				String key = readString();
-				if (target.containsKey(key)) throw new NbtParseException.DuplicatedKey(oomAware, key, schema);
+				String key = payloads.readString();
+				// Skipped values are not added, so their keys are tracked apart
+				if (target.containsKey(key) || targetAndSchema.hasSkipped(key))
+					throw new NbtParseException.DuplicatedKey(oomAware, key, schema);
+				NbtType nbtType = NbtType.getByIdOrNull(type);
+				if (nbtType != null && schema.skipsValue(key, nbtType)) {
+					targetAndSchema.addSkipped(key, oomAware);
+					skipPayloads(type, 1);
+					continue;
+				}
 				switch (type) {
 					case NbtType.tagByte: {
 						int value = di.expectByte();
@@ -258,11 +350,17 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 					}
 					case NbtType.tagCompound: {
 						NbtCompoundSchema newSchema = nonNullSchema(schema, schema.schemaForCompound(key));
+						if (newSchema == NbtCompoundSchema.SKIP) {
+							targetAndSchema.addSkipped(key, oomAware);
+							skipPayloads(NbtType.tagCompound, 1);
+							break;
+						}
 						ValuelessNbtCompound newDepth = newSchema instanceof SaveCompoundSchema ?
 							((SaveCompoundSchema) newSchema).compound :
 							ValuelessNbtCompound.create(oomAware);
 						nestedTarget.push(targetAndSchema = OomAware.tryRun(oomAware, () ->
 							new CompoundTarget(newDepth, newSchema)));
+						scratches.startParsing(newDepth, newSchema.expectedEntries(), oomAware);
 						target.collisionUnsafeAddCompound(key, newDepth);
 						target = newDepth;
 						schema = newSchema;
@@ -351,6 +449,23 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 		}
 	}
 
+	/**
+	 * Adds a {@link ListOfListsTarget} to the top of the stack and returns {@code false}, unless the schema is
+	 * {@link NbtListOfListsSchema#SKIP}, in which case the list is skipped, an empty list is handled and {@code true}
+	 * is returned.
+	 */
+	private boolean readListOfListsValue(@Nullable String key, int len, @NotNull NbtListOfListsSchema schema,
+										 @NotNull CheckedConsumer<@NotNull NbtList, OomException> handleList)
+		throws ReadException, EofException, OomException, NbtParseException, FixedStack.FullStackException {
+		if (schema == NbtListOfListsSchema.SKIP) {
+			skipPayloads(NbtType.tagList, len);
+			handleList.accept(NbtList.EMPTY_LIST);
+			return true;
+		}
+		nestedTarget.push(ListOfListsTarget.create(oomAware, key, len, schema));
+		return false;
+	}
+
 	/**
 	 * An array of {@link ValuelessNbtCompound} will be created, and each of those will be added to the top of the
 	 * stack as {@link CompoundTarget}s, so that they can be parsed.
@@ -358,10 +473,17 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 	 * {@link ListOfSchemas} and its elements are {@link NbtCompound}s, those will be the mentioned
 	 * {@link ValuelessNbtCompound}s, and a {@link NbtList} of them will be handled when all finish parsing.
 	 * Otherwise, an empty list will be handled when all have finished parsing.
+	 * <p>If the schema is {@link NbtListOfCompoundsSchema#SKIP}, the list is skipped and an empty list is handled
+	 * instead.
 	 */
 	private void readListOfCompoundsValue(@NotNull NbtListOfCompoundsSchema schema, int len,
 										  @NotNull CheckedConsumer<NbtList, OomException> onFinish)
 		throws ReadException, OomException, EofException, FixedStack.FullStackException, NbtParseException {
+		if (schema == NbtListOfCompoundsSchema.SKIP) {
+			skipPayloads(NbtType.tagCompound, len);
+			onFinish.accept(NbtList.EMPTY_LIST);
+			return;
+		}
 		NbtList result;
 		ValuelessNbtCompound[] valuelessCompounds;
 		if (schema instanceof ListOfSchemas &&
@@ -376,7 +498,7 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 			result = NbtList.EMPTY_LIST;
 		}
 		ListOfCompoundsTarget newTarget =
-			OomAware.tryRun(oomAware, () -> new ListOfCompoundsTarget(oomAware, valuelessCompounds, schema,
+			OomAware.tryRun(oomAware, () -> new ListOfCompoundsTarget(oomAware, scratches, valuelessCompounds, schema,
 																	  () -> onFinish.accept(result)));
 		nestedTarget.push(newTarget);
 		if (newTarget.advanceIsFinished()) throw new AssertionError(
@@ -398,7 +520,7 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 								  @NotNull CheckedConsumer<@NotNull NbtList, OomException> handleList)
 		throws ReadException, EofException, OomException, NbtParseException, FixedStack.FullStackException {
 		int type = di.expectByte();
-		int len = readArrayLen();
+		int len = payloads.readArrayLen();
 		if (len == 0) {
 			if (parentSchema.deniesEmptyList(index)) throw new IncorrectSchema(oomAware, parentSchema);
 			handleList.accept(NbtList.EMPTY_LIST);
@@ -479,9 +601,8 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 				break;
 			}
 			case NbtType.tagList:
-				nestedTarget.push(ListOfListsTarget.create(oomAware, null, len, nonNullSchema(
-					parentSchema, parentSchema.schemaForListOfLists(index, len))));
-				return false;
+				return readListOfListsValue(null, len, nonNullSchema(
+					parentSchema, parentSchema.schemaForListOfLists(index, len)), handleList);
 			case NbtType.tagCompound:
 				readListOfCompoundsValue(nonNullSchema(
 											 parentSchema, parentSchema.schemaForListOfCompounds(index, len)),
@@ -509,7 +630,7 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 								  @NotNull CheckedConsumer<@NotNull NbtList, OomException> handleList)
 		throws ReadException, EofException, OomException, NbtParseException, FixedStack.FullStackException {
 		int type = di.expectByte();
-		int len = readArrayLen();
+		int len = payloads.readArrayLen();
 		if (len == 0) {
 			if (parentSchema.deniesEmptyList(key)) throw new IncorrectSchema(oomAware, parentSchema);
 			handleList.accept(NbtList.EMPTY_LIST);
@@ -590,9 +711,8 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 				break;
 			}
 			case NbtType.tagList:
-				nestedTarget.push(ListOfListsTarget.create(oomAware, key, len, nonNullSchema(
-					parentSchema, parentSchema.schemaForListOfLists(key, len))));
-				return false;
+				return readListOfListsValue(key, len, nonNullSchema(
+					parentSchema, parentSchema.schemaForListOfLists(key, len)), handleList);
 			case NbtType.tagCompound:
 				readListOfCompoundsValue(nonNullSchema(
 											 parentSchema, parentSchema.schemaForListOfCompounds(key, len)),
@@ -605,16 +725,6 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 		return true;
 	}
 
-	@NotNull
-	private String readString() throws ReadException, EofException, OomException,
-									   NbtParseException.InvalidString {
-		try {
-			return di.expectModifiedUtf8();
-		} catch (CheckedBigEndianDataInput.ModifiedUtf8DataFormatException ex) {
-			throw new NbtParseException.InvalidString(ex);
-		}
-	}
-
 	@NotNull
 	private String readString(@NotNull NbtCompoundSchema schema, @NotNull String key)
 		throws ReadException, EofException, OomException, NbtParseException {
@@ -645,15 +755,159 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 		return value;
 	}
 
-	private int readArrayLen() throws ReadException, EofException, NbtParseException.InvalidDataStructureSize {
-		int len = di.expectInt();
-		if (len < 0 | len > GrowableArray.MAX_ARRAY_SIZE) throw new NbtParseException.InvalidDataStructureSize(len);
-		return len;
+	// <editor-fold defaultstate="collapsed" desc="visiting">
+	/**
+	 * Frames of the values being visited (the type of their elements, or {@link NbtPayloadReader#SKIP_COMPOUND} for
+	 * compounds, and how many of them are left), which are only allocated once something is visited
+	 */
+	private int @Nullable [] visitFrameType, visitFrameRemaining;
+
+	/**
+	 * Visits the root compound without recursion, just like {@link #readMapEntries} and {@link #readListEntries}
+	 */
+	private void visitRootValue(@NotNull NbtVisitor visitor)
+		throws ReadException, EofException, OomException, NbtParseException {
+		int[] frameType = visitFrameType, frameRemaining = visitFrameRemaining;
+		if (frameType == null | frameRemaining == null) {
+			visitFrameType = frameType = OomAware.tryRun(oomAware, () -> new int[NESTED_MAX_DEPTH]);
+			visitFrameRemaining = frameRemaining = OomAware.tryRun(oomAware, () -> new int[NESTED_MAX_DEPTH]);
+		}
+		frameType[0] = NbtPayloadReader.SKIP_COMPOUND;
+		int frames = 1;
+		visitor.visitCompoundStart();
+		while (frames > 0) {
+			int top = frames - 1;
+			int elementType = frameType[top], valueType;
+			if (elementType == NbtPayloadReader.SKIP_COMPOUND) {
+				valueType = di.expectByte();
+				if (valueType == NbtType.tagEnd) {
+					--frames;
+					visitor.visitCompoundEnd();
+					continue;
+				}
+				String key = payloads.readString();
+				NbtType type = NbtType.getByIdOrNull(valueType);
+				if (type == null) throw new NbtParseException.UnknownTagType(valueType);
+				if (!visitor.visitKey(key, type)) {
+					payloads.skipPayloads(valueType, 1, frames);
+					continue;
+				}
+			} else {
+				int remaining = frameRemaining[top];
+				if (remaining == 0) {
+					--frames;
+					visitor.visitListEnd();
+					continue;
+				}
+				frameRemaining[top] = remaining - 1;
+				valueType = elementType;
+			}
+
+			switch (valueType) {
+				case NbtType.tagByte:
+					visitor.visitByte((byte) di.expectByte());
+					break;
+				case NbtType.tagShort:
+					visitor.visitShort((short) di.expectShort());
+					break;
+				case NbtType.tagInt:
+					visitor.visitInt(di.expectInt());
+					break;
+				case NbtType.tagLong:
+					visitor.visitLong(di.expectLong());
+					break;
+				case NbtType.tagFloat:
+					visitor.visitFloat(di.expectFloat());
+					break;
+				case NbtType.tagDouble:
+					visitor.visitDouble(di.expectDouble());
+					break;
+				case NbtType.tagByteArray: {
+					int len = payloads.readArrayLen();
+					if (visitsWholeArray(visitor.visitByteArrayStart(len), len, 0, visitor::visitByteArrayValues))
+						visitor.visitByteArray(di.expectByteArray(len));
+					break;
+				}
+				case NbtType.tagIntArray: {
+					int len = payloads.readArrayLen();
+					if (visitsWholeArray(visitor.visitIntArrayStart(len), len, 2,
+										 values -> visitor.visitIntArrayValues(values.asIntBuffer())))
+						visitor.visitIntArray(di.expectIntArray(len));
+					break;
+				}
+				case NbtType.tagLongArray: {
+					int len = payloads.readArrayLen();
+					if (visitsWholeArray(visitor.visitLongArrayStart(len), len, 3,
+										 values -> visitor.visitLongArrayValues(values.asLongBuffer())))
+						visitor.visitLongArray(di.expectLongArray(len));
+					break;
+				}
+				case NbtType.tagString:
+					visitor.visitString(payloads.readStringValue());
+					break;
+				case NbtType.tagList: {
+					int listType = di.expectByte();
+					int len = payloads.readArrayLen();
+					NbtType componentType;
+					if (len == 0) {
+						componentType = NbtType.End;
+					} else {
+						if (listType == NbtType.tagEnd) throw new NbtParseException.UnexpectedTagType(null, listType);
+						componentType = NbtType.getByIdOrNull(listType);
+						if (componentType == null) throw new NbtParseException.UnknownTagType(listType);
+					}
+					if (!visitor.visitListStart(componentType, len)) {
+						payloads.skipPayloads(listType, len, frames);
+						break;
+					}
+					if (frames == NESTED_MAX_DEPTH) throw new NbtParseException.InvalidDataStructureSize(frames + 1);
+					frameType[frames] = listType;
+					frameRemaining[frames++] = len;
+					break;
+				}
+				case NbtType.tagCompound:
+					if (frames == NESTED_MAX_DEPTH) throw new NbtParseException.InvalidDataStructureSize(frames + 1);
+					frameType[frames++] = NbtPayloadReader.SKIP_COMPOUND;
+					visitor.visitCompoundStart();
+					break;
+				default:
+					throw new NbtParseException.UnknownTagType(valueType);
+			}
+		}
+	}
+
+	/**
+	 * Skips or streams the array, unless it must be read whole
+	 *
+	 * @return Whether the array must be read whole
+	 */
+	private boolean visitsWholeArray(@NotNull NbtVisitor.ArrayVisit visit, int len, int byteShiftAmount,
+									 @NotNull CheckedConsumer<@NotNull ByteBuffer, RuntimeException> values)
+		throws ReadException, EofException {
+		switch (visit) {
+			case SKIP:
+				di.expectSkip((long) len << byteShiftAmount);
+				return false;
+			case STREAM:
+				di.expectChunks(len, byteShiftAmount, values);
+				return false;
+			default:
+				return true;
+		}
+	}
+	// </editor-fold>
+
+	/**
+	 * Steps over {@code count} consecutive payloads of the given type without recursion, and without decoding nor
+	 * allocating anything
+	 */
+	private void skipPayloads(int type, int count) throws ReadException, EofException, OomException, NbtParseException {
+		payloads.skipPayloads(type, count, nestedTarget.getSize());
 	}
 
 	private byte @NotNull [] readByteArray(@NotNull NbtCompoundSchema schema, @NotNull String key)
 		throws ReadException, EofException, OomException, NbtParseException {
-		int arrayLen = readArrayLen();
+		int arrayLen = payloads.readArrayLen();
 		if (schema.deniesByteArray(key, arrayLen)) throw new IncorrectSchema(oomAware, schema);
 		byte[] value = di.expectByteArray(arrayLen);
 		if (schema.deniesByteArray(key, value)) throw new IncorrectSchema(oomAware, schema);
@@ -662,7 +916,7 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 
 	private byte @NotNull [] readByteArray(@NotNull NbtListOfByteArraysSchema schema, int index)
 		throws ReadException, EofException, OomException, NbtParseException {
-		int arrayLen = readArrayLen();
+		int arrayLen = payloads.readArrayLen();
 		if (schema.deniesByteArray(index, arrayLen)) throw new IncorrectSchema(oomAware, schema);
 		byte[] value = di.expectByteArray(arrayLen);
 		if (schema.deniesByteArray(index, value)) throw new IncorrectSchema(oomAware, schema);
@@ -671,7 +925,7 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 
 	private int @NotNull [] readIntArray(@NotNull NbtCompoundSchema schema, @NotNull String key)
 		throws ReadException, EofException, OomException, NbtParseException {
-		int arrayLen = readArrayLen();
+		int arrayLen = payloads.readArrayLen();
 		if (schema.deniesIntArray(key, arrayLen)) throw new IncorrectSchema(oomAware, schema);
 		int[] value = di.expectIntArray(arrayLen);
 		if (schema.deniesIntArray(key, value)) throw new IncorrectSchema(oomAware, schema);
@@ -680,7 +934,7 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 
 	private int @NotNull [] readIntArray(@NotNull NbtListOfIntArraysSchema schema, int index)
 		throws ReadException, EofException, OomException, NbtParseException {
-		int arrayLen = readArrayLen();
+		int arrayLen = payloads.readArrayLen();
 		if (schema.deniesIntArray(index, arrayLen)) throw new IncorrectSchema(oomAware, schema);
 		int[] value = di.expectIntArray(arrayLen);
 		if (schema.deniesIntArray(index, value)) throw new IncorrectSchema(oomAware, schema);
@@ -689,7 +943,7 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 
 	private long @NotNull [] readLongArray(@NotNull NbtCompoundSchema schema, @NotNull String key)
 		throws ReadException, EofException, OomException, NbtParseException {
-		int arrayLen = readArrayLen();
+		int arrayLen = payloads.readArrayLen();
 		if (schema.deniesLongArray(key, arrayLen)) throw new IncorrectSchema(oomAware, schema);
 		long[] value = di.expectLongArray(arrayLen);
 		if (schema.deniesLongArray(key, value)) throw new IncorrectSchema(oomAware, schema);
@@ -698,7 +952,7 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 
 	private long @NotNull [] readLongArray(@NotNull NbtListOfLongArraysSchema schema, int index)
 		throws ReadException, EofException, OomException, NbtParseException {
-		int arrayLen = readArrayLen();
+		int arrayLen = payloads.readArrayLen();
 		if (schema.deniesLongArray(index, arrayLen)) throw new IncorrectSchema(oomAware, schema);
 		long[] value = di.expectLongArray(arrayLen);
 		if (schema.deniesLongArray(index, value)) throw new IncorrectSchema(oomAware, schema);
@@ -729,11 +983,34 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 		private @NotNull NbtCompoundSchema schema;
 		private @NotNull ValuelessNbtCompound compound;
 
+		/**
+		 * The keys of the values of the current compound that have been skipped, so that they are still rejected if
+		 * they are duplicated
+		 */
+		private @Nullable HashSet<String> skippedKeys;
+
 		private CompoundTarget(@NotNull ValuelessNbtCompound compound, @NotNull NbtCompoundSchema schema) {
 			this.schema = schema;
 			this.compound = compound;
 		}
 
+		private boolean hasSkipped(@NotNull String key) {
+			HashSet<String> skippedKeys = this.skippedKeys;
+			return skippedKeys != null && skippedKeys.contains(key);
+		}
+
+		private void addSkipped(@NotNull String key, @Nullable OomAware oomAware) throws OomException {
+			HashSet<String> skippedKeys = this.skippedKeys;
+			if (skippedKeys == null) this.skippedKeys = skippedKeys = OomAware.tryRun(oomAware, HashSet::new);
+			HashSet<String> finalSkippedKeys = skippedKeys;
+			OomAware.tryRun(oomAware, () -> finalSkippedKeys.add(key));
+		}
+
+		private void clearSkipped() {
+			HashSet<String> skippedKeys = this.skippedKeys;
+			if (skippedKeys != null) skippedKeys.clear();
+		}
+
 		public boolean advanceIsFinished() throws OomException, IncorrectSchema {
 			return true;
 		}
@@ -741,6 +1018,7 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 
 	private static final class ListOfCompoundsTarget extends CompoundTarget {
 		private final @Nullable OomAware oomAware;
+		private final @NotNull CompoundScratch.Pool scratches;
 		private final @NotNull NbtListOfCompoundsSchema parentSchema;
 		private final @NotNull ValuelessNbtCompound @NotNull [] compounds;
 		private final @NotNull CheckedRunnable<OomException> onFinish;
@@ -748,11 +1026,12 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 
 		@SuppressWarnings("DataFlowIssue")
 		private ListOfCompoundsTarget(
-			@Nullable OomAware oomAware, @NotNull ValuelessNbtCompound @NotNull [] compounds,
-			@NotNull NbtListOfCompoundsSchema parentSchema,
+			@Nullable OomAware oomAware, @NotNull CompoundScratch.Pool scratches,
+			@NotNull ValuelessNbtCompound @NotNull [] compounds, @NotNull NbtListOfCompoundsSchema parentSchema,
 			@NotNull CheckedRunnable<OomException> onFinish) {
 			super(null, null);
 			this.oomAware = oomAware;
+			this.scratches = scratches;
 			this.parentSchema = parentSchema;
 			this.compounds = compounds;
 			this.onFinish = onFinish;
@@ -779,6 +1058,10 @@ public class NbtParser<ReadException extends Exception> implements AutoCloseable
 			super.schema = parentSchema.schemaForCompound(i);
 			if (super.schema == null) throw new IncorrectSchema(oomAware, parentSchema);
 			super.compound = compounds[i];
+			int expectedEntries = super.schema.expectedEntries();
+			scratches.startParsing(compounds[i], expectedEntries > 0 ?
+				expectedEntries :
+				parentSchema.expectedEntriesPerCompound(), oomAware);
 			return false;
 		}
 	}
@@ -0,0 +1,182 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io.nbt;
+
+import me.clipi.io.CheckedBigEndianDataInput;
+import me.clipi.io.EofException;
+import me.clipi.io.ModifiedUtf8Interner;
+import me.clipi.io.OomException;
+import me.clipi.io.OomException.OomAware;
+import me.clipi.io.nbt.exceptions.NbtParseException;
+import me.clipi.io.util.GrowableArray;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * package-private
+ *
+ * <p>Reads the pieces of NBT that every reader of this package decodes the same way (keys, string values, lengths of
+ * arrays and lists), and skips payloads, without keeping any state besides the frames used to skip them
+ *
+ * @see NbtParser
+ * @see NbtCursor
+ */
+final class NbtPayloadReader<ReadException extends Exception> {
+	/**
+	 * Frame kind of a compound being skipped or visited. Frames of lists store the type of their elements instead
+	 */
+	static final int SKIP_COMPOUND = -1;
+
+	final @NotNull CheckedBigEndianDataInput<ReadException> di;
+	/**
+	 * Cache of the names of the tags, which are mostly the same few keys repeated over and over
+	 */
+	private final @NotNull ModifiedUtf8Interner keys;
+	private @Nullable OomAware oomAware;
+	/**
+	 * Frames of the values being skipped (the type of their elements and how many of them are left), which are only
+	 * allocated once something is skipped
+	 */
+	private int @Nullable [] skipFrameType, skipFrameRemaining;
+
+	NbtPayloadReader(@NotNull CheckedBigEndianDataInput<ReadException> di, @NotNull ModifiedUtf8Interner keys) {
+		this.di = di;
+		this.keys = keys;
+	}
+
+	/**
+	 * Sets the {@link OomAware} of both this reader and its input
+	 */
+	void setOomAware(@Nullable OomAware oomAware) {
+		this.oomAware = oomAware;
+		di.setOomAware(oomAware);
+	}
+
+	@NotNull
+	String readString() throws ReadException, EofException, OomException, NbtParseException.InvalidString {
+		try {
+			return di.expectModifiedUtf8(keys);
+		} catch (CheckedBigEndianDataInput.ModifiedUtf8DataFormatException ex) {
+			throw new NbtParseException.InvalidString(ex);
+		}
+	}
+
+	/**
+	 * Unlike {@link #readString()}, the string is not cached, since it is not expected to be repeated
+	 */
+	@NotNull
+	String readStringValue() throws ReadException, EofException, OomException, NbtParseException.InvalidString {
+		try {
+			return di.expectModifiedUtf8();
+		} catch (CheckedBigEndianDataInput.ModifiedUtf8DataFormatException ex) {
+			throw new NbtParseException.InvalidString(ex);
+		}
+	}
+
+	int readArrayLen() throws ReadException, EofException, NbtParseException.InvalidDataStructureSize {
+		int len = di.expectInt();
+		if (len < 0 | len > GrowableArray.MAX_ARRAY_SIZE) throw new NbtParseException.InvalidDataStructureSize(len);
+		return len;
+	}
+
+	/**
+	 * Steps over {@code count} consecutive payloads of the given type without recursion, and without decoding nor
+	 * allocating anything
+	 *
+	 * @param currentDepth The nesting depth of the payloads to be skipped
+	 */
+	void skipPayloads(int type, int count, int currentDepth)
+		throws ReadException, EofException, OomException, NbtParseException {
+		int[] frameType = skipFrameType, frameRemaining = skipFrameRemaining;
+		if (frameType == null | frameRemaining == null) {
+			skipFrameType = frameType = OomAware.tryRun(oomAware, () -> new int[NbtParser.NESTED_MAX_DEPTH + 1]);
+			skipFrameRemaining = frameRemaining =
+				OomAware.tryRun(oomAware, () -> new int[NbtParser.NESTED_MAX_DEPTH + 1]);
+		}
+		CheckedBigEndianDataInput<ReadException> di = this.di;
+		// The first frame does not nest anything, it just holds the payloads to be skipped
+		int maxFrames = NbtParser.NESTED_MAX_DEPTH - currentDepth + 1;
+		frameType[0] = type;
+		frameRemaining[0] = count;
+		int frames = 1;
+		while (frames > 0) {
+			int top = frames - 1;
+			int elementType = frameType[top], valueType;
+			if (elementType == SKIP_COMPOUND) {
+				valueType = di.expectByte();
+				if (valueType == NbtType.tagEnd) {
+					--frames;
+					continue;
+				}
+				di.expectSkip(di.expectShort());
+			} else {
+				int remaining = frameRemaining[top];
+				int fixedSize = NbtType.fixedPayloadSize(elementType);
+				if (remaining == 0 | fixedSize > 0) {
+					di.expectSkip((long) remaining * Math.max(fixedSize, 0));
+					--frames;
+					continue;
+				}
+				frameRemaining[top] = remaining - 1;
+				valueType = elementType;
+			}
+
+			int fixedSize = NbtType.fixedPayloadSize(valueType);
+			if (fixedSize > 0) {
+				di.expectSkip(fixedSize);
+				continue;
+			}
+			switch (valueType) {
+				case NbtType.tagByteArray:
+					di.expectSkip(readArrayLen());
+					break;
+				case NbtType.tagIntArray:
+					di.expectSkip((long) readArrayLen() << 2);
+					break;
+				case NbtType.tagLongArray:
+					di.expectSkip((long) readArrayLen() << 3);
+					break;
+				case NbtType.tagString:
+					di.expectSkip(di.expectShort());
+					break;
+				case NbtType.tagList: {
+					int listType = di.expectByte();
+					int len = readArrayLen();
+					if (len == 0) break;
+					if (listType == NbtType.tagEnd) throw new NbtParseException.UnexpectedTagType(null, listType);
+					if (listType > NbtType.tagLongArray) throw new NbtParseException.UnknownTagType(listType);
+					if (frames == maxFrames)
+						throw new NbtParseException.InvalidDataStructureSize(currentDepth + frames);
+					frameType[frames] = listType;
+					frameRemaining[frames++] = len;
+					break;
+				}
+				case NbtType.tagCompound:
+					if (frames == maxFrames)
+						throw new NbtParseException.InvalidDataStructureSize(currentDepth + frames);
+					frameType[frames++] = SKIP_COMPOUND;
+					break;
+				default:
+					throw new NbtParseException.UnknownTagType(valueType);
+			}
+		}
+	}
+}
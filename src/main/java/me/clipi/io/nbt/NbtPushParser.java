@@ -0,0 +1,385 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io.nbt;
+
+import me.clipi.io.CheckedBigEndianDataInput;
+import me.clipi.io.CheckedReader;
+import me.clipi.io.EofException;
+import me.clipi.io.ModifiedUtf8Interner;
+import me.clipi.io.OomException;
+import me.clipi.io.OomException.OomAware;
+import me.clipi.io.nbt.exceptions.NbtParseException;
+import me.clipi.io.nbt.exceptions.NbtParseException.IncorrectSchema;
+import me.clipi.io.nbt.schema.NbtCompoundSchema;
+import me.clipi.io.nbt.schema.NbtRootSchema;
+import me.clipi.io.util.GrowableArray;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses NBT whose bytes arrive in chunks (e.g. from a non-blocking socket), without blocking a thread while waiting
+ * for the rest of them.
+ *
+ * <p>Each chunk is scanned as it arrives, keeping only the structural state needed to find where the root tag ends,
+ * so malformed structures are detected early. The {@link NbtRootSchema#schemaForRootValue root callback} of the schema
+ * runs as soon as the name of the root tag has arrived, and any tag whose declared size would make the input exceed
+ * the maximum size is rejected as soon as its header has arrived, so that unwanted uploads are rejected without
+ * buffering them. Once the root tag is complete, {@link #parseRoot()} applies the rest of the schema (or
+ * {@link #parser()} returns an {@link NbtParser} over the buffered bytes), without blocking.
+ *
+ * <p>The bytes of the root tag are buffered in a heap array that grows as they arrive, so the peak memory usage is up
+ * to twice the maximum size while the array grows, plus whatever the schema decodes.
+ *
+ * @apiNote This class is <strong>not</strong> thread safe.
+ */
+public final class NbtPushParser<Schema extends NbtCompoundSchema> {
+	/**
+	 * Frame kind of a compound. Frames of lists store the type of their elements instead
+	 */
+	private static final int COMPOUND = -1, NO_PENDING_VALUE = -1;
+
+	private final int maxSize;
+	private final @NotNull NbtRootSchema<Schema> rootSchema;
+	private final @NotNull ModifiedUtf8Interner keys;
+
+	private byte @NotNull [] data;
+	private int size;
+
+	private @Nullable String rootName;
+	private @Nullable Schema rootValueSchema;
+	/**
+	 * The {@link OomAware} of the {@link NbtParser} that applies the rest of the schema, to which the one received by
+	 * the root callback delegates
+	 */
+	private @Nullable OomAware parsingOomAware;
+
+	// <editor-fold defaultstate="collapsed" desc="scanner state">
+	/**
+	 * The position of the next unscanned byte. It may be past {@link #size} while skipping over a value whose bytes
+	 * have not arrived yet
+	 */
+	private long scanPos;
+	private boolean rootStarted, complete;
+	/**
+	 * The type of the value whose header (if any) has already been scanned, but whose payload has not
+	 */
+	private int pendingType = NO_PENDING_VALUE;
+	private final int @NotNull [] frameType = new int[NbtParser.NESTED_MAX_DEPTH],
+		frameRemaining = new int[NbtParser.NESTED_MAX_DEPTH];
+	private int depth;
+	// </editor-fold>
+
+	/**
+	 * @param maxSize    The maximum amount of bytes of the root tag, past which the input is rejected
+	 * @param rootSchema The schema of the root tag
+	 */
+	public NbtPushParser(int maxSize, @NotNull NbtRootSchema<Schema> rootSchema) {
+		this(maxSize, rootSchema, new ModifiedUtf8Interner());
+	}
+
+	/**
+	 * @param maxSize    The maximum amount of bytes of the root tag, past which the input is rejected
+	 * @param rootSchema The schema of the root tag
+	 * @param keys       The cache of the names of the tags, which may be shared with other parsers
+	 */
+	public NbtPushParser(int maxSize, @NotNull NbtRootSchema<Schema> rootSchema, @NotNull ModifiedUtf8Interner keys) {
+		if (maxSize < 4 | maxSize > GrowableArray.MAX_ARRAY_SIZE)
+			throw new IllegalArgumentException("Invalid maximum size " + maxSize);
+		this.maxSize = maxSize;
+		this.rootSchema = rootSchema;
+		this.keys = keys;
+		this.data = new byte[Math.min(maxSize, 4096)];
+	}
+
+	/**
+	 * Whether the root tag has been completely received
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * @return The name of the root tag, or {@code null} if it has not been received yet
+	 */
+	@Nullable
+	public String rootName() {
+		return rootName;
+	}
+
+	/**
+	 * Consumes the bytes of {@code chunk} up to the end of the root tag, leaving any bytes after it in the chunk
+	 *
+	 * @return Whether the root tag has been completely received
+	 * @throws NbtParseException.InvalidDataStructureSize if the root tag is, or declares to be, larger than the maximum
+	 *                                                    size
+	 * @throws IncorrectSchema                            if the root callback of the schema rejects the root tag
+	 */
+	public boolean feed(@NotNull ByteBuffer chunk) throws OomException, NbtParseException {
+		if (complete) return true;
+		int start = size, position = chunk.position();
+		int len = Math.min(chunk.remaining(), maxSize - start);
+		ensureCapacity(len);
+		if (chunk.hasArray()) {
+			System.arraycopy(chunk.array(), chunk.arrayOffset() + position, data, start, len);
+		} else {
+			chunk.get(data, start, len);
+		}
+		size = start + len;
+
+		if (scan()) {
+			// The rest of the chunk is not part of the root tag
+			size = (int) scanPos;
+			chunk.position(position + size - start);
+			return true;
+		}
+		chunk.position(position + len);
+		if (chunk.hasRemaining()) throw new NbtParseException.InvalidDataStructureSize(maxSize);
+		return false;
+	}
+
+	/**
+	 * Applies the rest of the schema to the root tag, whose root callback has already been run
+	 *
+	 * @return The schema returned by the root callback
+	 * @throws IllegalStateException if the root tag has not been completely received yet
+	 */
+	@NotNull
+	public Schema parseRoot() throws OomException, NbtParseException {
+		Schema rootValueSchema = this.rootValueSchema;
+		if (!complete) throw new IllegalStateException("The root tag has not been completely received yet");
+		assert rootValueSchema != null;
+		NbtRootSchema<Schema> rootSchema = this.rootSchema;
+		try (NbtParser<RuntimeException> parser = parser()) {
+			return parser.parseRoot(new NbtRootSchema<Schema>() {
+				@Override
+				@NotNull
+				public Schema schemaForRootValue(@NotNull String rootName, @NotNull OomAware oomAware) {
+					parsingOomAware = oomAware;
+					return rootValueSchema;
+				}
+
+				@Override
+				public int expectedRootEntries() {
+					return rootSchema.expectedRootEntries();
+				}
+			});
+		} finally {
+			parsingOomAware = null;
+		}
+	}
+
+	/**
+	 * @return A parser of the root tag, which reads the header of the root tag again
+	 * @throws IllegalStateException if the root tag has not been completely received yet
+	 */
+	@NotNull
+	public NbtParser<RuntimeException> parser() {
+		if (!complete) throw new IllegalStateException("The root tag has not been completely received yet");
+		return new NbtParser<>(new CheckedBigEndianDataInput<>(CheckedReader.fromArray(data, 0, size)), keys);
+	}
+
+	private void ensureCapacity(int len) throws OomException {
+		byte[] data = this.data;
+		int required = size + len;
+		assert required <= maxSize;
+		if (required <= data.length) return;
+		int newLen = (int) Math.min(Math.max(required, (long) data.length << 1), maxSize);
+		byte[] newData = OomAware.tryRun(null, () -> new byte[newLen]);
+		System.arraycopy(data, 0, newData, 0, size);
+		this.data = newData;
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="scanner">
+	private int unsignedShortAt(long pos) {
+		byte[] data = this.data;
+		int i = (int) pos;
+		return ((data[i] & 0xFF) << 8) | (data[i + 1] & 0xFF);
+	}
+
+	private int intAt(long pos) {
+		byte[] data = this.data;
+		int i = (int) pos;
+		return (data[i] << 24) | ((data[i + 1] & 0xFF) << 16) | ((data[i + 2] & 0xFF) << 8) | (data[i + 3] & 0xFF);
+	}
+
+	private int arrayLenAt(long pos) throws NbtParseException.InvalidDataStructureSize {
+		int len = intAt(pos);
+		if (len < 0 | len > GrowableArray.MAX_ARRAY_SIZE) throw new NbtParseException.InvalidDataStructureSize(len);
+		return len;
+	}
+
+	private void push(int type, int remaining) throws NbtParseException.InvalidDataStructureSize {
+		int depth = this.depth;
+		if (depth == frameType.length) throw new NbtParseException.InvalidDataStructureSize(depth + 1);
+		frameType[depth] = type;
+		frameRemaining[depth] = remaining;
+		this.depth = depth + 1;
+	}
+
+	/**
+	 * Runs the root callback of the schema, once the name of the root tag has been received
+	 */
+	private void resolveRootSchema(int nameLen) throws OomException, NbtParseException {
+		String name;
+		try {
+			name = new CheckedBigEndianDataInput<>(CheckedReader.fromArray(data, 1, 2 + nameLen))
+				.expectModifiedUtf8(keys);
+		} catch (CheckedBigEndianDataInput.ModifiedUtf8DataFormatException ex) {
+			throw new NbtParseException.InvalidString(ex);
+		} catch (EofException ex) {
+			throw new IllegalStateException(ex);
+		}
+		rootName = name;
+		Schema schema = rootSchema.schemaForRootValue(name, () -> {
+			OomAware oomAware = parsingOomAware;
+			if (oomAware != null) oomAware.trySaveFromOom();
+		});
+		if (schema == null) throw new IncorrectSchema(null, rootSchema);
+		rootValueSchema = schema;
+	}
+
+	/**
+	 * Scans the payload of {@link #pendingType}, if it has been received
+	 *
+	 * @return Whether the payload has been scanned
+	 */
+	private boolean scanPendingValue() throws NbtParseException {
+		int type = pendingType;
+		long pos = scanPos;
+		int available = (int) Math.max(size - pos, 0);
+		int fixedSize = NbtType.fixedPayloadSize(type);
+		if (fixedSize > 0) {
+			pos += fixedSize;
+		} else {
+			switch (type) {
+				case NbtType.tagByteArray:
+				case NbtType.tagIntArray:
+				case NbtType.tagLongArray: {
+					if (available < 4) return false;
+					int elementSize = type == NbtType.tagByteArray ? 1 : type == NbtType.tagIntArray ? 4 : 8;
+					pos += 4 + (long) arrayLenAt(pos) * elementSize;
+					break;
+				}
+				case NbtType.tagString:
+					if (available < 2) return false;
+					pos += 2 + unsignedShortAt(pos);
+					break;
+				case NbtType.tagList: {
+					if (available < 5) return false;
+					int elementType = data[(int) pos] & 0xFF;
+					int len = arrayLenAt(pos + 1);
+					pos += 5;
+					if (len == 0) break;
+					if (elementType == NbtType.tagEnd) throw new NbtParseException.UnexpectedTagType(null, elementType);
+					int elementSize = NbtType.fixedPayloadSize(elementType);
+					if (elementSize > 0) {
+						pos += (long) len * elementSize;
+					} else if (elementType > NbtType.tagLongArray) {
+						throw new NbtParseException.UnknownTagType(elementType);
+					} else {
+						push(elementType, len);
+					}
+					break;
+				}
+				case NbtType.tagCompound:
+					push(COMPOUND, 0);
+					break;
+				default:
+					throw new NbtParseException.UnknownTagType(type);
+			}
+		}
+		scanPos = pos;
+		pendingType = NO_PENDING_VALUE;
+		return true;
+	}
+
+	/**
+	 * Rejects the declared size of a value before its bytes arrive
+	 */
+	private void checkMaxSize() throws NbtParseException.InvalidDataStructureSize {
+		long scanPos = this.scanPos;
+		if (scanPos > maxSize)
+			throw new NbtParseException.InvalidDataStructureSize((int) Math.min(scanPos, Integer.MAX_VALUE));
+	}
+
+	/**
+	 * Scans as much of the received bytes as possible
+	 *
+	 * @return Whether the root tag has been completely received
+	 */
+	private boolean scan() throws OomException, NbtParseException {
+		byte[] data = this.data;
+		int size = this.size;
+
+		if (!rootStarted) {
+			if (size < 3) return false;
+			int type = data[0] & 0xFF;
+			if (type != NbtType.tagCompound) throw new NbtParseException.UnexpectedTagType(NbtType.Compound, type);
+			scanPos = 3 + unsignedShortAt(1);
+			rootStarted = true;
+			pendingType = NbtType.tagCompound;
+		}
+		if (rootValueSchema == null) {
+			checkMaxSize();
+			if (scanPos > size) return false;
+			resolveRootSchema((int) scanPos - 3);
+		}
+
+		for (; ; ) {
+			checkMaxSize();
+			if (scanPos > size) return false;
+			if (pendingType != NO_PENDING_VALUE) {
+				if (!scanPendingValue()) return false;
+				continue;
+			}
+			if (depth == 0) break;
+
+			int top = depth - 1;
+			int frameType = this.frameType[top];
+			if (frameType != COMPOUND) {
+				if (frameRemaining[top]-- == 0) {
+					--depth;
+				} else {
+					pendingType = frameType;
+				}
+				continue;
+			}
+
+			long pos = scanPos;
+			if (pos >= size) return false;
+			int type = data[(int) pos] & 0xFF;
+			if (type == NbtType.tagEnd) {
+				scanPos = pos + 1;
+				--depth;
+				continue;
+			}
+			if (size - pos < 3) return false;
+			scanPos = pos + 3 + unsignedShortAt(pos + 1);
+			pendingType = type;
+		}
+
+		complete = true;
+		return true;
+	}
+	// </editor-fold>
+}
@@ -0,0 +1,148 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package me.clipi.io.nbt;
+
+import me.clipi.io.OomException;
+import me.clipi.io.OomException.OomAware;
+import me.clipi.io.nbt.schema.NbtCompoundSchema;
+import me.clipi.io.nbt.schema.NbtListOfCompoundsSchema;
+import me.clipi.io.nbt.schema.NbtListOfCompoundsSchema.ListOfSchemas;
+import me.clipi.io.nbt.schema.NbtRootSchema;
+import me.clipi.io.util.GrowableArray;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Set of paths that, when used as the schema of {@link NbtParser#parseRoot(NbtRootSchema)}, only decodes the values
+ * at those paths, stepping over everything else without decoding nor allocating anything.
+ *
+ * <p>Each path is a sequence of keys that starts at the root value, regardless of the name of the root. The value at
+ * the end of a path is saved whole. The keys before it must name compounds, or lists of compounds, in which case the
+ * rest of the path applies to each of their elements. Since the component type of a list is not known until the list
+ * is reached, lists of any other type found at those keys are saved whole as well.
+ *
+ * <p>Instances are immutable, so they may be reused across parses and threads.
+ */
+public final class NbtQuery implements NbtRootSchema<SaveCompoundSchema> {
+	private final @NotNull Node root;
+
+	private static final class Node {
+		/**
+		 * The nodes of the keys that are (partially) saved, or {@code null} if the value of this node is saved whole
+		 */
+		@Nullable
+		Map<@NotNull String, @NotNull Node> children = new HashMap<>();
+	}
+
+	private NbtQuery(@NotNull Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * @param paths The paths to be saved, whose keys are separated by dots (e.g. {@code "Schematic.DataVersion"}).
+	 *              Keys that contain dots can be specified with {@link #of(String[][])}.
+	 */
+	@NotNull
+	public static NbtQuery compile(@NotNull String @NotNull ... paths) {
+		String[][] split = new String[paths.length][];
+		for (int i = 0; i < paths.length; ++i)
+			split[i] = paths[i].split("\\.", -1);
+		return of(split);
+	}
+
+	/**
+	 * @param paths The paths to be saved, as the sequence of keys of each of them
+	 */
+	@NotNull
+	public static NbtQuery of(@NotNull String @NotNull [] @NotNull ... paths) {
+		Node root = new Node();
+		for (String[] path : paths) {
+			Node node = root;
+			for (String key : path) {
+				Map<String, Node> children = node.children;
+				if (children == null) break;
+				node = children.computeIfAbsent(key, k -> new Node());
+			}
+			// Save the value whole, even if a longer path that goes through it was specified
+			node.children = null;
+		}
+		return new NbtQuery(root);
+	}
+
+	@Override
+	@NotNull
+	public SaveCompoundSchema schemaForRootValue(@NotNull String rootName, @NotNull OomAware oomAware)
+		throws OomException {
+		Map<String, Node> children = root.children;
+		return children == null ?
+			SaveCompoundSchema.create(oomAware) :
+			oomAware.tryRun(() -> new QuerySchema(oomAware, children));
+	}
+
+	private static final class QuerySchema extends SaveCompoundSchema {
+		private final @NotNull Map<@NotNull String, @NotNull Node> children;
+
+		private QuerySchema(@NotNull OomAware oomAware, @NotNull Map<@NotNull String, @NotNull Node> children)
+			throws OomException {
+			super(oomAware);
+			this.children = children;
+		}
+
+		@Override
+		public boolean skipsValue(@NotNull String key, @NotNull NbtType type) {
+			Node node = children.get(key);
+			return node == null || (node.children != null & type != NbtType.Compound & type != NbtType.List);
+		}
+
+		@Override
+		@Nullable
+		public NbtCompoundSchema schemaForCompound(@NotNull String key) throws OomException {
+			Map<String, Node> grandchildren = children.get(key).children;
+			return grandchildren == null ?
+				super.schemaForCompound(key) :
+				oomAware.tryRun(() -> new QuerySchema(oomAware, grandchildren));
+		}
+
+		@Override
+		@Nullable
+		public NbtListOfCompoundsSchema schemaForListOfCompounds(
+			@NotNull String key, @Range(from = 1, to = GrowableArray.MAX_ARRAY_SIZE) int length) throws OomException {
+			Map<String, Node> grandchildren = children.get(key).children;
+			if (grandchildren == null) return super.schemaForListOfCompounds(key, length);
+			return oomAware.tryRun(() -> new ListOfSchemas<QuerySchema, NbtCompound>(
+				oomAware, NbtCompound.class, length) {
+				@Override
+				@NotNull
+				protected QuerySchema generateSchema(@NotNull OomAware oomAware, int index) throws OomException {
+					return new QuerySchema(oomAware, grandchildren);
+				}
+
+				@Override
+				protected @NotNull NbtCompound mapSchema(@NotNull QuerySchema schema) {
+					return schema.compound;
+				}
+			});
+		}
+	}
+}
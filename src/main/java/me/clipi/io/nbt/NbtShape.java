@@ -0,0 +1,352 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io.nbt;
+
+import me.clipi.io.OomException;
+import me.clipi.io.OomException.OomAware;
+import me.clipi.io.util.GrowableArray;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * The keys and types of the entries of a compound, and the slot of each of their values in the slabs of a
+ * {@link NbtCompound}.
+ *
+ * <p>A shape is built while its compound is being parsed, usually in a {@link CompoundScratch}. Once the compound has
+ * been fully parsed, the shape is {@link Interner#intern interned}, so that every compound with the same keys and
+ * types in the same order shares a single immutable shape. Adding entries to a compound whose shape is shared
+ * {@link #copy copies} it first.
+ */
+final class NbtShape {
+	private static final int INITIAL_CAPACITY = 8;
+
+	/**
+	 * package-private
+	 *
+	 * <p>The shared shape of every compound without entries, so that creating a compound doesn't allocate any array
+	 */
+	static final NbtShape EMPTY = new NbtShape(new String[0], new byte[0], new int[0]);
+
+	static {
+		EMPTY.share();
+	}
+
+	@NotNull
+	String @NotNull [] keys;
+	byte @NotNull [] types;
+	/**
+	 * The index of each value in {@link NbtCompound#primitives} if its type is primitive, or in
+	 * {@link NbtCompound#objects} otherwise
+	 */
+	int @NotNull [] slots;
+	/**
+	 * The {@link KeyIndex} of {@link #keys}, or {@code null} if this shape is not indexed
+	 */
+	private int @Nullable [] keyIndex;
+	/**
+	 * The amount of entries, and the amount of slots used in each slab, which include the {@link #holes}
+	 */
+	int entries, primitives, objects;
+	/**
+	 * The amount of slots that are no longer used by any entry, after removing entries or changing their type. Only
+	 * shapes without holes may be interned, since their slots are the same for any compound with the same entries.
+	 */
+	int holes;
+	/**
+	 * Whether this shape may be referenced by multiple compounds, in which case it must not be modified
+	 */
+	private boolean shared;
+	private int hash;
+
+	private NbtShape(@NotNull String @NotNull [] keys, byte @NotNull [] types, int @NotNull [] slots) {
+		this.keys = keys;
+		this.types = types;
+		this.slots = slots;
+	}
+
+	/**
+	 * package-private
+	 */
+	@NotNull
+	static NbtShape create(@Nullable OomAware oomAware) throws OomException {
+		return OomAware.tryRun(oomAware, () -> new NbtShape(
+			new String[INITIAL_CAPACITY], new byte[INITIAL_CAPACITY], new int[INITIAL_CAPACITY]));
+	}
+
+	/**
+	 * package-private
+	 *
+	 * <p>Makes this shape immutable, trimming its arrays first
+	 */
+	void share() {
+		tryShrinkToFit();
+		shared = true;
+	}
+
+	/**
+	 * package-private
+	 */
+	boolean isShared() {
+		return shared;
+	}
+
+	/**
+	 * package-private
+	 *
+	 * @return An unshared copy of this shape, which may be modified
+	 */
+	@NotNull
+	NbtShape copy(@Nullable OomAware oomAware) throws OomException {
+		int capacity = Math.max(entries, INITIAL_CAPACITY);
+		NbtShape copy = OomAware.tryRun(oomAware, () -> new NbtShape(
+			Arrays.copyOf(keys, capacity), Arrays.copyOf(types, capacity), Arrays.copyOf(slots, capacity)));
+		copy.keyIndex = keyIndex == null ? null : OomAware.tryRunOrNull(oomAware, keyIndex::clone);
+		copy.entries = entries;
+		copy.primitives = primitives;
+		copy.objects = objects;
+		copy.holes = holes;
+		return copy;
+	}
+
+	/**
+	 * package-private
+	 *
+	 * @return An unshared copy of this shape whose arrays have the exact size
+	 */
+	@NotNull
+	NbtShape exactCopy(@Nullable OomAware oomAware) throws OomException {
+		int entries = this.entries;
+		NbtShape copy = OomAware.tryRun(oomAware, () -> new NbtShape(
+			Arrays.copyOf(keys, entries), Arrays.copyOf(types, entries), Arrays.copyOf(slots, entries)));
+		int[] keyIndex = this.keyIndex;
+		copy.keyIndex = keyIndex == null | entries < KeyIndex.THRESHOLD ? null :
+			OomAware.tryRunOrNull(oomAware, keyIndex::clone);
+		copy.entries = entries;
+		copy.primitives = primitives;
+		copy.objects = objects;
+		copy.holes = holes;
+		copy.hash = hash;
+		return copy;
+	}
+
+	/**
+	 * package-private
+	 *
+	 * <p>Removes all the entries, keeping the capacity of the arrays so that this shape can be reused
+	 */
+	void reset() {
+		assert !shared;
+		int entries = this.entries;
+		Arrays.fill(keys, 0, entries, null);
+		int[] keyIndex = this.keyIndex;
+		if (keyIndex != null) {
+			// Clearing a table much bigger than the amount of entries would cost more than rebuilding it
+			if (entries << 3 >= keyIndex.length) Arrays.fill(keyIndex, 0);
+			else this.keyIndex = null;
+		}
+		this.entries = primitives = objects = holes = hash = 0;
+	}
+
+	/**
+	 * package-private
+	 *
+	 * <p>Grows the arrays so that the given amount of entries fit without growing them again. Since it is only a hint,
+	 * the arrays are not grown if there is no memory for them.
+	 */
+	void tryEnsureCapacity(int capacity, @Nullable OomAware oomAware) {
+		assert !shared;
+		if (capacity <= keys.length) return;
+		String[] keys = OomAware.tryRunOrNull(oomAware, () -> Arrays.copyOf(this.keys, capacity));
+		byte[] types = OomAware.tryRunOrNull(oomAware, () -> Arrays.copyOf(this.types, capacity));
+		int[] slots = OomAware.tryRunOrNull(oomAware, () -> Arrays.copyOf(this.slots, capacity));
+		if (keys == null | types == null | slots == null) return;
+		this.keys = keys;
+		this.types = types;
+		this.slots = slots;
+	}
+
+	/**
+	 * package-private
+	 *
+	 * @return The slot of the value of the new entry
+	 */
+	int add(@NotNull String key, byte nbtType, @Nullable OomAware oomAware) throws OomException {
+		assert !shared;
+		int idx = entries;
+		if (idx == keys.length) {
+			int capacity = (int) Math.min((long) idx << 1, GrowableArray.MAX_ARRAY_SIZE);
+			if (capacity == idx) throw OomException.INSTANCE;
+			keys = OomAware.tryRun(oomAware, () -> Arrays.copyOf(keys, capacity));
+			types = OomAware.tryRun(oomAware, () -> Arrays.copyOf(types, capacity));
+			slots = OomAware.tryRun(oomAware, () -> Arrays.copyOf(slots, capacity));
+		}
+		int slot = nbtType < NbtType.tagByteArray ? primitives++ : objects++;
+		keys[idx] = key;
+		types[idx] = nbtType;
+		slots[idx] = slot;
+		entries = idx + 1;
+		keyIndex = KeyIndex.afterAdd(keyIndex, keys, idx + 1, oomAware);
+		return slot;
+	}
+
+	/**
+	 * package-private
+	 *
+	 * <p>Changes the type of the entry at the given index. If its value has to be moved to the other slab, its
+	 * previous slot will become a hole.
+	 *
+	 * @return The slot of the value of the entry
+	 */
+	int retype(int idx, byte nbtType) {
+		assert !shared;
+		byte[] types = this.types;
+		boolean isObj = nbtType >= NbtType.tagByteArray;
+		boolean wasObj = types[idx] >= NbtType.tagByteArray;
+		types[idx] = nbtType;
+		if (isObj == wasObj) return slots[idx];
+		++holes;
+		return slots[idx] = isObj ? objects++ : primitives++;
+	}
+
+	/**
+	 * package-private
+	 *
+	 * <p>Removes the entry at the given index by moving the last entry to its position, so its slot becomes a hole
+	 */
+	@SuppressWarnings("DataFlowIssue")
+	void swapRemove(int idx) {
+		assert !shared;
+		int last = entries - 1;
+		KeyIndex.swapRemove(keyIndex, keys, entries, idx);
+		keys[idx] = keys[last];
+		types[idx] = types[last];
+		slots[idx] = slots[last];
+		// Let the key be gc-ed
+		keys[last] = null;
+		entries = last;
+		++holes;
+	}
+
+	/**
+	 * package-private
+	 *
+	 * @return The index of the entry with the given key, or {@code -1} if it is not present
+	 */
+	int indexOf(@NotNull String key) {
+		return KeyIndex.indexOf(keyIndex, keys, entries, key);
+	}
+
+	/**
+	 * package-private
+	 *
+	 * <p>Just like {@link GrowableArray#tryShrinkToFit()}, no memory will be freed to make the copies fit, since this
+	 * is called while memory is being freed
+	 */
+	void tryShrinkToFit() {
+		if (shared) return;
+		int entries = this.entries;
+		if (keys.length == entries) return;
+		String[] keys = OomAware.tryRunOrNull(null, () -> Arrays.copyOf(this.keys, entries));
+		byte[] types = OomAware.tryRunOrNull(null, () -> Arrays.copyOf(this.types, entries));
+		int[] slots = OomAware.tryRunOrNull(null, () -> Arrays.copyOf(this.slots, entries));
+		if (keys == null | types == null | slots == null) return;
+		this.keys = keys;
+		this.types = types;
+		this.slots = slots;
+	}
+
+	private boolean sameEntries(@NotNull NbtShape other) {
+		int entries = this.entries;
+		if (other.entries != entries | other.hash != hash) return false;
+		String[] keys = this.keys, otherKeys = other.keys;
+		byte[] types = this.types, otherTypes = other.types;
+		for (int i = 0; i < entries; ++i) {
+			if (types[i] != otherTypes[i]) return false;
+			// Keys are usually interned by the parser, so they are the same instance
+			String key = keys[i], otherKey = otherKeys[i];
+			if (key != otherKey && !key.equals(otherKey)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * A fixed-size cache of shared shapes, where older shapes are evicted on collisions. It is owned by a single
+	 * {@link NbtParser}, so it is not thread-safe.
+	 */
+	static final class Interner {
+		private static final int CAPACITY = 256, MAX_PROBES = 4;
+		/**
+		 * Bigger compounds are rarely repeated, so their shapes are not cached, although they are still shared by
+		 * their copies
+		 */
+		private static final int MAX_INTERNED_ENTRIES = 64;
+
+		private @NotNull NbtShape @Nullable [] table;
+
+		/**
+		 * package-private
+		 *
+		 * @param scratch Whether {@code shape} belongs to a {@link CompoundScratch}, in which case it is copied before
+		 *                it is cached or returned
+		 * @return The shared shape with the same entries as {@code shape}, which is {@code shape} itself (or its
+		 * copy) if it was not cached
+		 */
+		@NotNull
+		NbtShape intern(@NotNull NbtShape shape, boolean scratch, @Nullable OomAware oomAware) throws OomException {
+			if (shape.shared) return shape;
+			if (shape.holes != 0) return scratch ? shape.exactCopy(oomAware) : shape;
+			int entries = shape.entries;
+			if (entries == 0 & scratch) return EMPTY;
+			if (entries == 0 | entries > MAX_INTERNED_ENTRIES) return shared(shape, scratch, oomAware);
+
+			String[] keys = shape.keys;
+			byte[] types = shape.types;
+			int hash = 1;
+			for (int i = 0; i < entries; ++i)
+				hash = 31 * (31 * hash + keys[i].hashCode()) + types[i];
+			shape.hash = hash ^= hash >>> 16;
+
+			NbtShape[] table = this.table;
+			if (table == null) {
+				table = this.table = OomAware.tryRunOrNull(oomAware, () -> new NbtShape[CAPACITY]);
+				if (table == null) return shared(shape, scratch, oomAware);
+			}
+			int mask = CAPACITY - 1;
+			for (int i = 0; i < MAX_PROBES; ++i) {
+				int bucket = hash + i & mask;
+				NbtShape cached = table[bucket];
+				if (cached == null) return table[bucket] = shared(shape, scratch, oomAware);
+				if (cached.sameEntries(shape)) return cached;
+			}
+			return table[hash & mask] = shared(shape, scratch, oomAware);
+		}
+
+		@NotNull
+		private static NbtShape shared(@NotNull NbtShape shape, boolean scratch, @Nullable OomAware oomAware)
+			throws OomException {
+			if (scratch) shape = shape.exactCopy(oomAware);
+			shape.share();
+			return shape;
+		}
+	}
+}
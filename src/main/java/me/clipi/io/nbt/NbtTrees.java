@@ -0,0 +1,487 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io.nbt;
+
+import me.clipi.io.util.FixedStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * package-private
+ *
+ * <p>Walks trees of {@link NbtCompound compounds} and {@link NbtList lists} with an explicit stack instead of
+ * recursion, so that deep trees cannot overflow the call stack. Just like when parsing or writing them, the trees may
+ * be nested at most {@link NbtParser#NESTED_MAX_DEPTH} times.
+ *
+ * <p>The stack is only allocated once a nested compound or list must be walked, since the hashes of frozen ones are
+ * cached.
+ */
+final class NbtTrees {
+	private NbtTrees() {
+	}
+
+	/**
+	 * Returned by {@link EqualsTarget#advance()} once a pair of values is not equal
+	 */
+	private static final Object DIFFERENT = new Object();
+
+	/**
+	 * Freezes the compound or list and every compound and list it contains, from the innermost ones outwards, caching
+	 * their hashes along the way
+	 *
+	 * @throws IllegalStateException if the tree is nested too deeply, which also happens if it contains itself
+	 */
+	static void freeze(@NotNull Object compoundOrList) {
+		walkHash(compoundOrList, true);
+	}
+
+	/**
+	 * @throws IllegalStateException if the tree is nested too deeply, which also happens if it contains itself
+	 */
+	static int hashCode(@NotNull NbtCompound compound) {
+		return walkHash(compound, false);
+	}
+
+	/**
+	 * @throws IllegalStateException if the tree is nested too deeply, which also happens if it contains itself
+	 */
+	static int hashCode(@NotNull NbtList list) {
+		return list.hasNestedValues() ? walkHash(list, false) : flatListHash(list);
+	}
+
+	private static int walkHash(@NotNull Object root, boolean freeze) {
+		FixedStack<HashingTarget> nestedTarget = null;
+		HashingTarget target = hashingTarget(root, freeze);
+		for (; ; ) {
+			Object nested = target.advance(freeze);
+			if (nested != null) {
+				if (nestedTarget == null)
+					nestedTarget = new FixedStack<>(HashingTarget.class, NbtParser.NESTED_MAX_DEPTH);
+				push(nestedTarget, target);
+				target = hashingTarget(nested, freeze);
+				continue;
+			}
+			int hash = target.finish(freeze);
+			if (nestedTarget == null || (target = nestedTarget.tryPop()) == null) return hash;
+			target.addNested(hash);
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException if the trees are nested too deeply, which also happens if they contain themselves
+	 */
+	static boolean equals(@NotNull Object compoundOrList, @NotNull Object other) {
+		Object res = compareNested(compoundOrList, other);
+		if (!(res instanceof EqualsTarget)) return res == null;
+
+		FixedStack<EqualsTarget> nestedTarget = null;
+		EqualsTarget target = (EqualsTarget) res;
+		for (; ; ) {
+			res = target.advance();
+			if (res == DIFFERENT) return false;
+			if (res != null) {
+				if (nestedTarget == null)
+					nestedTarget = new FixedStack<>(EqualsTarget.class, NbtParser.NESTED_MAX_DEPTH);
+				push(nestedTarget, target);
+				target = (EqualsTarget) res;
+				continue;
+			}
+			if (nestedTarget == null || (target = nestedTarget.tryPop()) == null) return true;
+		}
+	}
+
+	@NotNull
+	private static HashingTarget hashingTarget(@NotNull Object compoundOrList, boolean freeze) {
+		if (compoundOrList instanceof NbtCompound) {
+			NbtCompound compound = (NbtCompound) compoundOrList;
+			if (freeze) compound.prepareFreezing();
+			return new CompoundHashingTarget(compound);
+		}
+		return new ListHashingTarget((NbtList) compoundOrList);
+	}
+
+	private static <T> void push(@NotNull FixedStack<T> nestedTarget, @NotNull T target) {
+		try {
+			nestedTarget.push(target);
+		} catch (FixedStack.FullStackException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * @return Whether the hash of the compound or list must be computed by walking it
+	 */
+	private static boolean mustWalk(@NotNull Object value, boolean freeze) {
+		if (value instanceof NbtCompound) return !((NbtCompound) value).isFrozen();
+		if (!(value instanceof NbtList)) return false;
+		NbtList list = (NbtList) value;
+		return !list.isFrozen() && (freeze || list.hasNestedValues());
+	}
+
+	/**
+	 * Compares two compounds or two lists without walking their nested values
+	 *
+	 * @return {@code null} if they are equal, {@link #DIFFERENT} if they are not, or the target that compares their
+	 * nested values
+	 */
+	@SuppressWarnings("DataFlowIssue")
+	@Nullable
+	private static Object compareNested(@NotNull Object value, @NotNull Object other) {
+		if (value == other) return null;
+		if (value instanceof NbtCompound) {
+			if (!(other instanceof NbtCompound)) return DIFFERENT;
+			NbtCompound compound = (NbtCompound) value, otherCompound = (NbtCompound) other;
+			if (compound.shape.entries != otherCompound.shape.entries ||
+				compound.isFrozen() && otherCompound.isFrozen() && compound.hashCode() != otherCompound.hashCode())
+				return DIFFERENT;
+			return new CompoundEqualsTarget(compound, otherCompound);
+		}
+		NbtList list = (NbtList) value;
+		if (!(other instanceof NbtList)) return DIFFERENT;
+		NbtList otherList = (NbtList) other;
+		if (list.componentType != otherList.componentType ||
+			list.isFrozen() && otherList.isFrozen() && list.hashCode() != otherList.hashCode())
+			return DIFFERENT;
+		if (!list.hasNestedValues()) return flatListEquals(list, otherList) ? null : DIFFERENT;
+		Object[] elements = (Object[]) list.array, otherElements = (Object[]) otherList.array;
+		return elements.length != otherElements.length ? DIFFERENT : new ListEqualsTarget(elements, otherElements);
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="values that aren't compounds nor lists of them">
+	/**
+	 * @return The bits of the primitive value, where floats and doubles are canonicalized just like in
+	 * {@link Float#equals} and {@link Double#equals}
+	 */
+	private static long canonicalBits(byte nbtType, long value) {
+		switch (nbtType) {
+			case NbtType.tagFloat:
+				return Float.floatToIntBits(Float.intBitsToFloat((int) value));
+			case NbtType.tagDouble:
+				return Double.doubleToLongBits(Double.longBitsToDouble(value));
+			default:
+				return value;
+		}
+	}
+
+	private static int primitiveHash(byte nbtType, long value) {
+		return 31 * nbtType + Long.hashCode(canonicalBits(nbtType, value));
+	}
+
+	private static boolean objectEquals(byte nbtType, @NotNull Object value, @NotNull Object other) {
+		switch (nbtType) {
+			case NbtType.tagByteArray:
+				return Arrays.equals((byte[]) value, (byte[]) other);
+			case NbtType.tagIntArray:
+				return Arrays.equals((int[]) value, (int[]) other);
+			case NbtType.tagLongArray:
+				return Arrays.equals((long[]) value, (long[]) other);
+			default:
+				return value.equals(other);
+		}
+	}
+
+	private static int objectHash(byte nbtType, @NotNull Object value) {
+		switch (nbtType) {
+			case NbtType.tagByteArray:
+				return Arrays.hashCode((byte[]) value);
+			case NbtType.tagIntArray:
+				return Arrays.hashCode((int[]) value);
+			case NbtType.tagLongArray:
+				return Arrays.hashCode((long[]) value);
+			default:
+				return value.hashCode();
+		}
+	}
+
+	private static int flatListHash(@NotNull NbtList list) {
+		Object array = list.array;
+		int hash;
+		switch (list.componentType.id) {
+			case NbtType.tagEnd:
+				hash = 0;
+				break;
+			case NbtType.tagByte:
+				hash = Arrays.hashCode((byte[]) array);
+				break;
+			case NbtType.tagShort:
+				hash = Arrays.hashCode((short[]) array);
+				break;
+			case NbtType.tagInt:
+				hash = Arrays.hashCode((int[]) array);
+				break;
+			case NbtType.tagLong:
+				hash = Arrays.hashCode((long[]) array);
+				break;
+			case NbtType.tagFloat:
+				hash = Arrays.hashCode((float[]) array);
+				break;
+			case NbtType.tagDouble:
+				hash = Arrays.hashCode((double[]) array);
+				break;
+			default:
+				assert !list.hasNestedValues();
+				hash = Arrays.deepHashCode((Object[]) array);
+		}
+		return 31 * list.componentType.id + hash;
+	}
+
+	private static boolean flatListEquals(@NotNull NbtList list, @NotNull NbtList other) {
+		Object array = list.array, otherArray = other.array;
+		switch (list.componentType.id) {
+			case NbtType.tagEnd:
+				return true;
+			case NbtType.tagByte:
+				return Arrays.equals((byte[]) array, (byte[]) otherArray);
+			case NbtType.tagShort:
+				return Arrays.equals((short[]) array, (short[]) otherArray);
+			case NbtType.tagInt:
+				return Arrays.equals((int[]) array, (int[]) otherArray);
+			case NbtType.tagLong:
+				return Arrays.equals((long[]) array, (long[]) otherArray);
+			case NbtType.tagFloat:
+				return Arrays.equals((float[]) array, (float[]) otherArray);
+			case NbtType.tagDouble:
+				return Arrays.equals((double[]) array, (double[]) otherArray);
+			default:
+				assert !list.hasNestedValues();
+				return Arrays.deepEquals((Object[]) array, (Object[]) otherArray);
+		}
+	}
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="hashing targets">
+	/**
+	 * Either a {@link CompoundHashingTarget} or a {@link ListHashingTarget}. If the project used Java 17, this could be
+	 * improved with sealed classes.
+	 */
+	private interface HashingTarget {
+		/**
+		 * Hashes the next values, until one of them must be walked
+		 *
+		 * @return The compound or list that must be walked next, or {@code null} once all the values have been hashed
+		 */
+		@Nullable
+		Object advance(boolean freeze);
+
+		/**
+		 * Called with the hash of the value returned by {@link #advance(boolean)}, once it has been walked
+		 */
+		void addNested(int hash);
+
+		/**
+		 * @return The hash of the compound or list, which is cached if it is frozen
+		 */
+		int finish(boolean freeze);
+	}
+
+	private static final class CompoundHashingTarget implements HashingTarget {
+		private final @NotNull NbtCompound compound;
+		private int idx;
+		/**
+		 * Just like {@link java.util.Map#hashCode()}, the hash is the sum of the hashes of the entries, so that it
+		 * doesn't depend on their order
+		 */
+		private int hash;
+
+		private CompoundHashingTarget(@NotNull NbtCompound compound) {
+			this.compound = compound;
+		}
+
+		@SuppressWarnings("DataFlowIssue")
+		@Override
+		@Nullable
+		public Object advance(boolean freeze) {
+			NbtCompound compound = this.compound;
+			NbtShape shape = compound.shape;
+			String[] keys = shape.keys;
+			byte[] types = shape.types;
+			int[] slots = shape.slots;
+			long[] primitives = compound.primitives;
+			Object[] objects = compound.objects;
+
+			int hash = this.hash;
+			for (int i = idx, len = shape.entries; i < len; ++i) {
+				byte type = types[i];
+				int slot = slots[i], valueHash;
+				if (type < NbtType.tagByteArray) {
+					valueHash = primitiveHash(type, primitives[slot]);
+				} else {
+					Object value = objects[slot];
+					if (mustWalk(value, freeze)) {
+						this.idx = i + 1;
+						this.hash = hash;
+						return value;
+					}
+					valueHash = objectHash(type, value);
+				}
+				hash += keys[i].hashCode() ^ valueHash;
+			}
+			this.idx = shape.entries;
+			this.hash = hash;
+			return null;
+		}
+
+		@Override
+		public void addNested(int hash) {
+			this.hash += compound.shape.keys[idx - 1].hashCode() ^ hash;
+		}
+
+		@Override
+		public int finish(boolean freeze) {
+			if (freeze) compound.markFrozen(hash);
+			return hash;
+		}
+	}
+
+	private static final class ListHashingTarget implements HashingTarget {
+		private final @NotNull NbtList list;
+		/**
+		 * The elements of a list of compounds or lists
+		 */
+		private final @NotNull Object @Nullable [] elements;
+		private int idx;
+		/**
+		 * Just like {@link Arrays#deepHashCode}
+		 */
+		private int hash = 1;
+
+		private ListHashingTarget(@NotNull NbtList list) {
+			this.list = list;
+			this.elements = list.hasNestedValues() ? (Object[]) list.array : null;
+		}
+
+		@Override
+		@Nullable
+		public Object advance(boolean freeze) {
+			Object[] elements = this.elements;
+			if (elements == null) return null;
+			for (int len = elements.length; idx < len; ) {
+				Object element = elements[idx++];
+				if (mustWalk(element, freeze)) return element;
+				hash = 31 * hash + element.hashCode();
+			}
+			return null;
+		}
+
+		@Override
+		public void addNested(int hash) {
+			this.hash = 31 * this.hash + hash;
+		}
+
+		@Override
+		public int finish(boolean freeze) {
+			NbtList list = this.list;
+			int hash = elements == null ? flatListHash(list) : 31 * list.componentType.id + this.hash;
+			if (freeze) list.markFrozen(hash);
+			return hash;
+		}
+	}
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="equals targets">
+	/**
+	 * Either a {@link CompoundEqualsTarget} or a {@link ListEqualsTarget}. If the project used Java 17, this could be
+	 * improved with sealed classes.
+	 */
+	private interface EqualsTarget {
+		/**
+		 * Compares the next pairs of values, until the nested values of one of them must be compared
+		 *
+		 * @return {@code null} if all the values are equal, {@link #DIFFERENT} once a pair is not, or the target that
+		 * compares the nested values of the next pair
+		 */
+		@Nullable
+		Object advance();
+	}
+
+	private static final class CompoundEqualsTarget implements EqualsTarget {
+		private final @NotNull NbtCompound compound, other;
+		private int idx;
+
+		private CompoundEqualsTarget(@NotNull NbtCompound compound, @NotNull NbtCompound other) {
+			this.compound = compound;
+			this.other = other;
+		}
+
+		/**
+		 * Two compounds are equal if they have the same keys, and the values of each key have the same type and are
+		 * equal, regardless of the order of their entries
+		 */
+		@SuppressWarnings("DataFlowIssue")
+		@Override
+		@Nullable
+		public Object advance() {
+			NbtCompound compound = this.compound, other = this.other;
+			NbtShape shape = compound.shape, otherShape = other.shape;
+			String[] keys = shape.keys;
+			byte[] types = shape.types, otherTypes = otherShape.types;
+			int[] slots = shape.slots, otherSlots = otherShape.slots;
+			long[] primitives = compound.primitives, otherPrimitives = other.primitives;
+			Object[] objects = compound.objects, otherObjects = other.objects;
+
+			for (int len = shape.entries; idx < len; ) {
+				int i = idx++;
+				// Compounds with the same shape have the same keys in the same order
+				int j = shape == otherShape ? i : otherShape.indexOf(keys[i]);
+				if (j < 0) return DIFFERENT;
+				byte type = types[i];
+				if (otherTypes[j] != type) return DIFFERENT;
+				int slot = slots[i], otherSlot = otherSlots[j];
+				if (type < NbtType.tagByteArray) {
+					if (canonicalBits(type, primitives[slot]) != canonicalBits(type, otherPrimitives[otherSlot]))
+						return DIFFERENT;
+				} else if (type == NbtType.tagCompound | type == NbtType.tagList) {
+					Object res = compareNested(objects[slot], otherObjects[otherSlot]);
+					if (res != null) return res;
+				} else if (!objectEquals(type, objects[slot], otherObjects[otherSlot])) {
+					return DIFFERENT;
+				}
+			}
+			return null;
+		}
+	}
+
+	private static final class ListEqualsTarget implements EqualsTarget {
+		private final @NotNull Object @NotNull [] elements, otherElements;
+		private int idx;
+
+		private ListEqualsTarget(@NotNull Object @NotNull [] elements, @NotNull Object @NotNull [] otherElements) {
+			assert elements.length == otherElements.length;
+			this.elements = elements;
+			this.otherElements = otherElements;
+		}
+
+		@Override
+		@Nullable
+		public Object advance() {
+			Object[] elements = this.elements, otherElements = this.otherElements;
+			for (int len = elements.length; idx < len; ) {
+				int i = idx++;
+				Object res = compareNested(elements[i], otherElements[i]);
+				if (res != null) return res;
+			}
+			return null;
+		}
+	}
+	// </editor-fold>
+}
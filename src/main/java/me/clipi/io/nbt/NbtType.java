@@ -25,8 +25,10 @@ public enum NbtType {
 
 	public final int id = ordinal();
 
+	private static final NbtType[] byId = values();
+
 	public static NbtType getByIdOrNull(int id) {
-		return id >= 0 & id <= LongArray.id ? values()[id] : null;
+		return id >= 0 & id <= LongArray.id ? byId[id] : null;
 	}
 
 	/**
@@ -49,4 +51,26 @@ public enum NbtType {
 		tagCompound = 10,
 		tagIntArray = 11,
 		tagLongArray = 12;
+
+	/**
+	 * package-private
+	 *
+	 * @return The size of the payload of the given type, or {@code -1} if its size is variable (or the type unknown)
+	 */
+	static int fixedPayloadSize(int id) {
+		switch (id) {
+			case tagByte:
+				return 1;
+			case tagShort:
+				return 2;
+			case tagInt:
+			case tagFloat:
+				return 4;
+			case tagLong:
+			case tagDouble:
+				return 8;
+			default:
+				return -1;
+		}
+	}
 }
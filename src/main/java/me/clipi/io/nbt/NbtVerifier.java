@@ -100,73 +100,68 @@ public class NbtVerifier {
 			NbtCompound target = targetAndSchema.compound;
 			int i = targetAndSchema.savedIndex, mapEntries = target.entries();
 			if (i < mapEntries) {
-				String[] keys = target.keys.inner;
-				byte[] types = target.types.inner;
-
-				byte[] bytes = target.bytes == null ? null : target.bytes.inner;
-				short[] shorts = target.shorts == null ? null : target.shorts.inner;
-				int[] ints = target.ints == null ? null : target.ints.inner;
-				long[] longs = target.longs == null ? null : target.longs.inner;
-				float[] floats = target.floats == null ? null : target.floats.inner;
-				double[] doubles = target.doubles == null ? null : target.doubles.inner;
-				Object[] objects = target.objects == null ? null : target.objects.inner;
-
-				int bCount = targetAndSchema.bCount, sCount = targetAndSchema.sCount, iCount = targetAndSchema.iCount,
-					lCount = targetAndSchema.lCount, fCount = targetAndSchema.fCount, dCount = targetAndSchema.dCount,
-					oCount = targetAndSchema.oCount;
+				NbtShape shape = target.shape;
+				String[] keys = shape.keys;
+				byte[] types = shape.types;
+				int[] slots = shape.slots;
+
+				long[] primitives = target.primitives;
+				Object[] objects = target.objects;
+
 				do {
 					String key = keys[i];
+					int slot = slots[i];
 					switch (types[i++]) {
 						case NbtType.tagByte:
-							if (schema.deniesByte(key, bytes[bCount++]))
+							if (schema.deniesByte(key, (byte) primitives[slot]))
 								throw new IncorrectSchema(oomAware, schema);
 							break;
 						case NbtType.tagShort:
-							if (schema.deniesShort(key, shorts[sCount++]))
+							if (schema.deniesShort(key, (short) primitives[slot]))
 								throw new IncorrectSchema(oomAware, schema);
 							break;
 						case NbtType.tagInt:
-							if (schema.deniesInt(key, ints[iCount++]))
+							if (schema.deniesInt(key, (int) primitives[slot]))
 								throw new IncorrectSchema(oomAware, schema);
 							break;
 						case NbtType.tagLong:
-							if (schema.deniesLong(key, longs[lCount++]))
+							if (schema.deniesLong(key, primitives[slot]))
 								throw new IncorrectSchema(oomAware, schema);
 							break;
 						case NbtType.tagFloat:
-							if (schema.deniesFloat(key, floats[fCount++]))
+							if (schema.deniesFloat(key, Float.intBitsToFloat((int) primitives[slot])))
 								throw new IncorrectSchema(oomAware, schema);
 							break;
 						case NbtType.tagDouble:
-							if (schema.deniesDouble(key, doubles[dCount++]))
+							if (schema.deniesDouble(key, Double.longBitsToDouble(primitives[slot])))
 								throw new IncorrectSchema(oomAware, schema);
 							break;
 						case NbtType.tagByteArray: {
-							byte[] obj = (byte[]) objects[oCount++];
+							byte[] obj = (byte[]) objects[slot];
 							if (schema.deniesByteArray(key, obj.length) || schema.deniesByteArray(key, obj))
 								throw new IncorrectSchema(oomAware, schema);
 							break;
 						}
 						case NbtType.tagIntArray: {
-							int[] obj = (int[]) objects[oCount++];
+							int[] obj = (int[]) objects[slot];
 							if (schema.deniesIntArray(key, obj.length) || schema.deniesIntArray(key, obj))
 								throw new IncorrectSchema(oomAware, schema);
 							break;
 						}
 						case NbtType.tagLongArray: {
-							long[] obj = (long[]) objects[oCount++];
+							long[] obj = (long[]) objects[slot];
 							if (schema.deniesLongArray(key, obj.length) || schema.deniesLongArray(key, obj))
 								throw new IncorrectSchema(oomAware, schema);
 							break;
 						}
 						case NbtType.tagString: {
-							String obj = (String) objects[oCount++];
+							String obj = (String) objects[slot];
 							if (schema.deniesString(key, obj.length(), true) || schema.deniesString(key, obj))
 								throw new IncorrectSchema(oomAware, schema);
 							break;
 						}
 						case NbtType.tagList: {
-							NbtList obj = (NbtList) objects[oCount++];
+							NbtList obj = (NbtList) objects[slot];
 							Object array = obj.array;
 							if (array == null) {
 								if (schema.deniesEmptyList(key)) throw new IncorrectSchema(oomAware, schema);
@@ -250,13 +245,11 @@ public class NbtVerifier {
 									} catch (FixedStack.FullStackException ex) {
 										throw new IllegalStateException(ex);
 									}
-									targetAndSchema.saveIndices(
-										i, bCount, sCount, iCount, lCount, fCount, dCount, oCount);
+									targetAndSchema.savedIndex = i;
 									return res;
 								}
 								case Compound:
-									targetAndSchema.saveIndices(
-										i, bCount, sCount, iCount, lCount, fCount, dCount, oCount);
+									targetAndSchema.savedIndex = i;
 									targetAndSchema = verifyListOfCompoundsValue(
 										oomAware, nestedTarget,
 										nonNullSchema(oomAware, schema, schema.schemaForListOfCompounds(
@@ -270,12 +263,12 @@ public class NbtVerifier {
 							break;
 						}
 						case NbtType.tagCompound: {
-							NbtCompound obj = (NbtCompound) objects[oCount++];
+							NbtCompound obj = (NbtCompound) objects[slot];
 							NbtCompoundSchema newSchema = nonNullSchema(
 								oomAware, schema, schema.schemaForCompound(key));
 							if (newSchema instanceof SaveCompoundSchema)
 								obj.copyTo(((SaveCompoundSchema) newSchema).compound);
-							targetAndSchema.saveIndices(i, bCount, sCount, iCount, lCount, fCount, dCount, oCount);
+							targetAndSchema.savedIndex = i;
 							try {
 								nestedTarget.push(targetAndSchema = oomAware.tryRun(
 									() -> new CompoundTarget(obj, newSchema)));
@@ -522,25 +515,13 @@ public class NbtVerifier {
 	private static class CompoundTarget implements VerifyingTarget {
 		private @NotNull NbtCompoundSchema schema;
 		private @NotNull NbtCompound compound;
-		private int savedIndex, bCount, sCount, iCount, lCount, fCount, dCount, oCount;
+		private int savedIndex;
 
 		private CompoundTarget(@NotNull NbtCompound compound, @NotNull NbtCompoundSchema schema) {
 			this.schema = schema;
 			this.compound = compound;
 		}
 
-		public void saveIndices(
-			int index, int bCount, int sCount, int iCount, int lCount, int fCount, int dCount, int oCount) {
-			this.savedIndex = index;
-			this.bCount = bCount;
-			this.sCount = sCount;
-			this.iCount = iCount;
-			this.lCount = lCount;
-			this.fCount = fCount;
-			this.dCount = dCount;
-			this.oCount = oCount;
-		}
-
 		public boolean advanceIsFinished() throws OomException, IncorrectSchema {
 			return true;
 		}
@@ -565,13 +546,6 @@ public class NbtVerifier {
 		@Override
 		public boolean advanceIsFinished() throws OomException, IncorrectSchema {
 			super.savedIndex = 0;
-			super.bCount = 0;
-			super.sCount = 0;
-			super.iCount = 0;
-			super.lCount = 0;
-			super.fCount = 0;
-			super.dCount = 0;
-			super.oCount = 0;
 			int i = this.i++;
 			NbtCompound[] compounds = this.compounds;
 			if (i == compounds.length) {
@@ -0,0 +1,167 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io.nbt;
+
+import me.clipi.io.util.GrowableArray;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Range;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Receives the contents of an NBT root tag as a stream of events, without any {@link NbtCompound} nor
+ * {@link NbtList} being created.
+ *
+ * <p>The events are emitted in the same order as the tags appear in the input:
+ * <ul>
+ *     <li>{@link #visitRoot(String)} is followed by the events of the root compound.</li>
+ *     <li>A compound is emitted as {@link #visitCompoundStart()}, then {@link #visitKey(String, NbtType)} followed
+ *     by the events of its value for each entry, and finally {@link #visitCompoundEnd()}.</li>
+ *     <li>A list is emitted as {@link #visitListStart(NbtType, int)}, then the events of each element, and finally
+ *     {@link #visitListEnd()}.</li>
+ *     <li>A byte, int or long array is emitted as {@link #visitIntArrayStart(int)} (or its byte or long
+ *     counterpart), followed by the events chosen by its {@link ArrayVisit result}.</li>
+ * </ul>
+ *
+ * <p>Every method does nothing by default (and arrays are read whole), so that only the relevant ones need to be
+ * overridden.
+ *
+ * @see NbtParser#visitRoot(NbtVisitor)
+ */
+public interface NbtVisitor {
+	/**
+	 * What to do with a byte, int or long array, once its length is known
+	 */
+	enum ArrayVisit {
+		/**
+		 * The array is stepped over, and no more events are emitted for it
+		 */
+		SKIP,
+		/**
+		 * The whole array is allocated and passed to {@link #visitIntArray(int[])} (or its byte or long counterpart)
+		 */
+		READ,
+		/**
+		 * The values are passed in chunks to {@link #visitIntArrayValues(IntBuffer)} (or its byte or long
+		 * counterpart), without allocating the array
+		 */
+		STREAM
+	}
+
+	default void visitRoot(@NotNull String name) {
+	}
+
+	default void visitCompoundStart() {
+	}
+
+	/**
+	 * @return {@code false} if the value of this entry must be skipped, in which case no events will be emitted for
+	 * it.
+	 */
+	default boolean visitKey(@NotNull String key, @NotNull NbtType type) {
+		return true;
+	}
+
+	default void visitCompoundEnd() {
+	}
+
+	/**
+	 * @param componentType The type of the elements, which is {@link NbtType#End} if the list is empty.
+	 * @return {@code false} if the elements of this list must be skipped, in which case no events will be emitted
+	 * for them, nor will {@link #visitListEnd()} be called.
+	 */
+	default boolean visitListStart(@NotNull NbtType componentType,
+								   @Range(from = 0, to = GrowableArray.MAX_ARRAY_SIZE) int length) {
+		return true;
+	}
+
+	default void visitListEnd() {
+	}
+
+	default void visitByte(byte value) {
+	}
+
+	default void visitShort(short value) {
+	}
+
+	default void visitInt(int value) {
+	}
+
+	default void visitLong(long value) {
+	}
+
+	default void visitFloat(float value) {
+	}
+
+	default void visitDouble(double value) {
+	}
+
+	default void visitString(@NotNull String value) {
+	}
+
+	@NotNull
+	default ArrayVisit visitByteArrayStart(@Range(from = 0, to = GrowableArray.MAX_ARRAY_SIZE) int length) {
+		return ArrayVisit.READ;
+	}
+
+	default void visitByteArray(byte @NotNull [] value) {
+	}
+
+	/**
+	 * @param values A read-only view of the next values, which is only valid during this call
+	 */
+	default void visitByteArrayValues(@NotNull ByteBuffer values) {
+	}
+
+	/**
+	 * Called before any value of the array is read, so that big arrays can be skipped or streamed without being
+	 * allocated
+	 */
+	@NotNull
+	default ArrayVisit visitIntArrayStart(@Range(from = 0, to = GrowableArray.MAX_ARRAY_SIZE) int length) {
+		return ArrayVisit.READ;
+	}
+
+	default void visitIntArray(int @NotNull [] value) {
+	}
+
+	/**
+	 * @param values A read-only view of the next values, which is only valid during this call
+	 */
+	default void visitIntArrayValues(@NotNull IntBuffer values) {
+	}
+
+	@NotNull
+	default ArrayVisit visitLongArrayStart(@Range(from = 0, to = GrowableArray.MAX_ARRAY_SIZE) int length) {
+		return ArrayVisit.READ;
+	}
+
+	default void visitLongArray(long @NotNull [] value) {
+	}
+
+	/**
+	 * @param values A read-only view of the next values, which is only valid during this call
+	 */
+	default void visitLongArrayValues(@NotNull LongBuffer values) {
+	}
+}
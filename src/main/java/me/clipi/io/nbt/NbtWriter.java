@@ -0,0 +1,587 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io.nbt;
+
+import me.clipi.io.CheckedBigEndianDataInput.ModifiedUtf8DataFormatException;
+import me.clipi.io.CheckedBigEndianDataOutput;
+import me.clipi.io.OomException;
+import me.clipi.io.OomException.OomAware;
+import me.clipi.io.nbt.exceptions.NbtWriteException;
+import me.clipi.io.util.FixedStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The counterpart of {@link NbtParser}, which writes the trees without recursion
+ *
+ * @see <a href="https://minecraft.wiki/w/NBT_format">NBT format</a>
+ */
+public class NbtWriter<WriteException extends Exception> implements AutoCloseable {
+	private final @NotNull CheckedBigEndianDataOutput<WriteException> out;
+	/**
+	 * FixedStack of the compounds and lists of compounds or lists that are being written
+	 */
+	private final FixedStack<WritingTarget> nestedTarget =
+		new FixedStack<>(WritingTarget.class, NbtParser.NESTED_MAX_DEPTH);
+
+	public NbtWriter(@NotNull CheckedBigEndianDataOutput<WriteException> out) {
+		this.out = out;
+	}
+
+	public void flush() throws WriteException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws WriteException {
+		out.close();
+	}
+
+	public void writeRoot(@NotNull NbtRoot root) throws WriteException, OomException, NbtWriteException {
+		writeRoot(root.name, root.rootValue);
+	}
+
+	public void writeRoot(@NotNull String name, @NotNull NbtCompound rootValue)
+		throws WriteException, OomException, NbtWriteException {
+		writeRootStart(name);
+		writeTree(rootValue);
+	}
+
+	/**
+	 * Writes the root, copying verbatim the entries of its {@link LazyNbtCompound}s that have not been accessed nor
+	 * replaced
+	 */
+	public void writeRoot(@NotNull LazyNbtRoot root) throws WriteException, OomException, NbtWriteException {
+		writeRootStart(root.name);
+		writeTree(root.rootValue);
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="streaming methods">
+	/*
+	 * The following methods write the tree piece by piece, without the need of creating any NbtCompound nor NbtList.
+	 * The caller is responsible for calling them in an order that results in well-formed NBT:
+	 * - Every compound started by writeRootStart or writeCompoundStart must be ended by writeCompoundEnd.
+	 * - Every list started by writeListStart must be followed by exactly as many elements as its length. Since the
+	 *   elements of a list don't have keys, each compound element is written as its entries followed by
+	 *   writeCompoundEnd.
+	 */
+
+	/**
+	 * Starts a root tag, whose entries must be written afterwards, followed by {@link #writeCompoundEnd()}
+	 */
+	public void writeRootStart(@NotNull String name) throws WriteException, NbtWriteException {
+		out.writeByte(NbtType.tagCompound);
+		writeString(name);
+	}
+
+	/**
+	 * Starts a compound entry, whose entries must be written afterwards, followed by {@link #writeCompoundEnd()}
+	 */
+	public void writeCompoundStart(@NotNull String key) throws WriteException, NbtWriteException {
+		writeKey(NbtType.tagCompound, key);
+	}
+
+	public void writeCompoundEnd() throws WriteException {
+		out.writeByte(NbtType.tagEnd);
+	}
+
+	/**
+	 * Starts a list entry, whose {@code length} elements must be written afterwards
+	 */
+	public void writeListStart(@NotNull String key, @NotNull NbtType componentType, int length)
+		throws WriteException, NbtWriteException {
+		if (length < 0 | (length > 0 & componentType == NbtType.End))
+			throw new NbtWriteException.InvalidDataStructureSize(length);
+		writeKey(NbtType.tagList, key);
+		out.writeByte(componentType.id);
+		out.writeInt(length);
+	}
+
+	private void writeKey(byte type, @NotNull String key) throws WriteException, NbtWriteException {
+		out.writeByte(type);
+		writeString(key);
+	}
+
+	public void writeByte(@NotNull String key, byte value) throws WriteException, NbtWriteException {
+		writeKey(NbtType.tagByte, key);
+		out.writeByte(value);
+	}
+
+	public void writeShort(@NotNull String key, short value) throws WriteException, NbtWriteException {
+		writeKey(NbtType.tagShort, key);
+		out.writeShort(value);
+	}
+
+	public void writeInt(@NotNull String key, int value) throws WriteException, NbtWriteException {
+		writeKey(NbtType.tagInt, key);
+		out.writeInt(value);
+	}
+
+	public void writeLong(@NotNull String key, long value) throws WriteException, NbtWriteException {
+		writeKey(NbtType.tagLong, key);
+		out.writeLong(value);
+	}
+
+	public void writeFloat(@NotNull String key, float value) throws WriteException, NbtWriteException {
+		writeKey(NbtType.tagFloat, key);
+		out.writeFloat(value);
+	}
+
+	public void writeDouble(@NotNull String key, double value) throws WriteException, NbtWriteException {
+		writeKey(NbtType.tagDouble, key);
+		out.writeDouble(value);
+	}
+
+	public void writeString(@NotNull String key, @NotNull String value) throws WriteException, NbtWriteException {
+		writeKey(NbtType.tagString, key);
+		writeString(value);
+	}
+
+	public void writeByteArray(@NotNull String key, byte @NotNull [] value) throws WriteException, NbtWriteException {
+		writeByteArray(key, value, 0, value.length);
+	}
+
+	public void writeByteArray(@NotNull String key, byte @NotNull [] value, int offset, int length)
+		throws WriteException, NbtWriteException {
+		writeByteArrayStart(key, length);
+		out.writeByteArray(value, offset, length);
+	}
+
+	/**
+	 * Starts a byte array entry, whose {@code length} bytes must be written afterwards by
+	 * {@link #writeByteArrayPart(byte[], int, int)} and {@link #writeVarInts(int[], int, int)}, so that the whole array
+	 * doesn't need to be built beforehand
+	 */
+	public void writeByteArrayStart(@NotNull String key, int length) throws WriteException, NbtWriteException {
+		if (length < 0) throw new NbtWriteException.InvalidDataStructureSize(length);
+		writeKey(NbtType.tagByteArray, key);
+		out.writeInt(length);
+	}
+
+	/**
+	 * Writes the next {@code length} bytes of the byte array started by {@link #writeByteArrayStart(String, int)}
+	 */
+	public void writeByteArrayPart(byte @NotNull [] bytes, int offset, int length) throws WriteException {
+		out.writeByteArray(bytes, offset, length);
+	}
+
+	/**
+	 * Writes the next bytes of the byte array started by {@link #writeByteArrayStart(String, int)}, which are the
+	 * {@code length} values starting at {@code offset} encoded as VarInts
+	 */
+	public void writeVarInts(int @NotNull [] values, int offset, int length) throws WriteException {
+		out.writeVarInts(values, offset, length);
+	}
+
+	public void writeIntArray(@NotNull String key, int @NotNull [] value) throws WriteException, NbtWriteException {
+		writeKey(NbtType.tagIntArray, key);
+		out.writeInt(value.length);
+		out.writeIntArray(value);
+	}
+
+	public void writeLongArray(@NotNull String key, long @NotNull [] value) throws WriteException, NbtWriteException {
+		writeKey(NbtType.tagLongArray, key);
+		out.writeInt(value.length);
+		out.writeLongArray(value);
+	}
+
+	public void writeList(@NotNull String key, @NotNull NbtList value)
+		throws WriteException, OomException, NbtWriteException {
+		writeKey(NbtType.tagList, key);
+		try {
+			if (writeListIsNested(value)) writeNested();
+		} catch (FixedStack.FullStackException ex) {
+			throw new NbtWriteException.InvalidDataStructureSize(ex.attemptedSize);
+		} finally {
+			nestedTarget.clear();
+		}
+	}
+
+	public void writeCompound(@NotNull String key, @NotNull NbtCompound value)
+		throws WriteException, OomException, NbtWriteException {
+		writeKey(NbtType.tagCompound, key);
+		writeTree(value);
+	}
+
+	public void writeCompound(@NotNull String key, @NotNull LazyNbtCompound value)
+		throws WriteException, OomException, NbtWriteException {
+		writeKey(NbtType.tagCompound, key);
+		writeTree(value);
+	}
+	// </editor-fold>
+
+	/**
+	 * Writes the entries of the compound, followed by an end tag
+	 */
+	private void writeTree(@NotNull NbtCompound compound) throws WriteException, OomException, NbtWriteException {
+		try {
+			pushCompound(compound);
+			writeNested();
+		} catch (FixedStack.FullStackException ex) {
+			throw new NbtWriteException.InvalidDataStructureSize(ex.attemptedSize);
+		} finally {
+			nestedTarget.clear();
+		}
+	}
+
+	/**
+	 * Writes the entries of the lazy compound, followed by an end tag
+	 */
+	private void writeTree(@NotNull LazyNbtCompound compound) throws WriteException, OomException, NbtWriteException {
+		try {
+			nestedTarget.push(OomAware.tryRun(null, () -> new LazyCompoundTarget(compound)));
+			writeNested();
+		} catch (FixedStack.FullStackException ex) {
+			throw new NbtWriteException.InvalidDataStructureSize(ex.attemptedSize);
+		} finally {
+			nestedTarget.clear();
+		}
+	}
+
+	private void writeNested() throws WriteException, OomException, NbtWriteException, FixedStack.FullStackException {
+		FixedStack<WritingTarget> nestedTarget = this.nestedTarget;
+		for (WritingTarget target; (target = nestedTarget.tryPeek()) != null; ) {
+			if (advanceIsFinished(target)) nestedTarget.tryPop();
+		}
+	}
+
+	private void writeString(@NotNull String str) throws WriteException, NbtWriteException.InvalidString {
+		try {
+			out.writeModifiedUtf8(str);
+		} catch (ModifiedUtf8DataFormatException ex) {
+			throw new NbtWriteException.InvalidString(str, ex);
+		}
+	}
+
+	private void pushCompound(@NotNull NbtCompound compound) throws OomException, FixedStack.FullStackException {
+		nestedTarget.push(OomAware.tryRun(null, () -> new CompoundTarget(compound)));
+	}
+
+	/**
+	 * Writes the header of the list, and either its elements or, if they are compounds or lists, pushes a target that
+	 * will write them
+	 *
+	 * @return Whether a target was pushed
+	 */
+	private boolean writeListIsNested(@NotNull NbtList list)
+		throws WriteException, OomException, NbtWriteException, FixedStack.FullStackException {
+		CheckedBigEndianDataOutput<WriteException> out = this.out;
+		Object array = list.array;
+		out.writeByte(list.componentType.id);
+		if (array == null) {
+			out.writeInt(0);
+			return false;
+		}
+		switch (list.componentType.id) {
+			case NbtType.tagByte: {
+				byte[] bytes = (byte[]) array;
+				out.writeInt(bytes.length);
+				out.writeByteArray(bytes);
+				break;
+			}
+			case NbtType.tagShort: {
+				short[] shorts = (short[]) array;
+				out.writeInt(shorts.length);
+				out.writeShortArray(shorts);
+				break;
+			}
+			case NbtType.tagInt: {
+				int[] ints = (int[]) array;
+				out.writeInt(ints.length);
+				out.writeIntArray(ints);
+				break;
+			}
+			case NbtType.tagLong: {
+				long[] longs = (long[]) array;
+				out.writeInt(longs.length);
+				out.writeLongArray(longs);
+				break;
+			}
+			case NbtType.tagFloat: {
+				float[] floats = (float[]) array;
+				out.writeInt(floats.length);
+				out.writeFloatArray(floats);
+				break;
+			}
+			case NbtType.tagDouble: {
+				double[] doubles = (double[]) array;
+				out.writeInt(doubles.length);
+				out.writeDoubleArray(doubles);
+				break;
+			}
+			case NbtType.tagByteArray: {
+				byte[][] arrays = (byte[][]) array;
+				out.writeInt(arrays.length);
+				for (byte[] bytes : arrays) {
+					out.writeInt(bytes.length);
+					out.writeByteArray(bytes);
+				}
+				break;
+			}
+			case NbtType.tagIntArray: {
+				int[][] arrays = (int[][]) array;
+				out.writeInt(arrays.length);
+				for (int[] ints : arrays) {
+					out.writeInt(ints.length);
+					out.writeIntArray(ints);
+				}
+				break;
+			}
+			case NbtType.tagLongArray: {
+				long[][] arrays = (long[][]) array;
+				out.writeInt(arrays.length);
+				for (long[] longs : arrays) {
+					out.writeInt(longs.length);
+					out.writeLongArray(longs);
+				}
+				break;
+			}
+			case NbtType.tagString: {
+				String[] strings = (String[]) array;
+				out.writeInt(strings.length);
+				for (String str : strings)
+					writeString(str);
+				break;
+			}
+			case NbtType.tagList:
+			case NbtType.tagCompound: {
+				Object[] objects = (Object[]) array;
+				out.writeInt(objects.length);
+				nestedTarget.push(OomAware.tryRun(null, () -> new ListTarget(objects)));
+				return true;
+			}
+			default:
+				throw new IllegalStateException();
+		}
+		return false;
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="targets">
+	/**
+	 * Either a CompoundTarget, a LazyCompoundTarget or a ListTarget.
+	 * If the project used Java 17, this could be improved with sealed classes
+	 */
+	private interface WritingTarget {
+	}
+
+	private static final class CompoundTarget implements WritingTarget {
+		private final @NotNull NbtCompound compound;
+		private int idx;
+
+		CompoundTarget(@NotNull NbtCompound compound) {
+			this.compound = compound;
+		}
+	}
+
+	private static final class LazyCompoundTarget implements WritingTarget {
+		private final @NotNull LazyNbtCompound compound;
+		private int idx;
+
+		LazyCompoundTarget(@NotNull LazyNbtCompound compound) {
+			this.compound = compound;
+		}
+	}
+
+	private static final class ListTarget implements WritingTarget {
+		private final @NotNull Object @NotNull [] elements;
+		private int idx;
+
+		ListTarget(@NotNull Object @NotNull [] elements) {
+			this.elements = elements;
+		}
+	}
+
+	/**
+	 * Writes the contents of the target until a nested compound or list has to be written, in which case it will be
+	 * pushed to {@link #nestedTarget} and {@code false} will be returned, or until the whole target has been written,
+	 * in which case {@code true} will be returned.
+	 */
+	private boolean advanceIsFinished(@NotNull WritingTarget target)
+		throws WriteException, OomException, NbtWriteException, FixedStack.FullStackException {
+		if (target instanceof CompoundTarget) return advanceIsFinished((CompoundTarget) target);
+		if (target instanceof LazyCompoundTarget) return advanceIsFinished((LazyCompoundTarget) target);
+		return advanceIsFinished((ListTarget) target);
+	}
+
+	@SuppressWarnings("DataFlowIssue")
+	private boolean advanceIsFinished(@NotNull CompoundTarget target)
+		throws WriteException, OomException, NbtWriteException, FixedStack.FullStackException {
+		CheckedBigEndianDataOutput<WriteException> out = this.out;
+		NbtCompound compound = target.compound;
+		NbtShape shape = compound.shape;
+		String[] keys = shape.keys;
+		byte[] types = shape.types;
+		int[] slots = shape.slots;
+		long[] primitives = compound.primitives;
+		@Nullable Object[] objects = compound.objects;
+		for (int len = compound.entries(); target.idx < len; ) {
+			int idx = target.idx++;
+			byte type = types[idx];
+			int slot = slots[idx];
+			out.writeByte(type);
+			writeString(keys[idx]);
+			switch (type) {
+				case NbtType.tagByte:
+					out.writeByte((byte) primitives[slot]);
+					break;
+				case NbtType.tagShort:
+					out.writeShort((short) primitives[slot]);
+					break;
+				case NbtType.tagInt:
+				case NbtType.tagFloat:
+					out.writeInt((int) primitives[slot]);
+					break;
+				case NbtType.tagLong:
+				case NbtType.tagDouble:
+					out.writeLong(primitives[slot]);
+					break;
+				case NbtType.tagByteArray: {
+					byte[] array = (byte[]) objects[slot];
+					out.writeInt(array.length);
+					out.writeByteArray(array);
+					break;
+				}
+				case NbtType.tagIntArray: {
+					int[] array = (int[]) objects[slot];
+					out.writeInt(array.length);
+					out.writeIntArray(array);
+					break;
+				}
+				case NbtType.tagLongArray: {
+					long[] array = (long[]) objects[slot];
+					out.writeInt(array.length);
+					out.writeLongArray(array);
+					break;
+				}
+				case NbtType.tagString:
+					writeString((String) objects[slot]);
+					break;
+				case NbtType.tagList:
+					if (writeListIsNested((NbtList) objects[slot])) return false;
+					break;
+				case NbtType.tagCompound:
+					pushCompound((NbtCompound) objects[slot]);
+					return false;
+				default:
+					throw new IllegalStateException();
+			}
+		}
+		out.writeByte(NbtType.tagEnd);
+		return true;
+	}
+
+	private boolean advanceIsFinished(@NotNull LazyCompoundTarget target)
+		throws WriteException, OomException, NbtWriteException, FixedStack.FullStackException {
+		CheckedBigEndianDataOutput<WriteException> out = this.out;
+		LazyNbtCompound compound = target.compound;
+		if (!compound.touched) {
+			// The entries and the end tag are exactly the ones that were parsed
+			out.writeBytes(compound.source, 0, compound.source.limit());
+			return true;
+		}
+		String[] keys = compound.keys.inner;
+		byte[] types = compound.types.inner;
+		@Nullable Object[] values = compound.values.inner;
+		for (int len = compound.entries(); target.idx < len; ) {
+			int idx = target.idx++;
+			byte type = types[idx];
+			out.writeByte(type);
+			writeString(keys[idx]);
+			Object value = values[idx];
+			if (value == null) {
+				int payloadStart = compound.payloadStart(idx);
+				out.writeBytes(compound.source, payloadStart, compound.payloadEnd(idx) - payloadStart);
+				continue;
+			}
+			switch (type) {
+				case NbtType.tagByte:
+					out.writeByte((Byte) value);
+					break;
+				case NbtType.tagShort:
+					out.writeShort((Short) value);
+					break;
+				case NbtType.tagInt:
+					out.writeInt((Integer) value);
+					break;
+				case NbtType.tagLong:
+					out.writeLong((Long) value);
+					break;
+				case NbtType.tagFloat:
+					out.writeFloat((Float) value);
+					break;
+				case NbtType.tagDouble:
+					out.writeDouble((Double) value);
+					break;
+				case NbtType.tagByteArray: {
+					byte[] array = (byte[]) value;
+					out.writeInt(array.length);
+					out.writeByteArray(array);
+					break;
+				}
+				case NbtType.tagIntArray: {
+					int[] array = (int[]) value;
+					out.writeInt(array.length);
+					out.writeIntArray(array);
+					break;
+				}
+				case NbtType.tagLongArray: {
+					long[] array = (long[]) value;
+					out.writeInt(array.length);
+					out.writeLongArray(array);
+					break;
+				}
+				case NbtType.tagString:
+					writeString((String) value);
+					break;
+				case NbtType.tagList:
+					if (writeListIsNested((NbtList) value)) return false;
+					break;
+				case NbtType.tagCompound:
+					if (value instanceof LazyNbtCompound) {
+						nestedTarget.push(OomAware.tryRun(null, () ->
+							new LazyCompoundTarget((LazyNbtCompound) value)));
+					} else {
+						pushCompound((NbtCompound) value);
+					}
+					return false;
+				default:
+					throw new IllegalStateException();
+			}
+		}
+		out.writeByte(NbtType.tagEnd);
+		return true;
+	}
+
+	private boolean advanceIsFinished(@NotNull ListTarget target)
+		throws WriteException, OomException, NbtWriteException, FixedStack.FullStackException {
+		Object[] elements = target.elements;
+		for (int len = elements.length; target.idx < len; ) {
+			Object element = elements[target.idx++];
+			if (element instanceof NbtCompound) {
+				pushCompound((NbtCompound) element);
+				return false;
+			}
+			if (writeListIsNested((NbtList) element)) return false;
+		}
+		return true;
+	}
+	// </editor-fold>
+}
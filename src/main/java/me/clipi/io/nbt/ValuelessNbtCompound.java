@@ -22,12 +22,15 @@ package me.clipi.io.nbt;
 
 import me.clipi.io.OomException;
 import me.clipi.io.OomException.OomAware;
-import me.clipi.io.util.GrowableArray;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 abstract class ValuelessNbtCompound implements OomAware {
-	final @NotNull GrowableArray<@NotNull String[]> keys;
+	/**
+	 * The keys of this compound, which may be shared with other compounds once this one has been fully parsed
+	 */
+	@NotNull
+	NbtShape shape;
 
 	@NotNull
 	protected final OomAware oomAware;
@@ -48,29 +51,34 @@ abstract class ValuelessNbtCompound implements OomAware {
 
 	ValuelessNbtCompound(@Nullable OomAware oomAware) throws OomException {
 		this.oomAware = oomAware == null ? this : oomAware;
-		keys = GrowableArray.generic(String.class, this.oomAware);
+		shape = NbtShape.EMPTY;
 	}
 
 	public int entries() {
-		return keys.getSize();
+		return shape.entries;
 	}
 
 	public void recursivelyShrinkToFit() {
-		keys.tryShrinkToFit();
+		shape.tryShrinkToFit();
 	}
 
 	@SuppressWarnings("ConstantValue")
 	@Override
 	public void trySaveFromOom() {
 		// May be true while the object is being constructed
-		if (keys == null) return;
+		if (shape == null) return;
 
 		recursivelyShrinkToFit();
 	}
 
 	// <editor-fold defaultstate="collapsed" desc="add methods">
-	void addKey(@NotNull String key, byte nbtType) throws OomException {
-		GrowableArray.add(keys, key);
+	/**
+	 * @return The slot of the value of the new entry
+	 */
+	int addKey(@NotNull String key, byte nbtType) throws OomException {
+		NbtShape shape = this.shape;
+		if (shape.isShared()) this.shape = shape = shape.copy(oomAware);
+		return shape.add(key, nbtType, oomAware);
 	}
 
 	void collisionUnsafeAddByte(@NotNull String key, byte value) throws OomException {
@@ -129,12 +137,39 @@ abstract class ValuelessNbtCompound implements OomAware {
 	}
 	// </editor-fold>
 
+	/**
+	 * package-private
+	 *
+	 * <p>Called by the {@link CompoundScratch.Pool} before this compound is parsed, so that it is built in the given
+	 * scratch
+	 */
+	void startParsing(@NotNull CompoundScratch scratch) {
+		shape = scratch.shape;
+	}
+
+	/**
+	 * package-private
+	 *
+	 * <p>Called by the parser once the whole compound has been parsed
+	 *
+	 * @param scratch The scratch in which this compound has been built, if any. It may be reused once this method
+	 *                returns.
+	 */
+	void finish(@NotNull NbtShape.Interner shapes, @Nullable CompoundScratch scratch) throws OomException {
+		// The keys are only needed while parsing, to check for duplicates
+		if (scratch != null) shape = NbtShape.EMPTY;
+	}
+
+	/**
+	 * package-private
+	 *
+	 * @return The index of the entry with the given key, or {@code -1} if it is not present
+	 */
+	final int indexOf(@NotNull String key) {
+		return shape.indexOf(key);
+	}
+
 	public final boolean containsKey(@NotNull String key) {
-		String[] keys = this.keys.inner;
-		for (int i = entries() - 1; i >= 0; --i) {
-			if (key.equals(keys[i]))
-				return true;
-		}
-		return false;
+		return indexOf(key) >= 0;
 	}
 }
@@ -22,16 +22,17 @@ package me.clipi.io.nbt.exceptions;
 
 import me.clipi.io.OomException;
 import me.clipi.io.OomException.OomAware;
-import me.clipi.io.nbt.NbtCompound;
+import me.clipi.io.util.NestedToString;
 import org.jetbrains.annotations.NotNull;
 
 public final class NbtKeyNotFoundException extends Exception {
 	private static final long serialVersionUID = -3525208150628883798L;
 
-	public final transient @NotNull NbtCompound compoundBeingConstructed;
+	public final transient @NotNull NestedToString compoundBeingConstructed;
 	public final @NotNull String key;
 
-	public NbtKeyNotFoundException(@NotNull OomAware oomAware, @NotNull String key, @NotNull NbtCompound compound) {
+	public NbtKeyNotFoundException(@NotNull OomAware oomAware, @NotNull String key,
+								   @NotNull NestedToString compound) {
 		super(NbtParseException.msg(oomAware, () ->
 			"Key " + key + " is not present in the NBT Compound " + compound.nestedToString()));
 		// noinspection StringEquality
@@ -0,0 +1,60 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io.nbt.exceptions;
+
+import me.clipi.io.CheckedBigEndianDataInput.ModifiedUtf8DataFormatException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Objects;
+
+public abstract class NbtWriteException extends Exception {
+	private static final long serialVersionUID = -3013446440178012640L;
+
+	private NbtWriteException(@NotNull String msg) {
+		super(msg);
+	}
+
+	private NbtWriteException(@NotNull String msg, @NotNull Throwable cause) {
+		super(msg, Objects.requireNonNull(cause));
+	}
+
+	public static class InvalidDataStructureSize extends NbtWriteException {
+		private static final long serialVersionUID = 5047216815375052214L;
+
+		public final int attemptedSize;
+
+		public InvalidDataStructureSize(int attemptedSize) {
+			super("Attempted to write an NBT data structure of size " + attemptedSize);
+			this.attemptedSize = attemptedSize;
+		}
+	}
+
+	public static class InvalidString extends NbtWriteException {
+		private static final long serialVersionUID = 2571329750938014873L;
+
+		public final @NotNull String string;
+
+		public InvalidString(@NotNull String string, @NotNull ModifiedUtf8DataFormatException cause) {
+			super("The string is too long to be encoded (" + string.length() + " chars)", cause);
+			this.string = string;
+		}
+	}
+}
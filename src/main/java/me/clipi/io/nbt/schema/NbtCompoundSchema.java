@@ -21,6 +21,7 @@
 package me.clipi.io.nbt.schema;
 
 import me.clipi.io.OomException;
+import me.clipi.io.nbt.NbtType;
 import me.clipi.io.nbt.exceptions.NbtKeyNotFoundException;
 import me.clipi.io.nbt.exceptions.NbtParseException;
 import me.clipi.io.util.GrowableArray;
@@ -37,6 +38,40 @@ public interface NbtCompoundSchema extends NestedToString {
 		}
 	};
 
+	/**
+	 * When returned by {@link #schemaForCompound(String)}, the compound is stepped over without decoding nor
+	 * allocating anything, and it is not added to the compound being parsed.
+	 *
+	 * <p>Anywhere else, it behaves just like {@link #ALWAYS}.
+	 */
+	@NotNull
+	NbtCompoundSchema SKIP = new AllowAllCompoundSchema() {
+		@Override
+		public void toString(@NotNull Nester nester) {
+		}
+	};
+
+	/**
+	 * Whether the value with the given key and type should be stepped over without decoding nor allocating anything.
+	 * Skipped values are not added to the compound being parsed, and no other method of this schema is called for
+	 * them.
+	 *
+	 * <p>Since skipped keys are not recorded, they are not checked for duplicates either.
+	 */
+	default boolean skipsValue(@NotNull String key, @NotNull NbtType type) throws OomException {
+		return false;
+	}
+
+	/**
+	 * A hint of the amount of entries that the compound is expected to have, which is used to presize the storage in
+	 * which the compound is built while it is parsed. If it turns out to be wrong, the storage just grows as usual.
+	 *
+	 * @return The expected amount of entries, or {@code 0} if it is unknown
+	 */
+	default int expectedEntries() {
+		return 0;
+	}
+
 	boolean deniesFinishedCompound() throws OomException, NbtParseException, NbtKeyNotFoundException;
 
 
@@ -44,10 +44,29 @@ public interface NbtListOfCompoundsSchema {
 	@NotNull
 	NbtListOfCompoundsSchema ALWAYS = i -> NbtCompoundSchema.ALWAYS;
 
+	/**
+	 * When returned by {@code schemaForListOfCompounds}, the list is stepped over without decoding nor allocating
+	 * anything, and an empty list is handled in its place.
+	 *
+	 * <p>Anywhere else, it behaves just like {@link #ALWAYS}.
+	 */
+	@NotNull
+	NbtListOfCompoundsSchema SKIP = i -> NbtCompoundSchema.ALWAYS;
+
 	default boolean deniesFinishedList() throws OomException, NbtParseException, NbtKeyNotFoundException {
 		return false;
 	}
 
+	/**
+	 * A hint of the amount of entries that each compound of the list is expected to have, which is only used when the
+	 * schema of the compound doesn't provide its own {@link NbtCompoundSchema#expectedEntries() hint}
+	 *
+	 * @return The expected amount of entries, or {@code 0} if it is unknown
+	 */
+	default int expectedEntriesPerCompound() {
+		return 0;
+	}
+
 	/**
 	 * @return The schema for the specified compound, or {@code null} if the compound is not allowed.
 	 */
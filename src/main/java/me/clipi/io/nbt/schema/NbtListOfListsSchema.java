@@ -33,6 +33,16 @@ public interface NbtListOfListsSchema {
 	NbtListOfListsSchema ALWAYS = new AllowAllListOfListsSchema() {
 	};
 
+	/**
+	 * When returned by {@code schemaForListOfLists}, the list is stepped over without decoding nor allocating
+	 * anything, and an empty list is handled in its place.
+	 *
+	 * <p>Anywhere else, it behaves just like {@link #ALWAYS}.
+	 */
+	@NotNull
+	NbtListOfListsSchema SKIP = new AllowAllListOfListsSchema() {
+	};
+
 	boolean deniesFinishedList() throws OomException, NbtParseException, NbtKeyNotFoundException;
 
 
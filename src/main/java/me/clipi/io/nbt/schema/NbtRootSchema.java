@@ -31,4 +31,14 @@ public interface NbtRootSchema<Schema extends NbtCompoundSchema> {
 	 */
 	@Nullable
 	Schema schemaForRootValue(@NotNull String rootName, @NotNull OomAware oomAware) throws OomException;
+
+	/**
+	 * A hint of the amount of entries that the root value is expected to have, which is only used when the schema of
+	 * the root value doesn't provide its own {@link NbtCompoundSchema#expectedEntries() hint}
+	 *
+	 * @return The expected amount of entries, or {@code 0} if it is unknown
+	 */
+	default int expectedRootEntries() {
+		return 0;
+	}
 }
@@ -24,7 +24,9 @@ import me.clipi.io.OomException;
 import me.clipi.io.nbt.NbtParser;
 import me.clipi.io.nbt.NbtRoot;
 import me.clipi.io.nbt.NbtVerifier;
+import me.clipi.io.nbt.NbtWriter;
 import me.clipi.io.nbt.exceptions.NbtParseException;
+import me.clipi.io.nbt.exceptions.NbtWriteException;
 import me.clipi.io.util.NestedToString;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -138,6 +140,17 @@ public class Schematic<BlockType, BiomeType, EntityType> implements NestedToStri
 		}
 	}
 
+	/**
+	 * Writes this schematic in the Sponge V3 format, which is the inverse of
+	 * {@link #parse(NbtParser, Class, Class, Class, Class, Function, IntFunction)}
+	 */
+	public <WriteException extends Exception> void write(
+		@NotNull NbtWriter<WriteException> writer,
+		@NotNull SchematicWriteInfo<BlockType, BiomeType, EntityType> writeInfo)
+		throws WriteException, OomException, NbtWriteException {
+		SpongeV3Writer.write(Objects.requireNonNull(writer), this, Objects.requireNonNull(writeInfo));
+	}
+
 	@Override
 	@NotNull
 	public String toString() {
@@ -0,0 +1,56 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io.schematic;
+
+import me.clipi.io.generic_mc.parse.NbtEntity;
+import me.clipi.io.generic_mc.parse.NbtResource;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * The counterpart of {@link DataVersionInfo}, which turns the elements of a {@link Schematic} back into NBT
+ */
+public class SchematicWriteInfo<BlockType, BiomeType, EntityType> {
+	/**
+	 * The block state as written in the palette, e.g. {@code minecraft:chest[facing=west,type=right]}
+	 */
+	public final @NotNull Function<@NotNull BlockType, @NotNull String> blockStateId;
+	/**
+	 * The id and data of the block entity of the block, if any. Its position is that of the block.
+	 */
+	public final @NotNull Function<@NotNull BlockType, @Nullable NbtResource<String>> blockEntity;
+	public final @NotNull Function<@NotNull BiomeType, @NotNull String> biomeId;
+	public final @NotNull Function<@NotNull EntityType, @NotNull NbtEntity<String>> entity;
+
+	public SchematicWriteInfo(
+		@NotNull Function<@NotNull BlockType, @NotNull String> blockStateId,
+		@NotNull Function<@NotNull BlockType, @Nullable NbtResource<String>> blockEntity,
+		@NotNull Function<@NotNull BiomeType, @NotNull String> biomeId,
+		@NotNull Function<@NotNull EntityType, @NotNull NbtEntity<String>> entity) {
+		this.blockStateId = Objects.requireNonNull(blockStateId);
+		this.blockEntity = Objects.requireNonNull(blockEntity);
+		this.biomeId = Objects.requireNonNull(biomeId);
+		this.entity = Objects.requireNonNull(entity);
+	}
+}
@@ -98,6 +98,12 @@ public class SpongeV3Schema<ResourceType, BlockStateType, BlockType, BiomeType,
 
 	Schematic<BlockType, BiomeType, EntityType> schematic;
 
+	@Override
+	public int expectedEntries() {
+		// Version, DataVersion, Metadata, Width, Height, Length, Offset, Blocks, Biomes and Entities
+		return 10;
+	}
+
 	@Override
 	public void toString(@NotNull Nester nester) {
 		nester.append("data version", dataVersion)
@@ -202,7 +208,7 @@ public class SpongeV3Schema<ResourceType, BlockStateType, BlockType, BiomeType,
 	public @Nullable NbtCompoundSchema schemaForCompound(@NotNull String key) throws OomException {
 		switch (key) {
 			case "Metadata":
-				return NbtCompoundSchema.ALWAYS;
+				return NbtCompoundSchema.SKIP;
 			case "Blocks":
 				return (blocks =
 					DelegatedCompoundSchema.create(oomAware, () -> {
@@ -455,6 +461,11 @@ public class SpongeV3Schema<ResourceType, BlockStateType, BlockType, BiomeType,
 	}
 
 	private abstract static class PaletteAndDataSchema<T, R> extends DenyAllCompoundSchema {
+		/**
+		 * Amount of VarInts of {@code Data} that are decoded at once
+		 */
+		private static final int DATA_CHUNK_SIZE = 4096;
+
 		private final @NotNull OomAware oomAware;
 		private final @NotNull Class<T> tClass;
 		private final @NotNull Function<@NotNull String, @Nullable T> tryParse;
@@ -490,32 +501,34 @@ public class SpongeV3Schema<ResourceType, BlockStateType, BlockType, BiomeType,
 		@Override
 		public boolean deniesFinishedCompound() throws OomException {
 			if (palette == null | data == null) return true;
-			final boolean[] hasErrors = { false, false };
-			try {
-				VarIntLong.parseVarInts(data, (idx, pos) -> {
-					int x = pos % xLen;
-					int z = (pos / xLen) % zLen;
-					int y = pos / xzLen;
-					T t = idx >= 0 ? palette.positiveArray.inner[idx] : palette.negArrayShiftedOne.inner[-++idx];
-					R r;
-					try {
-						r = t == null ? null : transform(t, x, y, z, pos);
-					} catch (OomException ex) {
-						hasErrors[1] = true;
-						return false;
-					}
-					if (r == null) {
-						hasErrors[0] = true;
-						return false;
-					}
-					yzxElement[pos] = r;
+			int[] chunk = oomAware.tryRun(() -> new int[Math.min(xyzLen, DATA_CHUNK_SIZE)]);
+			int byteIdx = 0, x = 0, y = 0, z = 0;
+			for (int pos = 0; pos < xyzLen; ) {
+				int count = Math.min(chunk.length, xyzLen - pos);
+				try {
+					byteIdx = VarIntLong.decodeVarInts(data, byteIdx, chunk, 0, count);
+				} catch (VarIntLong.ParseVarIntLongException ex) {
 					return true;
-				});
-			} catch (VarIntLong.ParseVarIntLongException ex) {
-				return true;
+				}
+				for (int i = 0; i < count; ++i, ++pos) {
+					int idx = chunk[i];
+					GrowableArray<T[]> paletteArray = idx >= 0 ? palette.positiveArray : palette.negArrayShiftedOne;
+					if (idx < 0) idx = -++idx;
+					T t = idx < paletteArray.getSize() ? paletteArray.inner[idx] : null;
+					R r = t == null ? null : transform(t, x, y, z, pos);
+					if (r == null) return true;
+					yzxElement[pos] = r;
+					if (++x == xLen) {
+						x = 0;
+						if (++z == zLen) {
+							z = 0;
+							++y;
+						}
+					}
+				}
 			}
-			if (hasErrors[1]) throw OomException.INSTANCE;
-			return hasErrors[0];
+			// Trailing bytes mean that there were more VarInts than elements
+			return byteIdx != data.length;
 		}
 
 		@Nullable
@@ -523,7 +536,8 @@ public class SpongeV3Schema<ResourceType, BlockStateType, BlockType, BiomeType,
 
 		@Override
 		public boolean deniesByteArray(@NotNull String key, int length) {
-			return !("Data".equals(key) & length == xyzLen);
+			// Each VarInt takes at least one byte
+			return !("Data".equals(key) & length >= xyzLen);
 		}
 
 		@Override
@@ -539,6 +553,12 @@ public class SpongeV3Schema<ResourceType, BlockStateType, BlockType, BiomeType,
 	}
 
 	private static class PaletteSchema<T> extends DenyAllCompoundSchema {
+		/**
+		 * {@link #maxElements} is the amount of blocks or biomes, not the size of the palette, which usually has a few
+		 * dozen entries, so palettes are not presized beyond this
+		 */
+		private static final int MAX_PRESIZED_ENTRIES = 256;
+
 		private final @NotNull OomAware oomAware;
 		private final @NotNull Function<@NotNull String, @Nullable T> tryParse;
 
@@ -552,11 +572,16 @@ public class SpongeV3Schema<ResourceType, BlockStateType, BlockType, BiomeType,
 			this.oomAware = oomAware;
 			this.maxElements = maxElements;
 			this.tryParse = tryParse;
-			// TODO We have maxElements, which is a pretty good estimate of the biggest index
-			positiveArray = GrowableArray.generic(tClass, this.oomAware);
+			// Indices are usually positive and contiguous, so the biggest one is close to the amount of entries
+			positiveArray = GrowableArray.generic(tClass, this.oomAware, expectedEntries());
 			negArrayShiftedOne = GrowableArray.generic(tClass, this.oomAware);
 		}
 
+		@Override
+		public int expectedEntries() {
+			return Math.min(maxElements, MAX_PRESIZED_ENTRIES);
+		}
+
 		@Override
 		public void toString(@NotNull Nester nester) {
 			nester.append("current element count", currentElementCount)
@@ -581,7 +606,7 @@ public class SpongeV3Schema<ResourceType, BlockStateType, BlockType, BiomeType,
 				tempArray = negArrayShiftedOne;
 			}
 			if (idx >= tempArray.getSize())
-				tempArray.zeroExtend(idx);
+				tempArray.zeroExtend(idx + 1);
 			T[] asArray = tempArray.inner;
 			if (asArray[idx] != null) return true; // Duplicated index
 			T parsed = oomAware.tryRunOrNull(() -> {
@@ -0,0 +1,177 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io.schematic;
+
+import me.clipi.io.OomException;
+import me.clipi.io.OomException.OomAware;
+import me.clipi.io.generic_mc.parse.NbtEntity;
+import me.clipi.io.generic_mc.parse.NbtResource;
+import me.clipi.io.nbt.NbtCompound;
+import me.clipi.io.nbt.NbtList;
+import me.clipi.io.nbt.NbtType;
+import me.clipi.io.nbt.NbtWriter;
+import me.clipi.io.nbt.exceptions.NbtWriteException;
+import me.clipi.io.util.GrowableArray;
+import me.clipi.io.util.VarIntLong;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.function.Function;
+
+/**
+ * package-private
+ *
+ * <p>Writes a {@link Schematic} in the
+ * <a href="https://github.com/SpongePowered/Schematic-Specification/blob/master/versions/schematic-3.md">Sponge V3</a>
+ * format, streaming it to the writer without building any NBT tree
+ */
+final class SpongeV3Writer {
+	private SpongeV3Writer() {
+	}
+
+	static <WriteException extends Exception, BlockType, BiomeType, EntityType> void write(
+		@NotNull NbtWriter<WriteException> writer,
+		@NotNull Schematic<BlockType, BiomeType, EntityType> schematic,
+		@NotNull SchematicWriteInfo<BlockType, BiomeType, EntityType> info)
+		throws WriteException, OomException, NbtWriteException {
+		writer.writeRootStart("");
+		writer.writeCompoundStart("Schematic");
+		writer.writeInt("Version", 3);
+		writer.writeInt("DataVersion", schematic.dataVersion);
+		writer.writeShort("Width", (short) schematic.xLen);
+		writer.writeShort("Height", (short) schematic.yLen);
+		writer.writeShort("Length", (short) schematic.zLen);
+		writer.writeIntArray("Offset", new int[] { schematic.xOffset, schematic.yOffset, schematic.zOffset });
+
+		BlockType[] blocks = schematic.yzxBlocks;
+		if (blocks != null) {
+			writer.writeCompoundStart("Blocks");
+			writePaletteAndData(writer, blocks, info.blockStateId);
+			writeBlockEntities(writer, schematic, blocks, info.blockEntity);
+			writer.writeCompoundEnd();
+		}
+
+		BiomeType[] biomes = schematic.yzxBiomes;
+		if (biomes != null) {
+			writer.writeCompoundStart("Biomes");
+			writePaletteAndData(writer, biomes, info.biomeId);
+			writer.writeCompoundEnd();
+		}
+
+		EntityType[] entities = schematic.entities;
+		if (entities != null) {
+			writer.writeListStart("Entities", entities.length == 0 ? NbtType.End : NbtType.Compound,
+								  entities.length);
+			for (EntityType entityType : entities) {
+				NbtEntity<String> entity = info.entity.apply(entityType);
+				writer.writeString("Id", entity.id);
+				writer.writeList("Pos", NbtList.create(new double[] { entity.x, entity.y, entity.z }));
+				writeData(writer, entity.data);
+				writer.writeCompoundEnd();
+			}
+		}
+
+		writer.writeCompoundEnd();
+		writer.writeCompoundEnd();
+	}
+
+	/**
+	 * Writes the palette, in order of first appearance, and the palette index of each element as VarInts, which are
+	 * encoded straight into the buffer of the writer
+	 */
+	private static <WriteException extends Exception, T> void writePaletteAndData(
+		@NotNull NbtWriter<WriteException> writer, @NotNull T @NotNull [] yzxElements,
+		@NotNull Function<@NotNull T, @NotNull String> toId) throws WriteException, OomException, NbtWriteException {
+		int len = yzxElements.length;
+		int[] indices = OomAware.tryRun(null, () -> new int[len]);
+		HashMap<String, Integer> palette = OomAware.tryRun(null, HashMap::new);
+		ArrayList<String> ids = OomAware.tryRun(null, ArrayList::new);
+
+		T previous = null;
+		int previousIdx = 0;
+		long dataLen = 0;
+		for (int i = 0; i < len; ++i) {
+			T element = yzxElements[i];
+			// Neighbouring elements are often the very same object, which saves both the conversion and the lookup
+			if (element != previous) {
+				String id = toId.apply(element);
+				Integer idx = palette.get(id);
+				if (idx == null) {
+					idx = ids.size();
+					palette.put(id, idx);
+					ids.add(id);
+				}
+				previous = element;
+				previousIdx = idx;
+			}
+			indices[i] = previousIdx;
+			dataLen += VarIntLong.varIntSize(previousIdx);
+		}
+
+		writer.writeCompoundStart("Palette");
+		for (int i = 0, size = ids.size(); i < size; ++i)
+			writer.writeInt(ids.get(i), i);
+		writer.writeCompoundEnd();
+
+		if (dataLen > GrowableArray.MAX_ARRAY_SIZE)
+			throw new NbtWriteException.InvalidDataStructureSize((int) Math.min(dataLen, Integer.MAX_VALUE));
+		writer.writeByteArrayStart("Data", (int) dataLen);
+		writer.writeVarInts(indices, 0, len);
+	}
+
+	private static <WriteException extends Exception, BlockType> void writeBlockEntities(
+		@NotNull NbtWriter<WriteException> writer, @NotNull Schematic<BlockType, ?, ?> schematic,
+		@NotNull BlockType @NotNull [] yzxBlocks,
+		@NotNull Function<@NotNull BlockType, @Nullable NbtResource<String>> toBlockEntity)
+		throws WriteException, OomException, NbtWriteException {
+		GrowableArray<int[]> positions = GrowableArray.ints(null);
+		ArrayList<NbtResource<String>> blockEntities = OomAware.tryRun(null, ArrayList::new);
+		for (int i = 0, len = yzxBlocks.length; i < len; ++i) {
+			NbtResource<String> blockEntity = toBlockEntity.apply(yzxBlocks[i]);
+			if (blockEntity != null) {
+				GrowableArray.add(positions, i);
+				blockEntities.add(blockEntity);
+			}
+		}
+		int count = blockEntities.size();
+		if (count == 0) return;
+
+		int xLen = schematic.xLen, xzLen = xLen * schematic.zLen;
+		int[] pos = positions.inner;
+		writer.writeListStart("BlockEntities", NbtType.Compound, count);
+		for (int i = 0; i < count; ++i) {
+			NbtResource<String> blockEntity = blockEntities.get(i);
+			int yzx = pos[i];
+			writer.writeString("Id", blockEntity.id);
+			writer.writeIntArray("Pos", new int[] { yzx % xLen, yzx / xzLen, (yzx / xLen) % schematic.zLen });
+			writeData(writer, blockEntity.data);
+			writer.writeCompoundEnd();
+		}
+	}
+
+	private static <WriteException extends Exception> void writeData(@NotNull NbtWriter<WriteException> writer,
+																	 @Nullable NbtCompound data)
+		throws WriteException, OomException, NbtWriteException {
+		if (data != null) writer.writeCompound("Data", data);
+	}
+}
@@ -105,6 +105,21 @@ public class GrowableArray<ArrayType extends Cloneable & Serializable> implement
 		ensureCapacityFor(diff);
 	}
 
+	/**
+	 * Removes the element at the given index by moving the last element to its position, and zeroes (or nulls, if the
+	 * component type of the array is not a primitive) the previous position of the last element
+	 */
+	@SuppressWarnings("SuspiciousSystemArraycopy")
+	public void swapRemove(int idx) {
+		int last = nextIdx - 1;
+		if (idx < 0 | idx > last) throw new IndexOutOfBoundsException("Index: " + idx + ", Size: " + nextIdx);
+		ArrayType inner = this.inner;
+		System.arraycopy(inner, last, inner, idx, 1);
+		if (inner instanceof Object[]) ((Object[]) inner)[last] = null;
+		else Array.setByte(inner, last, (byte) 0);
+		nextIdx = last;
+	}
+
 	@SuppressWarnings("SuspiciousSystemArraycopy")
 	private int ensureCapacityFor(int amount) throws OomException {
 		assert amount >= 0 & this.nextIdx >= 0;
@@ -129,10 +144,19 @@ public class GrowableArray<ArrayType extends Cloneable & Serializable> implement
 		return res;
 	}
 
-	@SuppressWarnings("unchecked")
 	public static <T> GrowableArray<T[]> generic(@NotNull Class<T> tClass, @Nullable OomAware oomAware) throws OomException {
+		return generic(tClass, oomAware, 16);
+	}
+
+	/**
+	 * @param initialCapacity The expected amount of elements, so that the array doesn't have to grow until then
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> GrowableArray<T[]> generic(@NotNull Class<T> tClass, @Nullable OomAware oomAware,
+												 int initialCapacity) throws OomException {
+		int capacity = Math.max(initialCapacity, 1);
 		return OomAware.tryRun(oomAware, () ->
-			new GrowableArray<>(oomAware, 16, size -> (T[]) Array.newInstance(tClass, size)));
+			new GrowableArray<>(oomAware, capacity, size -> (T[]) Array.newInstance(tClass, size)));
 	}
 
 	// <editor-fold defaultstate="collapsed" desc="create methods">
@@ -0,0 +1,397 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io;
+
+import me.clipi.io.nbt.NbtParser;
+import me.clipi.io.util.VarIntLong;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.*;
+
+import static me.clipi.io.TestUtils.getString;
+import static me.clipi.io.TestUtils.gunzippedBytes;
+
+public class CheckedReaderTest {
+	private static final byte[] primitives = {
+		0x12, 0x34,
+		(byte) 0x89, (byte) 0xAB, (byte) 0xCD, (byte) 0xEF,
+		0x01, 0x23, 0x45, 0x67, (byte) 0x89, (byte) 0xAB, (byte) 0xCD, (byte) 0xEF,
+		0, 5, 'h', 'e', 'l', 'l', 'o',
+		0, 4, 'a', (byte) 0xC3, (byte) 0xA9, 'b',
+		0x7F
+	};
+
+	private static <E extends Exception> void assertPrimitives(@NotNull CheckedReader<E> reader) throws Exception {
+		try (CheckedBigEndianDataInput<E> di = new CheckedBigEndianDataInput<>(reader)) {
+			Assertions.assertEquals(0x1234, di.expectShort());
+			Assertions.assertEquals(0x89ABCDEF, di.expectInt());
+			Assertions.assertEquals(0x0123456789ABCDEFL, di.expectLong());
+			Assertions.assertEquals("hello", di.expectModifiedUtf8());
+			Assertions.assertEquals("aéb", di.expectModifiedUtf8());
+			Assertions.assertEquals(0x7F, di.expectByte());
+			Assertions.assertThrows(EofException.class, di::expectInt);
+		}
+	}
+
+	@Test
+	public void testPrimitives() throws Exception {
+		assertPrimitives(CheckedReader.fromIs(new ByteArrayInputStream(primitives)));
+		assertPrimitives(CheckedReader.fromArray(primitives));
+
+		byte[] padded = new byte[primitives.length + 3];
+		System.arraycopy(primitives, 0, padded, 1, primitives.length);
+		assertPrimitives(CheckedReader.fromArray(padded, 1, primitives.length));
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(primitives.length);
+		direct.put(primitives).flip();
+		assertPrimitives(CheckedReader.fromByteBuffer(direct));
+		Assertions.assertEquals(0, direct.position());
+	}
+
+	private static <E extends Exception> void assertSkips(@NotNull CheckedReader<E> reader) throws Exception {
+		try (CheckedBigEndianDataInput<E> di = new CheckedBigEndianDataInput<>(reader)) {
+			di.expectSkip(6);
+			Assertions.assertEquals(0x0123456789ABCDEFL, di.expectLong());
+			di.expectSkip(13);
+			Assertions.assertEquals(0x7F, di.expectByte());
+			di.expectSkip(0);
+			Assertions.assertThrows(EofException.class, () -> di.expectSkip(1));
+		}
+	}
+
+	@Test
+	public void testSkip() throws Exception {
+		assertSkips(CheckedReader.fromIs(new ByteArrayInputStream(primitives)));
+		assertSkips(CheckedReader.fromArray(primitives));
+		assertSkips(CheckedReader.fromGzip(new ByteArrayInputStream(gzip(primitives))));
+		assertSkips(CheckedReader.readAhead(CheckedReader.fromArray(primitives), 2, 128));
+
+		Path file = Files.createTempFile("minecraftio", ".nbt");
+		try {
+			Files.write(file, primitives);
+			assertSkips(CheckedReader.fromMappedFile(file));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testModifiedUtf8() throws Exception {
+		String ascii = "abcdefghijklmnopqrstuvwxyz".repeat(5);
+		byte[] encoded = new byte[2 + ascii.length() + 2 + 3 + 2 + 4 + 2 + 0 + 2 + 2];
+		ByteBuffer buf = ByteBuffer.wrap(encoded);
+		buf.putShort((short) ascii.length()).put(ascii.getBytes(StandardCharsets.US_ASCII));
+		buf.putShort((short) 3).put((byte) 0xE2).put((byte) 0x82).put((byte) 0xAC);
+		buf.putShort((short) 4).put((byte) 'a').put((byte) 0xC0).put((byte) 0x80).put((byte) 'b');
+		buf.putShort((short) 0);
+		buf.putShort((short) 2).put((byte) 0xE2).put((byte) 'x');
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(encoded.length);
+		direct.put(encoded).flip();
+		assertModifiedUtf8(ascii, CheckedReader.fromIs(new ByteArrayInputStream(encoded)));
+		assertModifiedUtf8(ascii, CheckedReader.fromArray(encoded));
+		assertModifiedUtf8(ascii, CheckedReader.fromByteBuffer(direct));
+	}
+
+	private static <E extends Exception> void assertModifiedUtf8(@NotNull String ascii,
+																 @NotNull CheckedReader<E> reader) throws Exception {
+		try (CheckedBigEndianDataInput<E> di = new CheckedBigEndianDataInput<>(reader)) {
+			Assertions.assertEquals(ascii, di.expectModifiedUtf8());
+			Assertions.assertEquals("€", di.expectModifiedUtf8());
+			Assertions.assertEquals("a\0b", di.expectModifiedUtf8());
+			Assertions.assertEquals("", di.expectModifiedUtf8());
+			Assertions.assertThrows(CheckedBigEndianDataInput.ModifiedUtf8DataFormatException.class,
+									di::expectModifiedUtf8);
+		}
+	}
+
+	@Test
+	public void testOutput() throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try (CheckedBigEndianDataOutput<IOException> out =
+				 new CheckedBigEndianDataOutput<>(CheckedWriter.fromOs(os))) {
+			out.writeShort(0x1234);
+			out.writeInt(0x89ABCDEF);
+			out.writeLong(0x0123456789ABCDEFL);
+			out.writeModifiedUtf8("hello");
+			out.writeModifiedUtf8("aéb");
+			out.writeByte(0x7F);
+		}
+		Assertions.assertArrayEquals(primitives, os.toByteArray());
+
+		String[] strings = { "", "a\0b", "€\uD83D\uDE00", "x".repeat(10_000), "aé€".repeat(7_000) };
+		int[] ints = new Random(0).ints(5_000).toArray();
+		double[] doubles = new Random(1).doubles(3_000).toArray();
+		int[] varInts = new Random(2).ints(20_000, 0, 1 << 20).toArray();
+		byte[] encodedVarInts = new byte[(int) VarIntLong.varIntsSize(varInts, 0, varInts.length)];
+		VarIntLong.writeVarInts(varInts, 0, varInts.length, encodedVarInts, 0);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		try (DataOutputStream dos = new DataOutputStream(expected)) {
+			for (String str : strings)
+				dos.writeUTF(str);
+			for (int i : ints)
+				dos.writeInt(i);
+			dos.write(primitives);
+			for (double d : doubles)
+				dos.writeDouble(d);
+			dos.write(encodedVarInts);
+		}
+		os.reset();
+		try (CheckedBigEndianDataOutput<IOException> out =
+				 new CheckedBigEndianDataOutput<>(CheckedWriter.fromOs(os))) {
+			for (String str : strings)
+				out.writeModifiedUtf8(str);
+			out.writeIntArray(ints);
+			out.writeByteArray(primitives);
+			out.writeDoubleArray(doubles);
+			out.writeVarInts(varInts, 0, varInts.length);
+			Assertions.assertThrows(CheckedBigEndianDataInput.ModifiedUtf8DataFormatException.class,
+									() -> out.writeModifiedUtf8("€".repeat(30_000)));
+		}
+		Assertions.assertArrayEquals(expected.toByteArray(), os.toByteArray());
+	}
+
+	@Test
+	public void testInterner() throws Exception {
+		byte[] encoded = { 0, 3, 'P', 'o', 's', 0, 3, 'P', 'o', 's', 0, 2, (byte) 0xC3, (byte) 0xA9 };
+		ModifiedUtf8Interner interner = new ModifiedUtf8Interner(1);
+		try (var di = new CheckedBigEndianDataInput<>(CheckedReader.fromArray(encoded))) {
+			Assertions.assertSame("Pos", di.expectModifiedUtf8(interner));
+			Assertions.assertSame("Pos", di.expectModifiedUtf8(interner));
+			Assertions.assertEquals("é", di.expectModifiedUtf8(interner));
+		}
+		try (var di = new CheckedBigEndianDataInput<>(CheckedReader.fromIs(new ByteArrayInputStream(encoded)))) {
+			Assertions.assertSame("Pos", di.expectModifiedUtf8(interner));
+		}
+	}
+
+	private static byte @NotNull [] gzip(byte @NotNull [] bytes) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (GZIPOutputStream os = new GZIPOutputStream(baos)) {
+			os.write(bytes);
+		}
+		return baos.toByteArray();
+	}
+
+	/**
+	 * A gzip member with every optional header field
+	 */
+	private static byte @NotNull [] gzipWithAllFlags(byte @NotNull [] bytes) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		baos.write(new byte[] {
+			0x1F, (byte) 0x8B, 8, 2 | 4 | 8 | 16, 0, 0, 0, 0, 0, (byte) 255,
+			3, 0, 'x', 'y', 'z',
+			'n', 'a', 'm', 'e', 0,
+			'c', 0
+		});
+		CRC32 crc = new CRC32();
+		crc.update(baos.toByteArray());
+		baos.write((int) crc.getValue());
+		baos.write((int) crc.getValue() >>> 8);
+
+		try (DeflaterOutputStream os = new DeflaterOutputStream(baos, new Deflater(Deflater.DEFAULT_COMPRESSION, true))) {
+			os.write(bytes);
+		}
+
+		crc.reset();
+		crc.update(bytes);
+		ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		trailer.putInt((int) crc.getValue()).putInt(bytes.length);
+		baos.write(trailer.array());
+		return baos.toByteArray();
+	}
+
+	@Test
+	public void testInflater() throws Exception {
+		int half = primitives.length / 2;
+		byte[] first = gzip(Arrays.copyOfRange(primitives, 0, half)),
+			second = gzipWithAllFlags(Arrays.copyOfRange(primitives, half, primitives.length));
+		byte[] multiMember = Arrays.copyOf(first, first.length + second.length + 3);
+		System.arraycopy(second, 0, multiMember, first.length, second.length);
+		multiMember[multiMember.length - 1] = 1; // ignored trailing garbage
+		assertPrimitives(CheckedReader.fromGzip(new ByteArrayInputStream(multiMember)));
+
+		ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+		try (DeflaterOutputStream os = new DeflaterOutputStream(zlib)) {
+			os.write(primitives);
+		}
+		assertPrimitives(CheckedReader.fromZlib(new ByteArrayInputStream(zlib.toByteArray())));
+
+		byte[] corrupt = gzip(primitives);
+		corrupt[corrupt.length - 8] ^= 1;
+		try (var di = new CheckedBigEndianDataInput<>(CheckedReader.fromGzip(new ByteArrayInputStream(corrupt)))) {
+			Assertions.assertThrows(ZipException.class, () -> di.expectByteArray(primitives.length + 1));
+		}
+
+		long[] longs = new Random(0).longs(100_000, 0, 1000).toArray();
+		ByteBuffer encoded = ByteBuffer.allocate(1 + longs.length * 8);
+		encoded.put((byte) 0x7F).asLongBuffer().put(longs);
+		try (var di = new CheckedBigEndianDataInput<>(CheckedReader.fromGzip(
+			new ByteArrayInputStream(gzip(encoded.array()))))) {
+			Assertions.assertEquals(0x7F, di.expectByte());
+			Assertions.assertArrayEquals(longs, di.expectLongArray(longs.length));
+			di.expectEnd();
+		}
+	}
+
+	@Test
+	public void testReadAhead() throws Exception {
+		for (String name : new String[] { "all-types", "bigtest" }) {
+			assertParses(getString("nbt/output-" + name + ".txt"), CheckedReader.readAhead(
+				CheckedReader.fromGzip(TestUtils.resource("nbt/" + name + ".nbt.gz")), 2, 256));
+		}
+
+		byte[] bytes = new byte[100_000];
+		new Random(0).nextBytes(bytes);
+		try (var di = new CheckedBigEndianDataInput<>(CheckedReader.readAhead(CheckedReader.fromArray(bytes), 3, 1000))) {
+			Assertions.assertEquals(bytes[0], (byte) di.expectByte());
+			long[] longs = new long[(bytes.length - 1) / 8];
+			ByteBuffer.wrap(bytes, 1, longs.length * 8).asLongBuffer().get(longs);
+			Assertions.assertArrayEquals(longs, di.expectLongArray(longs.length));
+			Assertions.assertThrows(EofException.class, di::expectLong);
+		}
+
+		byte[] corrupt = gzip(bytes);
+		corrupt[corrupt.length - 8] ^= 1;
+		try (var di = new CheckedBigEndianDataInput<>(CheckedReader.readAhead(
+			CheckedReader.fromGzip(new ByteArrayInputStream(corrupt)), 2, 1000))) {
+			Assertions.assertArrayEquals(Arrays.copyOf(bytes, 50_000), di.expectByteArray(50_000));
+			Assertions.assertThrows(ZipException.class, () -> di.expectByteArray(50_001));
+		}
+	}
+
+	@Test
+	public void testReadAheadCloseFromProducer() throws Exception {
+		byte[] prefix = Arrays.copyOf(gzip(primitives), 10);
+		CountDownLatch blocked = new CountDownLatch(1);
+		AtomicBoolean reading = new AtomicBoolean(), closedWhileReading = new AtomicBoolean();
+		AtomicReference<Thread> closingThread = new AtomicReference<>();
+		// Serves a gzip header and then blocks until interrupted, like an interruptible channel would
+		InputStream blocking = new InputStream() {
+			private int next;
+
+			@Override
+			public int read() throws IOException {
+				if (next < prefix.length) return prefix[next++] & 0xFF;
+				reading.set(true);
+				try {
+					blocked.countDown();
+					new CountDownLatch(1).await();
+					throw new AssertionError();
+				} catch (InterruptedException ex) {
+					throw new InterruptedIOException();
+				} finally {
+					reading.set(false);
+				}
+			}
+
+			@Override
+			public int read(byte @NotNull [] b, int off, int len) throws IOException {
+				if (len == 0) return 0;
+				if (next == prefix.length) return read() < 0 ? -1 : 1;
+				int n = Math.min(len, prefix.length - next);
+				System.arraycopy(prefix, next, b, off, n);
+				next += n;
+				return n;
+			}
+
+			@Override
+			public void close() throws IOException {
+				closedWhileReading.set(reading.get());
+				closingThread.set(Thread.currentThread());
+				throw new IOException("Failed to close");
+			}
+		};
+
+		BufferedCheckedReader<IOException> reader = CheckedReader.readAhead(CheckedReader.fromGzip(blocking), 2, 1000);
+		blocked.await();
+		Assertions.assertThrows(IOException.class, reader::closeCurrent);
+		// The source is closed by the separate thread once its read has stopped, before closeCurrent returns
+		Assertions.assertNotNull(closingThread.get());
+		Assertions.assertNotSame(Thread.currentThread(), closingThread.get());
+		Assertions.assertFalse(closingThread.get().isAlive());
+		Assertions.assertFalse(closedWhileReading.get());
+		Assertions.assertTrue(reader.isCompletelyClosed());
+	}
+
+	private static <E extends Exception> void assertParses(@NotNull String expected,
+														   @NotNull CheckedReader<E> reader) throws Exception {
+		try (NbtParser<E> parser = new NbtParser<>(new CheckedBigEndianDataInput<>(reader))) {
+			Assertions.assertEquals(expected, parser.parseRoot().nestedToString());
+		}
+	}
+
+	@Test
+	public void testInMemoryNbt() throws Exception {
+		for (String name : new String[] { "all-types", "bigtest" }) {
+			String expected = getString("nbt/output-" + name + ".txt");
+			byte[] bytes = gunzippedBytes("nbt/" + name + ".nbt.gz");
+
+			assertParses(expected, CheckedReader.fromArray(bytes));
+
+			ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+			direct.put(bytes).flip();
+			assertParses(expected, CheckedReader.fromByteBuffer(direct));
+		}
+	}
+
+	@Test
+	public void testMappedFile() throws Exception {
+		Path file = Files.createTempFile("minecraftio", ".nbt");
+		try {
+			Files.write(file, primitives);
+			assertPrimitives(CheckedReader.fromMappedFile(file));
+
+			try (var di = new CheckedBigEndianDataInput<>(CheckedReader.fromMappedFile(file))) {
+				ByteBuffer slice = di.expectByteSlice(14);
+				Assertions.assertTrue(slice.isReadOnly());
+				Assertions.assertEquals(0x0123456789ABCDEFL, slice.getLong(6));
+				Assertions.assertArrayEquals(new short[] { 5, 0x6865, 0x6C6C, 0x6F00 }, di.expectShortArray(4));
+				Assertions.assertThrows(EofException.class, () -> di.expectIntArray(2));
+			}
+
+			for (String name : new String[] { "all-types", "bigtest" }) {
+				Files.write(file, gunzippedBytes("nbt/" + name + ".nbt.gz"));
+				assertParses(getString("nbt/output-" + name + ".txt"), CheckedReader.fromMappedFile(file));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
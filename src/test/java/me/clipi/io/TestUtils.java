@@ -43,6 +43,12 @@ public class TestUtils {
 		}
 	}
 
+	public static byte @NotNull [] gunzippedBytes(@NotNull String resource) throws IOException {
+		try (InputStream is = gunzip(resource(resource))) {
+			return is.readAllBytes();
+		}
+	}
+
 	@NotNull
 	public static GZIPInputStream gunzip(@NotNull InputStream is) {
 		try {
@@ -0,0 +1,121 @@
+/*
+ * MinecraftIO, a simple library with multiple Minecraft IO-tools
+ * Copyright (C) 2024  Clipi (GitHub: Clipi-12)
+ *
+ * This file is part of MinecraftIO.
+ *
+ * MinecraftIO is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MinecraftIO is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MinecraftIO.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package me.clipi.io.nbt;
+
+import me.clipi.io.CheckedBigEndianDataInput;
+import me.clipi.io.CheckedReader;
+import me.clipi.io.nbt.exceptions.NbtParseException;
+import me.clipi.io.nbt.schema.NbtRootSchema;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static me.clipi.io.TestUtils.gunzippedBytes;
+
+public class NbtPushParserTest {
+	private static final @NotNull NbtRootSchema<SaveCompoundSchema> saveRoot =
+		(rootName, oomAware) -> SaveCompoundSchema.create(oomAware);
+
+	@Test
+	public void testChunks() throws Exception {
+		for (String resource : new String[] {
+			"nbt/all-types.nbt.gz", "nbt/bigtest.nbt.gz", "nbt/nested-lists.nbt.gz", "schematic/natural.schem"
+		}) {
+			byte[] bytes = gunzippedBytes(resource);
+			NbtRoot expected;
+			try (NbtParser<RuntimeException> parser =
+					 new NbtParser<>(new CheckedBigEndianDataInput<>(CheckedReader.fromArray(bytes)))) {
+				expected = parser.parseRoot();
+			}
+
+			for (int chunkSize : new int[] { 1, 7, 4096, bytes.length }) {
+				NbtPushParser<SaveCompoundSchema> push = new NbtPushParser<>(bytes.length, saveRoot);
+				for (int i = 0; i < bytes.length; i += chunkSize) {
+					Assertions.assertFalse(push.isComplete());
+					Assertions.assertThrows(IllegalStateException.class, push::parser);
+					int len = Math.min(chunkSize, bytes.length - i);
+					ByteBuffer chunk = i % 2 == 0 ?
+						ByteBuffer.wrap(bytes, i, len) :
+						ByteBuffer.allocateDirect(len).put(bytes, i, len).flip();
+					Assertions.assertEquals(i + len == bytes.length, push.feed(chunk));
+					Assertions.assertFalse(chunk.hasRemaining());
+				}
+				Assertions.assertEquals(expected.name, push.rootName());
+				try (NbtParser<RuntimeException> parser = push.parser()) {
+					Assertions.assertEquals(expected.nestedToString(), parser.parseRoot().nestedToString());
+				}
+				Assertions.assertEquals(expected.rootValue, push.parseRoot().compound);
+			}
+		}
+	}
+
+	@Test
+	public void testTrailingBytes() throws Exception {
+		byte[] bytes = gunzippedBytes("nbt/bigtest.nbt.gz");
+		ByteBuffer chunk = ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length + 3));
+
+		NbtPushParser<SaveCompoundSchema> push = new NbtPushParser<>(bytes.length, saveRoot);
+		Assertions.assertTrue(push.feed(chunk));
+		Assertions.assertEquals(bytes.length, chunk.position());
+		Assertions.assertTrue(push.feed(chunk));
+		Assertions.assertEquals(bytes.length, chunk.position());
+		try (NbtParser<RuntimeException> parser = push.parser()) {
+			Assertions.assertDoesNotThrow(() -> parser.parseRoot());
+		}
+	}
+
+	@Test
+	public void testEarlyRejection() throws Exception {
+		byte[] bytes = gunzippedBytes("nbt/bigtest.nbt.gz");
+		int nameEnd = 3 + (((bytes[1] & 0xFF) << 8) | (bytes[2] & 0xFF));
+
+		NbtPushParser<SaveCompoundSchema> denied = new NbtPushParser<>(bytes.length, (rootName, oomAware) -> null);
+		Assertions.assertFalse(denied.feed(ByteBuffer.wrap(bytes, 0, nameEnd - 1)));
+		Assertions.assertThrows(NbtParseException.IncorrectSchema.class,
+								() -> denied.feed(ByteBuffer.wrap(bytes, nameEnd - 1, 1)));
+
+		// A byte array that claims to be larger than the maximum size is rejected before any of its bytes arrive
+		byte[] hugeArray = { NbtType.tagCompound, 0, 0, NbtType.tagByteArray, 0, 0, 0x7F, -1, -1, -1 };
+		Assertions.assertThrows(NbtParseException.InvalidDataStructureSize.class,
+								() -> new NbtPushParser<>(1 << 20, saveRoot).feed(ByteBuffer.wrap(hugeArray)));
+
+		Assertions.assertThrows(NbtParseException.InvalidDataStructureSize.class,
+								() -> new NbtPushParser<>(bytes.length - 1, saveRoot).feed(ByteBuffer.wrap(bytes)));
+	}
+
+	@Test
+	public void testMalformed() {
+		Assertions.assertThrows(NbtParseException.UnexpectedTagType.class,
+								() -> new NbtPushParser<>(64, saveRoot).feed(
+									ByteBuffer.wrap(new byte[] { NbtType.tagList, 0, 0 })));
+
+		byte[] unknownType = { NbtType.tagCompound, 0, 0, 13, 0, 0 };
+		Assertions.assertThrows(NbtParseException.UnknownTagType.class,
+								() -> new NbtPushParser<>(64, saveRoot).feed(ByteBuffer.wrap(unknownType)));
+
+		byte[] negativeLength = { NbtType.tagCompound, 0, 0, NbtType.tagIntArray, 0, 0, -1, -1, -1, -1 };
+		Assertions.assertThrows(NbtParseException.InvalidDataStructureSize.class,
+								() -> new NbtPushParser<>(64, saveRoot).feed(ByteBuffer.wrap(negativeLength)));
+	}
+}
@@ -21,16 +21,37 @@
 package me.clipi.io.nbt;
 
 import me.clipi.io.CheckedBigEndianDataInput;
+import me.clipi.io.CheckedBigEndianDataOutput;
 import me.clipi.io.CheckedReader;
+import me.clipi.io.CheckedWriter;
 import me.clipi.io.OomException;
+import me.clipi.io.OomException.OomAware;
 import me.clipi.io.TestUtils;
+import me.clipi.io.nbt.exceptions.NbtKeyNotFoundException;
 import me.clipi.io.nbt.exceptions.NbtParseException;
+import me.clipi.io.nbt.exceptions.NbtWriteException;
+import me.clipi.io.nbt.schema.NbtCompoundSchema;
+import me.clipi.io.nbt.schema.NbtListOfCompoundsSchema;
+import me.clipi.io.nbt.schema.NbtListOfCompoundsSchema.ListOfSchemas;
+import me.clipi.io.nbt.schema.NbtListOfListsSchema;
+import me.clipi.io.util.function.CheckedConsumer;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static me.clipi.io.TestUtils.getString;
 
@@ -41,15 +62,32 @@ import static me.clipi.io.TestUtils.getString;
  */
 public class NbtTest {
 	@NotNull
-	@SuppressWarnings("unchecked")
-	public static NbtParser<IOException> getParser(@NotNull String @NotNull ... resources) {
-		return new NbtParser<>(new CheckedBigEndianDataInput<>(CheckedReader.concat(
-			Arrays.stream(resources)
-				  .map(TestUtils::resource)
-				  .map(TestUtils::gunzip)
-				  .map(CheckedReader::fromIs)
-				  .toArray(CheckedReader[]::new)
-		)));
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static CheckedBigEndianDataInput<IOException> getInput(@NotNull String @NotNull ... resources)
+		throws IOException {
+		CheckedReader<IOException>[] readers = new CheckedReader[resources.length];
+		for (int i = 0; i < resources.length; ++i)
+			readers[i] = CheckedReader.fromGzip(TestUtils.resource(resources[i]));
+		return new CheckedBigEndianDataInput<>(CheckedReader.concat(readers));
+	}
+
+	@NotNull
+	public static NbtParser<IOException> getParser(@NotNull String @NotNull ... resources) throws IOException {
+		return new NbtParser<>(getInput(resources));
+	}
+
+	public static byte @NotNull [] writeToBytes(
+		@NotNull CheckedConsumer<@NotNull NbtWriter<IOException>, Throwable> write) throws Throwable {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try (NbtWriter<IOException> writer =
+				 new NbtWriter<>(new CheckedBigEndianDataOutput<>(CheckedWriter.fromOs(os)))) {
+			write.accept(writer);
+		}
+		return os.toByteArray();
+	}
+
+	public static byte @NotNull [] writeToBytes(@NotNull String name, @NotNull NbtCompound compound) throws Throwable {
+		return writeToBytes(writer -> writer.writeRoot(name, compound));
 	}
 
 	@NotNull
@@ -96,4 +134,952 @@ public class NbtTest {
 			Assertions.assertEquals(expected2, parseByVerifying(parser).nestedToString());
 		}
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testSkip() throws Throwable {
+		try (NbtParser<IOException> parser = getParser("nbt/bigtest.nbt.gz", "nbt/nested-lists.nbt.gz")) {
+			NbtCompound bigtest = parser.parseRoot((name, oomAware) -> new SaveCompoundSchema(oomAware) {
+				@Override
+				public boolean skipsValue(@NotNull String key, @NotNull NbtType type) {
+					return key.startsWith("byteArrayTest") | type == NbtType.String;
+				}
+
+				@Override
+				public @Nullable NbtCompoundSchema schemaForCompound(@NotNull String key) throws OomException {
+					return key.equals("nested compound test") ? NbtCompoundSchema.SKIP : super.schemaForCompound(key);
+				}
+
+				@Override
+				public @Nullable NbtListOfCompoundsSchema schemaForListOfCompounds(@NotNull String key, int length) {
+					return NbtListOfCompoundsSchema.SKIP;
+				}
+			}).compound;
+			Assertions.assertEquals(8, bigtest.entries());
+			Assertions.assertNull(bigtest.typeForKey("stringTest"));
+			Assertions.assertNull(bigtest.typeForKey("nested compound test"));
+			Assertions.assertSame(NbtList.EMPTY_LIST, bigtest.getListOrThrow("listTest (compound)"));
+			Assertions.assertEquals(0.4931287132182315, bigtest.getDoubleOrThrow("doubleTest"));
+
+			NbtCompound nestedLists = parser.parseRoot((name, oomAware) -> new SaveCompoundSchema(oomAware) {
+				@Override
+				public @Nullable NbtListOfListsSchema schemaForListOfLists(@NotNull String key, int length) {
+					return NbtListOfListsSchema.SKIP;
+				}
+
+				@Override
+				public @Nullable NbtListOfCompoundsSchema schemaForListOfCompounds(@NotNull String key, int length) {
+					return NbtListOfCompoundsSchema.SKIP;
+				}
+			}).compound;
+			Assertions.assertEquals(3, nestedLists.entries());
+			Assertions.assertSame(NbtList.EMPTY_LIST, nestedLists.getListOrThrow("lists nested 4 levels deep"));
+			Assertions.assertSame(NbtList.EMPTY_LIST, nestedLists.getListOrThrow(
+				"3x4x5x10 nested list of the first prime numbers"));
+		}
+
+		class SkipNames extends SaveCompoundSchema {
+			SkipNames(@NotNull OomAware oomAware) throws OomException {
+				super(oomAware);
+			}
+
+			@Override
+			public boolean skipsValue(@NotNull String key, @NotNull NbtType type) {
+				return key.equals("name");
+			}
+
+			@Override
+			public NbtListOfCompoundsSchema schemaForListOfCompounds(@NotNull String key, int length)
+				throws OomException {
+				return oomAware.tryRun(() -> new ListOfSchemas<SkipNames, NbtCompound>(
+					oomAware, NbtCompound.class, length) {
+					@Override
+					protected SkipNames generateSchema(@NotNull OomAware oomAware, int index) throws OomException {
+						return new SkipNames(oomAware);
+					}
+
+					@Override
+					protected @NotNull NbtCompound mapSchema(@NotNull SkipNames schema) {
+						return schema.compound;
+					}
+				});
+			}
+		}
+		try (NbtParser<IOException> parser = getParser("nbt/bigtest.nbt.gz")) {
+			// Both compounds of the list skip the same key
+			NbtCompound[] compounds = (NbtCompound[]) parser.parseRoot((name, oomAware) -> new SkipNames(oomAware))
+															.compound.getListOrThrow("listTest (compound)").array;
+			Assertions.assertEquals(2, compounds.length);
+			Assertions.assertNull(compounds[1].typeForKey("name"));
+		}
+		ByteArrayOutputStream duplicated = new ByteArrayOutputStream();
+		try (DataOutputStream os = new DataOutputStream(duplicated)) {
+			os.writeByte(NbtType.tagCompound);
+			os.writeUTF("duplicated");
+			os.writeByte(NbtType.tagString);
+			os.writeUTF("key");
+			os.writeUTF("value");
+			os.writeByte(NbtType.tagLong);
+			os.writeUTF("key");
+			os.writeLong(0);
+			os.writeByte(NbtType.tagEnd);
+		}
+		for (boolean skipDuplicate : new boolean[] { false, true }) {
+			Assertions.assertThrows(NbtParseException.DuplicatedKey.class, () -> new NbtParser<>(
+				new CheckedBigEndianDataInput<>(CheckedReader.fromArray(duplicated.toByteArray()))).parseRoot(
+				(name, oomAware) -> new SaveCompoundSchema(oomAware) {
+					@Override
+					public boolean skipsValue(@NotNull String key, @NotNull NbtType type) {
+						return type == NbtType.String | skipDuplicate;
+					}
+				}));
+		}
+	}
+
+	@Test
+	public void testVisitor() throws Throwable {
+		try (NbtParser<IOException> parser = getParser("nbt/bigtest.nbt.gz", "nbt/nested-lists.nbt.gz")) {
+			List<String> events = new ArrayList<>();
+			int[] depth = { 0, 0 };
+			parser.visitRoot(new NbtVisitor() {
+				@Override
+				public void visitRoot(@NotNull String name) {
+					events.add("root " + name);
+				}
+
+				@Override
+				public void visitCompoundStart() {
+					depth[1] = Math.max(depth[1], ++depth[0]);
+				}
+
+				@Override
+				public void visitCompoundEnd() {
+					--depth[0];
+				}
+
+				@Override
+				public boolean visitKey(@NotNull String key, @NotNull NbtType type) {
+					if (key.equals("listTest (compound)")) return false;
+					events.add(key + ": " + type);
+					return true;
+				}
+
+				@Override
+				public boolean visitListStart(@NotNull NbtType componentType, int length) {
+					events.add("list " + componentType + " " + length);
+					return true;
+				}
+
+				@Override
+				public void visitString(@NotNull String value) {
+					events.add(value);
+				}
+
+				@Override
+				public void visitByteArray(byte @NotNull [] value) {
+					events.add("byte[" + value.length + "]");
+				}
+
+				@Override
+				public void visitLong(long value) {
+					events.add(Long.toString(value));
+				}
+			});
+			Assertions.assertEquals(0, depth[0]);
+			Assertions.assertEquals(3, depth[1]);
+			Assertions.assertEquals(List.of(
+				"root Level",
+				"longTest: Long", "9223372036854775807",
+				"shortTest: Short",
+				"stringTest: String", "HELLO WORLD THIS IS A TEST STRING ÅÄÖ!",
+				"floatTest: Float",
+				"intTest: Int",
+				"nested compound test: Compound",
+				"ham: Compound", "name: String", "Hampus", "value: Float",
+				"egg: Compound", "name: String", "Eggbert", "value: Float",
+				"listTest (long): List", "list Long 5", "11", "12", "13", "14", "15",
+				"byteTest: Byte",
+				"byteArrayTest (the first 1000 values of (n*n*255+n*7)%100, starting with n=0 (0, 62, 34, 16, 8, " +
+				"...)): ByteArray", "byte[1000]",
+				"doubleTest: Double"
+			), events);
+
+			int[] counts = { 0, 0, 0 };
+			parser.visitRoot(new NbtVisitor() {
+				@Override
+				public boolean visitKey(@NotNull String key, @NotNull NbtType type) {
+					return key.equals("3x4x5x10 nested list of the first prime numbers");
+				}
+
+				@Override
+				public boolean visitListStart(@NotNull NbtType componentType, int length) {
+					++counts[0];
+					return true;
+				}
+
+				@Override
+				public void visitListEnd() {
+					++counts[1];
+				}
+
+				@Override
+				public void visitInt(int value) {
+					++counts[2];
+				}
+			});
+			Assertions.assertEquals(1 + 3 + 3 * 4 + 3 * 4 * 5, counts[0]);
+			Assertions.assertEquals(counts[0], counts[1]);
+			Assertions.assertEquals(3 * 4 * 5 * 10, counts[2]);
+		}
+	}
+
+	@NotNull
+	private static List<String> visitArrays(@NotNull NbtParser<?> parser, @NotNull NbtVisitor.ArrayVisit visit)
+		throws Throwable {
+		List<String> events = new ArrayList<>();
+		long[] sum = { 0 };
+		parser.visitRoot(new NbtVisitor() {
+			@Override
+			public boolean visitKey(@NotNull String key, @NotNull NbtType type) {
+				events.add(key + " sum " + sum[0]);
+				sum[0] = 0;
+				return true;
+			}
+
+			@Override
+			public @NotNull ArrayVisit visitByteArrayStart(int length) {
+				events.add("byte[" + length + "]");
+				return visit;
+			}
+
+			@Override
+			public void visitByteArray(byte @NotNull [] value) {
+				for (byte b : value) sum[0] += b;
+			}
+
+			@Override
+			public void visitByteArrayValues(@NotNull ByteBuffer values) {
+				while (values.hasRemaining()) sum[0] += values.get();
+			}
+
+			@Override
+			public @NotNull ArrayVisit visitIntArrayStart(int length) {
+				events.add("int[" + length + "]");
+				return visit;
+			}
+
+			@Override
+			public void visitIntArray(int @NotNull [] value) {
+				for (int i : value) sum[0] += i;
+			}
+
+			@Override
+			public void visitIntArrayValues(@NotNull IntBuffer values) {
+				while (values.hasRemaining()) sum[0] += values.get();
+			}
+
+			@Override
+			public @NotNull ArrayVisit visitLongArrayStart(int length) {
+				events.add("long[" + length + "]");
+				return visit;
+			}
+
+			@Override
+			public void visitLongArray(long @NotNull [] value) {
+				for (long l : value) sum[0] += l;
+			}
+
+			@Override
+			public void visitLongArrayValues(@NotNull LongBuffer values) {
+				while (values.hasRemaining()) sum[0] += values.get();
+			}
+
+			@Override
+			public void visitInt(int value) {
+				events.add(Integer.toString(value));
+			}
+		});
+		return events;
+	}
+
+	@Test
+	public void testVisitArrays() throws Throwable {
+		byte[] bytes = new byte[20000];
+		int[] ints = new int[5000];
+		long[] longs = new long[3000];
+		for (int i = 0; i < bytes.length; ++i) bytes[i] = (byte) i;
+		for (int i = 0; i < ints.length; ++i) ints[i] = i * 31;
+		for (int i = 0; i < longs.length; ++i) longs[i] = (long) i << 33;
+		ByteArrayOutputStream nbtBytes = new ByteArrayOutputStream();
+		try (DataOutputStream os = new DataOutputStream(nbtBytes)) {
+			os.writeByte(NbtType.tagCompound);
+			os.writeUTF("arrays");
+			os.writeByte(NbtType.tagByteArray);
+			os.writeUTF("bytes");
+			os.writeInt(bytes.length);
+			os.write(bytes);
+			os.writeByte(NbtType.tagIntArray);
+			os.writeUTF("ints");
+			os.writeInt(ints.length);
+			for (int i : ints) os.writeInt(i);
+			os.writeByte(NbtType.tagLongArray);
+			os.writeUTF("longs");
+			os.writeInt(longs.length);
+			for (long l : longs) os.writeLong(l);
+			os.writeByte(NbtType.tagInt);
+			os.writeUTF("after");
+			os.writeInt(42);
+			os.writeByte(NbtType.tagEnd);
+		}
+		byte[] nbt = nbtBytes.toByteArray();
+
+		long byteSum = 0;
+		for (byte b : bytes) byteSum += b;
+		List<String> read = Arrays.asList(
+			"bytes sum 0", "byte[20000]",
+			"ints sum " + byteSum, "int[5000]",
+			"longs sum " + Arrays.stream(ints).asLongStream().sum(), "long[3000]",
+			"after sum " + Arrays.stream(longs).sum(), "42");
+		List<String> skipped = Arrays.asList(
+			"bytes sum 0", "byte[20000]", "ints sum 0", "int[5000]", "longs sum 0", "long[3000]", "after sum 0", "42");
+
+		Assertions.assertEquals(read, visitArrays(new NbtParser<>(new CheckedBigEndianDataInput<>(
+			CheckedReader.fromArray(nbt))), NbtVisitor.ArrayVisit.READ));
+		for (NbtParser<?> parser : Arrays.asList(
+			new NbtParser<>(new CheckedBigEndianDataInput<>(CheckedReader.fromArray(nbt))),
+			new NbtParser<>(new CheckedBigEndianDataInput<>(CheckedReader.fromIs(new ByteArrayInputStream(nbt)))))) {
+			Assertions.assertEquals(read, visitArrays(parser, NbtVisitor.ArrayVisit.STREAM));
+		}
+		for (NbtParser<?> parser : Arrays.asList(
+			new NbtParser<>(new CheckedBigEndianDataInput<>(CheckedReader.fromArray(nbt))),
+			new NbtParser<>(new CheckedBigEndianDataInput<>(CheckedReader.fromIs(new ByteArrayInputStream(nbt)))))) {
+			Assertions.assertEquals(skipped, visitArrays(parser, NbtVisitor.ArrayVisit.SKIP));
+		}
+	}
+
+	@Test
+	public void testCursor() throws Throwable {
+		try (NbtCursor<IOException> cursor = new NbtCursor<>(getInput(
+			"schematic/natural.schem", "nbt/bigtest.nbt.gz", "nbt/nested-lists.nbt.gz"))) {
+			Assertions.assertSame(NbtCursor.Token.START_COMPOUND, cursor.nextToken());
+			Assertions.assertEquals("", cursor.currentKey());
+			Assertions.assertSame(NbtCursor.Token.START_COMPOUND, cursor.nextToken());
+			Assertions.assertEquals("Schematic", cursor.currentKey());
+			int dataVersion = 0, width = 0, height = 0, length = 0;
+			for (int found = 0; found < 4; ) {
+				NbtCursor.Token token = cursor.nextToken();
+				if (token != NbtCursor.Token.VALUE) {
+					cursor.skipValue();
+					continue;
+				}
+				switch (cursor.currentKey()) {
+					case "DataVersion":
+						dataVersion = cursor.getInt();
+						break;
+					case "Width":
+						width = cursor.getShort();
+						break;
+					case "Height":
+						height = cursor.getShort();
+						break;
+					case "Length":
+						length = cursor.getShort();
+						break;
+					default:
+						continue;
+				}
+				++found;
+			}
+			Assertions.assertEquals(3953, dataVersion);
+			Assertions.assertEquals(9, width);
+			Assertions.assertEquals(10, height);
+			Assertions.assertEquals(5, length);
+			cursor.closeCurrent();
+
+			Assertions.assertSame(NbtCursor.Token.START_COMPOUND, cursor.nextToken());
+			Assertions.assertEquals("Level", cursor.currentKey());
+			Assertions.assertEquals(1, cursor.depth());
+			Assertions.assertSame(NbtCursor.Token.VALUE, cursor.nextToken());
+			Assertions.assertEquals("longTest", cursor.currentKey());
+			Assertions.assertThrows(NbtParseException.UnexpectedTagType.class, cursor::getInt);
+			Assertions.assertEquals(Long.MAX_VALUE, cursor.getLong());
+			Assertions.assertThrows(IllegalStateException.class, cursor::getLong);
+			Assertions.assertSame(NbtCursor.Token.VALUE, cursor.nextToken());
+			Assertions.assertSame(NbtType.Short, cursor.currentType());
+			Assertions.assertSame(NbtCursor.Token.VALUE, cursor.nextToken());
+			Assertions.assertEquals("HELLO WORLD THIS IS A TEST STRING ÅÄÖ!", cursor.getString());
+			cursor.nextToken();
+			cursor.nextToken();
+			Assertions.assertSame(NbtCursor.Token.START_COMPOUND, cursor.nextToken());
+			Assertions.assertEquals("nested compound test", cursor.currentKey());
+			cursor.skipValue();
+			Assertions.assertEquals(1, cursor.depth());
+			Assertions.assertSame(NbtCursor.Token.START_LIST, cursor.nextToken());
+			Assertions.assertSame(NbtType.Long, cursor.listComponentType());
+			Assertions.assertEquals(5, cursor.listLength());
+			for (long i = 11; i <= 15; ++i) {
+				Assertions.assertSame(NbtCursor.Token.VALUE, cursor.nextToken());
+				Assertions.assertNull(cursor.currentKey());
+				Assertions.assertEquals(i, cursor.getLong());
+			}
+			Assertions.assertSame(NbtCursor.Token.END_LIST, cursor.nextToken());
+			Assertions.assertSame(NbtCursor.Token.START_LIST, cursor.nextToken());
+			Assertions.assertSame(NbtType.Compound, cursor.listComponentType());
+			cursor.skipValue();
+			Assertions.assertSame(NbtCursor.Token.VALUE, cursor.nextToken());
+			Assertions.assertEquals((byte) 127, cursor.getByte());
+			Assertions.assertSame(NbtCursor.Token.VALUE, cursor.nextToken());
+			Assertions.assertSame(NbtType.ByteArray, cursor.currentType());
+			Assertions.assertSame(NbtCursor.Token.VALUE, cursor.nextToken());
+			Assertions.assertEquals(0.4931287132182315, cursor.getDouble());
+			Assertions.assertSame(NbtCursor.Token.END_COMPOUND, cursor.nextToken());
+			Assertions.assertEquals(0, cursor.depth());
+
+			int ints = 0;
+			do {
+				if (cursor.nextToken() == NbtCursor.Token.VALUE && cursor.currentType() == NbtType.Int) ++ints;
+			} while (cursor.depth() > 0);
+			Assertions.assertTrue(ints > 3 * 4 * 5 * 10);
+		}
+	}
+
+	@Test
+	public void testWriter() throws Throwable {
+		for (String resource : new String[] {
+			"nbt/all-types.nbt.gz", "nbt/bigtest.nbt.gz", "nbt/nested-lists.nbt.gz", "schematic/natural.schem"
+		}) {
+			NbtRoot root;
+			try (NbtParser<IOException> parser = getParser(resource)) {
+				root = parser.parseRoot();
+			}
+			Assertions.assertArrayEquals(TestUtils.gunzippedBytes(resource), writeToBytes(root.name, root.rootValue));
+		}
+	}
+
+	@Test
+	public void testLazy() throws Throwable {
+		for (String resource : new String[] {
+			"nbt/all-types.nbt.gz", "nbt/bigtest.nbt.gz", "nbt/nested-lists.nbt.gz", "schematic/natural.schem"
+		}) {
+			byte[] bytes = TestUtils.gunzippedBytes(resource);
+			Assertions.assertArrayEquals(bytes, writeToBytes(writer -> writer.writeRoot(LazyNbtRoot.parse(bytes))));
+		}
+
+		LazyNbtRoot root = LazyNbtRoot.parse(TestUtils.gunzippedBytes("nbt/bigtest.nbt.gz"));
+		LazyNbtCompound level = root.rootValue;
+		Assertions.assertEquals("Level", root.name);
+		Assertions.assertEquals(2147483647, level.getIntOrThrow("intTest"));
+		Assertions.assertEquals("HELLO WORLD THIS IS A TEST STRING \u00C5\u00C4\u00D6!",
+								level.getStringOrThrow("stringTest"));
+		byte[] byteArray = level.getByteArrayOrThrow(
+			"byteArrayTest (the first 1000 values of (n*n*255+n*7)%100, starting with n=0 (0, 62, 34, 16, 8, ...))");
+		Assertions.assertEquals(1000, byteArray.length);
+		Assertions.assertArrayEquals(new byte[] { 0, 62, 34, 16, 8 }, Arrays.copyOf(byteArray, 5));
+		Assertions.assertArrayEquals(new long[] { 11, 12, 13, 14, 15 },
+									 (long[]) level.getListOrThrow("listTest (long)").array);
+		Assertions.assertThrows(NbtParseException.UnexpectedTagType.class, () -> level.getLongOrThrow("intTest"));
+		Assertions.assertNull(level.getMapOrNull("missing"));
+
+		level.putInt("intTest", 42);
+		LazyNbtCompound egg = level.getMapOrThrow("nested compound test").getMapOrThrow("egg");
+		Assertions.assertEquals(0.5f, egg.getFloatOrThrow("value"));
+		egg.putFloat("value", 1f);
+
+		NbtParser<RuntimeException> parser = new NbtParser<>(
+			new CheckedBigEndianDataInput<>(CheckedReader.fromArray(writeToBytes(writer -> writer.writeRoot(root)))));
+		Assertions.assertEquals(getString("nbt/output-bigtest.txt")
+									.replace("intTest: int 2147483647", "intTest: int 42")
+									.replace("value: float 0.5", "value: float 1.0"),
+								parser.parseRoot().nestedToString());
+	}
+
+	private static byte @NotNull [] bigCompound(int entries, boolean duplicate) throws Throwable {
+		return writeToBytes(writer -> {
+			writer.writeRootStart("big");
+			for (int i = 0; i < entries; ++i) {
+				if ((i & 1) == 0) writer.writeInt("key" + i, i);
+				else writer.writeString("key" + i, "value" + i);
+			}
+			if (duplicate) writer.writeLong("key" + (entries / 2), 0);
+			writer.writeCompoundEnd();
+		});
+	}
+
+	@Test
+	public void testKeyIndex() throws Throwable {
+		for (int entries : new int[] { 5, KeyIndex.THRESHOLD, 100, 1000 }) {
+			NbtCompound big = new NbtParser<>(new CheckedBigEndianDataInput<>(
+				CheckedReader.fromArray(bigCompound(entries, false)))).parseRoot().rootValue;
+			Assertions.assertEquals(entries, big.entries());
+			for (int i = 0; i < entries; ++i) {
+				if ((i & 1) == 0) Assertions.assertEquals(i, big.getIntOrThrow("key" + i));
+				else Assertions.assertEquals("value" + i, big.getStringOrThrow("key" + i));
+			}
+			Assertions.assertFalse(big.containsKey("key" + entries));
+			Assertions.assertNull(big.typeForKey("missing"));
+
+			Assertions.assertThrows(NbtParseException.DuplicatedKey.class, () -> new NbtParser<>(
+				new CheckedBigEndianDataInput<>(CheckedReader.fromArray(bigCompound(entries, true)))).parseRoot());
+		}
+	}
+
+	@Test
+	public void testShapes() throws Throwable {
+		NbtCompound bigtest;
+		try (NbtParser<IOException> parser = getParser("nbt/bigtest.nbt.gz")) {
+			bigtest = parser.parseRoot().rootValue;
+		}
+		NbtCompound[] compounds = (NbtCompound[]) bigtest.getListOrThrow("listTest (compound)").array;
+		Assertions.assertEquals(2, compounds.length);
+		Assertions.assertSame(compounds[0].shape, compounds[1].shape);
+		Assertions.assertEquals("Compound tag #1", compounds[1].getStringOrThrow("name"));
+		Assertions.assertEquals(1264099775885L, compounds[1].getLongOrThrow("created-on"));
+
+		NbtCompound egg = bigtest.getMapOrThrow("nested compound test").getMapOrThrow("egg");
+		Assertions.assertSame(egg.shape, bigtest.getMapOrThrow("nested compound test").getMapOrThrow("ham").shape);
+		Assertions.assertEquals(0.5f, egg.getFloatOrThrow("value"));
+		Assertions.assertEquals(0.75f, bigtest.getMapOrThrow("nested compound test").getMapOrThrow("ham")
+											  .getFloatOrThrow("value"));
+
+		// Adding entries to a compound must not modify the shape shared with other compounds
+		NbtShape shared = compounds[0].shape;
+		compounds[0].collisionUnsafeAddInt("extra", 1);
+		Assertions.assertNotSame(shared, compounds[0].shape);
+		Assertions.assertEquals(3, compounds[0].entries());
+		Assertions.assertEquals(2, compounds[1].entries());
+		Assertions.assertFalse(compounds[1].containsKey("extra"));
+		Assertions.assertEquals(1, compounds[0].getIntOrThrow("extra"));
+		Assertions.assertEquals("Compound tag #0", compounds[0].getStringOrThrow("name"));
+	}
+
+	private static void assertExactSize(@NotNull NbtCompound compound) throws Throwable {
+		NbtShape shape = compound.shape;
+		Assertions.assertEquals(shape.entries, shape.keys.length);
+		Assertions.assertEquals(shape.primitives, compound.primitives == null ? 0 : compound.primitives.length);
+		Assertions.assertEquals(shape.objects, compound.objects == null ? 0 : compound.objects.length);
+		for (String key : shape.keys) {
+			if (compound.typeForKey(key) == NbtType.Compound) assertExactSize(compound.getMapOrThrow(key));
+		}
+	}
+
+	@Test
+	public void testScratch() throws Throwable {
+		String expected = getString("nbt/output-bigtest.txt");
+		try (NbtParser<IOException> parser = getParser("nbt/bigtest.nbt.gz", "nbt/all-types.nbt.gz",
+													   "nbt/bigtest.nbt.gz")) {
+			NbtRoot first = parser.parseRoot();
+			NbtRoot allTypes = parser.parseRoot();
+			NbtRoot second = parser.parseRoot();
+			// Reusing the scratches must not modify the compounds that were built in them
+			Assertions.assertEquals(expected, first.nestedToString());
+			Assertions.assertEquals(expected, second.nestedToString());
+			Assertions.assertEquals(getString("nbt/output-all-types.txt"), allTypes.nestedToString());
+			assertExactSize(first.rootValue);
+			assertExactSize(allTypes.rootValue);
+			for (NbtCompound compound : second.rootValue.getListOrThrow("listTest (compound)").asCompoundView())
+				assertExactSize(compound);
+		}
+	}
+
+	@Test
+	public void testHints() throws Throwable {
+		try (NbtParser<IOException> parser = getParser("nbt/bigtest.nbt.gz", "nbt/bigtest.nbt.gz")) {
+			NbtRoot exact = parseByVerifying(parser);
+			// Wrong hints must not change the parsed tree, just how much storage is reserved for it
+			NbtCompound hinted = parser.parseRoot((name, oomAware) -> new SaveCompoundSchema(oomAware) {
+				@Override
+				public int expectedEntries() {
+					return 1000;
+				}
+
+				@Override
+				public @Nullable NbtCompoundSchema schemaForCompound(@NotNull String key) throws OomException {
+					return new SaveCompoundSchema(oomAware) {
+						@Override
+						public int expectedEntries() {
+							return 1;
+						}
+					};
+				}
+			}).compound;
+			Assertions.assertEquals(exact.rootValue.toString(), hinted.toString());
+			assertExactSize(hinted);
+		}
+	}
+
+	@Test
+	public void testMutable() throws Throwable {
+		NbtCompound compound = NbtCompound.create();
+		for (int i = 0; i < 100; ++i) {
+			if ((i & 1) == 0) compound.putInt("key" + i, i);
+			else compound.putString("key" + i, "value" + i);
+		}
+		for (int i = 0; i < 100; i += 3)
+			Assertions.assertTrue(compound.remove("key" + i));
+		Assertions.assertFalse(compound.remove("key0"));
+		for (int i = 1; i < 100; i += 6)
+			compound.putDouble("key" + i, i);
+		compound.putInt("key2", -2);
+		for (int i = 0; i < 1000; ++i) {
+			compound.putLong("tmp", i);
+			compound.putByteArray("tmp", new byte[i]);
+			Assertions.assertEquals(i, compound.getByteArrayOrThrow("tmp").length);
+			Assertions.assertTrue(compound.remove("tmp"));
+		}
+
+		Assertions.assertEquals(66, compound.entries());
+		for (int i = 0; i < 100; ++i) {
+			String key = "key" + i;
+			if (i % 3 == 0) Assertions.assertFalse(compound.containsKey(key));
+			else if (i % 6 == 1) Assertions.assertEquals((double) i, compound.getDoubleOrThrow(key));
+			else if ((i & 1) == 0) Assertions.assertEquals(i == 2 ? -2 : i, compound.getIntOrThrow(key));
+			else Assertions.assertEquals("value" + i, compound.getStringOrThrow(key));
+		}
+
+		NbtList.Builder builder = NbtList.builder(NbtType.Int).addInt(1).addInt(2).addInt(3);
+		builder.addAll(NbtList.create(new int[] { 4, 5 })).remove(0);
+		Assertions.assertArrayEquals(new int[] { 5, 2, 3, 4 }, (int[]) builder.build().array);
+		Assertions.assertThrows(IllegalArgumentException.class, () -> builder.addLong(0));
+		compound.putList("list", builder.build());
+
+		NbtCompound parsed = new NbtParser<>(new CheckedBigEndianDataInput<>(
+			CheckedReader.fromArray(writeToBytes("mutable", compound)))).parseRoot().rootValue;
+		Assertions.assertEquals(compound.toString(), parsed.toString());
+
+		// Modifying a compound must not modify the compounds that share its shape
+		NbtCompound bigtest;
+		try (NbtParser<IOException> parser = getParser("nbt/bigtest.nbt.gz")) {
+			bigtest = parser.parseRoot().rootValue;
+		}
+		NbtCompound[] compounds = (NbtCompound[]) bigtest.getListOrThrow("listTest (compound)").array;
+		compounds[0].putString("name", "renamed");
+		Assertions.assertSame(compounds[0].shape, compounds[1].shape);
+		compounds[0].putInt("name", 0);
+		compounds[1].remove("created-on");
+		Assertions.assertEquals(0, compounds[0].getIntOrThrow("name"));
+		Assertions.assertEquals(1264099775885L, compounds[0].getLongOrThrow("created-on"));
+		Assertions.assertEquals("Compound tag #1", compounds[1].getStringOrThrow("name"));
+		Assertions.assertNull(compounds[1].typeForKey("created-on"));
+	}
+
+	@Test
+	public void testFreeze() throws Throwable {
+		NbtCompound bigtest;
+		try (NbtParser<IOException> parser = getParser("nbt/bigtest.nbt.gz")) {
+			bigtest = parser.parseRoot().rootValue;
+		}
+		String expected = bigtest.toString();
+		NbtCompound[] compounds = (NbtCompound[]) bigtest.getListOrThrow("listTest (compound)").array;
+		compounds[0].putInt("tmp", 0);
+		Assertions.assertTrue(compounds[0].remove("tmp"));
+
+		Assertions.assertSame(bigtest, bigtest.freeze());
+		Assertions.assertTrue(bigtest.isFrozen());
+		Assertions.assertTrue(compounds[0].isFrozen());
+		Assertions.assertTrue(bigtest.getListOrThrow("listTest (compound)").isFrozen());
+		Assertions.assertTrue(bigtest.getMapOrThrow("nested compound test").getMapOrThrow("egg").isFrozen());
+		Assertions.assertEquals(expected, bigtest.toString());
+
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> bigtest.putInt("intTest", 0));
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> compounds[1].remove("name"));
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> NbtCompound.create().copyTo(compounds[0]));
+
+		NbtCompound copy = NbtCompound.create();
+		bigtest.copyTo(copy);
+		copy.putInt("intTest", 0);
+		Assertions.assertEquals(2147483647, bigtest.getIntOrThrow("intTest"));
+
+		Thread[] threads = new Thread[4];
+		String[] results = new String[threads.length];
+		for (int i = 0; i < threads.length; ++i) {
+			int idx = i;
+			threads[i] = new Thread(() -> results[idx] = bigtest.toString());
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; ++i) {
+			threads[i].join();
+			Assertions.assertEquals(expected, results[i]);
+		}
+	}
+
+	@Test
+	public void testFreezeDeepTree() throws Throwable {
+		NbtCompound deep = NbtCompound.create(), innermost = deep;
+		for (int i = 0; i < 500; ++i) {
+			NbtCompound next = NbtCompound.create();
+			innermost.putList("list", NbtList.create(new NbtCompound[] { next }));
+			innermost = next;
+		}
+		innermost.putInt("depth", 1000);
+		Assertions.assertTrue(deep.freeze().isFrozen());
+		Assertions.assertTrue(innermost.isFrozen());
+
+		NbtCompound tooDeep = NbtCompound.create();
+		for (int i = 0; i < 1100; ++i) {
+			NbtCompound parent = NbtCompound.create();
+			parent.putCompound("nested", tooDeep);
+			tooDeep = parent;
+		}
+		Assertions.assertThrows(IllegalStateException.class, tooDeep::freeze);
+
+		NbtCompound cyclic = NbtCompound.create();
+		cyclic.putList("self", NbtList.create(new NbtCompound[] { cyclic }));
+		Assertions.assertThrows(IllegalStateException.class, cyclic::freeze);
+	}
+
+	@Test
+	public void testListViews() throws Throwable {
+		NbtCompound bigtest;
+		try (NbtParser<IOException> parser = getParser("nbt/bigtest.nbt.gz")) {
+			bigtest = parser.parseRoot().rootValue;
+		}
+		NbtList longs = bigtest.getListOrThrow("listTest (long)");
+		Assertions.assertArrayEquals(new long[] { 11, 12, 13, 14, 15 }, longs.asLongArrayView());
+		Assertions.assertEquals(65L, longs.longStream().sum());
+		long[] sum = { 0 };
+		longs.forEachLong(l -> sum[0] += l);
+		Assertions.assertEquals(65L, sum[0]);
+		Assertions.assertThrows(NbtParseException.UnexpectedTagType.class, longs::intStream);
+		Assertions.assertThrows(NbtParseException.UnexpectedTagType.class, longs::asIntArrayView);
+
+		NbtList compounds = bigtest.getListOrThrow("listTest (compound)");
+		Assertions.assertEquals(2, compounds.asCompoundView().length);
+		List<String> names = new ArrayList<>();
+		compounds.forEachCompound(compound -> names.add(compound.toString()));
+		Assertions.assertEquals(2, names.size());
+
+		NbtList bytes = NbtList.create(new byte[] { -1, 2, 3 });
+		Assertions.assertEquals(4, bytes.intStream().sum());
+		Assertions.assertEquals(4L, bytes.longStream().sum());
+		Assertions.assertEquals(6.5, NbtList.create(new float[] { 1.5f, 5 }).doubleStream().sum());
+
+		Assertions.assertEquals(0, NbtList.EMPTY_LIST.asIntArrayView().length);
+		Assertions.assertEquals(0, NbtList.EMPTY_LIST.asCompoundView().length);
+		Assertions.assertEquals(0L, NbtList.EMPTY_LIST.longStream().count());
+		NbtList.EMPTY_LIST.forEachDouble(d -> Assertions.fail());
+	}
+
+	@Test
+	public void testArena() throws Throwable {
+		for (String[] resource : new String[][] {
+			{ "nbt/all-types.nbt.gz", "nbt/output-all-types.txt" },
+			{ "nbt/bigtest.nbt.gz", "nbt/output-bigtest.txt" },
+			{ "schematic/natural.schem", null }
+		}) {
+			NbtRoot root;
+			try (NbtParser<IOException> parser = getParser(resource[0])) {
+				root = parser.parseRoot();
+			}
+			String expected = resource[1] == null ? root.nestedToString() : getString(resource[1]);
+			NbtArena arena = NbtArena.copyOf(root);
+			Assertions.assertTrue(arena.byteSize() > 0);
+			Assertions.assertEquals(expected, arena.toNbtRoot().nestedToString());
+			Assertions.assertEquals(root.rootValue.entries(), arena.rootValue.entries());
+		}
+
+		NbtRoot bigtestRoot;
+		try (NbtParser<IOException> parser = getParser("nbt/bigtest.nbt.gz")) {
+			bigtestRoot = parser.parseRoot();
+		}
+		NbtCompound expected = bigtestRoot.rootValue;
+		ArenaNbtCompound bigtest = NbtArena.copyOf(bigtestRoot).rootValue;
+		Assertions.assertEquals(expected.getLongOrThrow("longTest"), bigtest.getLongOrThrow("longTest"));
+		Assertions.assertEquals(expected.getShortOrThrow("shortTest"), bigtest.getShortOrThrow("shortTest"));
+		Assertions.assertEquals(expected.getFloatOrThrow("floatTest"), bigtest.getFloatOrThrow("floatTest"));
+		Assertions.assertEquals(expected.getDoubleOrThrow("doubleTest"), bigtest.getDoubleOrThrow("doubleTest"));
+		Assertions.assertEquals(expected.getStringOrThrow("stringTest"), bigtest.getStringOrThrow("stringTest"));
+		Assertions.assertArrayEquals(expected.getByteArrayOrThrow(
+										 "byteArrayTest (the first 1000 values of (n*n*255+n*7)%100, starting with n=0 " +
+										 "(0, 62, 34, 16, 8, ...))"),
+									 bigtest.getByteArrayOrThrow(
+										 "byteArrayTest (the first 1000 values of (n*n*255+n*7)%100, starting with n=0 " +
+										 "(0, 62, 34, 16, 8, ...))"));
+		Assertions.assertArrayEquals(new long[] { 11, 12, 13, 14, 15 },
+									 bigtest.getListOrThrow("listTest (long)").asLongArrayView());
+		Assertions.assertEquals("Eggbert", bigtest.getMapOrThrow("nested compound test").getMapOrThrow("egg")
+												  .getStringOrThrow("name"));
+		ArenaNbtCompound[] compounds = bigtest.getMapListOrThrow("listTest (compound)");
+		Assertions.assertEquals(2, compounds.length);
+		for (int i = 0; i < compounds.length; ++i)
+			Assertions.assertEquals("Compound tag #" + i, compounds[i].getStringOrThrow("name"));
+
+		Assertions.assertEquals(NbtType.Int, bigtest.typeForKey("intTest"));
+		Assertions.assertNull(bigtest.typeForKey("missing"));
+		Assertions.assertNull(bigtest.getMapOrNull("missing"));
+		// "name" is a key of the arena, but not of the root value
+		Assertions.assertNull(bigtest.getStringOrNull("name"));
+		Assertions.assertThrows(NbtKeyNotFoundException.class, () -> bigtest.getIntOrThrow("missing"));
+		Assertions.assertThrows(NbtParseException.UnexpectedTagType.class, () -> bigtest.getShortOrThrow("intTest"));
+		Assertions.assertThrows(NbtParseException.UnexpectedTagType.class,
+								() -> bigtest.getMapListOrThrow("listTest (long)"));
+
+		NbtCompound copy = bigtest.toNbtCompound();
+		copy.putInt("intTest", 0);
+		Assertions.assertEquals(2147483647, bigtest.getIntOrThrow("intTest"));
+
+		// Big enough to be looked up through its hash table
+		NbtCompound big = NbtCompound.create();
+		for (int i = 0; i < 100; ++i)
+			big.putInt("key" + i, i);
+		big.putString("nested", "value");
+		ArenaNbtCompound bigView = NbtArena.copyOf("big", big).rootValue;
+		for (int i = 0; i < 100; ++i)
+			Assertions.assertEquals(i, bigView.getIntOrThrow("key" + i));
+		Assertions.assertEquals("value", bigView.getStringOrThrow("nested"));
+		Assertions.assertNull(bigView.typeForKey("missing"));
+		Assertions.assertEquals(big.nestedToString(), bigView.toNbtCompound().nestedToString());
+
+		// Non-ASCII strings are stored as modified UTF-8
+		NbtCompound strings = NbtCompound.create();
+		strings.putString("mixed", "a\u0000\u00fc\u20ac\ud83d\ude00");
+		strings.putList("list", NbtList.create(new String[] { "", "\u00e9t\u00e9" }));
+		Assertions.assertEquals(strings.nestedToString(),
+								NbtArena.copyOf("strings", strings).rootValue.toNbtCompound().nestedToString());
+		char[] tooLong = new char[0x8000];
+		Arrays.fill(tooLong, '\u00fc');
+		strings.putString("too long", new String(tooLong));
+		Assertions.assertThrows(NbtWriteException.InvalidString.class, () -> NbtArena.copyOf("strings", strings));
+
+		// Deep trees are encoded and decoded without recursion, within the same limit as the writer
+		NbtCompound deep = NbtCompound.create();
+		for (int depth = 0; depth < 300; ++depth) {
+			NbtCompound parent = NbtCompound.create();
+			parent.putList("list", NbtList.create(new NbtList[] { NbtList.create(new NbtCompound[] { deep }) }));
+			deep = parent;
+		}
+		NbtArena deepArena = NbtArena.copyOf("deep", deep);
+		Assertions.assertEquals(deep, deepArena.rootValue.toNbtCompound());
+		Assertions.assertEquals(deep.getListOrThrow("list"), deepArena.rootValue.getListOrThrow("list"));
+		NbtCompound tooDeep = NbtCompound.create();
+		for (int depth = 0; depth < 1100; ++depth) {
+			NbtCompound parent = NbtCompound.create();
+			parent.putCompound("nested", tooDeep);
+			tooDeep = parent;
+		}
+		NbtCompound tooDeepRoot = tooDeep;
+		Assertions.assertThrows(NbtWriteException.InvalidDataStructureSize.class,
+								() -> NbtArena.copyOf("too deep", tooDeepRoot));
+	}
+
+	@Test
+	public void testQuery() throws Throwable {
+		NbtQuery bigtestQuery = NbtQuery.compile("intTest", "nested compound test.egg.name",
+												 "listTest (compound).name", "listTest (long).ignored", "missing.key");
+		NbtCompound bigtest;
+		try (NbtParser<IOException> parser = getParser("nbt/bigtest.nbt.gz")) {
+			bigtest = parser.parseRoot(bigtestQuery).compound;
+		}
+		Assertions.assertEquals(4, bigtest.entries());
+		Assertions.assertEquals(2147483647, bigtest.getIntOrThrow("intTest"));
+		NbtCompound nested = bigtest.getMapOrThrow("nested compound test");
+		Assertions.assertEquals(1, nested.entries());
+		Assertions.assertEquals(1, nested.getMapOrThrow("egg").entries());
+		Assertions.assertEquals("Eggbert", nested.getMapOrThrow("egg").getStringOrThrow("name"));
+		NbtCompound[] compounds = (NbtCompound[]) bigtest.getListOrThrow("listTest (compound)").array;
+		Assertions.assertNotNull(compounds);
+		Assertions.assertEquals(2, compounds.length);
+		for (int i = 0; i < compounds.length; ++i) {
+			Assertions.assertEquals(1, compounds[i].entries());
+			Assertions.assertEquals("Compound tag #" + i, compounds[i].getStringOrThrow("name"));
+		}
+		// Lists of primitives can't be skipped once it is known that they are not lists of compounds
+		Assertions.assertArrayEquals(new long[] { 11, 12, 13, 14, 15 },
+									 (long[]) bigtest.getListOrThrow("listTest (long)").array);
+
+		try (NbtParser<IOException> parser = getParser("schematic/natural.schem")) {
+			NbtQuery query = NbtQuery.compile("Schematic.DataVersion", "Schematic.Blocks.Palette");
+			NbtCompound schematic = parser.parseRoot(query).compound.getMapOrThrow("Schematic");
+			Assertions.assertEquals(2, schematic.entries());
+			Assertions.assertEquals(3953, schematic.getIntOrThrow("DataVersion"));
+			NbtCompound blocks = schematic.getMapOrThrow("Blocks");
+			Assertions.assertEquals(1, blocks.entries());
+			Assertions.assertTrue(blocks.getMapOrThrow("Palette").entries() > 0);
+		}
+
+		try (NbtParser<IOException> parser = getParser("nbt/bigtest.nbt.gz")) {
+			// An empty path saves the whole root value
+			NbtQuery all = NbtQuery.of(new String[] { "intTest" }, new String[0]);
+			Assertions.assertEquals(getString("nbt/output-bigtest.txt"),
+									new NbtRoot("Level", parser.parseRoot(all).compound).nestedToString());
+		}
+	}
+
+	@Test
+	public void testEquality() throws Throwable {
+		NbtCompound a, b;
+		try (NbtParser<IOException> parser = getParser("nbt/bigtest.nbt.gz")) {
+			a = parser.parseRoot().rootValue;
+		}
+		try (NbtParser<IOException> parser = getParser("nbt/bigtest.nbt.gz")) {
+			b = parser.parseRoot().rootValue;
+		}
+		Assertions.assertNotSame(a, b);
+		Assertions.assertEquals(a, b);
+		Assertions.assertEquals(a.hashCode(), b.hashCode());
+
+		b.putInt("intTest", 0);
+		Assertions.assertNotEquals(a, b);
+		b.putInt("intTest", 2147483647);
+		Assertions.assertEquals(a, b);
+		Assertions.assertEquals(a.hashCode(), b.hashCode());
+		((NbtCompound[]) b.getListOrThrow("listTest (compound)").array)[1].putString("name", "other");
+		Assertions.assertNotEquals(a, b);
+
+		NbtCompound c = NbtCompound.create(), d = NbtCompound.create();
+		c.putInt("int", 1);
+		c.putDouble("nan", Double.NaN);
+		c.putLongArray("longs", new long[] { 1, 2, 3 });
+		d.putLongArray("longs", new long[] { 1, 2, 3 });
+		d.putDouble("nan", Double.NaN);
+		Assertions.assertNotEquals(c, d);
+		d.putInt("int", 1);
+		Assertions.assertEquals(c, d);
+		Assertions.assertEquals(c.hashCode(), d.hashCode());
+		d.putLong("int", 1);
+		Assertions.assertNotEquals(c, d);
+
+		Assertions.assertEquals(NbtList.create(new float[] { 1, Float.NaN }),
+								NbtList.create(new float[] { 1, Float.NaN }));
+		Assertions.assertNotEquals(NbtList.create(new int[] { 1, 2 }), NbtList.create(new long[] { 1, 2 }));
+
+		int hash = a.hashCode();
+		Assertions.assertEquals(hash, a.freeze().hashCode());
+		Map<NbtCompound, String> cache = new HashMap<>();
+		cache.put(a, "bigtest");
+		try (NbtParser<IOException> parser = getParser("nbt/bigtest.nbt.gz")) {
+			Assertions.assertEquals("bigtest", cache.get(parser.parseRoot().rootValue.freeze()));
+		}
+	}
+
+	@Test
+	public void testEqualityOfDeepTrees() throws Throwable {
+		NbtCompound[] roots = new NbtCompound[2], innermost = new NbtCompound[2];
+		for (int r = 0; r < 2; ++r) {
+			roots[r] = innermost[r] = NbtCompound.create();
+			for (int i = 0; i < 300; ++i) {
+				NbtCompound next = NbtCompound.create();
+				next.putInt("depth", i);
+				NbtList list = NbtList.create(new NbtCompound[] { next });
+				innermost[r].putList("list", NbtList.create(new NbtList[] { list }));
+				innermost[r] = next;
+			}
+		}
+		Assertions.assertEquals(roots[0], roots[1]);
+		int hash = roots[0].hashCode();
+		Assertions.assertEquals(hash, roots[1].hashCode());
+
+		innermost[1].putString("leaf", "");
+		Assertions.assertNotEquals(roots[0], roots[1]);
+		innermost[0].putString("leaf", "");
+		Assertions.assertEquals(roots[0], roots[1]);
+		Assertions.assertNotEquals(hash, roots[0].hashCode());
+
+		hash = roots[0].hashCode();
+		Assertions.assertEquals(hash, roots[0].freeze().hashCode());
+		Assertions.assertEquals(roots[0], roots[1]);
+		Assertions.assertEquals(roots[1], roots[0]);
+
+		NbtCompound cyclic = NbtCompound.create();
+		cyclic.putList("self", NbtList.create(new NbtCompound[] { cyclic }));
+		Assertions.assertThrows(IllegalStateException.class, cyclic::hashCode);
+	}
+}
@@ -20,21 +20,33 @@
 
 package me.clipi.io.schematic;
 
+import me.clipi.io.CheckedBigEndianDataInput;
+import me.clipi.io.CheckedBigEndianDataOutput;
+import me.clipi.io.CheckedReader;
+import me.clipi.io.CheckedWriter;
 import me.clipi.io.OomException;
 import me.clipi.io.generic_mc.*;
+import me.clipi.io.generic_mc.parse.NbtEntity;
+import me.clipi.io.generic_mc.parse.NbtResource;
+import me.clipi.io.nbt.NbtCompound;
 import me.clipi.io.nbt.NbtParser;
+import me.clipi.io.nbt.NbtWriter;
 import me.clipi.io.nbt.exceptions.NbtParseException;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.function.IntFunction;
+import java.util.stream.Collectors;
 
 import static me.clipi.io.TestUtils.getString;
 import static me.clipi.io.nbt.NbtTest.getParser;
+import static me.clipi.io.nbt.NbtTest.writeToBytes;
 
 public class SchematicTest {
 	private static final @NotNull IntFunction<@Nullable DataVersionInfo<Resource, BlockState, Block, Biome, Entity>> tryDataVersionInfo =
@@ -87,4 +99,73 @@ public class SchematicTest {
 			);
 		}
 	}
+
+	private static final @NotNull SchematicWriteInfo<Block, Biome, Entity> writeInfo = new SchematicWriteInfo<>(
+		block -> block.blockState.state.isEmpty() ?
+			block.blockState.id.toString() :
+			block.blockState.id + block.blockState.state.entrySet().stream()
+														.map(e -> e.getKey() + '=' + e.getValue())
+														.collect(Collectors.joining(",", "[", "]")),
+		block -> block.blockEntity == null ? null : new NbtResource<>(
+			block.blockState.id.toString(),
+			block.blockEntity.data instanceof NbtCompound ? (NbtCompound) block.blockEntity.data : null) {
+		},
+		biome -> biome.id.toString(),
+		entity -> new NbtEntity<>(entity.id.toString(),
+								  entity.data instanceof NbtCompound ? (NbtCompound) entity.data : null,
+								  entity.x, entity.y, entity.z)
+	);
+
+	@Test
+	public void testWriteNatural() throws Exception {
+		String expected = getString("schematic/output-natural.txt");
+		Schematic<Block, Biome, Entity> schematic;
+		try (NbtParser<IOException> parser = getParser("schematic/natural.schem")) {
+			schematic = Schematic.parse(
+				parser,
+				BlockState.class, Block.class, Biome.class, Entity.class, Resource::parse, tryDataVersionInfo
+			);
+		}
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try (NbtWriter<IOException> writer =
+				 new NbtWriter<>(new CheckedBigEndianDataOutput<>(CheckedWriter.toGzip(os)))) {
+			schematic.write(writer, writeInfo);
+		}
+		try (NbtParser<IOException> parser = new NbtParser<>(new CheckedBigEndianDataInput<>(
+			CheckedReader.fromGzip(new ByteArrayInputStream(os.toByteArray()))))) {
+			Assertions.assertEquals(
+				expected,
+				Schematic.parse(
+					parser,
+					BlockState.class, Block.class, Biome.class, Entity.class, Resource::parse, tryDataVersionInfo
+				).nestedToString()
+			);
+		}
+	}
+
+	@Test
+	public void testWriteBigPalette() throws Throwable {
+		int xLen = 20, yLen = 2, zLen = 10;
+		Block[] blocks = new Block[xLen * yLen * zLen];
+		Biome[] biomes = new Biome[blocks.length];
+		Biome plains = new Biome(Resource.parse("plains"));
+		for (int i = 0; i < blocks.length; ++i) {
+			// More than 128 different block states, so that some palette indices take two bytes
+			blocks[i] = new Block(new BlockState(Resource.parse("block_" + (i % 150)), new LinkedHashMap<>()), null,
+								  i % xLen, i / (xLen * zLen), (i / xLen) % zLen);
+			biomes[i] = plains;
+		}
+		Schematic<Block, Biome, Entity> schematic = new Schematic<>(3953, 1, 2, 3, xLen, yLen, zLen,
+																	 blocks, biomes, null);
+		try (NbtParser<RuntimeException> parser = new NbtParser<>(new CheckedBigEndianDataInput<>(
+			CheckedReader.fromArray(writeToBytes(writer -> schematic.write(writer, writeInfo)))))) {
+			Assertions.assertEquals(
+				schematic.nestedToString(),
+				Schematic.parse(
+					parser,
+					BlockState.class, Block.class, Biome.class, Entity.class, Resource::parse, tryDataVersionInfo
+				).nestedToString()
+			);
+		}
+	}
 }
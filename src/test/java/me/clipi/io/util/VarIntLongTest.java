@@ -143,4 +143,42 @@ public class VarIntLongTest {
 			Assertions.assertArrayEquals(expected, result);
 		}
 	}
+
+	@Test
+	public void testWriteVarInts() {
+		Random rng = new Random(0);
+		for (int iter = 100; iter > 0; --iter) {
+			ArrayList<Map.Entry<byte[], Integer>> entries = new ArrayList<>(varInts.entrySet());
+			Collections.shuffle(entries, rng);
+			byte[] expected = concat(entries.stream().map(Map.Entry::getKey).toList());
+			int[] values = entries.stream().mapToInt(Map.Entry::getValue).toArray();
+			Assertions.assertEquals((long) expected.length, VarIntLong.varIntsSize(values, 0, values.length));
+			byte[] result = new byte[expected.length + 2];
+			Assertions.assertEquals(expected.length + 1, VarIntLong.writeVarInts(values, 0, values.length, result, 1));
+			Assertions.assertArrayEquals(expected, Arrays.copyOfRange(result, 1, expected.length + 1));
+		}
+	}
+
+	@Test
+	public void testDecodeVarInts() {
+		Random rng = new Random(0);
+		for (int iter = 100; iter > 0; --iter) {
+			// Mostly single-byte values, so that both the word-at-a-time and the per-value paths are taken
+			int[] expected = new int[rng.nextInt(200)];
+			for (int i = 0; i < expected.length; ++i)
+				expected[i] = rng.nextInt(10) == 0 ? rng.nextInt() : rng.nextInt(128);
+			byte[] input = new byte[(int) VarIntLong.varIntsSize(expected, 0, expected.length) + 1];
+			VarIntLong.writeVarInts(expected, 0, expected.length, input, 1);
+
+			int[] result = new int[expected.length + 2];
+			Assertions.assertEquals(input.length, Assertions.assertDoesNotThrow(
+				() -> VarIntLong.decodeVarInts(input, 1, result, 1, expected.length)));
+			Assertions.assertArrayEquals(expected, Arrays.copyOfRange(result, 1, expected.length + 1));
+			Assertions.assertThrows(VarIntLong.ParseVarIntLongException.class,
+									() -> VarIntLong.decodeVarInts(input, 1, result, 0, expected.length + 1));
+		}
+		byte[] tooLong = { (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x01 };
+		Assertions.assertThrows(VarIntLong.ParseVarIntLongException.class,
+								() -> VarIntLong.decodeVarInts(tooLong, 0, new int[1], 0, 1));
+	}
 }